@@ -31,9 +31,32 @@ public interface Config {
     static String KEY_DEFAULT_TASK = "blaze.default.task";
     static String KEY_DEPENDENCIES = "blaze.dependencies";
     static String KEY_DEPENDENCY_CLEAN = "blaze.dependency.clean";
+    static String KEY_DEPENDENCY_CACHE = "blaze.dependency.cache";
+    static String KEY_TASK_FORCE = "blaze.task.force";
+    static String KEY_BUILD_CACHE = "blaze.build.cache";
+    static String KEY_BUILD_CACHE_MAX_MB = "blaze.build.cache.max.mb";
+    static String KEY_ENGINE_CACHE_MAX_MB = "blaze.engine.cache.max.mb";
+    static String KEY_ENGINE_CACHE_MAX_AGE_DAYS = "blaze.engine.cache.max.age.days";
+    static String KEY_WATCH_INCLUDES = "blaze.watch.includes";
+    static String KEY_WATCH_EXCLUDES = "blaze.watch.excludes";
+    static String KEY_WATCH_QUIET_MS = "blaze.watch.quiet.ms";
+    static String KEY_GROOVY_COMPILE_STATIC = "blaze.groovy.compile.static";
+    static String KEY_JAVA_COMPILE_PARALLELISM = "blaze.java.compile.parallelism";
     
     static String DEFAULT_TASK = "main";
     static Boolean DEFAULT_DEPENDENCY_CLEAN = Boolean.FALSE;
+    static Boolean DEFAULT_DEPENDENCY_CACHE = Boolean.TRUE;
+    static Boolean DEFAULT_TASK_FORCE = Boolean.FALSE;
+    static Boolean DEFAULT_BUILD_CACHE = Boolean.TRUE;
+    static Long DEFAULT_BUILD_CACHE_MAX_MB = 1024L;
+    static Long DEFAULT_ENGINE_CACHE_MAX_MB = 1024L;
+    static Long DEFAULT_ENGINE_CACHE_MAX_AGE_DAYS = 30L;
+    static List<String> DEFAULT_WATCH_INCLUDES = Arrays.asList("**");
+    static List<String> DEFAULT_WATCH_EXCLUDES = Arrays.asList(".*", ".*/**", "**/.*", "**/.*/**", "target/**", "build/**", "node_modules/**", "**/*~");
+    static Long DEFAULT_WATCH_QUIET_MS = 50L;
+    static Boolean DEFAULT_GROOVY_COMPILE_STATIC = Boolean.FALSE;
+    // zero is the number of processors
+    static Integer DEFAULT_JAVA_COMPILE_PARALLELISM = 0;
     
     static List<String> DEFAULT_COMMAND_EXTS_UNIX = Arrays.asList("", ".sh");
     static List<String> DEFAULT_COMMAND_EXTS_WINDOWS = Arrays.asList(".exe", ".bat", ".cmd");
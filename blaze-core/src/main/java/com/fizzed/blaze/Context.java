@@ -15,6 +15,7 @@
  */
 package com.fizzed.blaze;
 
+import com.fizzed.blaze.core.BlazeExecutor;
 import java.io.File;
 import java.nio.file.Path;
 import org.slf4j.Logger;
@@ -53,4 +54,13 @@ public interface Context {
     
     char[] passwordPrompt(String prompt, Object... args);
     
+    /**
+     * The executor shared by everything in blaze for running short-lived
+     * tasks (e.g. pumping streams of processes).
+     * @return The shared executor
+     */
+    default BlazeExecutor executor() {
+        return BlazeExecutor.shared();
+    }
+    
 }
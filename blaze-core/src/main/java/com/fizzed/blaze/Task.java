@@ -28,4 +28,25 @@ public @interface Task {
         
     int order() default 0;
     
+    /**
+     * Names of tasks that must run (at most once) before this task.
+     * @return The names of prerequisite tasks
+     */
+    String[] depends() default {};
+    
+    /**
+     * Globs (relative to the base dir) of files the task reads.  If the task
+     * declares inputs or outputs it is skipped as UP-TO-DATE when none of
+     * them (nor the script) changed since its last successful run.
+     * @return The input globs
+     */
+    String[] inputs() default {};
+    
+    /**
+     * Globs (relative to the base dir) of files the task produces.
+     * @return The output globs
+     * @see #inputs() 
+     */
+    String[] outputs() default {};
+    
 }
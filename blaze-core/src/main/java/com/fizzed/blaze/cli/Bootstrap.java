@@ -15,6 +15,8 @@
  */
 package com.fizzed.blaze.cli;
 
+import com.fizzed.blaze.Config;
+import com.fizzed.blaze.Context;
 import com.fizzed.blaze.Version;
 import com.fizzed.blaze.core.Blaze;
 import com.fizzed.blaze.core.BlazeTask;
@@ -22,8 +24,19 @@ import com.fizzed.blaze.core.MessageOnlyException;
 import com.fizzed.blaze.core.NoSuchTaskException;
 import com.fizzed.blaze.core.DependencyResolveException;
 import com.fizzed.blaze.core.WrappedBlazeException;
+import com.fizzed.blaze.internal.BuildCache;
+import com.fizzed.blaze.internal.ClassDataSharingHelper;
+import com.fizzed.blaze.internal.ClassLoaderHelper;
+import com.fizzed.blaze.internal.ConfigHelper;
+import com.fizzed.blaze.internal.ContextImpl;
+import com.fizzed.blaze.internal.EngineCache;
+import com.fizzed.blaze.internal.FileWatcher;
 import com.fizzed.blaze.internal.InstallHelper;
+import com.fizzed.blaze.internal.ScriptExporter;
+import com.fizzed.blaze.internal.TaskIndex;
+import com.fizzed.blaze.util.Profiler;
 import com.fizzed.blaze.util.Timer;
+import com.fizzed.blaze.util.Streamables;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -31,14 +44,21 @@ import java.nio.file.Paths;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class Bootstrap {
     
     static public void main(String[] args) throws IOException {
+        // processes may inherit our console rather than be pumped through us
+        Streamables.markConsole();
         new Bootstrap().run(args);
     }
     
@@ -57,8 +77,29 @@ public class Bootstrap {
     @SuppressWarnings("ThrowableResultIgnored")
     public void run(Deque<String> args) throws IOException {
         Thread.currentThread().setName(getName());
+        
+        // a copy for anything that needs to run blaze again (e.g. --cds)
+        final List<String> originalArgs = new ArrayList<>(args);
+
+        // forward everything to a warm daemon for this directory?
+        if (args.remove("--daemon-stop")) {
+            exit(new DaemonClient().stop());
+            return;
+        } else if (args.remove("--daemon")) {
+            exit(new DaemonClient().run(new ArrayList<>(args)));
+            return;
+        }
 
         boolean listTasks = false;
+        boolean completeTasks = false;
+        int parallelism = 1;
+        boolean timings = false;
+        boolean generateCds = false;
+        boolean cacheStats = false;
+        boolean cachePrune = false;
+        boolean watch = false;
+        Path traceFile = null;
+        Path exportFile = null;
         boolean loggingConfigured = false;
 
         while (!args.isEmpty()) {
@@ -79,13 +120,13 @@ public class Bootstrap {
                 }
             } else if (arg.equals("-v") || arg.equals("--version")) {
                 printVersion();
-                System.exit(0);
+                exit(0);
             } else if (arg.equals("-q") || arg.equals("-qq") || arg.equals("-x") || arg.equals("-xx") || arg.equals("-xxx")) {
                 configureLogging(arg);
                 loggingConfigured = true;
             } else if (arg.equals("-h") || arg.equals("--help")) {
                 printHelp();
-                System.exit(0);
+                exit(0);
             } else if (arg.equals("-f") || arg.equals("--file")) {
                 String nextArg = nextArg(args, arg, "<file>");
                 blazeFile = Paths.get(nextArg);
@@ -101,16 +142,45 @@ public class Bootstrap {
                     for (Path installedFile : installedFiles) {
                         System.out.println("Installed " + installedFile);
                     }
-                    System.exit(0);
+                    exit(0);
                 } catch (MessageOnlyException e) {
                     System.err.println("[ERROR] " + e.getMessage());
-                    System.exit(1);
+                    exit(1);
                 }
             } else if (arg.equals("-l") || arg.equals("--list")) {
                 listTasks = true;
+            } else if (arg.equals("--complete")) {
+                completeTasks = true;
+            } else if (arg.equals("--watch")) {
+                watch = true;
+            } else if (arg.equals("--cds")) {
+                generateCds = true;
+            } else if (arg.equals("--cache-stats")) {
+                cacheStats = true;
+            } else if (arg.equals("--cache-prune")) {
+                cachePrune = true;
+            } else if (arg.equals("--timings")) {
+                timings = true;
+            } else if (arg.equals("--trace")) {
+                String nextArg = nextArg(args, arg, "<file>");
+                traceFile = Paths.get(nextArg);
+            } else if (arg.equals("--export")) {
+                String nextArg = nextArg(args, arg, "<jar>");
+                exportFile = Paths.get(nextArg);
+            } else if (arg.equals("-j") || arg.equals("--parallel")) {
+                String nextArg = nextArg(args, arg, "<n>");
+                try {
+                    parallelism = Integer.parseInt(nextArg);
+                } catch (NumberFormatException e) {
+                    parallelism = 0;
+                }
+                if (parallelism < 1) {
+                    System.err.println("[ERROR] " + arg + " argument requires a number >= 1");
+                    exit(1);
+                }
             } else if (arg.startsWith("-")) {
                 System.err.println("[ERROR] Unsupported command line switch [" + arg + "]; " + getName() + " -h for more info");
-                System.exit(1);
+                exit(1);
             } else {
                 // this may be a task to run - special case for first occurrence
                 // which may be a script to run
@@ -128,35 +198,82 @@ public class Bootstrap {
         
         // configure logging if not yet configured
         if (!loggingConfigured) {
-            this.configureLogging("");
+            // only task names should be output for shell completion
+            this.configureLogging(completeTasks ? "-qq" : "");
         }
         
         // trigger logger to be bound!
         Logger log = LoggerFactory.getLogger(Bootstrap.class);
         
+        if (generateCds) {
+            generateCds(log, originalArgs);
+            return;
+        }
+        
+        if (cacheStats || cachePrune) {
+            engineCache(log, cachePrune);
+            return;
+        }
+        
+        // listing tasks from the index skips building blaze entirely
+        if (listTasks || completeTasks) {
+            List<BlazeTask> indexedTasks = this.indexedTasks();
+            if (indexedTasks != null) {
+                log.debug("Using task index");
+                if (completeTasks) {
+                    printTaskNames(indexedTasks);
+                } else {
+                    logTasks(log, indexedTasks);
+                }
+                exit(0);
+                return;
+            }
+        }
+        
+        if (timings || traceFile != null) {
+            enableTimings();
+        }
+        
+        BuildCache.stats().reset();
+        
         Timer timer = new Timer();
+        int exitCode = 0;
         try {
             // build blaze
             Blaze blaze = this.buildBlaze();
+            
+            pruneEngineCacheInBackground(blaze.context());
+            
+            // record (training run) or verify the class data sharing archive
+            ClassDataSharingHelper.afterBuild(Paths.get(""),
+                ClassLoaderHelper.buildClassPath(ClassLoaderHelper.currentThreadContextClassLoader()));
 
-            if (listTasks) {
+            if (exportFile != null) {
+                export(log, blaze, exportFile);
+            } else if (completeTasks) {
+                printTaskNames(blaze.tasks());
+            } else if (listTasks) {
                 logTasks(log, blaze);
-                System.exit(0);
+            } else if (watch) {
+                watch(log, blaze, parallelism);
             } else {
                 try {
                     log.debug("tasks to execute: {}", tasks);
-                    blaze.executeAll(tasks);
+                    blaze.executeAll(tasks, parallelism);
                 } catch (NoSuchTaskException e) {
                     // do not log stack trace
                     log.error(e.getMessage());
                     logTasks(log, blaze);
-                    System.exit(1);
+                    exitCode = 1;
                 }
             }
+        } catch (ExitException e) {
+            // exit requested by ourselves (e.g. when running inside a daemon)
+            throw e;
         } catch (MessageOnlyException | DependencyResolveException e) {
             // do not log stack trace
             log.error(e.getMessage());
-            System.exit(1);
+            exitCode = 1;
         } catch (Throwable t) {
             // unwrap a wrapped exception (much cleaner)
             if (t instanceof WrappedBlazeException) {
@@ -165,14 +282,260 @@ public class Bootstrap {
             }
             // hmmm... definitely something unexpected so log stack trace
             log.error(t.getMessage(), t);
-            System.exit(1);
+            exitCode = 1;
         }
         
         // only log time if no exception
-        log.info("Blazed in {} ms", timer.stop().millis());
+        if (exitCode == 0 && !listTasks && !completeTasks && exportFile == null) {
+            log.info("Blazed in {} ms", timer.stop().millis());
+        }
+        
+        if (!BuildCache.stats().isEmpty()) {
+            log.info("Build cache: {}", BuildCache.stats());
+        }
+        
+        // timings are most useful when something went wrong too
+        if (Profiler.get().isEnabled()) {
+            reportTimings(log, timings, traceFile);
+        }
+        
+        if (exitCode != 0 || listTasks || completeTasks || exportFile != null) {
+            exit(exitCode);
+        }
+    }
+    
+    /**
+     * Executes the tasks and then again whenever a watched file changes.  The
+     * JVM, dependencies and compiled script stay loaded.  The script is only
+     * recompiled if it changed (or rebuilt if its config changed).  Failures
+     * are logged and never stop watching.
+     */
+    public void watch(Logger log, Blaze blaze, int parallelism) throws Exception {
+        Config config = blaze.context().config();
+        Path baseDir = blaze.context().baseDir().toAbsolutePath().normalize();
+        Path scriptFile = (blaze.context().scriptFile() != null ? blaze.context().scriptFile().toAbsolutePath().normalize() : null);
+        Path configFile = (scriptFile != null ? ConfigHelper.path(scriptFile.getParent(), scriptFile).toAbsolutePath().normalize() : null);
+        Path watchRoot = watchRoot(scriptFile, baseDir);
+        // the default excludes of hidden files would otherwise hide .blaze
+        List<Path> alwaysIncluded = (scriptFile != null ? Collections.singletonList(scriptFile.getParent()) : Collections.emptyList());
+        
+        List<String> includes = config.valueList(Config.KEY_WATCH_INCLUDES).getOr(Config.DEFAULT_WATCH_INCLUDES);
+        List<String> excludes = config.valueList(Config.KEY_WATCH_EXCLUDES).getOr(Config.DEFAULT_WATCH_EXCLUDES);
+        long quietMillis = config.value(Config.KEY_WATCH_QUIET_MS, Long.class).getOr(Config.DEFAULT_WATCH_QUIET_MS);
+        
+        try (FileWatcher watcher = new FileWatcher(watchRoot, includes, excludes, alwaysIncluded)) {
+            log.debug("Watching {} dirs in {}", watcher.getWatchedDirCount(), watchRoot);
+            
+            Set<Path> changed = Collections.emptySet();
+            
+            while (true) {
+                Timer timer = new Timer();
+                try {
+                    if (configFile != null && changed.contains(configFile)) {
+                        log.info("Config changed (rebuilding)");
+                        blaze = this.buildBlaze();
+                    } else if (scriptFile != null && (changed.contains(scriptFile) || isProjectSourceChanged(scriptFile, changed))) {
+                        log.info("Script changed (recompiling)");
+                        blaze = blaze.recompile();
+                    }
+                    
+                    blaze.executeAll(this.tasks, parallelism);
+                    
+                    log.info("Blazed in {} ms", timer.stop().millis());
+                } catch (MessageOnlyException | DependencyResolveException e) {
+                    log.error(e.getMessage());
+                } catch (Exception e) {
+                    Throwable t = (e instanceof WrappedBlazeException ? e.getCause() : e);
+                    log.error(t.getMessage(), t);
+                }
+                
+                log.info("Watching for changes in {} (ctrl-c to stop)...", watchRoot);
+                
+                changed = watcher.take(quietMillis);
+                
+                log.info("Detected {} changed file(s)", changed.size());
+                log.debug(" => {}", changed);
+            }
+        }
+    }
+    
+    /**
+     * The project dir whose files are watched: the parent of a blaze or .blaze
+     * script dir (e.g. project/blaze/blaze.java watches project), otherwise the
+     * dir of the script.
+     */
+    static Path watchRoot(Path scriptFile, Path baseDir) {
+        Path scriptDir = (scriptFile != null ? scriptFile.toAbsolutePath().normalize().getParent() : null);
+        
+        if (scriptDir == null) {
+            return baseDir.toAbsolutePath().normalize();
+        }
+        
+        if (Blaze.SEARCH_RELATIVE_DIRECTORIES.contains(scriptDir.getFileName()) && scriptDir.getParent() != null) {
+            return scriptDir.getParent();
+        }
+        
+        return scriptDir;
+    }
+    
+    static private boolean isProjectSourceChanged(Path scriptFile, Set<Path> changed) {
+        // other sources of a script project (e.g. blaze/helpers/Docker.java)
+        Path scriptDir = scriptFile.getParent();
+        
+        if (scriptDir == null || !Blaze.SEARCH_RELATIVE_DIRECTORIES.contains(scriptDir.getFileName())
+                || !scriptFile.toString().endsWith(".java")) {
+            return false;
+        }
+        
+        return changed.stream()
+            .anyMatch((p) -> p.startsWith(scriptDir) && p.toString().endsWith(".java"));
+    }
+    
+    public void export(Logger log, Blaze blaze, Path jarFile) throws IOException {
+        Timer timer = new Timer();
+        
+        int count = new ScriptExporter(blaze).export(jarFile);
+        
+        log.info("Exported {} ({} entries) in {} ms", jarFile, count, timer.stop().millis());
+        log.info("Run it with java -jar {} [<task> ...]", jarFile);
+    }
+    
+    public void generateCds(Logger log, List<String> originalArgs) {
+        List<String> trainingArgs = new ArrayList<>(originalArgs);
+        trainingArgs.remove("--cds");
+        
+        Timer timer = new Timer();
+        try {
+            Path archiveFile = ClassDataSharingHelper.generate(Paths.get(""), getClass().getName(), trainingArgs);
+            log.info("Generated class data sharing archive {} in {} ms", archiveFile, timer.stop().millis());
+        } catch (MessageOnlyException e) {
+            log.error(e.getMessage());
+            exit(1);
+        }
+        
+        exit(0);
+    }
+    
+    /**
+     * Prints what engines compiled to ~/.blaze/engine and optionally prunes
+     * it first (ignoring when it was last pruned).
+     */
+    public void engineCache(Logger log, boolean prune) {
+        EngineCache engineCache = EngineCache.of(engineCacheContext());
+        
+        if (prune) {
+            Timer timer = new Timer();
+            List<EngineCache.Entry> pruned = engineCache.prune(Collections.emptySet());
+            long size = 0;
+            for (EngineCache.Entry entry : pruned) {
+                size += entry.getSize();
+            }
+            log.info("Pruned {} entries ({} MB) in {} ms", pruned.size(), megabytes(size), timer.stop().millis());
+        }
+        
+        // totals by engine
+        Map<String,long[]> engines = new TreeMap<>();
+        long[] total = new long[3];
+        long oldest = Long.MAX_VALUE;
+        
+        for (EngineCache.Entry entry : engineCache.entries()) {
+            long[] usage = engines.computeIfAbsent(entry.getEngine(), (e) -> new long[3]);
+            usage[0]++;
+            usage[1] += entry.getFiles();
+            usage[2] += entry.getSize();
+            total[0]++;
+            total[1] += entry.getFiles();
+            total[2] += entry.getSize();
+            oldest = Math.min(oldest, entry.getLastUsed());
+        }
+        
+        System.out.println("engine cache => " + engineCache.getEngineDir());
+        System.out.println(String.format("%-12s %10s %10s %12s", "engine", "entries", "files", "size MB"));
+        for (Map.Entry<String,long[]> entry : engines.entrySet()) {
+            long[] usage = entry.getValue();
+            System.out.println(String.format("%-12s %10d %10d %12s", entry.getKey(), usage[0], usage[1], megabytes(usage[2])));
+        }
+        System.out.println(String.format("%-12s %10d %10d %12s", "total", total[0], total[1], megabytes(total[2])));
+        
+        if (total[0] > 0) {
+            long days = TimeUnit.MILLISECONDS.toDays(System.currentTimeMillis() - oldest);
+            System.out.println("least recently used " + days + " days ago");
+        }
+        
+        System.out.println("limits " + megabytes(engineCache.getMaxSize()) + " MB or "
+            + TimeUnit.MILLISECONDS.toDays(engineCache.getMaxAgeMillis()) + " days unused"
+            + " (" + Config.KEY_ENGINE_CACHE_MAX_MB + ", " + Config.KEY_ENGINE_CACHE_MAX_AGE_DAYS + ")");
+        
+        exit(0);
+    }
+    
+    static private String megabytes(long bytes) {
+        return String.format("%.1f", bytes / (1024.0 * 1024.0));
+    }
+    
+    /**
+     * Context for the engine cache commands.  The config of the script (if
+     * there is one) may change the limits.
+     */
+    public Context engineCacheContext() {
+        try {
+            Blaze.Builder builder = new Blaze.Builder()
+                .file(blazeFile)
+                .directory(blazeDir);
+            
+            builder.configure();
+            
+            return builder.getContext();
+        } catch (RuntimeException e) {
+            // no script is fine too
+            return new ContextImpl(null, null, null, ConfigHelper.create(null));
+        }
+    }
+    
+    /**
+     * Prunes ~/.blaze/engine on a background thread if not pruned in the last
+     * day.  The entries of the script itself are always kept.
+     */
+    public void pruneEngineCacheInBackground(Context context) {
+        try {
+            Set<String> keepNames = Collections.singleton(ConfigHelper.userBlazeEngineScriptKey(context));
+            EngineCache.of(context).pruneInBackground(keepNames);
+        } catch (IOException | RuntimeException e) {
+            // never fails a run
+            LoggerFactory.getLogger(Bootstrap.class).debug("Unable to prune engine cache ({})", e.getMessage());
+        }
+    }
+    
+    public void enableTimings() {
+        Profiler.get().enable();
+        Profiler.get().recordJvmStartup();
+    }
+    
+    public void reportTimings(Logger log, boolean timings, Path traceFile) {
+        Profiler profiler = Profiler.get();
+        
+        profiler.disable();
+        
+        if (timings) {
+            System.out.println("timings =>");
+            System.out.print(profiler.summary());
+        }
+        
+        if (traceFile != null) {
+            try {
+                profiler.writeChromeTrace(traceFile);
+                log.info("Wrote trace to {}", traceFile);
+            } catch (IOException e) {
+                log.error("Unable to write trace to {}: {}", traceFile, e.getMessage());
+            }
+        }
     }
     
     // all overrideable by subclasses
+    public void exit(int exitCode) {
+        System.exit(exitCode);
+    }
+    
     public String getName() {
         return "blaze";
     }
@@ -180,7 +543,7 @@ public class Bootstrap {
     public String nextArg(Deque<String> args, String arg, String valueDescription) {
         if (args.isEmpty()) {
             System.err.println("[ERROR] " + arg + " argument requires next arg to be a " + valueDescription);
-            System.exit(1);
+            exit(1);
         }
         return args.remove();
     }
@@ -196,12 +559,42 @@ public class Bootstrap {
         System.out.println("-f|--file <file>   Use this " + getName() + " file instead of default");
         System.out.println("-d|--dir <dir>     Search this dir for " + getName() + " file instead of default (-f supercedes)");
         System.out.println("-l|--list          Display list of available tasks");
+        System.out.println("--complete         Display only the names of tasks (for shell completion)");
+        System.out.println("-j|--parallel <n>  Execute up to n independent tasks at once");
+        System.out.println("--watch            Execute tasks again whenever a file changes");
+        System.out.println("--timings          Display how long each phase, task and action took");
+        System.out.println("--trace <file>     Write timings as a Chrome/Perfetto trace to file");
+        System.out.println("--cds              Generate a class data sharing archive for faster startup (Java 13+)");
+        System.out.println("--export <jar>     Export the compiled script and its dependencies as an executable jar");
+        System.out.println("--cache-stats      Display the size of what scripts were compiled to in ~/.blaze/engine");
+        System.out.println("--cache-prune      Prune ~/.blaze/engine to its max size and age now (otherwise daily)");
         System.out.println("-q                 Only log " + getName() + " warnings to stdout (script logging is still info level)");
         System.out.println("-qq                Only log warnings to stdout (including script logging)");
         System.out.println("-x[x...]           Increases verbosity of logging to stdout");
         System.out.println("-v|--version       Display version and then exit");
         System.out.println("-Dname=value       Sets a System property as name=value");
         System.out.println("-i|--install <dir> Install blaze or blaze.bat to directory");
+        System.out.println("--daemon           Run using a warm background daemon for this directory");
+        System.out.println("--daemon-stop      Stop the background daemon for this directory");
+    }
+    
+    /**
+     * Gets the tasks of the script from its index without building blaze.
+     * @return The tasks or null if not indexed yet (or the index is stale)
+     */
+    public List<BlazeTask> indexedTasks() {
+        try {
+            Blaze.Builder builder = new Blaze.Builder()
+                .file(blazeFile)
+                .directory(blazeDir);
+            
+            builder.configure();
+            
+            return TaskIndex.read(builder.getContext());
+        } catch (RuntimeException e) {
+            // building blaze will report the problem
+            return null;
+        }
     }
     
     public Blaze buildBlaze() {
@@ -257,10 +650,18 @@ public class Bootstrap {
     }
     
     public void logTasks(Logger log, Blaze blaze) {
+        logTasks(log, blaze.tasks());
+    }
+    
+    public void printTaskNames(List<BlazeTask> ts) {
+        for (BlazeTask t : ts) {
+            System.out.println(t.getName());
+        }
+    }
+    
+    public void logTasks(Logger log, List<BlazeTask> ts) {
         System.out.println("tasks =>");
         
-        List<BlazeTask> ts = blaze.tasks();
-        
         // max width of task name
         int width = 0;
         for (BlazeTask t : ts) {
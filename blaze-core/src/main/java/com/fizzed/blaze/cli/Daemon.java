@@ -0,0 +1,482 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.cli;
+
+import com.fizzed.blaze.core.Blaze;
+import com.fizzed.blaze.core.ContextHolder;
+import com.fizzed.blaze.internal.ConfigHelper;
+import com.fizzed.blaze.internal.ScriptClassLoader;
+import com.fizzed.blaze.jdk.ScriptProject;
+import com.fizzed.blaze.util.BytePipe;
+import com.fizzed.blaze.util.Profiler;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Long-lived process that keeps compiled scripts, their resolved dependencies
+ * and initialized engines warm for a single working directory.  Requests from
+ * a <code>DaemonClient</code> are executed one at a time with stdin, stdout
+ * and stderr forwarded over a loopback socket.
+ * 
+ * Each script is built in its own classloader.  If the script or its .conf
+ * file changes (or different -D properties are supplied) it is rebuilt in a
+ * fresh classloader on the next request.
+ * 
+ * @author joelauer
+ */
+public class Daemon {
+    
+    static public final String KEY_IDLE_MINUTES = "blaze.daemon.idle.minutes";
+    static public final long DEFAULT_IDLE_MINUTES = 180;
+    
+    static private RequestOutputStream stdoutTarget;
+    static private RequestOutputStream stderrTarget;
+    
+    static public void main(String[] args) throws IOException {
+        String loggingSwitch = (args.length > 0 ? args[0] : "");
+        
+        // loggers (e.g. slf4j-simple) keep the stream they found when started
+        installStandardStreams();
+        
+        // logging must be configured before any logger is bound
+        new Bootstrap().configureLogging(loggingSwitch);
+        
+        long idleMillis = TimeUnit.MINUTES.toMillis(Long.getLong(KEY_IDLE_MINUTES, DEFAULT_IDLE_MINUTES));
+        
+        new Daemon(DaemonProtocol.workingDir(), loggingSwitch, idleMillis).run();
+        
+        System.exit(0);
+    }
+    
+    /**
+     * Replaces System.out and System.err with streams whose target each
+     * request switches to its client.  Must be called before any logger is
+     * bound since loggers keep a reference to the stream rather than looking
+     * up System.out or System.err on every write.
+     */
+    static synchronized void installStandardStreams() {
+        if (stdoutTarget == null) {
+            stdoutTarget = new RequestOutputStream(System.out);
+            stderrTarget = new RequestOutputStream(System.err);
+            System.setOut(new PrintStream(stdoutTarget, true));
+            System.setErr(new PrintStream(stderrTarget, true));
+        }
+    }
+    
+    private final Logger log;
+    private final Path workingDir;
+    private final Path stateFile;
+    private final String loggingSwitch;
+    private final Map<String,String> environment;
+    private final long idleMillis;
+    private final String token;
+    private final Map<String,Project> projects;
+    private volatile boolean running;
+
+    public Daemon(Path workingDir, String loggingSwitch, long idleMillis) {
+        this.log = LoggerFactory.getLogger(Daemon.class);
+        this.workingDir = workingDir;
+        this.stateFile = DaemonProtocol.stateFile(workingDir);
+        this.loggingSwitch = loggingSwitch;
+        this.environment = DaemonProtocol.environment(System.getenv());
+        this.idleMillis = idleMillis;
+        this.token = UUID.randomUUID().toString();
+        this.projects = new HashMap<>();
+    }
+    
+    public void run() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            serverSocket.setSoTimeout((int)Math.min(Integer.MAX_VALUE, idleMillis));
+            
+            Properties state = new Properties();
+            state.setProperty(DaemonProtocol.KEY_PORT, Integer.toString(serverSocket.getLocalPort()));
+            state.setProperty(DaemonProtocol.KEY_TOKEN, this.token);
+            state.setProperty(DaemonProtocol.KEY_VERSION, DaemonProtocol.version());
+            state.setProperty(DaemonProtocol.KEY_PID, ManagementFactory.getRuntimeMXBean().getName());
+            
+            DaemonProtocol.writeState(this.stateFile, state);
+            
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> deleteState()));
+            
+            log.info("Daemon for {} listening on port {}", workingDir, serverSocket.getLocalPort());
+            
+            this.running = true;
+            
+            while (this.running) {
+                try (Socket socket = serverSocket.accept()) {
+                    handle(socket);
+                } catch (SocketTimeoutException e) {
+                    log.info("Daemon idle for {} ms (stopping)", idleMillis);
+                    this.running = false;
+                } catch (IOException e) {
+                    log.warn("Daemon request failed: {}", e.getMessage());
+                }
+            }
+        } finally {
+            deleteState();
+            this.projects.values().forEach((project) -> project.close());
+            this.projects.clear();
+        }
+    }
+    
+    private void deleteState() {
+        // only delete the state if it is still ours (a newer daemon may have replaced it)
+        Properties state = DaemonProtocol.readState(this.stateFile);
+        if (state != null && this.token.equals(state.getProperty(DaemonProtocol.KEY_TOKEN))) {
+            try {
+                Files.deleteIfExists(this.stateFile);
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+    
+    private void handle(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        
+        DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        
+        String requestToken = DaemonProtocol.readString(input);
+        
+        if (!this.token.equals(requestToken)) {
+            log.warn("Daemon request with invalid token (ignoring)");
+            return;
+        }
+        
+        String version = DaemonProtocol.readString(input);
+        byte command = input.readByte();
+        String requestWorkingDir = DaemonProtocol.readString(input);
+        Map<String,String> requestEnvironment = DaemonProtocol.readMap(input);
+        String requestLoggingSwitch = DaemonProtocol.readString(input);
+        List<String> args = DaemonProtocol.readStrings(input);
+        
+        if (command == DaemonProtocol.COMMAND_STOP) {
+            log.info("Daemon stop requested");
+            output.writeByte(DaemonProtocol.ACCEPTED);
+            output.flush();
+            this.running = false;
+            return;
+        }
+        
+        String mismatch = null;
+        if (!DaemonProtocol.version().equals(version)) {
+            mismatch = "version changed";
+        } else if (!this.workingDir.toString().equals(requestWorkingDir)) {
+            mismatch = "working dir changed";
+        } else if (!this.loggingSwitch.equals(requestLoggingSwitch)) {
+            mismatch = "logging changed";
+        } else if (!this.environment.equals(DaemonProtocol.environment(requestEnvironment))) {
+            mismatch = "environment changed";
+        }
+        
+        if (mismatch != null) {
+            // the env of a running jvm cannot be changed so the client will start a fresh daemon
+            log.info("Daemon cannot serve request ({}) (stopping)", mismatch);
+            output.writeByte(DaemonProtocol.REJECTED);
+            DaemonProtocol.writeString(output, mismatch);
+            output.flush();
+            this.running = false;
+            return;
+        }
+        
+        output.writeByte(DaemonProtocol.ACCEPTED);
+        output.flush();
+        
+        int exitCode = execute(args, input, output);
+        
+        synchronized (output) {
+            output.writeByte(DaemonProtocol.FRAME_EXIT);
+            output.writeInt(exitCode);
+            output.flush();
+        }
+    }
+    
+    private int execute(List<String> args, DataInputStream input, DataOutputStream output) {
+        final PrintStream stdout = System.out;
+        final PrintStream stderr = System.err;
+        final InputStream stdin = System.in;
+        final Properties systemProperties = (Properties)System.getProperties().clone();
+        final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        final String threadName = Thread.currentThread().getName();
+        
+        final BytePipe stdinPipe = new BytePipe();
+        
+        Thread stdinThread = new Thread(() -> {
+            try (OutputStream pipeOutput = stdinPipe.getOutputStream()) {
+                while (true) {
+                    input.readByte();
+                    int length = input.readInt();
+                    if (length < 0) {
+                        break;      // eof
+                    }
+                    byte[] bytes = new byte[length];
+                    input.readFully(bytes);
+                    pipeOutput.write(bytes);
+                }
+            } catch (IOException e) {
+                // client gone or request complete
+            }
+        }, "blaze-daemon-stdin");
+        stdinThread.setDaemon(true);
+        stdinThread.start();
+        
+        PrintStream requestStdout = new PrintStream(new BufferedOutputStream(
+            new DaemonProtocol.FrameOutputStream(output, DaemonProtocol.FRAME_STDOUT)), true);
+        PrintStream requestStderr = new PrintStream(new BufferedOutputStream(
+            new DaemonProtocol.FrameOutputStream(output, DaemonProtocol.FRAME_STDERR)), true);
+        
+        System.setIn(stdinPipe.getInputStream());
+        System.setOut(requestStdout);
+        System.setErr(requestStderr);
+        switchStandardStreams(requestStdout, requestStderr);
+        
+        try {
+            new DaemonBootstrap().run(new ArrayDeque<>(args));
+            return 0;
+        } catch (ExitException e) {
+            return e.getExitCode();
+        } catch (Throwable t) {
+            t.printStackTrace();
+            return 1;
+        } finally {
+            requestStdout.flush();
+            requestStderr.flush();
+            System.setIn(stdin);
+            System.setOut(stdout);
+            System.setErr(stderr);
+            switchStandardStreams(null, null);
+            System.setProperties(systemProperties);
+            com.typesafe.config.ConfigFactory.invalidateCaches();
+            Thread.currentThread().setContextClassLoader(classLoader);
+            Thread.currentThread().setName(threadName);
+            try {
+                stdinPipe.getInputStream().close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+    
+    private Blaze buildBlaze(Path file, Path dir, Map<String,String> systemProperties) {
+        // system properties overlay config and may have changed since the last request
+        com.typesafe.config.ConfigFactory.invalidateCaches();
+        
+        Blaze.Builder builder = new Blaze.Builder()
+            .file(file)
+            .directory(dir);
+        
+        builder.locate();
+        
+        Path scriptFile = builder.getDetectedScriptFile();
+        Path configFile = ConfigHelper.path(builder.getDetectedBaseDir(), scriptFile);
+        String key = scriptFile.toAbsolutePath().normalize().toString();
+        String fingerprint = fingerprint(scriptFile) + "|" + fingerprint(configFile) + "|" + projectFingerprint(scriptFile) + "|" + systemProperties;
+        
+        Project project = this.projects.get(key);
+        
+        if (project != null) {
+            if (project.fingerprint.equals(fingerprint)) {
+                log.debug("Daemon re-using warm script {}", scriptFile);
+                Thread.currentThread().setContextClassLoader(project.classLoader);
+                ContextHolder.set(project.blaze.context());
+                return project.blaze;
+            }
+            
+            log.info("Script or config changed (rebuilding in fresh classloader)");
+            this.projects.remove(key);
+            project.close();
+        }
+        
+        // the builder creates a fresh script classloader as a child of this one
+        Thread.currentThread().setContextClassLoader(Daemon.class.getClassLoader());
+        
+        try {
+            Blaze blaze = builder.build();
+            this.projects.put(key, new Project(fingerprint, builder.getClassLoader(), blaze));
+            return blaze;
+        } catch (RuntimeException e) {
+            if (builder.getClassLoader() != null) {
+                closeQuietly(builder.getClassLoader());
+            }
+            throw e;
+        }
+    }
+    
+    static synchronized private void switchStandardStreams(OutputStream stdout, OutputStream stderr) {
+        if (stdoutTarget != null) {
+            stdoutTarget.switchTo(stdout);
+            stderrTarget.switchTo(stderr);
+        }
+    }
+    
+    static private String fingerprint(Path file) {
+        try {
+            if (Files.exists(file)) {
+                return file + ":" + Files.size(file) + ":" + Files.getLastModifiedTime(file).toMillis();
+            }
+        } catch (IOException e) {
+            // fall thru
+        }
+        return file + ":missing";
+    }
+    
+    static private String projectFingerprint(Path scriptFile) {
+        // other sources of a script project (e.g. blaze/helpers/Docker.java)
+        try {
+            ScriptProject project = ScriptProject.detect(scriptFile);
+            if (project != null) {
+                return project.getSourceFiles().stream()
+                    .map((f) -> fingerprint(f))
+                    .collect(Collectors.joining(","));
+            }
+        } catch (IOException e) {
+            // fall thru
+        }
+        return "";
+    }
+    
+    static private void closeQuietly(ScriptClassLoader classLoader) {
+        try {
+            classLoader.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+    
+    /**
+     * Writes to the stream of the current request or (between requests) to
+     * the original stream (e.g. the log file of the daemon).
+     */
+    static private class RequestOutputStream extends OutputStream {
+        
+        private final OutputStream original;
+        private volatile OutputStream target;
+
+        public RequestOutputStream(OutputStream original) {
+            this.original = original;
+            this.target = original;
+        }
+        
+        public void switchTo(OutputStream request) {
+            try {
+                this.target.flush();
+            } catch (IOException e) {
+                // ignore
+            }
+            this.target = (request != null ? request : this.original);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.target.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.target.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.target.flush();
+        }
+        
+    }
+    
+    static private class Project {
+        
+        private final String fingerprint;
+        private final ScriptClassLoader classLoader;
+        private final Blaze blaze;
+
+        public Project(String fingerprint, ScriptClassLoader classLoader, Blaze blaze) {
+            this.fingerprint = fingerprint;
+            this.classLoader = classLoader;
+            this.blaze = blaze;
+        }
+        
+        public void close() {
+            closeQuietly(this.classLoader);
+        }
+        
+    }
+    
+    private class DaemonBootstrap extends Bootstrap {
+        
+        private final Map<String,String> systemProperties = new TreeMap<>();
+        
+        @Override
+        public void exit(int exitCode) {
+            throw new ExitException(exitCode);
+        }
+
+        @Override
+        public void systemProperty(String name, String value) {
+            super.systemProperty(name, value);
+            this.systemProperties.put(name, value);
+        }
+
+        @Override
+        public void enableTimings() {
+            // startup of the daemon jvm was not paid by this run
+            Profiler.get().enable();
+        }
+        
+        @Override
+        public void configureLogging(String arg) {
+            // configured once when the daemon started
+        }
+        
+        @Override
+        public void watch(Logger log, Blaze blaze, int parallelism) {
+            // would tie up the daemon forever (the watch belongs in the client)
+            log.error("--watch is not supported with --daemon");
+            exit(1);
+        }
+        
+        @Override
+        public Blaze buildBlaze() {
+            return Daemon.this.buildBlaze(this.blazeFile, this.blazeDir, this.systemProperties);
+        }
+        
+    }
+    
+}
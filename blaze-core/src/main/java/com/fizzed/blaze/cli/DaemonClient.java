@@ -0,0 +1,307 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.cli;
+
+import com.fizzed.blaze.internal.ConfigHelper;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * Thin client that forwards a run of blaze to a <code>Daemon</code> for the
+ * current working directory (starting one if needed).  Args, environment,
+ * working dir and stdio are forwarded and the exit code of the run is
+ * returned.
+ * 
+ * @author joelauer
+ */
+public class DaemonClient {
+    
+    static private final long STARTUP_TIMEOUT_MILLIS = 30000L;
+    static private final long SHUTDOWN_TIMEOUT_MILLIS = 5000L;
+    static private final int CONNECT_TIMEOUT_MILLIS = 2000;
+    
+    private final Path workingDir;
+    private final Path stateFile;
+    private final Path logFile;
+    private final String classPath;
+
+    public DaemonClient() {
+        this(DaemonProtocol.workingDir());
+    }
+    
+    public DaemonClient(Path workingDir) {
+        this(workingDir, System.getProperty("java.class.path"));
+    }
+    
+    DaemonClient(Path workingDir, String classPath) {
+        Objects.requireNonNull(workingDir, "workingDir cannot be null");
+        this.workingDir = workingDir;
+        this.stateFile = DaemonProtocol.stateFile(workingDir);
+        this.logFile = DaemonProtocol.logFile(workingDir);
+        this.classPath = classPath;
+    }
+    
+    public int run(List<String> args) {
+        String loggingSwitch = DaemonProtocol.loggingSwitch(args);
+        
+        try {
+            // a rejected request (e.g. env changed) stops the daemon so one retry w/ a fresh daemon
+            for (int attempt = 0; attempt < 2; attempt++) {
+                Properties state = DaemonProtocol.readState(this.stateFile);
+                Socket socket = (state != null ? connect(state) : null);
+                
+                if (socket == null) {
+                    state = start(loggingSwitch);
+                    socket = connect(state);
+                    if (socket == null) {
+                        throw new IOException("Unable to connect to daemon (see " + this.logFile + ")");
+                    }
+                }
+                
+                try {
+                    DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+                    handshake(output, state, DaemonProtocol.COMMAND_RUN, loggingSwitch, args);
+
+                    if (input.readByte() == DaemonProtocol.REJECTED) {
+                        DaemonProtocol.readString(input);       // reason
+                        awaitShutdown(state);
+                        continue;
+                    }
+
+                    return forward(input, output);
+                } finally {
+                    socket.close();
+                }
+            }
+            
+            System.err.println("[ERROR] Daemon rejected request twice (see " + this.logFile + ")");
+            return 1;
+        } catch (EOFException e) {
+            System.err.println("[ERROR] Lost connection to daemon (see " + this.logFile + ")");
+            return 1;
+        } catch (IOException e) {
+            System.err.println("[ERROR] " + e.getMessage());
+            return 1;
+        }
+    }
+    
+    public int stop() {
+        Properties state = DaemonProtocol.readState(this.stateFile);
+        Socket socket = (state != null ? connect(state) : null);
+        
+        try {
+            if (socket == null) {
+                // stale state of a daemon that died
+                Files.deleteIfExists(this.stateFile);
+                System.out.println("No daemon running for " + this.workingDir);
+                return 0;
+            }
+            
+            try {
+                DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+                handshake(output, state, DaemonProtocol.COMMAND_STOP, "", Collections.emptyList());
+
+                input.readByte();
+            } finally {
+                socket.close();
+            }
+            
+            awaitShutdown(state);
+            
+            System.out.println("Stopped daemon for " + this.workingDir);
+            return 0;
+        } catch (IOException e) {
+            System.err.println("[ERROR] " + e.getMessage());
+            return 1;
+        }
+    }
+    
+    private Socket connect(Properties state) {
+        Socket socket = new Socket();
+        try {
+            int port = Integer.parseInt(state.getProperty(DaemonProtocol.KEY_PORT));
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT_MILLIS);
+            socket.setTcpNoDelay(true);
+            return socket;
+        } catch (IOException | NumberFormatException e) {
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+            return null;
+        }
+    }
+    
+    private void handshake(DataOutputStream output, Properties state, byte command, String loggingSwitch, List<String> args) throws IOException {
+        DaemonProtocol.writeString(output, state.getProperty(DaemonProtocol.KEY_TOKEN));
+        DaemonProtocol.writeString(output, DaemonProtocol.version());
+        output.writeByte(command);
+        DaemonProtocol.writeString(output, this.workingDir.toString());
+        DaemonProtocol.writeMap(output, DaemonProtocol.environment(System.getenv()));
+        DaemonProtocol.writeString(output, loggingSwitch);
+        DaemonProtocol.writeStrings(output, args);
+        output.flush();
+    }
+    
+    private int forward(DataInputStream input, DataOutputStream output) throws IOException {
+        Thread stdinThread = new Thread(() -> {
+            byte[] buffer = new byte[8192];
+            try {
+                int read;
+                while ((read = System.in.read(buffer)) >= 0) {
+                    if (read > 0) {
+                        DaemonProtocol.writeFrame(output, DaemonProtocol.FRAME_STDIN, buffer, 0, read);
+                    }
+                }
+                synchronized (output) {
+                    output.writeByte(DaemonProtocol.FRAME_STDIN);
+                    output.writeInt(-1);
+                    output.flush();
+                }
+            } catch (IOException e) {
+                // daemon finished or gone
+            }
+        }, "blaze-stdin");
+        stdinThread.setDaemon(true);
+        stdinThread.start();
+        
+        byte[] buffer = new byte[8192];
+        
+        while (true) {
+            byte type = input.readByte();
+            int length = input.readInt();
+            
+            if (type == DaemonProtocol.FRAME_EXIT) {
+                System.out.flush();
+                System.err.flush();
+                return length;
+            }
+            
+            if (length > buffer.length) {
+                buffer = new byte[length];
+            }
+            
+            input.readFully(buffer, 0, length);
+            
+            if (type == DaemonProtocol.FRAME_STDERR) {
+                System.err.write(buffer, 0, length);
+                System.err.flush();
+            } else {
+                System.out.write(buffer, 0, length);
+                System.out.flush();
+            }
+        }
+    }
+    
+    private Properties start(String loggingSwitch) throws IOException {
+        Files.createDirectories(this.stateFile.getParent());
+        Files.deleteIfExists(this.stateFile);
+        
+        String javaExe = (ConfigHelper.OperatingSystem.windows() ? "java.exe" : "java");
+        Path javaBin = Paths.get(System.getProperty("java.home"), "bin", javaExe);
+        
+        List<String> command = new ArrayList<>();
+        
+        // detach from our process group so a ctrl-c of the client does not kill the daemon
+        for (Path setsid : Arrays.asList(Paths.get("/usr/bin/setsid"), Paths.get("/bin/setsid"))) {
+            if (Files.isExecutable(setsid)) {
+                command.add(setsid.toString());
+                break;
+            }
+        }
+        
+        command.add(javaBin.toString());
+        
+        String idleMinutes = System.getProperty(Daemon.KEY_IDLE_MINUTES);
+        if (idleMinutes != null) {
+            command.add("-D" + Daemon.KEY_IDLE_MINUTES + "=" + idleMinutes);
+        }
+        
+        command.addAll(Arrays.asList(
+            "-cp", this.classPath,
+            Daemon.class.getName(),
+            loggingSwitch));
+        
+        Process process = new ProcessBuilder(command)
+            .directory(this.workingDir.toFile())
+            .redirectErrorStream(true)
+            .redirectOutput(ProcessBuilder.Redirect.appendTo(this.logFile.toFile()))
+            .start();
+        
+        process.getOutputStream().close();
+        
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+        
+        while (System.currentTimeMillis() < deadline) {
+            Properties state = DaemonProtocol.readState(this.stateFile);
+            
+            if (state != null) {
+                return state;
+            }
+            
+            if (!process.isAlive()) {
+                throw new IOException("Daemon exited with code " + process.exitValue() + " (see " + this.logFile + ")");
+            }
+            
+            sleep(50L);
+        }
+        
+        throw new IOException("Timeout waiting for daemon to start (see " + this.logFile + ")");
+    }
+    
+    private void awaitShutdown(Properties state) {
+        String token = state.getProperty(DaemonProtocol.KEY_TOKEN);
+        long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MILLIS;
+        
+        while (System.currentTimeMillis() < deadline) {
+            Properties current = DaemonProtocol.readState(this.stateFile);
+            if (current == null || !token.equals(current.getProperty(DaemonProtocol.KEY_TOKEN))) {
+                return;
+            }
+            sleep(50L);
+        }
+    }
+    
+    static private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+}
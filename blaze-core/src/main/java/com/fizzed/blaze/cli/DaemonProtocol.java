@@ -0,0 +1,252 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.cli;
+
+import com.fizzed.blaze.Version;
+import com.fizzed.blaze.internal.ConfigHelper;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Wire protocol and shared state between a <code>DaemonClient</code> and a
+ * <code>Daemon</code>.
+ * 
+ * A daemon serves a single working directory and listens on a loopback port.
+ * Its port and a random token are published in a state file at
+ * ~/.blaze/daemon/&lt;hash of working dir&gt;.properties.
+ * 
+ * A client connects, sends a handshake (token, version, command, working dir,
+ * environment, logging switch and args) and the daemon either accepts or
+ * rejects it.  Once accepted, both sides exchange frames of a type byte, an
+ * int length, and that many bytes.  The client sends stdin frames (a negative
+ * length signals EOF).  The daemon sends stdout and stderr frames and finally
+ * an exit frame whose length is the exit code.
+ * 
+ * @author joelauer
+ */
+public class DaemonProtocol {
+    
+    static public final byte COMMAND_RUN = 'R';
+    static public final byte COMMAND_STOP = 'S';
+    
+    static public final byte ACCEPTED = 'A';
+    static public final byte REJECTED = 'N';
+    
+    static public final byte FRAME_STDIN = 'I';
+    static public final byte FRAME_STDOUT = 'O';
+    static public final byte FRAME_STDERR = 'E';
+    static public final byte FRAME_EXIT = 'X';
+    
+    static public final String KEY_PORT = "port";
+    static public final String KEY_TOKEN = "token";
+    static public final String KEY_VERSION = "version";
+    static public final String KEY_PID = "pid";
+    
+    /**
+     * Environment variables that differ between otherwise identical shells
+     * and do not influence a script.
+     */
+    static public final Set<String> IGNORED_ENVIRONMENT = new HashSet<>(Arrays.asList(
+        "_", "OLDPWD", "SHLVL", "PWD", "TERM_SESSION_ID"));
+    
+    static public final List<String> LOGGING_SWITCHES = Arrays.asList(
+        "-q", "-qq", "-x", "-xx", "-xxx");
+    
+    static public Path stateDir() {
+        return Paths.get(System.getProperty("user.home"), ".blaze", "daemon");
+    }
+    
+    static public Path workingDir() {
+        return Paths.get("").toAbsolutePath().normalize();
+    }
+    
+    static public Path stateFile(Path workingDir) {
+        return stateDir().resolve(ConfigHelper.md5(workingDir.toString()) + ".properties");
+    }
+    
+    static public Path logFile(Path workingDir) {
+        return stateDir().resolve(ConfigHelper.md5(workingDir.toString()) + ".log");
+    }
+    
+    static public String version() {
+        return Version.getLongVersion();
+    }
+    
+    /**
+     * The logging switch (e.g. -q or -x) found in the args.  Logging is
+     * configured once per JVM so a daemon only serves one logging level.
+     * @param args The args of the client
+     * @return The last logging switch or an empty string if none
+     */
+    static public String loggingSwitch(List<String> args) {
+        String loggingSwitch = "";
+        for (String arg : args) {
+            if (LOGGING_SWITCHES.contains(arg)) {
+                loggingSwitch = arg;
+            }
+        }
+        return loggingSwitch;
+    }
+    
+    static public Map<String,String> environment(Map<String,String> env) {
+        Map<String,String> filtered = new TreeMap<>(env);
+        filtered.keySet().removeAll(IGNORED_ENVIRONMENT);
+        return filtered;
+    }
+    
+    static public Properties readState(Path stateFile) {
+        if (Files.notExists(stateFile)) {
+            return null;
+        }
+        
+        Properties properties = new Properties();
+        
+        try (InputStream input = Files.newInputStream(stateFile)) {
+            properties.load(input);
+        } catch (IOException e) {
+            return null;
+        }
+        
+        if (properties.getProperty(KEY_PORT) == null || properties.getProperty(KEY_TOKEN) == null) {
+            return null;
+        }
+        
+        return properties;
+    }
+    
+    static public void writeState(Path stateFile, Properties properties) throws IOException {
+        Files.createDirectories(stateFile.getParent());
+        
+        Path tempFile = Files.createTempFile(stateFile.getParent(), "daemon", ".tmp");
+        try {
+            try (OutputStream output = Files.newOutputStream(tempFile)) {
+                properties.store(output, "blaze daemon");
+            }
+            try {
+                Files.move(tempFile, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, stateFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+    
+    static public void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+    
+    static public String readString(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    static public void writeStrings(DataOutputStream output, List<String> values) throws IOException {
+        output.writeInt(values.size());
+        for (String value : values) {
+            writeString(output, value);
+        }
+    }
+    
+    static public List<String> readStrings(DataInputStream input) throws IOException {
+        int size = input.readInt();
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(readString(input));
+        }
+        return values;
+    }
+    
+    static public void writeMap(DataOutputStream output, Map<String,String> values) throws IOException {
+        output.writeInt(values.size());
+        for (Map.Entry<String,String> entry : values.entrySet()) {
+            writeString(output, entry.getKey());
+            writeString(output, entry.getValue());
+        }
+    }
+    
+    static public Map<String,String> readMap(DataInputStream input) throws IOException {
+        int size = input.readInt();
+        Map<String,String> values = new TreeMap<>();
+        for (int i = 0; i < size; i++) {
+            values.put(readString(input), readString(input));
+        }
+        return values;
+    }
+    
+    static public void writeFrame(DataOutputStream output, byte type, byte[] bytes, int offset, int length) throws IOException {
+        synchronized (output) {
+            output.writeByte(type);
+            output.writeInt(length);
+            if (length > 0) {
+                output.write(bytes, offset, length);
+            }
+            output.flush();
+        }
+    }
+    
+    /**
+     * Output stream that writes everything as frames of a specific type.
+     */
+    static public class FrameOutputStream extends OutputStream {
+        
+        private final DataOutputStream output;
+        private final byte type;
+
+        public FrameOutputStream(DataOutputStream output, byte type) {
+            this.output = output;
+            this.type = type;
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte)b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length > 0) {
+                writeFrame(output, type, bytes, offset, length);
+            }
+        }
+        
+    }
+    
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.cli;
+
+/**
+ * Thrown by a <code>Bootstrap</code> that must not call System.exit (e.g.
+ * when running inside a daemon) to unwind with the requested exit code.
+ * 
+ * @author joelauer
+ */
+public class ExitException extends RuntimeException {
+    
+    private final int exitCode;
+
+    public ExitException(int exitCode) {
+        super("Exit with code " + exitCode);
+        this.exitCode = exitCode;
+    }
+
+    public int getExitCode() {
+        return exitCode;
+    }
+    
+}
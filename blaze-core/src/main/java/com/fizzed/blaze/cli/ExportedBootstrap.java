@@ -0,0 +1,96 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.cli;
+
+import com.fizzed.blaze.core.Blaze;
+import com.fizzed.blaze.core.BlazeException;
+import com.fizzed.blaze.core.BlazeTask;
+import com.fizzed.blaze.internal.ConfigHelper;
+import com.fizzed.blaze.internal.ScriptExporter;
+import com.fizzed.blaze.util.Streamables;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Entry point of a jar exported with --export.  The compiled script and its
+ * dependencies are already on the classpath so blaze is built straight from
+ * an instance of the script (never resolving or compiling anything).
+ * 
+ * @author joelauer
+ */
+public class ExportedBootstrap extends Bootstrap {
+    
+    static public void main(String[] args) throws IOException {
+        // processes may inherit our console rather than be pumped through us
+        Streamables.markConsole();
+        new ExportedBootstrap().run(args);
+    }
+    
+    @Override
+    public List<BlazeTask> indexedTasks() {
+        // building is already cheap
+        return null;
+    }
+
+    @Override
+    public Blaze buildBlaze() {
+        ClassLoader classLoader = ExportedBootstrap.class.getClassLoader();
+        
+        Properties properties = new Properties();
+        
+        try (InputStream input = classLoader.getResourceAsStream(ScriptExporter.EXPORT_PROPERTIES)) {
+            if (input == null) {
+                throw new BlazeException("Unable to find resource " + ScriptExporter.EXPORT_PROPERTIES + " (not an exported jar?)");
+            }
+            properties.load(input);
+        } catch (IOException e) {
+            throw new BlazeException("Unable to read " + ScriptExporter.EXPORT_PROPERTIES, e);
+        }
+        
+        String className = properties.getProperty("script.class");
+        
+        Object scriptObject;
+        try {
+            scriptObject = classLoader.loadClass(className).getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new BlazeException("Unable to create script '" + className + "'", e);
+        }
+        
+        // relative to the working dir just like where the script was exported from
+        Path baseDir = (this.blazeDir != null ? this.blazeDir : null);
+        if (baseDir == null && properties.getProperty("base.dir") != null) {
+            Path exportedBaseDir = Paths.get(properties.getProperty("base.dir"));
+            if (Files.isDirectory(exportedBaseDir)) {
+                baseDir = exportedBaseDir;
+            }
+        }
+        
+        URL configUrl = classLoader.getResource(ScriptExporter.EXPORT_CONFIG);
+        
+        return new Blaze.Builder()
+            .scriptObject(scriptObject)
+            .directory(baseDir)
+            .config(configUrl != null ? ConfigHelper.createFromUrl(configUrl) : null)
+            .build();
+    }
+    
+}
@@ -16,6 +16,10 @@
 package com.fizzed.blaze.core;
 
 import com.fizzed.blaze.Context;
+import com.fizzed.blaze.Version;
+import com.fizzed.blaze.internal.ClassLoaderHelper;
+import com.fizzed.blaze.internal.ConfigHelper;
+import java.io.IOException;
 import java.util.List;
 
 abstract public class AbstractEngine<S extends Script> implements Engine {
@@ -37,4 +41,48 @@ abstract public class AbstractEngine<S extends Script> implements Engine {
         throw new UnsupportedOperationException();
     }
     
+    /**
+     * Version of the compiler used by this engine.  Part of the key of the
+     * compile cache so upgrading a compiler recompiles scripts.
+     * @return The version
+     */
+    public String getCompilerVersion() {
+        return Version.getVersion();
+    }
+    
+    /**
+     * Creates the compile cache of the script in the context.
+     * @param context The context of the script
+     * @param classLoader The classloader the script is compiled against
+     * @return The compile cache
+     * @throws BlazeException If the cache directory could not be created
+     */
+    protected CompileCache compileCache(Context context, ClassLoader classLoader) throws BlazeException {
+        return compileCache(context, classLoader, null);
+    }
+    
+    /**
+     * Creates the compile cache of the script in the context.
+     * @param context The context of the script
+     * @param classLoader The classloader the script is compiled against
+     * @param options Options of the compiler that change its output (part of
+     *      the key) or null if none
+     * @return The compile cache
+     * @throws BlazeException If the cache directory could not be created
+     */
+    protected CompileCache compileCache(Context context, ClassLoader classLoader, String options) throws BlazeException {
+        String engineVersion = getName() + ":" + getCompilerVersion()
+            + (options != null ? ":" + options : "");
+        
+        try {
+            return new CompileCache(
+                ConfigHelper.userBlazeEngineScriptDir(context, getName()),
+                context.scriptFile(),
+                engineVersion,
+                ClassLoaderHelper.buildClassPathAsFiles(classLoader));
+        } catch (IOException e) {
+            throw new BlazeException("Unable to get or create path to compile cache", e);
+        }
+    }
+    
 }
@@ -16,6 +16,7 @@
 package com.fizzed.blaze.core;
 
 import com.fizzed.blaze.Context;
+import com.fizzed.blaze.util.Profiler;
 
 public abstract class Action<R extends Result<?,V,R>,V> {
     
@@ -30,7 +31,10 @@ public abstract class Action<R extends Result<?,V,R>,V> {
         if (used) {
             throw new BlazeException("Can only run once");
         }
-        R result = doRun();
+        R result;
+        try (Profiler.Span span = Profiler.span("action", getClass().getSimpleName())) {
+            result = doRun();
+        }
         used = true;
         return result;
     }
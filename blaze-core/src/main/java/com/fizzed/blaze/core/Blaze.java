@@ -18,26 +18,43 @@ package com.fizzed.blaze.core;
 import com.fizzed.blaze.internal.ContextImpl;
 import com.fizzed.blaze.Config;
 import com.fizzed.blaze.Context;
+import com.fizzed.blaze.internal.DependencyCache;
 import com.fizzed.blaze.internal.DependencyHelper;
+import com.fizzed.blaze.internal.BuildCache;
 import com.fizzed.blaze.internal.ClassLoaderHelper;
-import static com.fizzed.blaze.internal.ClassLoaderHelper.currentThreadContextClassLoader;
 import com.fizzed.blaze.internal.ConfigHelper;
 import com.fizzed.blaze.internal.DefaultScriptFileLocator;
 import com.fizzed.blaze.internal.EngineHelper;
 import com.fizzed.blaze.internal.FileHelper;
+import com.fizzed.blaze.internal.ScriptClassLoader;
+import com.fizzed.blaze.internal.TaskIndex;
+import com.fizzed.blaze.internal.TaskManifest;
 import com.fizzed.blaze.jdk.BlazeJdkEngine;
+import com.fizzed.blaze.jdk.ScriptProject;
 import com.fizzed.blaze.jdk.TargetObjectScript;
+import com.fizzed.blaze.util.Profiler;
 import com.fizzed.blaze.util.Timer;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.NoSuchAlgorithmException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,6 +76,7 @@ public class Blaze {
         private Path directory;
         private Path file;
         private Object scriptObject;
+        private Config scriptConfig;
         private List<Dependency> collectedDependencies;
         private ScriptFileLocator scriptFileLocator;
         private DependencyResolver dependencyResolver;
@@ -116,6 +134,21 @@ public class Blaze {
             return scriptObject;
         }
         
+        /**
+         * Sets the config of the script rather than loading it from the .conf
+         * file next to the script (e.g. for a script object).
+         * @param scriptConfig The config
+         * @return This builder
+         */
+        public Builder config(Config scriptConfig) {
+            this.scriptConfig = scriptConfig;
+            return this;
+        }
+        
+        public Config getConfig() {
+            return scriptConfig;
+        }
+        
         public Builder scriptFileLocator(ScriptFileLocator scriptFileLocator) {
             this.scriptFileLocator = scriptFileLocator;
             return this;
@@ -151,6 +184,7 @@ public class Blaze {
         private Context context;
         private List<Dependency> dependencies;
         private List<File> dependencyJarFiles;
+        private ScriptClassLoader classLoader;
         private Engine engine;
         private Script script;
 
@@ -161,10 +195,33 @@ public class Blaze {
         public List<File> getDependencyJarFiles() {
             return dependencyJarFiles;
         }
+
+        public Path getDetectedBaseDir() {
+            return detectedBaseDir;
+        }
+
+        public Path getDetectedScriptFile() {
+            return detectedScriptFile;
+        }
+
+        public ScriptClassLoader getClassLoader() {
+            return classLoader;
+        }
+
+        public Context getContext() {
+            return context;
+        }
         
         public void locate() {
+            try (Profiler.Span span = Profiler.span("blaze", "locate")) {
+                doLocate();
+            }
+        }
+        
+        private void doLocate() {
             // no need to resolve a script if a target object is already provided
             if (this.scriptObject != null) {
+                detectedBaseDir = this.directory;
                 return;
             }
             
@@ -197,6 +254,12 @@ public class Blaze {
         }
         
         public void configure() {
+            try (Profiler.Span span = Profiler.span("blaze", "configure")) {
+                doConfigure();
+            }
+        }
+        
+        private void doConfigure() {
             if (detectedScriptFile == null) {
                 locate();
             }
@@ -210,7 +273,7 @@ public class Blaze {
                 scriptExtension = FileHelper.fileExtension(detectedScriptFile);
             }
             
-            config = ConfigHelper.create(configFile);
+            config = (this.scriptConfig != null ? this.scriptConfig : ConfigHelper.create(configFile));
 
             context = new ContextImpl(
                 (detectedBaseDir != null ? detectedBaseDir : null),
@@ -222,10 +285,23 @@ public class Blaze {
         }
         
         public void resolveDependencies() {
+            try (Profiler.Span span = Profiler.span("blaze", "resolveDependencies")) {
+                doResolveDependencies();
+            }
+        }
+        
+        private void doResolveDependencies() {
             if (context == null) {
                 configure();
             }
             
+            // a target object was already loaded along with what it depends on
+            if (this.scriptObject != null) {
+                log.debug("Script object provided (skipping resolver)");
+                dependencies = new ArrayList<>(collectedDependencies != null ? collectedDependencies : DependencyHelper.alreadyBundled());
+                return;
+            }
+            
             //
             // any dependencies that need to be resolved (in case engine itself is a dependency)
             //
@@ -260,13 +336,35 @@ public class Blaze {
                 } else if (dependencies.size() == resolvedDependencies.size()) {
                     log.debug("We already have the dependencies we need (skipping resolver)");
                 } else {
-                    try {
-                        // resolve dependencies against collected dependencies
-                        dependencyJarFiles = dependencyResolver.resolve(context, resolvedDependencies, dependencies);
-                    } catch (DependencyResolveException e) {
-                        throw e;
-                    } catch (IOException | ParseException e) {
-                        throw new BlazeException("Unable to cleanly resolve dependencies", e);
+                    // same non-snapshot dependencies as a previous run can skip the resolver
+                    DependencyCache dependencyCache = null;
+                    String dependencyCacheKey = null;
+                    
+                    if (DependencyCache.isCacheable(config, dependencies)) {
+                        dependencyCache = DependencyCache.of(context);
+                        dependencyCacheKey = DependencyCache.key(resolvedDependencies, dependencies);
+                        dependencyJarFiles = dependencyCache.get(dependencyCacheKey);
+                    }
+                    
+                    if (dependencyJarFiles != null) {
+                        log.info("Dependency cache hit ({} jars)", dependencyJarFiles.size());
+                    } else {
+                        if (dependencyCache != null) {
+                            log.info("Dependency cache miss");
+                        }
+                        
+                        try {
+                            // resolve dependencies against collected dependencies
+                            dependencyJarFiles = dependencyResolver.resolve(context, resolvedDependencies, dependencies);
+                        } catch (DependencyResolveException e) {
+                            throw e;
+                        } catch (IOException | ParseException e) {
+                            throw new BlazeException("Unable to cleanly resolve dependencies", e);
+                        }
+                        
+                        if (dependencyCache != null && dependencyJarFiles != null) {
+                            dependencyCache.put(dependencyCacheKey, dependencyJarFiles);
+                        }
                     }
                 }
             } finally {
@@ -275,14 +373,22 @@ public class Blaze {
         }
         
         public void loadDependencies() {
+            try (Profiler.Span span = Profiler.span("blaze", "loadDependencies")) {
+                doLoadDependencies();
+            }
+        }
+        
+        private void doLoadDependencies() {
             if (dependencies == null) {
                 resolveDependencies();
             }
             
+            // jars and compiled scripts are added to a classloader for this script
+            classLoader = ClassLoaderHelper.newContextScriptClassLoader();
+            
             if (dependencyJarFiles != null) {
-                final ClassLoader classLoader = currentThreadContextClassLoader();
                 dependencyJarFiles.stream().forEach((jarFile) -> {
-                    if (ClassLoaderHelper.addClassPath(classLoader, jarFile)) {
+                    if (classLoader.addClassPath(jarFile)) {
                         log.debug("Added {} to classpath", jarFile.getName());
                         log.debug(" => {}", jarFile);
                     }
@@ -291,6 +397,12 @@ public class Blaze {
         }
         
         public void compileScript() {
+            try (Profiler.Span span = Profiler.span("blaze", "compileScript")) {
+                doCompileScript();
+            }
+        }
+        
+        private void doCompileScript() {
             // if we are simply wrapping an object, no need to compile
             if (this.scriptObject != null) {
                 script = new TargetObjectScript(this.scriptObject);
@@ -303,7 +415,9 @@ public class Blaze {
             log.info("Compiling script...");
             Timer engineTimer = new Timer();
             
-            engine = EngineHelper.findByFileExtension(scriptExtension, dependencyJarFiles != null && !dependencyJarFiles.isEmpty());
+            try (Profiler.Span span = Profiler.span("blaze", "findEngine")) {
+                engine = EngineHelper.findByFileExtension(scriptExtension, dependencyJarFiles != null && !dependencyJarFiles.isEmpty());
+            }
             
             if (engine == null) {
                 throw new BlazeException("Unable to find script engine for file extension " + scriptExtension + ". Maybe bad file extension or missing dependency?");
@@ -321,20 +435,77 @@ public class Blaze {
         }
         
         public Blaze build() {
-            loadDependencies();     // also calls locate(), configure(), and resolveDependencies()
-            
-            compileScript();
+            try (Profiler.Span span = Profiler.span("blaze", "build")) {
+                loadDependencies();     // also calls locate(), configure(), and resolveDependencies()
+
+                compileScript();
+                
+                indexTasks();
+
+                return new Blaze(this, context, dependencies, engine, script);
+            }
+        }
+        
+        private void indexTasks() {
+            if (context.scriptFile() == null || TaskIndex.read(context) != null) {
+                return;
+            }
             
-            return new Blaze(context, dependencies, engine, script);
+            try {
+                List<BlazeTask> tasks = script.tasks();
+                Collections.sort(tasks);
+                TaskIndex.write(context, tasks);
+            } catch (RuntimeException e) {
+                log.debug("Unable to index tasks ({})", e.getMessage());
+            }
+        }
+        
+        private Blaze recompile() {
+            try (Profiler.Span span = Profiler.span("blaze", "recompile")) {
+                ContextHolder.set(context);
+                
+                ScriptClassLoader previousClassLoader = this.classLoader;
+                
+                try {
+                    // fresh classloader for the already resolved dependencies
+                    loadDependencies();
+                    
+                    compileScript();
+                    
+                    indexTasks();
+                } catch (RuntimeException e) {
+                    // keep using the previous script
+                    closeQuietly(this.classLoader);
+                    this.classLoader = previousClassLoader;
+                    Thread.currentThread().setContextClassLoader(previousClassLoader);
+                    throw e;
+                }
+                
+                closeQuietly(previousClassLoader);
+                
+                return new Blaze(this, context, dependencies, engine, script);
+            }
+        }
+        
+        static private void closeQuietly(ScriptClassLoader classLoader) {
+            if (classLoader != null) {
+                try {
+                    classLoader.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
         }
     }
     
+    final private Builder builder;
     final private Context context;
     final private List<Dependency> dependencies;
     final private Engine engine;
     final private Script script;
     
-    private Blaze(Context context, List<Dependency> dependencies, Engine engine, Script script) {
+    private Blaze(Builder builder, Context context, List<Dependency> dependencies, Engine engine, Script script) {
+        this.builder = builder;
         this.context = context;
         this.dependencies = dependencies;
         this.engine = engine;
@@ -357,6 +528,19 @@ public class Blaze {
         return script;
     }
     
+    /**
+     * Compiles the script again (e.g. after it was edited) in a fresh
+     * classloader.  The config and resolved dependencies are re-used.  This
+     * instance must no longer be used if the compile succeeds.
+     * 
+     * @return A new instance with the recompiled script
+     * @throws BlazeException Thrown if the script does not compile (this
+     *      instance is still usable)
+     */
+    public Blaze recompile() throws BlazeException {
+        return this.builder.recompile();
+    }
+    
     public List<BlazeTask> tasks() throws BlazeException {
         List<BlazeTask> tasks = this.script.tasks();
         
@@ -377,22 +561,206 @@ public class Blaze {
         
         String scriptName = (context.scriptFile() != null ? context.scriptFile().toString() : "");
         
+        TaskManifest manifest = taskManifest(task);
+        
+        if (manifest != null) {
+            boolean upToDate;
+            try (Profiler.Span span = Profiler.span("task", task + " (up-to-date check)")) {
+                upToDate = manifest.isUpToDate();
+            }
+            if (upToDate) {
+                log.info("Task {}:{} UP-TO-DATE", scriptName, task);
+                return;
+            }
+        }
+        
+        // outputs of a task with the same inputs may have been cached before
+        BuildCache buildCache = null;
+        String buildCacheKey = null;
+        
+        if (manifest != null && !manifest.getOutputs().isEmpty()) {
+            buildCache = BuildCache.of(context);
+            if (buildCache != null) {
+                try (Profiler.Span span = Profiler.span("task", task + " (build cache)")) {
+                    buildCacheKey = BuildCache.key(task, manifest.getScriptHash(), manifest.inputsHash(), manifest.getOutputs());
+                    if (buildCache.restore(buildCacheKey, manifest.getBaseDir(), manifest.outputFiles())) {
+                        manifest.save();
+                        log.info("Task {}:{} FROM-CACHE", scriptName, task);
+                        return;
+                    }
+                }
+            }
+        }
+        
         log.info("Executing {}:{}...", scriptName, task);
         Timer executeTimer = new Timer();
         
-        this.script.execute(task);
+        try (Profiler.Span span = Profiler.span("task", task)) {
+            this.script.execute(task);
+        }
+        
+        if (manifest != null) {
+            manifest.save();
+            if (buildCache != null) {
+                buildCache.put(buildCacheKey, manifest.getBaseDir(), manifest.outputFiles());
+            }
+        }
         
         log.info("Executed {}:{} in {} ms", scriptName, task, executeTimer.stop().millis());
     }
     
+    private String scriptHash() {
+        Path scriptFile = context.scriptFile();
+        
+        if (scriptFile == null) {
+            return this.script.getClass().getName();
+        }
+        
+        try {
+            // code of the script may also live in the other sources of its
+            // project (e.g. blaze/helpers/Docker.java) and config in its .conf
+            List<Path> files = new ArrayList<>();
+            
+            ScriptProject project = ScriptProject.detect(scriptFile);
+            if (project != null) {
+                files.addAll(project.getSourceFiles());
+            } else {
+                files.add(scriptFile.toAbsolutePath().normalize());
+            }
+            
+            files.add(ConfigHelper.path(context.baseDir(), scriptFile).toAbsolutePath().normalize());
+            
+            Path dir = scriptFile.toAbsolutePath().normalize().getParent();
+            
+            StringBuilder sb = new StringBuilder();
+            for (Path file : files) {
+                sb.append(dir.relativize(file).toString().replace('\\', '/'))
+                    .append('=')
+                    .append(Files.isRegularFile(file) ? FileHelper.md5hash(file) : "missing")
+                    .append('\n');
+            }
+            
+            return ConfigHelper.md5(sb.toString());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new BlazeException("Unable to hash script " + scriptFile, e);
+        }
+    }
+    
+    private TaskManifest taskManifest(String task) {
+        if (context.config().value(Config.KEY_TASK_FORCE, Boolean.class).getOr(Config.DEFAULT_TASK_FORCE)) {
+            return null;
+        }
+        
+        for (BlazeTask blazeTask : this.script.tasks()) {
+            if (blazeTask.getName().equals(task)) {
+                // editing the script must also make the task run again
+                return TaskManifest.of(context, blazeTask, scriptHash());
+            }
+        }
+        
+        return null;
+    }
+    
     public void executeAll(List<String> tasks) throws Exception {
+        executeAll(tasks, 1);
+    }
+    
+    /**
+     * Executes the tasks along with any prerequisite tasks they declare. Each
+     * task is executed at most once.  With a parallelism greater than 1,
+     * independent tasks execute concurrently and the first failure cancels
+     * any tasks still running.
+     * 
+     * @param tasks The tasks to execute or null/empty for the default task
+     * @param parallelism The max number of tasks to execute at once
+     * @throws Exception Thrown by the first task that failed
+     */
+    public void executeAll(List<String> tasks, int parallelism) throws Exception {
         // default task?
         if (tasks == null || tasks.isEmpty()) {
-            execute(null);
-        } else {
-            for (String task : tasks) {
+            tasks = Arrays.asList(context.config().value(Config.KEY_DEFAULT_TASK).getOr(Config.DEFAULT_TASK));
+        }
+        
+        TaskGraph graph = TaskGraph.build(this.script.tasks(), tasks);
+        
+        if (parallelism <= 1 || graph.getOrder().size() <= 1) {
+            for (String task : graph.getOrder()) {
                 execute(task);
             }
+        } else {
+            executeGraph(graph, parallelism);
+        }
+    }
+    
+    private void executeGraph(TaskGraph graph, int parallelism) throws Exception {
+        final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        final AtomicInteger threadCount = new AtomicInteger();
+        
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, (Runnable r) -> {
+            Thread thread = new Thread(r, "blaze-task-" + threadCount.incrementAndGet());
+            thread.setContextClassLoader(classLoader);
+            return thread;
+        });
+        
+        CompletionService<String> completionService = new ExecutorCompletionService<>(executor);
+        
+        // number of prerequisites each task is still waiting on
+        Map<String,Integer> waiting = new HashMap<>();
+        for (String task : graph.getOrder()) {
+            waiting.put(task, graph.getDepends(task).size());
         }
+        
+        int running = 0;
+        
+        try {
+            for (String task : graph.getOrder()) {
+                if (waiting.get(task) == 0) {
+                    submit(completionService, task);
+                    running++;
+                }
+            }
+
+            while (running > 0) {
+                Future<String> future = completionService.take();
+                running--;
+
+                String completed;
+                try {
+                    completed = future.get();
+                } catch (ExecutionException e) {
+                    // fail fast (interrupts tasks still running)
+                    executor.shutdownNow();
+                    Throwable t = e.getCause();
+                    if (t instanceof Exception) {
+                        throw (Exception)t;
+                    } else if (t instanceof Error) {
+                        throw (Error)t;
+                    } else {
+                        throw new WrappedBlazeException(t);
+                    }
+                }
+
+                for (String dependent : graph.getDependents(completed)) {
+                    int count = waiting.get(dependent) - 1;
+                    waiting.put(dependent, count);
+                    if (count == 0) {
+                        submit(completionService, dependent);
+                        running++;
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+    
+    private void submit(CompletionService<String> completionService, String task) {
+        completionService.submit(() -> {
+            // scripts expect their context bound to whatever thread runs them
+            ContextHolder.set(context);
+            execute(task);
+            return task;
+        });
     }
 }
\ No newline at end of file
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.core;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the short-lived tasks of blaze (e.g. stages of a pipeline or pumping
+ * the streams of a process) so a script that runs thousands of commands does
+ * not create and destroy thousands of threads.  Uses virtual threads if the
+ * JVM supports them (Java 21+), otherwise a cached pool of daemon threads.
+ * 
+ * A single instance is shared by everything in the JVM (see Context.executor).
+ * 
+ * @author joelauer
+ */
+public class BlazeExecutor implements Executor {
+    static private final Logger log = LoggerFactory.getLogger(BlazeExecutor.class);
+    
+    static private final long KEEP_ALIVE_SECONDS = 60L;
+    
+    static private volatile BlazeExecutor shared;
+    
+    static public BlazeExecutor shared() {
+        if (shared == null) {
+            synchronized (BlazeExecutor.class) {
+                if (shared == null) {
+                    shared = create();
+                }
+            }
+        }
+        return shared;
+    }
+    
+    static private BlazeExecutor create() {
+        ExecutorService virtualExecutor = newVirtualThreadPerTaskExecutor();
+        
+        if (virtualExecutor != null) {
+            log.trace("Using virtual threads for tasks");
+            return new BlazeExecutor(virtualExecutor, true);
+        }
+        
+        final AtomicInteger threadCount = new AtomicInteger();
+        
+        ThreadPoolExecutor cachedExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+            KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<>(), (Runnable r) -> {
+                Thread thread = new Thread(r, "blaze-worker-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        
+        return new BlazeExecutor(cachedExecutor, false);
+    }
+    
+    static private ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            // java 21+ (throws on 19 and 20 unless preview features are enabled)
+            Method method = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService)method.invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (Exception e) {
+            log.trace("Virtual threads unavailable", e);
+            return null;
+        }
+    }
+    
+    private final ExecutorService executor;
+    private final boolean virtual;
+    private final AtomicLong active;
+    private final AtomicLong completed;
+    
+    public BlazeExecutor(ExecutorService executor, boolean virtual) {
+        this.executor = executor;
+        this.virtual = virtual;
+        this.active = new AtomicLong();
+        this.completed = new AtomicLong();
+    }
+    
+    /**
+     * Whether tasks run on virtual threads.
+     * @return True if virtual threads or false if platform threads
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+    
+    /**
+     * The number of tasks currently running.
+     * @return The number of running tasks
+     */
+    public long getActiveCount() {
+        return active.get();
+    }
+    
+    /**
+     * The number of tasks that finished (successfully or not).
+     * @return The number of finished tasks
+     */
+    public long getCompletedCount() {
+        return completed.get();
+    }
+    
+    @Override
+    public void execute(Runnable task) {
+        this.executor.execute(counted(task));
+    }
+    
+    public Future<?> submit(Runnable task) {
+        return this.executor.submit(counted(task));
+    }
+    
+    public <T> Future<T> submit(Callable<T> task) {
+        return this.executor.submit(() -> {
+            active.incrementAndGet();
+            try {
+                return task.call();
+            } finally {
+                active.decrementAndGet();
+                completed.incrementAndGet();
+            }
+        });
+    }
+    
+    private Runnable counted(Runnable task) {
+        return () -> {
+            active.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                active.decrementAndGet();
+                completed.incrementAndGet();
+            }
+        };
+    }
+    
+    @Override
+    public String toString() {
+        return "BlazeExecutor{virtual=" + virtual + ", active=" + active.get() + ", completed=" + completed.get() + "}";
+    }
+    
+}
@@ -15,6 +15,8 @@
  */
 package com.fizzed.blaze.core;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -25,6 +27,9 @@ public class BlazeTask implements Comparable<BlazeTask> {
     private final String name;
     private final String description;
     private final int order;
+    private final List<String> depends;
+    private final List<String> inputs;
+    private final List<String> outputs;
     
     public BlazeTask(String name) {
         this(name, null, 0);
@@ -35,9 +40,20 @@ public class BlazeTask implements Comparable<BlazeTask> {
     }
     
     public BlazeTask(String name, String description, int order) {
+        this(name, description, order, null);
+    }
+    
+    public BlazeTask(String name, String description, int order, List<String> depends) {
+        this(name, description, order, depends, null, null);
+    }
+    
+    public BlazeTask(String name, String description, int order, List<String> depends, List<String> inputs, List<String> outputs) {
         this.name = name;
         this.description = description;
         this.order = order;
+        this.depends = (depends != null ? depends : Collections.emptyList());
+        this.inputs = (inputs != null ? inputs : Collections.emptyList());
+        this.outputs = (outputs != null ? outputs : Collections.emptyList());
     }
 
     public String getName() {
@@ -52,6 +68,18 @@ public class BlazeTask implements Comparable<BlazeTask> {
         return order;
     }
 
+    public List<String> getDepends() {
+        return depends;
+    }
+
+    public List<String> getInputs() {
+        return inputs;
+    }
+
+    public List<String> getOutputs() {
+        return outputs;
+    }
+
     @Override
     public String toString() {
         return name;
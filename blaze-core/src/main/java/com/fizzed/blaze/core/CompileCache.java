@@ -0,0 +1,297 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.core;
+
+import com.fizzed.blaze.Version;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compile cache of a script shared by all engines.  The key of a script is a
+ * SHA-256 over its source, a fingerprint of the classpath it is compiled
+ * against (which covers the resolved blaze.dependencies) and the version of
+ * the engine and blaze.  Computing the key only reads the source if its size
+ * or last modified time changed since the previous run.
+ * 
+ * Everything is stored in the project directory of the engine (e.g.
+ * ~/.blaze/engine/java/{md5}) with the script file name as a prefix. Writes
+ * are atomic and compiling is done while holding a lock on the project so
+ * concurrent runs of blaze wait for each other rather than compiling over
+ * each other.
+ * 
+ * @author joelauer
+ */
+public class CompileCache {
+    static private final Logger log = LoggerFactory.getLogger(CompileCache.class);
+    
+    // file locks are held by the jvm, not a thread, so guard them in-process too
+    static private final ConcurrentHashMap<Path,ReentrantLock> LOCKS = new ConcurrentHashMap<>();
+    
+    private final Path projectDir;
+    private final Path scriptFile;
+    private final String engineVersion;
+    private final List<File> classPath;
+    private String key;
+    
+    public CompileCache(Path projectDir, Path scriptFile, String engineVersion, List<File> classPath) {
+        Objects.requireNonNull(projectDir, "projectDir cannot be null");
+        Objects.requireNonNull(scriptFile, "scriptFile cannot be null");
+        Objects.requireNonNull(engineVersion, "engineVersion cannot be null");
+        Objects.requireNonNull(classPath, "classPath cannot be null");
+        this.projectDir = projectDir;
+        this.scriptFile = scriptFile;
+        this.engineVersion = engineVersion;
+        this.classPath = classPath;
+    }
+
+    public Path getProjectDir() {
+        return projectDir;
+    }
+
+    public Path getScriptFile() {
+        return scriptFile;
+    }
+
+    public String getEngineVersion() {
+        return engineVersion;
+    }
+    
+    /**
+     * Resolves a file in the cache for the script.
+     * @param suffix The suffix such as ".classes"
+     * @return The file (e.g. {projectDir}/blaze.java.classes)
+     */
+    public Path file(String suffix) {
+        return this.projectDir.resolve(this.scriptFile.getFileName().toString() + suffix);
+    }
+    
+    /**
+     * Gets the key of the script.  The previous key is re-used if the size and
+     * last modified time of the script and the classpath fingerprint did not
+     * change, otherwise the source is hashed again.
+     * @return The key
+     * @throws IOException If the script could not be read
+     */
+    public String key() throws IOException {
+        if (this.key != null) {
+            return this.key;
+        }
+        
+        BasicFileAttributes attrs = Files.readAttributes(this.scriptFile, BasicFileAttributes.class);
+        String size = Long.toString(attrs.size());
+        String modified = Long.toString(attrs.lastModifiedTime().toMillis());
+        String fingerprint = classPathFingerprint(this.classPath);
+        
+        Path stampFile = file(".key");
+        Properties stamp = new Properties();
+        
+        if (Files.exists(stampFile)) {
+            try (InputStream input = Files.newInputStream(stampFile)) {
+                stamp.load(input);
+            } catch (IOException e) {
+                log.debug("Unable to read {} (ignoring it)", stampFile);
+            }
+            
+            if (size.equals(stamp.getProperty("size"))
+                    && modified.equals(stamp.getProperty("modified"))
+                    && fingerprint.equals(stamp.getProperty("classpath"))
+                    && this.engineVersion.equals(stamp.getProperty("engine"))
+                    && stamp.getProperty("key") != null) {
+                this.key = stamp.getProperty("key");
+                return this.key;
+            }
+        }
+        
+        MessageDigest digest = sha256();
+        digest.update(Files.readAllBytes(this.scriptFile));
+        digest.update(("|" + fingerprint + "|" + this.engineVersion + "|" + Version.getVersion())
+            .getBytes(StandardCharsets.UTF_8));
+        
+        this.key = Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest());
+        
+        log.trace("Compile cache key of {} is {}", this.scriptFile, this.key);
+        
+        stamp.setProperty("size", size);
+        stamp.setProperty("modified", modified);
+        stamp.setProperty("classpath", fingerprint);
+        stamp.setProperty("engine", this.engineVersion);
+        stamp.setProperty("key", this.key);
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        stamp.store(baos, null);
+        write(stampFile, baos.toByteArray());
+        
+        return this.key;
+    }
+    
+    /**
+     * Whether what the engine compiled to the cache is from the current key.
+     * Only needed by engines whose output does not carry the key itself.
+     * @return True if compiled from the current key
+     * @throws IOException If the key could not be computed
+     */
+    public boolean isCompiled() throws IOException {
+        Path compiledFile = file(".compiled");
+        
+        if (Files.notExists(compiledFile)) {
+            return false;
+        }
+        
+        String compiledKey = new String(Files.readAllBytes(compiledFile), StandardCharsets.UTF_8).trim();
+        
+        return key().equals(compiledKey);
+    }
+    
+    /**
+     * Records that the engine compiled to the cache from the current key.
+     * @throws IOException If the key could not be computed or written
+     */
+    public void markCompiled() throws IOException {
+        write(file(".compiled"), key().getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Locks the project across threads and processes.  Blocks until the lock
+     * is acquired. Engines should check the cache again once locked since
+     * another run may have just compiled the script.
+     * @return The lock to close once done
+     * @throws IOException If the lock file could not be opened
+     */
+    public Lock lock() throws IOException {
+        Files.createDirectories(this.projectDir);
+        
+        Path lockFile = this.projectDir.resolve(".lock");
+        
+        ReentrantLock threadLock = LOCKS.computeIfAbsent(lockFile.toAbsolutePath(), (p) -> new ReentrantLock());
+        
+        threadLock.lock();
+        try {
+            FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                log.trace("Waiting for lock on {}", lockFile);
+                return new Lock(threadLock, channel, channel.lock());
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        } catch (IOException | RuntimeException e) {
+            threadLock.unlock();
+            throw e;
+        }
+    }
+    
+    static public class Lock implements Closeable {
+        
+        private final ReentrantLock threadLock;
+        private final FileChannel channel;
+        private final FileLock fileLock;
+        
+        private Lock(ReentrantLock threadLock, FileChannel channel, FileLock fileLock) {
+            this.threadLock = threadLock;
+            this.channel = channel;
+            this.fileLock = fileLock;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                this.fileLock.release();
+                this.channel.close();
+            } finally {
+                this.threadLock.unlock();
+            }
+        }
+    }
+    
+    /**
+     * Fingerprints the classpath by the path, size and last modified time of
+     * each entry.  Jars are effectively immutable so there is no need to
+     * hash their contents.
+     * @param classPath The classpath
+     * @return The fingerprint
+     */
+    static public String classPathFingerprint(List<File> classPath) {
+        MessageDigest digest = sha256();
+        
+        for (File file : classPath) {
+            StringBuilder sb = new StringBuilder()
+                .append(file.getAbsolutePath());
+            
+            if (file.isFile()) {
+                sb.append(",").append(file.length())
+                  .append(",").append(file.lastModified());
+            }
+            
+            digest.update(sb.append("\n").toString().getBytes(StandardCharsets.UTF_8));
+        }
+        
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest());
+    }
+    
+    /**
+     * Writes the file to a temporary file first and then moves it into place
+     * so a concurrent read never sees a partial file.
+     * @param file The file
+     * @param bytes The contents
+     * @throws IOException If the file could not be written
+     */
+    static public void write(Path file, byte[] bytes) throws IOException {
+        Files.createDirectories(file.getParent());
+        
+        Path tempFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tempFile, bytes);
+            try {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+    
+    static private MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not supported", e);
+        }
+    }
+    
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Graph of the tasks requested to run along with all of their (transitive)
+ * prerequisite tasks declared via <code>@Task(depends = ...)</code>.  Each
+ * task appears once.  Tasks unknown to the script are kept as tasks without
+ * prerequisites so executing them reports the missing task as usual.
+ * 
+ * @author joelauer
+ */
+public class TaskGraph {
+    
+    private final List<String> order;
+    private final Map<String,List<String>> depends;
+    private final Map<String,List<String>> dependents;
+
+    private TaskGraph(List<String> order, Map<String,List<String>> depends) {
+        this.order = order;
+        this.depends = depends;
+        this.dependents = new HashMap<>();
+        for (String task : order) {
+            this.dependents.put(task, new ArrayList<>());
+        }
+        for (String task : order) {
+            for (String dependency : depends.get(task)) {
+                this.dependents.get(dependency).add(task);
+            }
+        }
+    }
+    
+    /**
+     * Tasks in an order where every task comes after its prerequisites.
+     * Otherwise, tasks are in the order they were requested.
+     * @return The tasks to execute
+     */
+    public List<String> getOrder() {
+        return order;
+    }
+    
+    public List<String> getDepends(String task) {
+        return this.depends.getOrDefault(task, Collections.emptyList());
+    }
+    
+    public List<String> getDependents(String task) {
+        return this.dependents.getOrDefault(task, Collections.emptyList());
+    }
+    
+    static public TaskGraph build(List<BlazeTask> tasks, List<String> requestedTasks) throws BlazeException {
+        Map<String,BlazeTask> tasksByName = new HashMap<>();
+        if (tasks != null) {
+            for (BlazeTask task : tasks) {
+                tasksByName.put(task.getName(), task);
+            }
+        }
+        
+        Map<String,List<String>> depends = new LinkedHashMap<>();
+        Set<String> visiting = new LinkedHashSet<>();
+        List<String> order = new ArrayList<>();
+        
+        for (String task : requestedTasks) {
+            visit(task, tasksByName, depends, visiting, order);
+        }
+        
+        return new TaskGraph(order, depends);
+    }
+    
+    static private void visit(String task, Map<String,BlazeTask> tasksByName, Map<String,List<String>> depends,
+            Set<String> visiting, List<String> order) {
+        
+        if (depends.containsKey(task)) {
+            return;     // already visited
+        }
+        
+        if (!visiting.add(task)) {
+            List<String> cycle = new ArrayList<>(visiting);
+            cycle = cycle.subList(cycle.indexOf(task), cycle.size());
+            throw new MessageOnlyException("Task dependency cycle detected: " + String.join(" -> ", cycle) + " -> " + task);
+        }
+        
+        BlazeTask blazeTask = tasksByName.get(task);
+        List<String> taskDepends = new ArrayList<>();
+        
+        if (blazeTask != null) {
+            for (String dependency : blazeTask.getDepends()) {
+                if (!taskDepends.contains(dependency)) {
+                    visit(dependency, tasksByName, depends, visiting, order);
+                    taskDepends.add(dependency);
+                }
+            }
+        }
+        
+        visiting.remove(task);
+        depends.put(task, taskDepends);
+        order.add(task);
+    }
+    
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.internal;
+
+import com.fizzed.blaze.Config;
+import com.fizzed.blaze.Context;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local content-addressable cache of task outputs.  Entries are keyed by the
+ * task, the script and the content of its inputs and store the output files
+ * of the task in a compressed zip in ~/.blaze/cache/build.  If a task runs with
+ * inputs it already ran with before (e.g. after switching branches back) its
+ * outputs are restored from the cache rather than running it again.
+ * 
+ * Entries are written to a temporary file and moved into place so concurrent
+ * builds never see a partial entry.  The least recently used entries are
+ * evicted once the cache exceeds its max size.
+ * 
+ * @author joelauer
+ */
+public class BuildCache {
+    static private final Logger log = LoggerFactory.getLogger(BuildCache.class);
+    
+    static private final Stats STATS = new Stats();
+    
+    private final Path cacheDir;
+    private final long maxSize;
+
+    public BuildCache(Path cacheDir, long maxSize) {
+        Objects.requireNonNull(cacheDir, "cacheDir cannot be null");
+        this.cacheDir = cacheDir;
+        this.maxSize = maxSize;
+    }
+    
+    /**
+     * Creates the build cache for a script.
+     * @param context The context of the script
+     * @return The build cache or null if disabled via config
+     */
+    static public BuildCache of(Context context) {
+        Config config = context.config();
+        
+        if (!config.value(Config.KEY_BUILD_CACHE, Boolean.class).getOr(Config.DEFAULT_BUILD_CACHE)) {
+            return null;
+        }
+        
+        long maxMb = config.value(Config.KEY_BUILD_CACHE_MAX_MB, Long.class).getOr(Config.DEFAULT_BUILD_CACHE_MAX_MB);
+        
+        // ~/.blaze/cache/build
+        return new BuildCache(context.withUserDir(".blaze/cache/build"), maxMb * 1024L * 1024L);
+    }
+    
+    static public Stats stats() {
+        return STATS;
+    }
+
+    public Path getCacheDir() {
+        return cacheDir;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+    
+    /**
+     * Builds the key of an entry.
+     * @param task The name of the task
+     * @param scriptHash The hash of the script (its tasks may have changed)
+     * @param inputsHash The hash of the content of the inputs of the task
+     * @param outputs The output globs of the task
+     * @return The key
+     */
+    static public String key(String task, String scriptHash, String inputsHash, List<String> outputs) {
+        return ConfigHelper.md5(task + "|" + scriptHash + "|" + inputsHash + "|" + outputs);
+    }
+    
+    public Path entryFile(String key) {
+        return this.cacheDir.resolve(key + ".zip");
+    }
+    
+    /**
+     * Restores the outputs of an entry.  Any current output files that are
+     * not part of the entry are deleted.
+     * @param key The key of the entry
+     * @param baseDir The dir outputs are relative to
+     * @param currentOutputs The output files that currently exist
+     * @return True if restored or false if the cache has no such entry
+     */
+    public boolean restore(String key, Path baseDir, List<Path> currentOutputs) {
+        Path file = entryFile(key);
+        
+        if (Files.notExists(file)) {
+            STATS.misses.incrementAndGet();
+            return false;
+        }
+        
+        Path root = baseDir.toAbsolutePath().normalize();
+        Set<Path> restored = new HashSet<>();
+        
+        try (ZipInputStream input = new ZipInputStream(Files.newInputStream(file))) {
+            ZipEntry entry;
+            while ((entry = input.getNextEntry()) != null) {
+                Path target = root.resolve(entry.getName()).normalize();
+                
+                if (!target.startsWith(root)) {
+                    throw new IOException("Entry " + entry.getName() + " outside of " + root);
+                }
+                
+                Files.createDirectories(target.getParent());
+                Files.copy(input, target, StandardCopyOption.REPLACE_EXISTING);
+                
+                if (entry.getTime() >= 0) {
+                    Files.setLastModifiedTime(target, FileTime.fromMillis(entry.getTime()));
+                }
+                
+                restored.add(target);
+            }
+        } catch (NoSuchFileException e) {
+            // evicted by a concurrent build
+            STATS.misses.incrementAndGet();
+            return false;
+        } catch (IOException e) {
+            log.warn("Unable to restore build cache entry {} ({})", file, e.getMessage());
+            STATS.misses.incrementAndGet();
+            return false;
+        }
+        
+        for (Path path : currentOutputs) {
+            if (!restored.contains(path.toAbsolutePath().normalize())) {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    log.warn("Unable to delete stale output {} ({})", path, e.getMessage());
+                }
+            }
+        }
+        
+        // most recently used
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // ignore
+        }
+        
+        STATS.hits.incrementAndGet();
+        
+        log.trace("Restored {} outputs from build cache {}", restored.size(), file);
+        
+        return true;
+    }
+    
+    /**
+     * Stores the output files as an entry and evicts least recently used
+     * entries if the cache is now too big.  Failures are logged and ignored.
+     * @param key The key of the entry
+     * @param baseDir The dir outputs are relative to
+     * @param outputs The output files
+     */
+    public void put(String key, Path baseDir, List<Path> outputs) {
+        Path file = entryFile(key);
+        Path root = baseDir.toAbsolutePath().normalize();
+        
+        try {
+            Files.createDirectories(this.cacheDir);
+            
+            Path tempFile = Files.createTempFile(this.cacheDir, key, ".tmp");
+            try {
+                try (ZipOutputStream output = new ZipOutputStream(Files.newOutputStream(tempFile))) {
+                    for (Path path : outputs) {
+                        Path absolute = path.toAbsolutePath().normalize();
+                        String name = root.relativize(absolute).toString().replace('\\', '/');
+                        
+                        ZipEntry entry = new ZipEntry(name);
+                        entry.setTime(Files.getLastModifiedTime(absolute).toMillis());
+                        output.putNextEntry(entry);
+                        Files.copy(absolute, output);
+                        output.closeEntry();
+                    }
+                }
+                try {
+                    Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+            
+            STATS.stores.incrementAndGet();
+            
+            log.trace("Saved build cache entry {}", file);
+        } catch (IOException e) {
+            log.warn("Unable to save build cache entry {} ({})", file, e.getMessage());
+            return;
+        }
+        
+        evict();
+    }
+    
+    /**
+     * Deletes the least recently used entries until the cache is no bigger
+     * than its max size.
+     */
+    public void evict() {
+        List<Entry> entries = new ArrayList<>();
+        long size = 0;
+        
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.cacheDir, "*.zip")) {
+            for (Path path : stream) {
+                try {
+                    Entry entry = new Entry(path, Files.size(path), Files.getLastModifiedTime(path).toMillis());
+                    entries.add(entry);
+                    size += entry.size;
+                } catch (IOException e) {
+                    // deleted concurrently
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Unable to list build cache {} ({})", this.cacheDir, e.getMessage());
+            return;
+        }
+        
+        if (size <= this.maxSize) {
+            return;
+        }
+        
+        entries.sort(Comparator.comparingLong((Entry e) -> e.lastUsed));
+        
+        for (Entry entry : entries) {
+            if (size <= this.maxSize) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(entry.path);
+                size -= entry.size;
+                STATS.evictions.incrementAndGet();
+                log.trace("Evicted build cache entry {}", entry.path);
+            } catch (IOException e) {
+                log.warn("Unable to evict build cache entry {} ({})", entry.path, e.getMessage());
+            }
+        }
+    }
+    
+    static private class Entry {
+        
+        private final Path path;
+        private final long size;
+        private final long lastUsed;
+
+        public Entry(Path path, long size, long lastUsed) {
+            this.path = path;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+        
+    }
+    
+    static public class Stats {
+        
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong stores = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
+
+        public long getHits() {
+            return hits.get();
+        }
+
+        public long getMisses() {
+            return misses.get();
+        }
+
+        public long getStores() {
+            return stores.get();
+        }
+
+        public long getEvictions() {
+            return evictions.get();
+        }
+        
+        public boolean isEmpty() {
+            return getHits() == 0 && getMisses() == 0;
+        }
+        
+        public void reset() {
+            hits.set(0);
+            misses.set(0);
+            stores.set(0);
+            evictions.set(0);
+        }
+
+        @Override
+        public String toString() {
+            long lookups = getHits() + getMisses();
+            long hitRate = (lookups > 0 ? (getHits() * 100) / lookups : 0);
+            return getHits() + " hits, " + getMisses() + " misses (" + hitRate + "%), "
+                + getStores() + " stored, " + getEvictions() + " evicted";
+        }
+        
+    }
+    
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.internal;
+
+import com.fizzed.blaze.Version;
+import com.fizzed.blaze.core.MessageOnlyException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generates and maintains an AppCDS (class data sharing) archive per project
+ * directory in ~/.blaze/cds.  The archive is created by a training run of the
+ * script (which resolves dependencies, compiles the script, and lists its
+ * tasks) in a child JVM started with -XX:ArchiveClassesAtExit (Java 13+).  The
+ * launcher script uses the archive if it exists.
+ * 
+ * The resolved classpath and versions of blaze and the JVM at the time of the
+ * training run are saved next to the archive.  If they no longer match on a
+ * later run the archive is deleted.
+ * 
+ * @author joelauer
+ */
+public class ClassDataSharingHelper {
+    static private final Logger log = LoggerFactory.getLogger(ClassDataSharingHelper.class);
+    
+    static public final String KEY_TRAINING = "blaze.cds.training";
+    static public final String KEY_FINGERPRINT = "fingerprint";
+    static public final int MIN_JAVA_VERSION = 13;
+    
+    static public int javaVersion() {
+        String version = System.getProperty("java.specification.version", "1.8");
+        if (version.startsWith("1.")) {
+            version = version.substring(2);
+        }
+        try {
+            return Integer.parseInt(version);
+        } catch (NumberFormatException e) {
+            return 8;
+        }
+    }
+    
+    static public boolean isSupported() {
+        return javaVersion() >= MIN_JAVA_VERSION;
+    }
+    
+    static public Path archiveDir() {
+        return Paths.get(System.getProperty("user.home"), ".blaze", "cds");
+    }
+    
+    /**
+     * Name of the archive for a directory.  Must match the name the launcher
+     * script computes with `pwd -P | sed 's/[^A-Za-z0-9._-]/_/g'`.
+     * @param workingDir The project directory
+     * @return The name of the archive (without extension)
+     */
+    static public String archiveName(Path workingDir) {
+        Path dir = workingDir.toAbsolutePath().normalize();
+        try {
+            dir = dir.toRealPath();
+        } catch (IOException e) {
+            // use as-is
+        }
+        return dir.toString().replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+    
+    static public Path archiveFile(Path workingDir) {
+        return archiveDir().resolve(archiveName(workingDir) + ".jsa");
+    }
+    
+    static public Path fingerprintFile(Path workingDir) {
+        return archiveDir().resolve(archiveName(workingDir) + ".properties");
+    }
+    
+    static public boolean isArchiveInUse() {
+        return ManagementFactory.getRuntimeMXBean().getInputArguments().stream()
+            .anyMatch((arg) -> arg.startsWith("-XX:SharedArchiveFile="));
+    }
+    
+    static public String fingerprint(List<URL> classPath) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(Version.getLongVersion()).append("|");
+        sb.append(System.getProperty("java.vm.version")).append("|");
+        for (URL url : classPath) {
+            sb.append(url).append("|");
+        }
+        return ConfigHelper.md5(sb.toString());
+    }
+    
+    /**
+     * Generates the archive for the directory with a training run of blaze
+     * using the supplied args.
+     * @param workingDir The project directory
+     * @param mainClass The main class to run (e.g. Bootstrap)
+     * @param args The args for the training run (same as a normal run)
+     * @return The archive file
+     */
+    static public Path generate(Path workingDir, String mainClass, List<String> args) {
+        if (!isSupported()) {
+            throw new MessageOnlyException("Class data sharing archives require Java " + MIN_JAVA_VERSION
+                + "+ (running Java " + javaVersion() + ")");
+        }
+        
+        Path archiveFile = archiveFile(workingDir);
+        Path fingerprintFile = fingerprintFile(workingDir);
+        Path tempArchiveFile = archiveFile.resolveSibling(archiveFile.getFileName() + ".tmp");
+        Path tempFingerprintFile = fingerprintFile.resolveSibling(fingerprintFile.getFileName() + ".tmp");
+        
+        try {
+            Files.createDirectories(archiveFile.getParent());
+            Files.deleteIfExists(tempArchiveFile);
+            Files.deleteIfExists(tempFingerprintFile);
+            
+            Path javaBin = Paths.get(System.getProperty("java.home"), "bin",
+                (ConfigHelper.OperatingSystem.windows() ? "java.exe" : "java"));
+            
+            List<String> command = new ArrayList<>();
+            command.add(javaBin.toString());
+            command.add("-XX:ArchiveClassesAtExit=" + tempArchiveFile);
+            command.add("-Xlog:cds=off");       // lots of noise about old (pre java 6) classes
+            command.add("-D" + KEY_TRAINING + "=" + tempFingerprintFile);
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(mainClass);
+            command.addAll(args);
+            command.add("-l");      // builds everything, but executes no tasks
+            
+            log.debug("Training run: {}", command);
+            
+            Process process = new ProcessBuilder(command)
+                .directory(workingDir.toAbsolutePath().toFile())
+                .inheritIO()
+                .start();
+            
+            int exitValue = process.waitFor();
+            
+            if (exitValue != 0) {
+                throw new MessageOnlyException("Class data sharing training run failed with exit code " + exitValue);
+            }
+            
+            if (Files.notExists(tempArchiveFile) || Files.notExists(tempFingerprintFile)) {
+                throw new MessageOnlyException("Class data sharing training run did not create an archive");
+            }
+            
+            move(tempArchiveFile, archiveFile);
+            move(tempFingerprintFile, fingerprintFile);
+            
+            return archiveFile;
+        } catch (IOException e) {
+            throw new MessageOnlyException("Unable to generate class data sharing archive (" + e.getMessage() + ")");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessageOnlyException("Interrupted generating class data sharing archive");
+        } finally {
+            try {
+                Files.deleteIfExists(tempArchiveFile);
+                Files.deleteIfExists(tempFingerprintFile);
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+    
+    /**
+     * Called after blaze was built.  During a training run this records the
+     * fingerprint of the classpath for the archive.  Otherwise, an archive
+     * whose fingerprint no longer matches is deleted.
+     * @param workingDir The project directory
+     * @param classPath The classpath that scripts were built with
+     */
+    static public void afterBuild(Path workingDir, List<URL> classPath) {
+        String trainingFile = System.getProperty(KEY_TRAINING);
+        
+        if (trainingFile != null) {
+            Properties properties = new Properties();
+            properties.setProperty(KEY_FINGERPRINT, fingerprint(classPath));
+            try (OutputStream output = Files.newOutputStream(Paths.get(trainingFile))) {
+                properties.store(output, "blaze class data sharing");
+            } catch (IOException e) {
+                log.warn("Unable to save class data sharing fingerprint ({})", e.getMessage());
+            }
+            return;
+        }
+        
+        Path archiveFile = archiveFile(workingDir);
+        
+        if (Files.notExists(archiveFile)) {
+            return;
+        }
+        
+        Path fingerprintFile = fingerprintFile(workingDir);
+        String expected = null;
+        
+        if (Files.exists(fingerprintFile)) {
+            Properties properties = new Properties();
+            try (InputStream input = Files.newInputStream(fingerprintFile)) {
+                properties.load(input);
+                expected = properties.getProperty(KEY_FINGERPRINT);
+            } catch (IOException e) {
+                // treat as out-of-date
+            }
+        }
+        
+        if (!fingerprint(classPath).equals(expected)) {
+            log.info("Class data sharing archive {} is out of date (deleting it; run with --cds to regenerate)", archiveFile);
+            try {
+                Files.deleteIfExists(archiveFile);
+                Files.deleteIfExists(fingerprintFile);
+            } catch (IOException e) {
+                log.warn("Unable to delete class data sharing archive ({})", e.getMessage());
+            }
+        }
+    }
+    
+    static private void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+}
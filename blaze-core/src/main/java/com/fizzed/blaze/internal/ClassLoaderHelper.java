@@ -26,7 +26,11 @@ import java.net.URLClassLoader;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,6 +41,8 @@ import org.slf4j.LoggerFactory;
 public class ClassLoaderHelper {
     static private final Logger log = LoggerFactory.getLogger(ClassLoaderHelper.class);
     
+    static private final Map<String,SharedClassLoader> SHARED_CLASSLOADERS = new HashMap<>();
+    
     static public ClassLoader currentThreadContextClassLoader() {
         return Thread.currentThread().getContextClassLoader();
     }
@@ -58,6 +64,15 @@ public class ClassLoaderHelper {
     }
 
     static public boolean addClassPath(ClassLoader classLoader, URI uri) {
+        // script classloaders keep a hashed index of their classpath
+        if (classLoader instanceof ScriptClassLoader) {
+            try {
+                return ((ScriptClassLoader)classLoader).addClassPath(uri.toURL());
+            } catch (MalformedURLException e) {
+                throw new IllegalArgumentException("Unable to add " + uri + " to classpath", e);
+            }
+        }
+        
         URLClassLoader urlClassLoader = requireURLClassLoader(classLoader);
         boolean isJar = uri.getScheme().startsWith("jar:");
         File file = new File(uri);
@@ -99,7 +114,11 @@ public class ClassLoaderHelper {
 
     static public File findContainingJar(ClassLoader classLoader, String resourceName) {
         File jarFile;
-        URL url = Thread.currentThread().getContextClassLoader().getResource(resourceName);
+        URL url = classLoader.getResource(resourceName);
+        
+        if (url == null) {
+            return null;
+        }
         
         if ("jar".equals(url.getProtocol())) { //NOI18N
             
@@ -129,14 +148,164 @@ public class ClassLoaderHelper {
         return jarFile;
     }
     
+    /**
+     * Gets a classloader for the jars holding the resources that outlives the
+     * script classloader they were added to.  Useful for a compiler that is
+     * expensive to warm up since every build gets a new script classloader.
+     * The classloader is re-used as long as the same jars (by path, size and
+     * last modified time) hold the resources.
+     * @param classLoader The script classloader
+     * @param resourceNames The resources (e.g. class files) to load from the
+     *      shared classloader
+     * @return The shared classloader or the supplied classloader if the
+     *      resources are not in jars added to a script classloader
+     */
+    static public ClassLoader sharedClassLoader(ClassLoader classLoader, String... resourceNames) {
+        ClassLoader parent = ScriptClassLoader.parentOf(classLoader);
+        
+        // nothing to share if already on the classpath of blaze
+        if (parent == classLoader) {
+            return classLoader;
+        }
+        
+        List<File> jarFiles = new ArrayList<>();
+        StringBuilder fingerprint = new StringBuilder();
+        
+        for (String resourceName : resourceNames) {
+            if (parent.getResource(resourceName) != null) {
+                return classLoader;
+            }
+            
+            File jarFile = findContainingJar(classLoader, resourceName);
+            
+            if (jarFile == null || !jarFile.isFile()) {
+                return classLoader;
+            }
+            
+            if (!jarFiles.contains(jarFile)) {
+                jarFiles.add(jarFile);
+                fingerprint.append(jarFile.getAbsolutePath())
+                    .append(",").append(jarFile.length())
+                    .append(",").append(jarFile.lastModified())
+                    .append("\n");
+            }
+        }
+        
+        String key = String.join(",", resourceNames);
+        
+        synchronized (SHARED_CLASSLOADERS) {
+            SharedClassLoader shared = SHARED_CLASSLOADERS.get(key);
+            
+            if (shared == null || shared.parent != parent || !shared.fingerprint.equals(fingerprint.toString())) {
+                URL[] urls = new URL[jarFiles.size()];
+                for (int i = 0; i < urls.length; i++) {
+                    try {
+                        urls[i] = jarFiles.get(i).toURI().toURL();
+                    } catch (MalformedURLException e) {
+                        throw new IllegalArgumentException("Unable to add " + jarFiles.get(i) + " to classpath", e);
+                    }
+                }
+                
+                log.debug("Creating shared classloader for {}", jarFiles);
+                
+                shared = new SharedClassLoader(parent, fingerprint.toString(), new URLClassLoader(urls, parent));
+                SHARED_CLASSLOADERS.put(key, shared);
+            }
+            
+            return shared.classLoader;
+        }
+    }
+    
+    static private class SharedClassLoader {
+        
+        private final ClassLoader parent;
+        private final String fingerprint;
+        private final ClassLoader classLoader;
+
+        public SharedClassLoader(ClassLoader parent, String fingerprint, ClassLoader classLoader) {
+            this.parent = parent;
+            this.fingerprint = fingerprint;
+            this.classLoader = classLoader;
+        }
+    }
+    
     static public List<URL> buildClassPath(ClassLoader classLoader) {
         if (!(classLoader instanceof URLClassLoader)) {
             throw new IllegalArgumentException("Only classloaders of type URLClassLoader supported");
         }
         
-        URLClassLoader urlClassLoader = (URLClassLoader)classLoader;
+        // include any parents up to (and including) the system classloader so
+        // a child classloader (e.g. one per project in the daemon) still has
+        // blaze itself on the classpath
+        ClassLoader systemClassLoader = ClassLoader.getSystemClassLoader();
+        ClassLoader stopAt = (systemClassLoader != null ? systemClassLoader.getParent() : null);
+        
+        LinkedList<URL> urls = new LinkedList<>();
+        
+        for (ClassLoader cl = classLoader; cl != null && cl != stopAt; cl = cl.getParent()) {
+            if (cl instanceof URLClassLoader) {
+                urls.addAll(0, Arrays.asList(((URLClassLoader)cl).getURLs()));
+            } else if (cl == systemClassLoader) {
+                // java 9+ system classloader does not expose its urls
+                urls.addAll(0, javaClassPath());
+            }
+            if (cl == systemClassLoader) {
+                break;
+            }
+        }
+        
+        return urls;
+    }
+    
+    static public List<URL> javaClassPath() {
+        List<URL> urls = new ArrayList<>();
+        
+        String classPath = System.getProperty("java.class.path", "");
+        
+        for (String entry : classPath.split(File.pathSeparator)) {
+            if (!entry.isEmpty()) {
+                try {
+                    urls.add(new File(entry).toURI().toURL());
+                } catch (MalformedURLException e) {
+                    // skip it
+                }
+            }
+        }
+        
+        return urls;
+    }
+    
+    /**
+     * Creates a new script classloader and sets it as the context classloader
+     * of the current thread.  Each script gets its own so the jars of one
+     * script never leak into another.
+     * @return The new script classloader
+     */
+    static public ScriptClassLoader newContextScriptClassLoader() {
+        ClassLoader parent = ScriptClassLoader.parentOf(currentThreadContextClassLoader());
+        
+        ScriptClassLoader scriptClassLoader = new ScriptClassLoader(parent);
+        
+        Thread.currentThread().setContextClassLoader(scriptClassLoader);
+        
+        return scriptClassLoader;
+    }
+    
+    /**
+     * Gets the script classloader of the current thread, creating one if the
+     * context classloader is not one already.
+     * @return The script classloader
+     */
+    static public ScriptClassLoader currentScriptClassLoader() {
+        ClassLoader classLoader = currentThreadContextClassLoader();
+        
+        if (classLoader instanceof ScriptClassLoader) {
+            return (ScriptClassLoader)classLoader;
+        }
+        
+        log.debug("Context classloader {} is not a script classloader (creating one)", classLoader);
         
-        return java.util.Arrays.asList(urlClassLoader.getURLs());
+        return newContextScriptClassLoader();
     }
     
     static public String buildClassPathAsString(ClassLoader classLoader) {
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.internal;
+
+import com.fizzed.blaze.Version;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single file holding every class compiled from a script (including inner
+ * and anonymous classes).  A small uncompressed header identifies the source
+ * (its compile cache key) and the versions of blaze and java it was compiled
+ * with, which is followed by the deflated class names and bytecode.
+ * 
+ * @author joelauer
+ */
+public class ClassesFile {
+    static private final Logger log = LoggerFactory.getLogger(ClassesFile.class);
+    
+    // "BLZC"
+    static private final int MAGIC = 0x424c5a43;
+    static private final int FORMAT = 1;
+    
+    static private String javaVersion() {
+        return System.getProperty("java.specification.version", "");
+    }
+    
+    /**
+     * Reads the classes from the file.
+     * @param file The file
+     * @param key The expected compile cache key
+     * @return The classes by name or null if missing, stale or corrupt
+     */
+    static public Map<String,byte[]> read(Path file, String key) {
+        if (Files.notExists(file)) {
+            return null;
+        }
+        
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT) {
+                log.debug("Classes file {} has unsupported format (ignoring it)", file);
+                return null;
+            }
+            
+            String fileKey = input.readUTF();
+            String fileBlazeVersion = input.readUTF();
+            String fileJavaVersion = input.readUTF();
+            int count = input.readInt();
+            
+            if (!fileKey.equals(key)
+                    || !fileBlazeVersion.equals(Version.getVersion())
+                    || !fileJavaVersion.equals(javaVersion())) {
+                log.trace("Classes file {} is stale", file);
+                return null;
+            }
+            
+            DataInputStream body = new DataInputStream(new InflaterInputStream(input));
+            
+            Map<String,byte[]> classes = new LinkedHashMap<>();
+            
+            for (int i = 0; i < count; i++) {
+                String name = body.readUTF();
+                byte[] bytes = new byte[body.readInt()];
+                body.readFully(bytes);
+                classes.put(name, bytes);
+            }
+            
+            // verifies the checksum at the end of the deflated body too
+            if (body.read() != -1) {
+                log.debug("Classes file {} is corrupt (ignoring it)", file);
+                return null;
+            }
+            
+            return classes;
+        } catch (EOFException e) {
+            log.debug("Classes file {} is truncated (ignoring it)", file);
+            return null;
+        } catch (IOException e) {
+            log.debug("Unable to read classes file {} (ignoring it)", file, e);
+            return null;
+        }
+    }
+    
+    /**
+     * Writes the classes to the file.  Written to a temporary file first and
+     * then moved into place so a concurrent read never sees a partial file.
+     * @param file The file
+     * @param key The compile cache key the classes were compiled from
+     * @param classes The classes by name
+     * @throws IOException If the file could not be written
+     */
+    static public void write(Path file, String key, Map<String,byte[]> classes) throws IOException {
+        Files.createDirectories(file.getParent());
+        
+        Path tempFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(FORMAT);
+                output.writeUTF(key);
+                output.writeUTF(Version.getVersion());
+                output.writeUTF(javaVersion());
+                output.writeInt(classes.size());
+                
+                DeflaterOutputStream deflater = new DeflaterOutputStream(output, new Deflater(Deflater.BEST_SPEED));
+                DataOutputStream body = new DataOutputStream(deflater);
+                
+                for (Map.Entry<String,byte[]> entry : classes.entrySet()) {
+                    body.writeUTF(entry.getKey());
+                    body.writeInt(entry.getValue().length);
+                    body.write(entry.getValue());
+                }
+                
+                body.flush();
+                deflater.finish();
+            }
+            try {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+    
+}
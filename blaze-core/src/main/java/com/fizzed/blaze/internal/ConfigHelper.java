@@ -21,6 +21,7 @@ import com.fizzed.blaze.Version;
 import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -79,6 +80,16 @@ public class ConfigHelper {
             typesafeConfig = com.typesafe.config.ConfigFactory.empty();
         }
 
+        return create(typesafeConfig);
+    }
+    
+    static public Config createFromUrl(URL url) {
+        log.debug("Configuring with {}", url);
+        
+        return create(com.typesafe.config.ConfigFactory.parseURL(url));
+    }
+    
+    static private Config create(com.typesafe.config.Config typesafeConfig) {
         // overlay system properties on top of it
         typesafeConfig = com.typesafe.config.ConfigFactory.load(typesafeConfig);
 
@@ -165,7 +176,14 @@ public class ConfigHelper {
         return userBlazeEngineDir;
     }
     
-    static public Path userBlazeEngineScriptClassesDir(Context context, String engineName) throws IOException {
+    /**
+     * Gets the name of the directory of the script in each engine directory.
+     * @param context The context of the script
+     * @return The md5 of the canonical path of its base directory and the
+     *      version of blaze
+     * @throws IOException If the canonical path could not be resolved
+     */
+    static public String userBlazeEngineScriptKey(Context context) throws IOException {
         // md5 of the canonical path of this application's base directory
         // should be a consistent hash very usable for generating classes in
         String key = new StringBuilder()
@@ -175,12 +193,29 @@ public class ConfigHelper {
             .append(Version.getVersion())
             .toString();
         
-        String md5hash = md5(key);
+        return md5(key);
+    }
+    
+    static public Path userBlazeEngineScriptDir(Context context, String engineName) throws IOException {
+        String md5hash = userBlazeEngineScriptKey(context);
         
         // ~/.blaze/engine/{engineName}/{md5hash}
-        Path userBlazeEngineScriptClassesDir
+        Path userBlazeEngineScriptDir
             = userBlazeEngineDir(context, engineName)
-                .resolve(md5hash)
+                .resolve(md5hash);
+        
+        Files.createDirectories(userBlazeEngineScriptDir);
+        
+        // least recently used dirs are pruned
+        EngineCache.touch(userBlazeEngineScriptDir);
+        
+        return userBlazeEngineScriptDir;
+    }
+    
+    static public Path userBlazeEngineScriptClassesDir(Context context, String engineName) throws IOException {
+        // ~/.blaze/engine/{engineName}/{md5hash}/classes
+        Path userBlazeEngineScriptClassesDir
+            = userBlazeEngineScriptDir(context, engineName)
                 .resolve("classes");
         
         Files.createDirectories(userBlazeEngineScriptClassesDir);
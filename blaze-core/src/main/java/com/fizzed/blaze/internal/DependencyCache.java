@@ -0,0 +1,195 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.internal;
+
+import com.fizzed.blaze.Config;
+import com.fizzed.blaze.Context;
+import com.fizzed.blaze.Version;
+import com.fizzed.blaze.core.Dependency;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the jar files a dependency resolver returned for a specific set of
+ * dependencies.  If the same dependencies (and the same bundled dependencies
+ * and version of blaze) are requested again and none of them are a SNAPSHOT
+ * then the previously resolved jar files are safe to re-use and the resolver
+ * can be skipped entirely.
+ *
+ * Entries are stored as one file per key in ~/.blaze/cache/dependencies with
+ * the absolute path of each jar file on its own line.
+ *
+ * @author joelauer
+ */
+public class DependencyCache {
+    static private final Logger log = LoggerFactory.getLogger(DependencyCache.class);
+
+    private final Path cacheDir;
+
+    public DependencyCache(Path cacheDir) {
+        Objects.requireNonNull(cacheDir, "cacheDir cannot be null");
+        this.cacheDir = cacheDir;
+    }
+
+    static public DependencyCache of(Context context) {
+        // ~/.blaze/cache/dependencies
+        return new DependencyCache(context.withUserDir(".blaze/cache/dependencies"));
+    }
+
+    public Path getCacheDir() {
+        return cacheDir;
+    }
+
+    /**
+     * Whether the supplied dependencies are safe to cache.  Caching is disabled
+     * if the config requests a clean dependency cache, turned off via config,
+     * or if any dependency is a SNAPSHOT (which may change at any time).
+     * @param config The config of the script
+     * @param dependencies The dependencies that would be resolved
+     * @return True if the dependencies may be cached
+     */
+    static public boolean isCacheable(Config config, List<Dependency> dependencies) {
+        if (!config.value(Config.KEY_DEPENDENCY_CACHE, Boolean.class).getOr(Config.DEFAULT_DEPENDENCY_CACHE)) {
+            return false;
+        }
+
+        if (config.value(Config.KEY_DEPENDENCY_CLEAN, Boolean.class).getOr(Config.DEFAULT_DEPENDENCY_CLEAN)) {
+            return false;
+        }
+
+        return dependencies.stream()
+            .noneMatch((d) -> d.getVersion().endsWith("-SNAPSHOT"));
+    }
+
+    /**
+     * Builds the cache key for a resolution.  The key is independent of the
+     * order dependencies were declared in.
+     * @param resolvedDependencies The dependencies already bundled
+     * @param dependencies The dependencies to resolve
+     * @return The cache key
+     */
+    static public String key(List<Dependency> resolvedDependencies, List<Dependency> dependencies) {
+        String value = new StringBuilder()
+            .append(normalize(dependencies))
+            .append("|")
+            .append(normalize(resolvedDependencies))
+            .append("|")
+            .append(Version.getVersion())
+            .toString();
+
+        return ConfigHelper.md5(value);
+    }
+
+    static private String normalize(List<Dependency> dependencies) {
+        return dependencies.stream()
+            .map((d) -> d.toString())
+            .distinct()
+            .sorted()
+            .collect(Collectors.joining(","));
+    }
+
+    public Path entryFile(String key) {
+        return this.cacheDir.resolve(key + ".txt");
+    }
+
+    /**
+     * Gets the previously resolved jar files for the key.
+     * @param key The cache key
+     * @return The jar files or null if not cached or any jar no longer exists
+     */
+    public List<File> get(String key) {
+        Path file = entryFile(key);
+
+        if (Files.notExists(file)) {
+            return null;
+        }
+
+        List<File> jarFiles = new ArrayList<>();
+
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                File jarFile = new File(line);
+
+                // something like the ivy cache being cleaned invalidates the entry
+                if (!jarFile.isFile()) {
+                    log.debug("Cached dependency {} no longer exists (ignoring cache)", jarFile);
+                    return null;
+                }
+
+                jarFiles.add(jarFile);
+            }
+        } catch (IOException e) {
+            log.debug("Unable to read dependency cache {} (ignoring cache)", file, e);
+            return null;
+        }
+
+        return jarFiles;
+    }
+
+    /**
+     * Saves the resolved jar files for the key.  The entry is written to a
+     * temporary file first and then moved into place so concurrent runs never
+     * see a partially written entry.  Failures are logged and ignored.
+     * @param key The cache key
+     * @param jarFiles The resolved jar files
+     */
+    public void put(String key, List<File> jarFiles) {
+        Path file = entryFile(key);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("# blaze v").append(Version.getVersion()).append(" resolved dependencies\n");
+        for (File jarFile : jarFiles) {
+            sb.append(jarFile.getAbsolutePath()).append("\n");
+        }
+
+        try {
+            Files.createDirectories(this.cacheDir);
+
+            Path tempFile = Files.createTempFile(this.cacheDir, key, ".tmp");
+            try {
+                Files.write(tempFile, sb.toString().getBytes(StandardCharsets.UTF_8));
+                try {
+                    Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+
+            log.trace("Saved dependency cache {}", file);
+        } catch (IOException e) {
+            log.warn("Unable to save dependency cache {} ({})", file, e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.internal;
+
+import com.fizzed.blaze.Config;
+import com.fizzed.blaze.Context;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Manages what engines compile scripts to in ~/.blaze/engine.  Every engine
+ * has a directory per project (the md5 of its base directory and version of
+ * blaze) that nothing else ever removes.  The last modified time of an entry
+ * directory is its last use (refreshed at most hourly when the entry is used)
+ * and entries not used for longer than the max age or least recently used
+ * ones beyond the max size are pruned.
+ * 
+ * An entry is first renamed out of the way and then deleted so a prune that
+ * is interrupted (e.g. the JVM exits) never leaves a half deleted entry that
+ * is still used.  Entries used within the last hour are never pruned since
+ * another run of blaze may be using them.
+ * 
+ * @author joelauer
+ */
+public class EngineCache {
+    static private final Logger log = LoggerFactory.getLogger(EngineCache.class);
+    
+    static public final long PRUNE_INTERVAL_MILLIS = TimeUnit.DAYS.toMillis(1);
+    static public final long TOUCH_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+    
+    static private final String PRUNED_FILE = ".pruned";
+    static private final String TRASH_PREFIX = ".trash-";
+    
+    private final Path engineDir;
+    private final long maxSize;
+    private final long maxAgeMillis;
+
+    public EngineCache(Path engineDir, long maxSize, long maxAgeMillis) {
+        Objects.requireNonNull(engineDir, "engineDir cannot be null");
+        this.engineDir = engineDir;
+        this.maxSize = maxSize;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+    
+    static public EngineCache of(Context context) {
+        Config config = context.config();
+        
+        long maxMb = config.value(Config.KEY_ENGINE_CACHE_MAX_MB, Long.class).getOr(Config.DEFAULT_ENGINE_CACHE_MAX_MB);
+        long maxAgeDays = config.value(Config.KEY_ENGINE_CACHE_MAX_AGE_DAYS, Long.class).getOr(Config.DEFAULT_ENGINE_CACHE_MAX_AGE_DAYS);
+        
+        // ~/.blaze/engine
+        return new EngineCache(context.withUserDir(".blaze/engine"),
+            maxMb * 1024L * 1024L, TimeUnit.DAYS.toMillis(maxAgeDays));
+    }
+
+    public Path getEngineDir() {
+        return engineDir;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+    
+    /**
+     * Records the entry directory was just used.  Only touches it if it was
+     * last used over an hour ago.
+     * @param entryDir The entry directory
+     */
+    static public void touch(Path entryDir) {
+        try {
+            long now = System.currentTimeMillis();
+            if (Files.getLastModifiedTime(entryDir).toMillis() < now - TOUCH_INTERVAL_MILLIS) {
+                Files.setLastModifiedTime(entryDir, FileTime.fromMillis(now));
+            }
+        } catch (IOException e) {
+            log.debug("Unable to touch {} ({})", entryDir, e.getMessage());
+        }
+    }
+    
+    static private boolean isEntryName(String name) {
+        // what ConfigHelper.md5 produces (anything else is not ours to prune)
+        return name.length() == 24 && name.endsWith("==");
+    }
+    
+    /**
+     * Lists every entry along with its size.
+     * @return The entries sorted by least recently used first
+     */
+    public List<Entry> entries() {
+        List<Entry> entries = new ArrayList<>();
+        
+        for (Path dir : list(this.engineDir)) {
+            if (!Files.isDirectory(dir)) {
+                continue;
+            }
+            
+            String engine = dir.getFileName().toString();
+            
+            for (Path entryDir : list(dir)) {
+                if (!isEntryName(entryDir.getFileName().toString()) || !Files.isDirectory(entryDir)) {
+                    continue;
+                }
+                
+                try {
+                    long lastUsed = Files.getLastModifiedTime(entryDir).toMillis();
+                    long[] usage = usage(entryDir);
+                    entries.add(new Entry(engine, entryDir, usage[0], usage[1], lastUsed));
+                } catch (IOException e) {
+                    // deleted concurrently
+                }
+            }
+        }
+        
+        entries.sort(Comparator.comparingLong(Entry::getLastUsed));
+        
+        return entries;
+    }
+    
+    /**
+     * Prunes entries not used for longer than the max age and then the least
+     * recently used entries until the cache is no bigger than its max size.
+     * Anything a previous prune failed to delete is deleted too.
+     * @param keepNames The names of entries never to prune (e.g. of the
+     *      project currently running)
+     * @return The entries pruned
+     */
+    public List<Entry> prune(Set<String> keepNames) {
+        deleteTrash();
+        
+        List<Entry> entries = entries();
+        List<Entry> pruned = new ArrayList<>();
+        
+        long now = System.currentTimeMillis();
+        long size = 0;
+        
+        for (Entry entry : entries) {
+            size += entry.getSize();
+        }
+        
+        // least recently used first
+        for (Entry entry : entries) {
+            boolean expired = entry.getLastUsed() < now - this.maxAgeMillis;
+            
+            if (!expired && size <= this.maxSize) {
+                break;
+            }
+            
+            if (keepNames.contains(entry.getName()) || entry.getLastUsed() >= now - TOUCH_INTERVAL_MILLIS) {
+                continue;
+            }
+            
+            if (delete(entry.getDir())) {
+                size -= entry.getSize();
+                pruned.add(entry);
+                log.trace("Pruned {} (last used {})", entry.getDir(), FileTime.fromMillis(entry.getLastUsed()));
+            }
+        }
+        
+        return pruned;
+    }
+    
+    /**
+     * Whether a day has passed since the cache was last pruned.
+     * @return True if due
+     */
+    public boolean isPruneDue() {
+        try {
+            Path prunedFile = this.engineDir.resolve(PRUNED_FILE);
+            return Files.notExists(prunedFile)
+                || Files.getLastModifiedTime(prunedFile).toMillis() < System.currentTimeMillis() - PRUNE_INTERVAL_MILLIS;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+    
+    private void markPruned() throws IOException {
+        Path prunedFile = this.engineDir.resolve(PRUNED_FILE);
+        
+        Files.createDirectories(this.engineDir);
+        
+        if (Files.notExists(prunedFile)) {
+            Files.createFile(prunedFile);
+        }
+        
+        Files.setLastModifiedTime(prunedFile, FileTime.fromMillis(System.currentTimeMillis()));
+    }
+    
+    /**
+     * Prunes on a background (daemon) thread if a day has passed since the
+     * cache was last pruned.  Marked as pruned up front so concurrent runs of
+     * blaze do not all prune at once.
+     * @param keepNames The names of entries never to prune
+     */
+    public void pruneInBackground(Set<String> keepNames) {
+        if (!isPruneDue()) {
+            return;
+        }
+        
+        try {
+            markPruned();
+        } catch (IOException e) {
+            log.debug("Unable to mark {} as pruned ({})", this.engineDir, e.getMessage());
+            return;
+        }
+        
+        Thread thread = new Thread(() -> {
+            try {
+                List<Entry> pruned = prune(keepNames);
+                if (!pruned.isEmpty()) {
+                    log.debug("Pruned {} engine cache entries", pruned.size());
+                }
+            } catch (RuntimeException e) {
+                log.debug("Unable to prune {} ({})", this.engineDir, e.getMessage());
+            }
+        }, "blaze-cache-prune");
+        
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+    
+    private boolean delete(Path entryDir) {
+        // out of the way first so a partial delete is never used
+        Path trashDir = entryDir.resolveSibling(TRASH_PREFIX + entryDir.getFileName() + "-" + System.nanoTime());
+        
+        try {
+            Files.move(entryDir, trashDir);
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException e) {
+            log.warn("Unable to prune {} ({})", entryDir, e.getMessage());
+            return false;
+        }
+        
+        deleteRecursively(trashDir);
+        
+        return true;
+    }
+    
+    private void deleteTrash() {
+        for (Path dir : list(this.engineDir)) {
+            for (Path trashDir : list(dir)) {
+                if (trashDir.getFileName().toString().startsWith(TRASH_PREFIX)) {
+                    deleteRecursively(trashDir);
+                }
+            }
+        }
+    }
+    
+    static private void deleteRecursively(Path dir) {
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.deleteIfExists(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                    Files.deleteIfExists(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Unable to delete {} ({})", dir, e.getMessage());
+        }
+    }
+    
+    static private List<Path> list(Path dir) {
+        if (!Files.isDirectory(dir)) {
+            return Collections.emptyList();
+        }
+        
+        List<Path> paths = new ArrayList<>();
+        
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path path : stream) {
+                paths.add(path);
+            }
+        } catch (IOException e) {
+            log.debug("Unable to list {} ({})", dir, e.getMessage());
+        }
+        
+        return paths;
+    }
+    
+    // size in bytes and number of files
+    static private long[] usage(Path dir) throws IOException {
+        long[] usage = new long[2];
+        
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                usage[0] += attrs.size();
+                usage[1]++;
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // deleted concurrently
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        
+        return usage;
+    }
+    
+    static public class Entry {
+        
+        private final String engine;
+        private final Path dir;
+        private final long size;
+        private final long files;
+        private final long lastUsed;
+
+        public Entry(String engine, Path dir, long size, long files, long lastUsed) {
+            this.engine = engine;
+            this.dir = dir;
+            this.size = size;
+            this.files = files;
+            this.lastUsed = lastUsed;
+        }
+
+        public String getEngine() {
+            return engine;
+        }
+
+        public String getName() {
+            return dir.getFileName().toString();
+        }
+        
+        public Path getDir() {
+            return dir;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getFiles() {
+            return files;
+        }
+
+        public long getLastUsed() {
+            return lastUsed;
+        }
+        
+    }
+    
+}
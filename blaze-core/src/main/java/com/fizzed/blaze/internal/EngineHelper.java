@@ -15,25 +15,108 @@
  */
 package com.fizzed.blaze.internal;
 
+import com.fizzed.blaze.core.BlazeException;
 import com.fizzed.blaze.core.Engine;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 import java.util.ServiceLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Finds the engine for a file extension.  Engine modules describe which
+ * extensions they handle in a META-INF/blaze/engines.properties resource
+ * (extension = engine class) so only the matching engine is ever loaded and
+ * instantiated.  Engines without that resource are still found by iterating
+ * the ServiceLoader of <code>Engine</code>.
+ */
 public class EngineHelper {
     static private final Logger log = LoggerFactory.getLogger(EngineHelper.class);
+    
+    static public final String ENGINES_RESOURCE = "META-INF/blaze/engines.properties";
  
-    private static final ServiceLoader<Engine> ENGINE_LOADER
-        = ServiceLoader.load(Engine.class, ClassLoaderHelper.currentThreadContextClassLoader());
+    private static ClassLoader registryClassLoader;
+    private static Map<String,String> engineClassNames;
+    private static final Map<String,Engine> ENGINES = new HashMap<>();
+    
+    static public synchronized Engine findByFileExtension(String fileExtension, boolean invalidateCache) {
+        ClassLoader classLoader = ClassLoaderHelper.currentThreadContextClassLoader();
+        
+        // a different context classloader (e.g. a fresh one per project in
+        // the daemon) needs its own engines
+        if (registryClassLoader != classLoader) {
+            registryClassLoader = classLoader;
+            engineClassNames = null;
+            ENGINES.clear();
+        }
+        
+        // jars added to the classloader may include more engines
+        if (engineClassNames == null || invalidateCache) {
+            engineClassNames = loadEngineClassNames(classLoader);
+        }
+        
+        String className = engineClassNames.get(fileExtension);
+        
+        if (className != null) {
+            Engine engine = ENGINES.get(className);
+            if (engine == null) {
+                engine = newEngine(classLoader, className);
+                ENGINES.put(className, engine);
+            }
+            return engine;
+        }
+        
+        return findByServiceLoader(classLoader, fileExtension);
+    }
     
-    static public Engine findByFileExtension(String fileExtension, boolean invalidateCache) {
-        if (invalidateCache) {
-            ENGINE_LOADER.reload();
+    static public Map<String,String> loadEngineClassNames(ClassLoader classLoader) {
+        Map<String,String> classNames = new HashMap<>();
+        
+        try {
+            Enumeration<URL> urls = classLoader.getResources(ENGINES_RESOURCE);
+            
+            while (urls.hasMoreElements()) {
+                URL url = urls.nextElement();
+                
+                Properties properties = new Properties();
+                try (InputStream input = url.openStream()) {
+                    properties.load(input);
+                }
+                
+                for (String ext : properties.stringPropertyNames()) {
+                    // first on classpath wins (same as service loader)
+                    classNames.putIfAbsent(ext.trim(), properties.getProperty(ext).trim());
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Unable to load {} ({})", ENGINES_RESOURCE, e.getMessage());
         }
         
-        Iterator<Engine> iterator = ENGINE_LOADER.iterator();
+        log.trace("Engines by file extension {}", classNames);
+        
+        return classNames;
+    }
+    
+    static private Engine newEngine(ClassLoader classLoader, String className) {
+        try {
+            return Class.forName(className, true, classLoader)
+                .asSubclass(Engine.class)
+                .getDeclaredConstructor()
+                .newInstance();
+        } catch (ReflectiveOperationException | ClassCastException | LinkageError e) {
+            throw new BlazeException("Unable to create engine " + className, e);
+        }
+    }
+    
+    static private Engine findByServiceLoader(ClassLoader classLoader, String fileExtension) {
+        Iterator<Engine> iterator = ServiceLoader.load(Engine.class, classLoader).iterator();
 
         while (iterator.hasNext()) {
             Engine engine = iterator.next();
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.internal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches a directory tree for changed files using a WatchService.  Files are
+ * matched with globs relative to the root like a Globber.  Directories that
+ * are excluded are not watched at all (e.g. target/**) and new directories
+ * are watched as they are created.  Directories that must always be watched
+ * (e.g. a hidden .blaze script dir) can be given and everything in them is
+ * matched regardless of the includes and excludes.
+ * 
+ * @author joelauer
+ */
+public class FileWatcher implements Closeable {
+    static private final Logger log = LoggerFactory.getLogger(FileWatcher.class);
+    
+    private final Path root;
+    private final List<PathMatcher> includes;
+    private final List<PathMatcher> excludes;
+    private final List<Path> alwaysIncluded;
+    private final WatchService watchService;
+    private final Map<WatchKey,Path> keys;
+
+    public FileWatcher(Path root, List<String> includes, List<String> excludes) throws IOException {
+        this(root, includes, excludes, Collections.emptyList());
+    }
+    
+    public FileWatcher(Path root, List<String> includes, List<String> excludes, List<Path> alwaysIncluded) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        this.includes = matchers(includes);
+        this.excludes = matchers(excludes);
+        this.alwaysIncluded = new ArrayList<>();
+        for (Path dir : alwaysIncluded) {
+            this.alwaysIncluded.add(dir.toAbsolutePath().normalize());
+        }
+        this.watchService = this.root.getFileSystem().newWatchService();
+        this.keys = new HashMap<>();
+        register(this.root);
+        for (Path dir : this.alwaysIncluded) {
+            // may be nested in an excluded dir the walk of the root skipped
+            if (Files.isDirectory(dir)) {
+                register(dir);
+            }
+        }
+    }
+    
+    static private List<PathMatcher> matchers(List<String> globs) {
+        List<PathMatcher> matchers = new ArrayList<>();
+        for (String glob : globs) {
+            matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+        }
+        return matchers;
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+    
+    public int getWatchedDirCount() {
+        return this.keys.size();
+    }
+    
+    private void register(Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attrs) throws IOException {
+                if (!path.equals(root) && !isAlwaysIncluded(path) && isExcludedDir(root.relativize(path))) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                
+                WatchKey key = path.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+                
+                keys.put(key, path);
+                
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+    
+    private boolean isExcludedDir(Path relativized) {
+        // e.g. "target/**" excludes everything in target so skip target too
+        Path child = relativized.resolve("_");
+        for (PathMatcher exclude : this.excludes) {
+            if (exclude.matches(relativized) || exclude.matches(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private boolean isAlwaysIncluded(Path path) {
+        for (Path dir : this.alwaysIncluded) {
+            if (path.startsWith(dir)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private boolean isIncluded(Path path) {
+        return isAlwaysIncluded(path) || matches(this.root.relativize(path));
+    }
+    
+    public boolean matches(Path relativized) {
+        boolean matched = false;
+        
+        for (PathMatcher include : this.includes) {
+            if (include.matches(relativized)) {
+                matched = true;
+                break;
+            }
+        }
+        
+        if (matched) {
+            for (PathMatcher exclude : this.excludes) {
+                if (exclude.matches(relativized)) {
+                    return false;
+                }
+            }
+        }
+        
+        return matched;
+    }
+    
+    /**
+     * Waits for at least one matching file to change, then keeps collecting
+     * changes until none happened for the quiet period (so a burst of events
+     * such as a save from an IDE or a git checkout is reported at once).
+     * @param quietMillis The debounce period
+     * @return The absolute paths of the changed files
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public Set<Path> take(long quietMillis) throws InterruptedException {
+        Set<Path> changed = new LinkedHashSet<>();
+        
+        WatchKey key = this.watchService.take();
+        
+        while (true) {
+            if (key != null) {
+                process(key, changed);
+            }
+            
+            key = this.watchService.poll(quietMillis, TimeUnit.MILLISECONDS);
+            
+            if (key == null) {
+                if (!changed.isEmpty()) {
+                    return changed;
+                }
+                // nothing matched yet
+                key = this.watchService.take();
+            }
+        }
+    }
+    
+    private void process(WatchKey key, Set<Path> changed) {
+        Path dir = this.keys.get(key);
+        
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // events were lost so anything may have changed
+                log.debug("Watch events overflowed for {}", dir);
+                changed.add(dir != null ? dir : this.root);
+                continue;
+            }
+            
+            if (dir == null) {
+                continue;
+            }
+            
+            Path path = dir.resolve((Path)event.context());
+            Path relativized = this.root.relativize(path);
+            
+            if (Files.isDirectory(path)) {
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                        && (isAlwaysIncluded(path) || !isExcludedDir(relativized))) {
+                    // files may have been created before the dir was watched
+                    try (Stream<Path> files = Files.walk(path)) {
+                        register(path);
+                        files.filter((p) -> Files.isRegularFile(p) && isIncluded(p))
+                            .forEach(changed::add);
+                    } catch (IOException e) {
+                        log.warn("Unable to watch {} ({})", path, e.getMessage());
+                    }
+                }
+                continue;
+            }
+            
+            if (isIncluded(path)) {
+                changed.add(path);
+            }
+        }
+        
+        if (!key.reset()) {
+            // directory no longer exists
+            this.keys.remove(key);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.watchService.close();
+    }
+    
+}
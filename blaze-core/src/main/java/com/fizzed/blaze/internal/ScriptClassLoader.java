@@ -0,0 +1,492 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Classloader that dependencies and compiled scripts are added to.  One is
+ * built per script.  Unlike a plain URLClassLoader, urls can be added without
+ * reflection (which Java 9+ no longer permits on the system classloader),
+ * duplicates are detected with a hashed index rather than a scan of every url
+ * and jars are indexed by package so finding a class or resource only probes
+ * the jars that actually contain its package.
+ * 
+ * Classes compiled in memory (e.g. java scripts) can be added directly.
+ * Directories (e.g. scripts compiled by other engines) are delegated to the
+ * underlying URLClassLoader as usual.
+ * 
+ * Like a URLClassLoader, jars listed in the Class-Path of a jar's manifest are
+ * added as well and multi-release jars resolve the classes of the running
+ * version of Java (9+).
+ * 
+ * @author joelauer
+ */
+public class ScriptClassLoader extends URLClassLoader {
+    static private final Logger log = LoggerFactory.getLogger(ScriptClassLoader.class);
+    
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+    
+    static private final String VERSIONS_DIR = "META-INF/versions/";
+    
+    // java 9+ (null on java 8)
+    static private final Object RUNTIME_VERSION = runtimeVersion();
+    static private final int RUNTIME_FEATURE = runtimeFeature(RUNTIME_VERSION);
+    static private final Constructor<JarFile> VERSIONED_JAR_FILE = versionedJarFileConstructor(RUNTIME_VERSION);
+    
+    static private Object runtimeVersion() {
+        try {
+            return Runtime.class.getMethod("version").invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+    
+    static private int runtimeFeature(Object version) {
+        if (version == null) {
+            return 8;
+        }
+        try {
+            return (Integer)version.getClass().getMethod("major").invoke(version);
+        } catch (Exception e) {
+            return 9;
+        }
+    }
+    
+    static private Constructor<JarFile> versionedJarFileConstructor(Object version) {
+        if (version == null) {
+            return null;
+        }
+        try {
+            return JarFile.class.getConstructor(File.class, boolean.class, int.class, version.getClass());
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+    
+    static private JarFile openJar(File file) throws IOException {
+        if (VERSIONED_JAR_FILE != null) {
+            try {
+                // entries of multi-release jars resolve to the running version
+                return VERSIONED_JAR_FILE.newInstance(file, true, ZipFile.OPEN_READ, RUNTIME_VERSION);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException)e.getCause();
+                }
+                throw new IOException(e.getCause());
+            } catch (InstantiationException | IllegalAccessException e) {
+                throw new IOException(e);
+            }
+        }
+        return new JarFile(file);
+    }
+    
+    private final Set<String> keys;
+    private final List<URL> urls;
+    private final List<IndexedJar> jars;
+    private final Map<String,List<IndexedJar>> packages;
+    private final Map<String,byte[]> memoryClasses;
+    private final Map<String,byte[]> addedClasses;
+    private volatile CodeSource memoryCodeSource;
+    
+    public ScriptClassLoader(ClassLoader parent) {
+        super(new URL[0], parent);
+        this.keys = new HashSet<>();
+        this.urls = new CopyOnWriteArrayList<>();
+        this.jars = new CopyOnWriteArrayList<>();
+        this.packages = new ConcurrentHashMap<>();
+        this.memoryClasses = new ConcurrentHashMap<>();
+        this.addedClasses = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Finds the classloader a new script classloader should be a child of.
+     * Any script classloaders (e.g. from a previously built script on the same
+     * thread) are skipped so they never chain together.
+     * @param classLoader The classloader to start with
+     * @return The first ancestor that is not a script classloader
+     */
+    static public ClassLoader parentOf(ClassLoader classLoader) {
+        while (classLoader instanceof ScriptClassLoader) {
+            classLoader = classLoader.getParent();
+        }
+        return classLoader;
+    }
+    
+    @Override
+    public void addURL(URL url) {
+        addClassPath(url);
+    }
+    
+    public boolean addClassPath(File file) {
+        try {
+            return addClassPath(file.toURI().toURL());
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("Unable to add " + file + " to classpath", e);
+        }
+    }
+    
+    /**
+     * Adds the url to the classpath unless its already present.
+     * @param url The url of a jar or directory
+     * @return True if added or false if it was a duplicate
+     */
+    public boolean addClassPath(URL url) {
+        synchronized (this.keys) {
+            if (!this.keys.add(key(url))) {
+                log.trace("URL {} already on classpath", url);
+                return false;
+            }
+            
+            this.urls.add(url);
+            
+            File file = toFile(url);
+            
+            if (file != null && file.isFile()) {
+                try {
+                    IndexedJar jar = new IndexedJar(url, openJar(file));
+                    index(jar);
+                    for (URL classPathUrl : jar.classPath()) {
+                        addClassPath(classPathUrl);
+                    }
+                    return true;
+                } catch (IOException e) {
+                    log.warn("Unable to index {} ({})", file, e.getMessage());
+                }
+            }
+            
+            super.addURL(url);
+            return true;
+        }
+    }
+    
+    private void index(IndexedJar jar) {
+        Set<String> dirs = new HashSet<>();
+        
+        Enumeration<JarEntry> entries = jar.file.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (!entry.isDirectory()) {
+                dirs.add(directoryOf(entry.getName()));
+                // versioned entries are also looked up by their base name
+                String baseName = versionedBaseName(entry.getName());
+                if (baseName != null) {
+                    dirs.add(directoryOf(baseName));
+                }
+            }
+        }
+        
+        for (String dir : dirs) {
+            this.packages.computeIfAbsent(dir, (k) -> new CopyOnWriteArrayList<>()).add(jar);
+        }
+        
+        this.jars.add(jar);
+    }
+    
+    /**
+     * Adds classes compiled in memory (e.g. a script) that will be defined by
+     * this classloader once they are loaded.
+     * @param location The location the classes came from (e.g. a cache file)
+     * @param classes The bytecode by binary class name
+     */
+    public void addClasses(URL location, Map<String,byte[]> classes) {
+        this.memoryCodeSource = new CodeSource(location, (CodeSigner[])null);
+        this.memoryClasses.putAll(classes);
+        this.addedClasses.putAll(classes);
+    }
+    
+    /**
+     * Gets every class added in memory (whether loaded yet or not).
+     * @return The bytecode by binary class name
+     */
+    public Map<String,byte[]> getClasses() {
+        return Collections.unmodifiableMap(this.addedClasses);
+    }
+    
+    static private String key(URL url) {
+        try {
+            return url.toURI().normalize().toString();
+        } catch (URISyntaxException e) {
+            return url.toExternalForm();
+        }
+    }
+    
+    static private File toFile(URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * The base name of an entry of a multi-release jar that the running
+     * version of java uses (e.g. a/B.class for META-INF/versions/11/a/B.class
+     * on java 11+).
+     * @return The base name or null if not a versioned entry or not used
+     */
+    static private String versionedBaseName(String name) {
+        if (RUNTIME_VERSION == null || !name.startsWith(VERSIONS_DIR)) {
+            return null;
+        }
+        int pos = name.indexOf('/', VERSIONS_DIR.length());
+        if (pos < 0) {
+            return null;
+        }
+        try {
+            int version = Integer.parseInt(name.substring(VERSIONS_DIR.length(), pos));
+            return (version <= RUNTIME_FEATURE ? name.substring(pos + 1) : null);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    static private String directoryOf(String name) {
+        int pos = name.lastIndexOf('/');
+        return (pos < 0 ? "" : name.substring(0, pos));
+    }
+    
+    /**
+     * Gets every url of this classloader (jars and directories) in the order
+     * they were added.
+     * @return The urls
+     */
+    @Override
+    public URL[] getURLs() {
+        return this.urls.toArray(new URL[0]);
+    }
+    
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        byte[] bytes = this.memoryClasses.remove(name);
+        
+        if (bytes != null) {
+            int pos = name.lastIndexOf('.');
+            if (pos > 0 && getPackage(name.substring(0, pos)) == null) {
+                try {
+                    definePackage(name.substring(0, pos), null, null, null, null, null, null, null);
+                } catch (IllegalArgumentException e) {
+                    // defined concurrently by another thread
+                }
+            }
+            return defineClass(name, bytes, 0, bytes.length, this.memoryCodeSource);
+        }
+        
+        String path = name.replace('.', '/').concat(".class");
+        
+        List<IndexedJar> candidates = this.packages.get(directoryOf(path));
+        
+        if (candidates != null) {
+            for (IndexedJar jar : candidates) {
+                JarEntry entry = jar.file.getJarEntry(path);
+                if (entry != null) {
+                    return defineClass(name, jar, entry);
+                }
+            }
+        }
+        
+        return super.findClass(name);
+    }
+    
+    private Class<?> defineClass(String name, IndexedJar jar, JarEntry entry) throws ClassNotFoundException {
+        byte[] bytes;
+        try (InputStream input = jar.file.getInputStream(entry)) {
+            bytes = readAllBytes(input, (int)entry.getSize());
+        } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+        
+        int pos = name.lastIndexOf('.');
+        if (pos > 0) {
+            definePackageIfNeeded(name.substring(0, pos), jar);
+        }
+        
+        // signers are only available once the entry was fully read
+        CodeSource codeSource = new CodeSource(jar.url, entry.getCodeSigners());
+        
+        return defineClass(name, bytes, 0, bytes.length, codeSource);
+    }
+    
+    private void definePackageIfNeeded(String packageName, IndexedJar jar) {
+        if (getPackage(packageName) != null) {
+            return;
+        }
+        
+        try {
+            Manifest manifest = jar.manifest();
+            if (manifest != null) {
+                definePackage(packageName, manifest, jar.url);
+            } else {
+                definePackage(packageName, null, null, null, null, null, null, null);
+            }
+        } catch (IllegalArgumentException e) {
+            // defined concurrently by another thread
+        }
+    }
+    
+    static private byte[] readAllBytes(InputStream input, int size) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(size > 0 ? size : 4096);
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) >= 0) {
+            baos.write(buffer, 0, read);
+        }
+        return baos.toByteArray();
+    }
+    
+    @Override
+    public URL findResource(String name) {
+        List<IndexedJar> candidates = this.packages.get(directoryOf(name));
+        
+        if (candidates != null) {
+            for (IndexedJar jar : candidates) {
+                URL url = jar.resource(name);
+                if (url != null) {
+                    return url;
+                }
+            }
+        }
+        
+        return super.findResource(name);
+    }
+
+    @Override
+    public Enumeration<URL> findResources(String name) throws IOException {
+        List<URL> resources = new ArrayList<>();
+        
+        List<IndexedJar> candidates = this.packages.get(directoryOf(name));
+        
+        if (candidates != null) {
+            for (IndexedJar jar : candidates) {
+                URL url = jar.resource(name);
+                if (url != null) {
+                    resources.add(url);
+                }
+            }
+        }
+        
+        resources.addAll(Collections.list(super.findResources(name)));
+        
+        return Collections.enumeration(resources);
+    }
+    
+    @Override
+    public void close() throws IOException {
+        for (IndexedJar jar : this.jars) {
+            try {
+                jar.file.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        super.close();
+    }
+    
+    static private class IndexedJar {
+        
+        private final URL url;
+        private final JarFile file;
+        private volatile Manifest manifest;
+        private volatile boolean manifestLoaded;
+
+        public IndexedJar(URL url, JarFile file) {
+            this.url = url;
+            this.file = file;
+        }
+        
+        public Manifest manifest() {
+            if (!this.manifestLoaded) {
+                try {
+                    this.manifest = this.file.getManifest();
+                } catch (IOException e) {
+                    // treat as no manifest
+                }
+                this.manifestLoaded = true;
+            }
+            return this.manifest;
+        }
+        
+        /**
+         * The jars listed in the Class-Path of the manifest.
+         */
+        public List<URL> classPath() {
+            List<URL> classPath = new ArrayList<>();
+            
+            Manifest m = manifest();
+            String value = (m != null ? m.getMainAttributes().getValue(Attributes.Name.CLASS_PATH) : null);
+            
+            if (value != null) {
+                for (String path : value.trim().split("\\s+")) {
+                    if (!path.isEmpty()) {
+                        try {
+                            classPath.add(new URL(this.url, path));
+                        } catch (MalformedURLException e) {
+                            log.debug("Invalid Class-Path entry {} in {}", path, this.url);
+                        }
+                    }
+                }
+            }
+            
+            return classPath;
+        }
+        
+        public URL resource(String name) {
+            if (this.file.getEntry(name) == null) {
+                return null;
+            }
+            try {
+                return new URL("jar:" + this.url.toExternalForm() + "!/" + name);
+            } catch (MalformedURLException e) {
+                return null;
+            }
+        }
+        
+    }
+    
+}
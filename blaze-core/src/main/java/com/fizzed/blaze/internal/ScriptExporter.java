@@ -0,0 +1,365 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.internal;
+
+import com.fizzed.blaze.Context;
+import com.fizzed.blaze.Version;
+import com.fizzed.blaze.core.Blaze;
+import com.fizzed.blaze.core.MessageOnlyException;
+import com.fizzed.blaze.jdk.TargetObjectScript;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exports a compiled script, its dependencies and blaze itself as a single
+ * executable jar.  Running the jar builds blaze straight from the compiled
+ * script object so dependencies are never resolved and the script is never
+ * compiled again (e.g. for ephemeral CI containers).
+ * 
+ * Entries are collected in classpath order (blaze, dependencies and then the
+ * compiled script) and the first one wins, exactly like the classloader the
+ * script ran with.  Service files and reference.conf files are merged instead
+ * and signatures are dropped. Entries are sorted and have a fixed time so the
+ * same script always exports the same jar.
+ * 
+ * @author joelauer
+ */
+public class ScriptExporter {
+    static private final Logger log = LoggerFactory.getLogger(ScriptExporter.class);
+    
+    static public final String MAIN_CLASS = "com.fizzed.blaze.cli.ExportedBootstrap";
+    static public final String EXPORT_PROPERTIES = "META-INF/blaze/export.properties";
+    static public final String EXPORT_CONFIG = "META-INF/blaze/script.conf";
+    
+    // 2000-01-01 (zip times before 1980 are not supported)
+    static private final long ENTRY_TIME = 946684800000L;
+    
+    private final Blaze blaze;
+    private final Map<String,Entry> entries;
+    private final Map<File,JarFile> jars;
+    private int duplicates;
+
+    public ScriptExporter(Blaze blaze) {
+        this.blaze = blaze;
+        this.entries = new TreeMap<>();
+        this.jars = new HashMap<>();
+    }
+    
+    /**
+     * Exports the script as an executable jar.
+     * @param jarFile The jar file to write
+     * @return The number of entries written
+     * @throws IOException If a jar could not be read or written
+     */
+    public int export(Path jarFile) throws IOException {
+        try {
+            return doExport(jarFile);
+        } finally {
+            for (JarFile jar : this.jars.values()) {
+                jar.close();
+            }
+            this.jars.clear();
+        }
+    }
+    
+    private int doExport(Path jarFile) throws IOException {
+        Context context = this.blaze.context();
+        
+        if (this.blaze.engine() == null || context.scriptFile() == null
+                || !(this.blaze.script() instanceof TargetObjectScript)) {
+            throw new MessageOnlyException("Unable to export a script that was not compiled from a file");
+        }
+        
+        Object targetObject = ((TargetObjectScript)this.blaze.script()).getTargetObject();
+        
+        // e.g. a groovy script needs its engine to run
+        if (!Arrays.asList("java", "kotlin").contains(this.blaze.engine().getName())) {
+            throw new MessageOnlyException("Unable to export a " + this.blaze.engine().getName()
+                + " script (only scripts compiled to plain classes such as .java or .kt can be exported)");
+        }
+        
+        ClassLoader classLoader = targetObject.getClass().getClassLoader();
+        
+        // blaze itself, dependencies and scripts compiled to a directory
+        for (File file : ClassLoaderHelper.buildClassPathAsFiles(classLoader)) {
+            if (file.isDirectory()) {
+                addDirectory(file.toPath());
+            } else if (file.isFile()) {
+                addJar(file);
+            }
+        }
+        
+        // scripts compiled in memory
+        if (classLoader instanceof ScriptClassLoader) {
+            for (Map.Entry<String,byte[]> entry : ((ScriptClassLoader)classLoader).getClasses().entrySet()) {
+                add(entry.getKey().replace('.', '/') + ".class", new Entry(entry.getValue()));
+            }
+        }
+        
+        Properties properties = new Properties();
+        properties.setProperty("script.class", targetObject.getClass().getName());
+        properties.setProperty("script.file", context.scriptFile().toString());
+        properties.setProperty("blaze.version", Version.getVersion());
+        if (context.baseDir() != null) {
+            properties.setProperty("base.dir", context.baseDir().toString());
+        }
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        properties.store(baos, null);
+        // no date comment so the same script exports the same jar
+        String stored = new String(baos.toByteArray(), StandardCharsets.ISO_8859_1).replaceFirst("^#.*\\R", "");
+        this.entries.put(EXPORT_PROPERTIES, new Entry(stored.getBytes(StandardCharsets.ISO_8859_1)));
+        
+        Path configFile = ConfigHelper.path(context.scriptFile().getParent(), context.scriptFile());
+        if (Files.exists(configFile)) {
+            this.entries.put(EXPORT_CONFIG, new Entry(Files.readAllBytes(configFile)));
+        }
+        
+        log.debug("Skipped {} duplicate entries", this.duplicates);
+        
+        write(jarFile);
+        
+        return this.entries.size();
+    }
+    
+    private JarFile jar(File file) throws IOException {
+        JarFile jar = this.jars.get(file);
+        if (jar == null) {
+            jar = new JarFile(file);
+            this.jars.put(file, jar);
+        }
+        return jar;
+    }
+    
+    private void addJar(File file) throws IOException {
+        JarFile jar;
+        try {
+            jar = jar(file);
+        } catch (IOException e) {
+            // e.g. the classes file of a script
+            log.trace("Skipping {} (not a jar)", file);
+            return;
+        }
+        
+        for (JarEntry jarEntry : Collections.list(jar.entries())) {
+            if (!jarEntry.isDirectory()) {
+                add(jarEntry.getName(), new Entry(file, jarEntry.getName()));
+            }
+        }
+        
+        // e.g. a launcher jar that only references the actual classpath
+        Manifest manifest = jar.getManifest();
+        String classPath = (manifest != null ? manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH) : null);
+        
+        if (classPath != null) {
+            for (String element : classPath.trim().split("\\s+")) {
+                File elementFile;
+                try {
+                    elementFile = new File(new URL(file.toURI().toURL(), element).toURI());
+                } catch (MalformedURLException | URISyntaxException | IllegalArgumentException e) {
+                    log.trace("Skipping classpath element {} of {}", element, file);
+                    continue;
+                }
+                if (elementFile.isDirectory()) {
+                    addDirectory(elementFile.toPath());
+                } else if (elementFile.isFile() && !this.jars.containsKey(elementFile)) {
+                    addJar(elementFile);
+                }
+            }
+        }
+    }
+    
+    private void addDirectory(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>)files::iterator) {
+                if (Files.isRegularFile(file)) {
+                    add(dir.relativize(file).toString().replace('\\', '/'), new Entry(file.toFile(), null));
+                }
+            }
+        }
+    }
+    
+    private void add(String name, Entry entry) throws IOException {
+        String upper = name.toUpperCase();
+        
+        // replaced by ours or invalid once merged
+        if (upper.equals("META-INF/MANIFEST.MF") || upper.equals("META-INF/INDEX.LIST")
+                || upper.equals("MODULE-INFO.CLASS")
+                || (upper.startsWith("META-INF/") && upper.indexOf('/', 9) < 0
+                    && (upper.endsWith(".SF") || upper.endsWith(".DSA") || upper.endsWith(".RSA") || upper.endsWith(".EC")))) {
+            return;
+        }
+        
+        Entry existing = this.entries.get(name);
+        
+        if (existing == null) {
+            this.entries.put(name, entry);
+        } else if (name.startsWith("META-INF/services/") || name.equals("reference.conf")) {
+            existing.merge(entry.bytes(), name.equals("reference.conf"));
+        } else {
+            this.duplicates++;
+        }
+    }
+    
+    private void write(Path jarFile) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, MAIN_CLASS);
+        manifest.getMainAttributes().putValue("Created-By", "Blaze " + Version.getVersion());
+        
+        Path dir = jarFile.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        
+        // not a temp file from Files since that would only be readable by us
+        Path tempFile = dir.resolve(jarFile.getFileName() + "." + System.nanoTime() + ".tmp");
+        try {
+            try (JarOutputStream output = new JarOutputStream(Files.newOutputStream(tempFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE))) {
+                JarEntry manifestEntry = new JarEntry(JarFile.MANIFEST_NAME);
+                manifestEntry.setTime(ENTRY_TIME);
+                output.putNextEntry(manifestEntry);
+                manifest.write(output);
+                output.closeEntry();
+                
+                for (Map.Entry<String,Entry> entry : this.entries.entrySet()) {
+                    ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                    zipEntry.setTime(ENTRY_TIME);
+                    output.putNextEntry(zipEntry);
+                    entry.getValue().write(output);
+                    output.closeEntry();
+                }
+            }
+            
+            try {
+                Files.move(tempFile, jarFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, jarFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+    
+    /**
+     * Contents of an entry read lazily from a jar or file (or in memory once
+     * merged).
+     */
+    private class Entry {
+        
+        private final File file;
+        private final String jarEntryName;
+        private byte[] bytes;
+
+        public Entry(byte[] bytes) {
+            this.file = null;
+            this.jarEntryName = null;
+            this.bytes = bytes;
+        }
+        
+        public Entry(File file, String jarEntryName) {
+            this.file = file;
+            this.jarEntryName = jarEntryName;
+        }
+        
+        public byte[] bytes() throws IOException {
+            if (this.bytes != null) {
+                return this.bytes;
+            }
+            if (this.jarEntryName == null) {
+                return Files.readAllBytes(this.file.toPath());
+            }
+            JarFile jar = jar(this.file);
+            try (InputStream input = jar.getInputStream(jar.getEntry(this.jarEntryName))) {
+                return readAll(input);
+            }
+        }
+        
+        /**
+         * Merges unique lines (services) or appends everything (config).
+         */
+        public void merge(byte[] other, boolean append) throws IOException {
+            String current = new String(bytes(), StandardCharsets.UTF_8);
+            String more = new String(other, StandardCharsets.UTF_8);
+            
+            if (append) {
+                this.bytes = (current + (current.endsWith("\n") ? "" : "\n") + more).getBytes(StandardCharsets.UTF_8);
+            } else {
+                Set<String> lines = new LinkedHashSet<>();
+                for (String line : (current + "\n" + more).split("\\R")) {
+                    if (!line.trim().isEmpty()) {
+                        lines.add(line.trim());
+                    }
+                }
+                this.bytes = (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8);
+            }
+        }
+        
+        public void write(OutputStream output) throws IOException {
+            if (this.bytes != null || this.jarEntryName == null) {
+                output.write(bytes());
+                return;
+            }
+            // streamed so large dependencies are never held in memory
+            JarFile jar = jar(this.file);
+            try (InputStream input = jar.getInputStream(jar.getEntry(this.jarEntryName))) {
+                byte[] buffer = new byte[16384];
+                int read;
+                while ((read = input.read(buffer)) > 0) {
+                    output.write(buffer, 0, read);
+                }
+            }
+        }
+        
+        private byte[] readAll(InputStream input) throws IOException {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[16384];
+            int read;
+            while ((read = input.read(buffer)) > 0) {
+                baos.write(buffer, 0, read);
+            }
+            return baos.toByteArray();
+        }
+    }
+    
+}
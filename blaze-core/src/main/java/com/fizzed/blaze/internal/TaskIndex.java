@@ -0,0 +1,168 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.internal;
+
+import com.fizzed.blaze.Context;
+import com.fizzed.blaze.Version;
+import com.fizzed.blaze.core.BlazeTask;
+import com.fizzed.blaze.core.CompileCache;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An index of the tasks (name, description and order) of a script saved next
+ * to the compile caches of the engines whenever a script is built.  Listing
+ * the tasks of a script (e.g. for shell completion) only needs the index as
+ * long as neither the script nor its config changed since, which skips
+ * resolving dependencies and compiling entirely.
+ * 
+ * @author joelauer
+ */
+public class TaskIndex {
+    static private final Logger log = LoggerFactory.getLogger(TaskIndex.class);
+    
+    static public Path file(Context context) throws IOException {
+        // ~/.blaze/engine/index/{md5}/blaze.java.index
+        return ConfigHelper.userBlazeEngineScriptDir(context, "index")
+            .resolve(context.scriptFile().getFileName().toString() + ".index");
+    }
+    
+    /**
+     * Reads the tasks of the script in the context.
+     * @param context The context of the script
+     * @return The tasks (sorted) or null if not indexed or the index is stale
+     */
+    static public List<BlazeTask> read(Context context) {
+        if (context.scriptFile() == null) {
+            return null;
+        }
+        
+        try {
+            Path indexFile = file(context);
+            
+            if (Files.notExists(indexFile)) {
+                return null;
+            }
+            
+            Properties index = new Properties();
+            try (InputStream input = Files.newInputStream(indexFile)) {
+                index.load(input);
+            }
+            
+            if (!stamp(context).equals(index.getProperty("stamp"))) {
+                log.trace("Task index {} is stale", indexFile);
+                return null;
+            }
+            
+            int count = Integer.parseInt(index.getProperty("count", "-1"));
+            
+            if (count < 0) {
+                return null;
+            }
+            
+            List<BlazeTask> tasks = new ArrayList<>(count);
+            
+            for (int i = 0; i < count; i++) {
+                String name = index.getProperty("task." + i + ".name");
+                String description = index.getProperty("task." + i + ".description");
+                int order = Integer.parseInt(index.getProperty("task." + i + ".order", "0"));
+                
+                if (name == null) {
+                    return null;
+                }
+                
+                tasks.add(new BlazeTask(name, description, order));
+            }
+            
+            return tasks;
+        } catch (IOException | NumberFormatException e) {
+            log.debug("Unable to read task index (ignoring it)", e);
+            return null;
+        }
+    }
+    
+    /**
+     * Saves the tasks of the script in the context.  Failures are logged and
+     * ignored.
+     * @param context The context of the script
+     * @param tasks The tasks (sorted)
+     */
+    static public void write(Context context, List<BlazeTask> tasks) {
+        if (context.scriptFile() == null) {
+            return;
+        }
+        
+        try {
+            Path indexFile = file(context);
+            
+            Properties index = new Properties();
+            index.setProperty("stamp", stamp(context));
+            index.setProperty("count", Integer.toString(tasks.size()));
+            
+            for (int i = 0; i < tasks.size(); i++) {
+                BlazeTask task = tasks.get(i);
+                index.setProperty("task." + i + ".name", task.getName());
+                if (task.getDescription() != null) {
+                    index.setProperty("task." + i + ".description", task.getDescription());
+                }
+                index.setProperty("task." + i + ".order", Integer.toString(task.getOrder()));
+            }
+            
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            index.store(baos, null);
+            CompileCache.write(indexFile, baos.toByteArray());
+            
+            log.trace("Saved task index {}", indexFile);
+        } catch (IOException e) {
+            log.debug("Unable to save task index ({})", e.getMessage());
+        }
+    }
+    
+    /**
+     * The size and last modified time of the script and its config (if any)
+     * along with the version of blaze.
+     */
+    static private String stamp(Context context) throws IOException {
+        Path scriptFile = context.scriptFile();
+        Path configFile = ConfigHelper.path(scriptFile.getParent(), scriptFile);
+        
+        return new StringBuilder()
+            .append(Version.getVersion())
+            .append(",")
+            .append(stamp(scriptFile))
+            .append(",")
+            .append(stamp(configFile))
+            .toString();
+    }
+    
+    static private String stamp(Path file) throws IOException {
+        if (Files.notExists(file)) {
+            return "-";
+        }
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        return attrs.size() + ":" + attrs.lastModifiedTime().toMillis();
+    }
+    
+}
@@ -0,0 +1,403 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.internal;
+
+import com.fizzed.blaze.Context;
+import com.fizzed.blaze.core.BlazeTask;
+import com.fizzed.blaze.util.Globber;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks the input and output files of a task so it can be skipped if nothing
+ * changed since its last successful run.  The manifest records the size, last
+ * modified time and md5 hash of every file matched by the input and output
+ * globs.  A file whose size and last modified time are unchanged re-uses its
+ * previous hash so only changed files are read (in parallel).  The hash of
+ * the script is recorded as well since editing the task itself (rather than
+ * its inputs) must also make it run again.
+ * 
+ * Manifests are stored as one file per script and task (and globs) in
+ * ~/.blaze/cache/tasks.
+ * 
+ * @author joelauer
+ */
+public class TaskManifest {
+    static private final Logger log = LoggerFactory.getLogger(TaskManifest.class);
+    
+    static private final String INPUT_PREFIX = "input:";
+    static private final String OUTPUT_PREFIX = "output:";
+    static private final String SCRIPT_KEY = "script";
+    
+    private final Path file;
+    private final Path baseDir;
+    private final String scriptHash;
+    private final List<String> inputs;
+    private final List<String> outputs;
+    private Map<String,FileState> previous;
+    private String previousScriptHash;
+    private Map<String,FileState> inputStates;
+
+    public TaskManifest(Path file, Path baseDir, List<String> inputs, List<String> outputs) {
+        this(file, baseDir, null, inputs, outputs);
+    }
+    
+    public TaskManifest(Path file, Path baseDir, String scriptHash, List<String> inputs, List<String> outputs) {
+        Objects.requireNonNull(file, "file cannot be null");
+        Objects.requireNonNull(baseDir, "baseDir cannot be null");
+        this.file = file;
+        this.baseDir = baseDir;
+        this.scriptHash = scriptHash;
+        this.inputs = inputs;
+        this.outputs = outputs;
+    }
+    
+    /**
+     * Creates the manifest of a task.
+     * @param context The context of the script
+     * @param task The task
+     * @param scriptHash The hash of the content of the script
+     * @return The manifest or null if the task declares no inputs or outputs
+     */
+    static public TaskManifest of(Context context, BlazeTask task, String scriptHash) {
+        if (task.getInputs().isEmpty() && task.getOutputs().isEmpty()) {
+            return null;
+        }
+        
+        String script = (context.scriptFile() != null ? context.scriptFile().toAbsolutePath().normalize().toString() : "");
+        
+        String key = ConfigHelper.md5(script + "|" + task.getName() + "|" + task.getInputs() + "|" + task.getOutputs());
+        
+        // ~/.blaze/cache/tasks
+        Path file = context.withUserDir(".blaze/cache/tasks").resolve(key + ".properties");
+        
+        return new TaskManifest(file, context.baseDir(), scriptHash, task.getInputs(), task.getOutputs());
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public Path getBaseDir() {
+        return baseDir;
+    }
+
+    public String getScriptHash() {
+        return scriptHash;
+    }
+
+    public List<String> getOutputs() {
+        return outputs;
+    }
+    
+    /**
+     * Hash of the content of every input file (as of the last call to
+     * isUpToDate()).  Unlike the manifest, times do not affect it.
+     * @return The hash of the inputs
+     */
+    public String inputsHash() {
+        if (this.inputStates == null) {
+            this.inputStates = snapshot(this.inputs, INPUT_PREFIX, new TreeMap<>());
+        }
+        
+        StringBuilder sb = new StringBuilder();
+        this.inputStates.forEach((k, v) -> sb.append(k).append('=').append(v.hash).append('\n'));
+        
+        return ConfigHelper.md5(sb.toString());
+    }
+    
+    /**
+     * Expands the output globs to the files that currently exist.
+     * @return The output files
+     */
+    public List<Path> outputFiles() {
+        Set<Path> files = new LinkedHashSet<>();
+        
+        try {
+            for (String glob : this.outputs) {
+                files.addAll(expand(glob));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        
+        return new ArrayList<>(files);
+    }
+    
+    /**
+     * Whether the inputs and outputs are identical to the last successful run.
+     * The current state of the inputs is kept for a later call to save().
+     * @return True if the task can be skipped
+     */
+    public boolean isUpToDate() {
+        this.previous = load();
+        
+        this.inputStates = snapshot(this.inputs, INPUT_PREFIX, this.previous);
+        
+        if (this.previous.isEmpty()) {
+            return false;
+        }
+        
+        // e.g. the body of the task was edited
+        if (!Objects.equals(this.scriptHash, this.previousScriptHash)) {
+            return false;
+        }
+        
+        Map<String,FileState> current = new TreeMap<>(this.inputStates);
+        current.putAll(snapshot(this.outputs, OUTPUT_PREFIX, this.previous));
+        
+        return current.equals(this.previous);
+    }
+    
+    /**
+     * Saves the manifest after the task successfully ran.  Inputs are recorded
+     * as they were before the task ran (so any changed during the run cause
+     * it to run again) and outputs as they are now.  Failures are logged and
+     * ignored.
+     */
+    public void save() {
+        Map<String,FileState> previousStates = (this.previous != null ? this.previous : new TreeMap<>());
+        
+        Map<String,FileState> states = new TreeMap<>();
+        states.putAll(this.inputStates != null ? this.inputStates : snapshot(this.inputs, INPUT_PREFIX, previousStates));
+        states.putAll(snapshot(this.outputs, OUTPUT_PREFIX, previousStates));
+        
+        Properties properties = new Properties();
+        states.forEach((k, v) -> properties.setProperty(k, v.toString()));
+        if (this.scriptHash != null) {
+            properties.setProperty(SCRIPT_KEY, this.scriptHash);
+        }
+        
+        try {
+            Files.createDirectories(this.file.getParent());
+            
+            Path tempFile = Files.createTempFile(this.file.getParent(), this.file.getFileName().toString(), ".tmp");
+            try {
+                try (OutputStream output = Files.newOutputStream(tempFile)) {
+                    properties.store(output, "blaze task manifest");
+                }
+                try {
+                    Files.move(tempFile, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tempFile, this.file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+            
+            log.trace("Saved task manifest {}", this.file);
+        } catch (IOException e) {
+            log.warn("Unable to save task manifest {} ({})", this.file, e.getMessage());
+        }
+    }
+    
+    private Map<String,FileState> load() {
+        Map<String,FileState> states = new TreeMap<>();
+        
+        this.previousScriptHash = null;
+        
+        if (Files.notExists(this.file)) {
+            return states;
+        }
+        
+        Properties properties = new Properties();
+        
+        try (InputStream input = Files.newInputStream(this.file)) {
+            properties.load(input);
+        } catch (IOException e) {
+            log.debug("Unable to read task manifest {} (ignoring it)", this.file, e);
+            return states;
+        }
+        
+        for (String name : properties.stringPropertyNames()) {
+            if (name.equals(SCRIPT_KEY)) {
+                this.previousScriptHash = properties.getProperty(name);
+                continue;
+            }
+            FileState state = FileState.parse(properties.getProperty(name));
+            if (state == null) {
+                log.debug("Invalid task manifest {} (ignoring it)", this.file);
+                return new TreeMap<>();
+            }
+            states.put(name, state);
+        }
+        
+        return states;
+    }
+    
+    private Map<String,FileState> snapshot(List<String> globs, String prefix, Map<String,FileState> previousStates) {
+        List<Path> files = new ArrayList<>();
+        
+        try {
+            for (String glob : globs) {
+                files.addAll(expand(glob));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        
+        Map<String,FileState> states = new ConcurrentHashMap<>();
+        
+        files.parallelStream()
+            .distinct()
+            .forEach((path) -> {
+                String name = prefix + this.baseDir.relativize(path).toString().replace('\\', '/');
+                states.put(name, state(path, previousStates.get(name)));
+            });
+        
+        return new TreeMap<>(states);
+    }
+    
+    /**
+     * Expands the glob to files.  Only the directory before the first segment
+     * with a globbing character is walked (rather than the entire base dir).
+     */
+    private List<Path> expand(String glob) throws IOException {
+        String[] segments = glob.replace('\\', '/').split("/");
+        
+        Path root = this.baseDir;
+        int i = 0;
+        for (; i < segments.length; i++) {
+            if (hasGlobbingChars(segments[i])) {
+                break;
+            }
+            root = root.resolve(segments[i]);
+        }
+        
+        List<Path> files = new ArrayList<>();
+        
+        if (i >= segments.length) {
+            // no globbing at all (a plain file or directory)
+            if (Files.isRegularFile(root)) {
+                files.add(root.normalize());
+                return files;
+            }
+            if (!Files.isDirectory(root)) {
+                return files;
+            }
+            return new Globber(root).filesOnly().include("**").scan();
+        }
+        
+        if (!Files.isDirectory(root)) {
+            return files;
+        }
+        
+        String pattern = String.join("/", Arrays.copyOfRange(segments, i, segments.length));
+        
+        return new Globber(root).filesOnly().include(pattern).scan();
+    }
+    
+    static private boolean hasGlobbingChars(String segment) {
+        for (char c : Globber.JAVA_GLOBBING_CHARS) {
+            if (segment.indexOf(c) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    static private FileState state(Path path, FileState previousState) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            long size = attrs.size();
+            long modified = attrs.lastModifiedTime().toMillis();
+            
+            // fast pre-check: unchanged size and time re-uses the previous hash
+            if (previousState != null && previousState.size == size && previousState.modified == modified) {
+                return previousState;
+            }
+            
+            return new FileState(size, modified, FileHelper.md5hash(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    static private class FileState {
+        
+        private final long size;
+        private final long modified;
+        private final String hash;
+
+        public FileState(long size, long modified, String hash) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+        
+        static public FileState parse(String value) {
+            String[] values = value.split(",");
+            if (values.length != 3) {
+                return null;
+            }
+            try {
+                return new FileState(Long.parseLong(values[0]), Long.parseLong(values[1]), values[2]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return size + "," + modified + "," + hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, hash);
+        }
+
+        /**
+         * Files are equal if their content is (the time they were modified
+         * doesn't matter).
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final FileState other = (FileState)obj;
+            return this.size == other.size && Objects.equals(this.hash, other.hash);
+        }
+        
+    }
+    
+}
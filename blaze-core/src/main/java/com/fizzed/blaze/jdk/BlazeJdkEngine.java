@@ -15,23 +15,31 @@
  */
 package com.fizzed.blaze.jdk;
 
+import com.fizzed.blaze.Config;
 import com.fizzed.blaze.Context;
 import com.fizzed.blaze.core.BlazeException;
 import com.fizzed.blaze.core.MessageOnlyException;
 import com.fizzed.blaze.core.AbstractEngine;
+import com.fizzed.blaze.core.CompileCache;
 import com.fizzed.blaze.core.Dependency;
 import com.fizzed.blaze.internal.ClassLoaderHelper;
-import static com.fizzed.blaze.internal.ClassLoaderHelper.currentThreadContextClassLoader;
-import com.fizzed.blaze.internal.ConfigHelper;
-import com.fizzed.blaze.internal.FileHelper;
+import com.fizzed.blaze.internal.ClassesFile;
+import com.fizzed.blaze.internal.ScriptClassLoader;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import javax.tools.Diagnostic;
 import javax.tools.DiagnosticCollector;
 import javax.tools.JavaCompiler;
@@ -60,51 +68,46 @@ public class BlazeJdkEngine extends AbstractEngine<BlazeJdkScript> {
     public void init(Context initialContext) throws BlazeException {
         super.init(initialContext);
     }
+    
+    @Override
+    public String getCompilerVersion() {
+        // the eclipse compiler (if used) is part of the classpath
+        return System.getProperty("java.vendor") + " " + System.getProperty("java.version");
+    }
 
     @Override
     public BlazeJdkScript compile(Context context) throws BlazeException {
         // what class would we be producing?
         String className = context.scriptFile().toFile().getName().replace(".java", "");
         
-        ClassLoader classLoader = currentThreadContextClassLoader();
-        Path classesDir = null;
-        Path expectedClassFile = null;
-        String scriptHash = null;
-        boolean compile = true;
+        // compiled against and loaded by the classloader of this script
+        ScriptClassLoader classLoader = ClassLoaderHelper.currentScriptClassLoader();
+        
+        CompileCache compileCache = compileCache(context, classLoader);
         
+        ScriptProject project;
         try {
-            // directory to save compile classes on a semi-reliable basis
-            classesDir = ConfigHelper.userBlazeEngineScriptClassesDir(context, getName());
-            log.trace("Using classes dir {}", classesDir);
-            
-            expectedClassFile = classesDir.resolve(className + ".class");
-            
-            // to check if we need to recompile we use an md5 hash of the source file
-            scriptHash = FileHelper.md5hash(context.scriptFile());
-            
-            if (FileHelper.verifyHashFileFor(expectedClassFile, scriptHash)) {
-                compile = false;
-            }
-        } catch (NoSuchAlgorithmException | IOException e) {
-            throw new BlazeException("Unable to get or create path to compile classes", e);
+            project = ScriptProject.detect(context.scriptFile());
+        } catch (IOException e) {
+            throw new BlazeException("Unable to list sources of " + context.scriptFile().getParent(), e);
         }
         
-        if (!compile) {
-            log.debug("Script has not changed, using previous compiled version");
+        Path location;
+        Map<String,byte[]> classes;
+        
+        if (project != null) {
+            location = compileCache.file(".project");
+            classes = compileProject(classLoader, context, project, compileCache);
         } else {
-            javac(classLoader, context, classesDir);
-            
-            try {
-                // save the hash for future use
-                FileHelper.writeHashFileFor(expectedClassFile, scriptHash);
-            } catch (IOException e) {
-                throw new BlazeException("Unable to save script hash", e);
-            }
+            // all classes of the script are cached in a single file
+            location = compileCache.file(".classes");
+            classes = compileScript(classLoader, context, compileCache);
         }
         
-        // add directory it was compiled to classpath
-        if (ClassLoaderHelper.addClassPath(classLoader, classesDir)) {
-            log.debug("Added {} to classpath", classesDir);
+        try {
+            classLoader.addClasses(location.toUri().toURL(), classes);
+        } catch (MalformedURLException e) {
+            throw new BlazeException("Unable to add compiled classes", e);
         }
         
         // create new instance of this class
@@ -120,10 +123,112 @@ public class BlazeJdkEngine extends AbstractEngine<BlazeJdkScript> {
         }
     }
     
+    private Map<String,byte[]> compileScript(ClassLoader classLoader, Context context, CompileCache compileCache) {
+        Path classesFile = compileCache.file(".classes");
+        
+        try {
+            log.trace("Using classes file {}", classesFile);
+            
+            String key = compileCache.key();
+            
+            Map<String,byte[]> classes = ClassesFile.read(classesFile, key);
+            
+            if (classes != null) {
+                log.debug("Script has not changed, using previous compiled version");
+                return classes;
+            }
+            
+            try (CompileCache.Lock lock = compileCache.lock()) {
+                // another run of blaze may have compiled it while we waited
+                classes = ClassesFile.read(classesFile, key);
+
+                if (classes == null) {
+                    classes = javac(classLoader, context);
+
+                    // save for future use
+                    ClassesFile.write(classesFile, key, classes);
+                }
+                
+                return classes;
+            }
+        } catch (IOException e) {
+            throw new BlazeException("Unable to read or save compiled classes", e);
+        }
+    }
+    
+    private Map<String,byte[]> compileProject(ClassLoader classLoader, Context context, ScriptProject project, CompileCache compileCache) {
+        int parallelism = context.config().value(Config.KEY_JAVA_COMPILE_PARALLELISM, Integer.class)
+            .getOr(Config.DEFAULT_JAVA_COMPILE_PARALLELISM);
+        
+        ProjectCompiler compiler = new ProjectCompiler(this, classLoader, context, project, compileCache);
+        
+        if (parallelism > 0) {
+            compiler.parallelism(parallelism);
+        }
+        
+        log.trace("Using script project {} with {} sources", project.getDir(), project.getSourceFiles().size());
+        
+        try (CompileCache.Lock lock = compileCache.lock()) {
+            return compiler.compile();
+        } catch (IOException e) {
+            throw new BlazeException("Unable to read or save compiled classes", e);
+        }
+    }
+    
+    /**
+     * Compiles the script to the directory.
+     * @param classLoader The classloader to build the classpath from
+     * @param context The context of the script
+     * @param classesDir The directory to write classes to
+     * @throws BlazeException If the script failed to compile
+     */
     public void javac(ClassLoader classLoader, Context context, Path classesDir) throws BlazeException {
+        Map<String,byte[]> classes = javac(classLoader, context);
+        
+        try {
+            for (Map.Entry<String,byte[]> entry : classes.entrySet()) {
+                Path classFile = classesDir.resolve(entry.getKey().replace('.', '/') + ".class");
+                Files.createDirectories(classFile.getParent());
+                Files.write(classFile, entry.getValue());
+            }
+        } catch (IOException e) {
+            throw new BlazeException("Unable to save compiled classes", e);
+        }
+    }
+    
+    /**
+     * Compiles the script in memory.
+     * @param classLoader The classloader to build the classpath from
+     * @param context The context of the script
+     * @return The bytecode by binary class name
+     * @throws BlazeException If the script failed to compile
+     */
+    public Map<String,byte[]> javac(ClassLoader classLoader, Context context) throws BlazeException {
+        return javac(classLoader, context, Arrays.asList(context.scriptFile().toFile()), Collections.emptyList(), null, null);
+    }
+    
+    /**
+     * Compiles sources in memory.
+     * @param classLoader The classloader to build the classpath from
+     * @param context The context of the script
+     * @param sourceFiles The sources to compile
+     * @param classPath Additional classpath entries (e.g. previously compiled classes)
+     * @param sourcePath The directory other sources referenced are found in or
+     *      null. Only classes of the supplied sources are returned.
+     * @param classSources If not null, populated with the source file each class
+     *      was compiled from
+     * @return The bytecode by binary class name
+     * @throws BlazeException If the sources failed to compile
+     */
+    public Map<String,byte[]> javac(ClassLoader classLoader, Context context, List<File> sourceFiles,
+            List<File> classPath, Path sourcePath, Map<String,File> classSources) throws BlazeException {
         // java compiler requires a classpath to build with - use the existing
         // runtime classpath (not what we started with, but current one)
-        String classpath = ClassLoaderHelper.buildClassPathAsString(classLoader);
+        StringBuilder classpath = new StringBuilder(ClassLoaderHelper.buildClassPathAsString(classLoader));
+        
+        for (File file : classPath) {
+            classpath.append(File.pathSeparator).append(file.getAbsolutePath());
+        }
 
         List<String> options = new ArrayList<>();
 
@@ -134,11 +239,12 @@ public class BlazeJdkEngine extends AbstractEngine<BlazeJdkScript> {
         
         // classpath to compile java file with
         options.add("-cp");
-        options.add(classpath);
-
-        // directory to output compiles classes
-        options.add("-d");
-        options.add(classesDir.toString());
+        options.add(classpath.toString());
+        
+        if (sourcePath != null) {
+            options.add("-sourcepath");
+            options.add(sourcePath.toString());
+        }
 
         options.add("-Xlint:unchecked");
         
@@ -146,16 +252,24 @@ public class BlazeJdkEngine extends AbstractEngine<BlazeJdkScript> {
         // java -> class
         //
         JavaCompiler compiler = loadJavaCompiler(classLoader, context, options);
+        
+        if (sourcePath != null && isSystemCompilerAvailable()) {
+            // sources only referenced are parsed but not generated
+            options.add("-implicit:none");
+        }
 
         DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
 
-        StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+        StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(null, null, null);
+        
+        // classes are compiled straight to memory
+        MemoryJavaFileManager fileManager = new MemoryJavaFileManager(standardFileManager);
         
         Iterable<? extends JavaFileObject> compilationUnits =
-                fileManager.getJavaFileObjectsFromFiles(Arrays.asList(context.scriptFile().toFile()));
+                standardFileManager.getJavaFileObjectsFromFiles(sourceFiles);
 
         JavaCompiler.CompilationTask task
-                = compiler.getTask(null, null, diagnostics, options, null, compilationUnits);
+                = compiler.getTask(null, fileManager, diagnostics, options, null, compilationUnits);
 
         boolean success = task.call();
         
@@ -197,8 +311,33 @@ public class BlazeJdkEngine extends AbstractEngine<BlazeJdkScript> {
         }
         
         if (!success) {
-            throw new MessageOnlyException("Unable to compile " + context.scriptFile());
+            throw new MessageOnlyException("Unable to compile " + (sourcePath != null ? sourcePath : context.scriptFile()));
+        }
+        
+        Map<String,byte[]> classes = fileManager.getClasses();
+        
+        if (sourcePath != null || classSources != null) {
+            Map<String,URI> sources = fileManager.getSources();
+            Set<File> compiled = new HashSet<>();
+            for (File sourceFile : sourceFiles) {
+                compiled.add(sourceFile.getAbsoluteFile());
+            }
+            
+            for (Iterator<String> it = classes.keySet().iterator(); it.hasNext(); ) {
+                String className = it.next();
+                URI source = sources.get(className);
+                File sourceFile = (source != null && "file".equals(source.getScheme()) ? new File(source).getAbsoluteFile() : null);
+                
+                if (sourcePath != null && sourceFile != null && !compiled.contains(sourceFile)) {
+                    // implicitly compiled from the source path (e.g. by ecj)
+                    it.remove();
+                } else if (classSources != null && sourceFile != null) {
+                    classSources.put(className, sourceFile);
+                }
+            }
         }
+        
+        return classes;
     }
     
     static public boolean isSystemCompilerAvailable() {
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.jdk;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The classes a compiled class references, read straight from the constant
+ * pool of its bytecode.  Besides class entries, every descriptor and generic
+ * signature in the pool is scanned for class names so types that only appear
+ * in method or field signatures count too (a few false positives from string
+ * constants are harmless).
+ * 
+ * Compile-time constants (static final primitives and strings) are inlined by
+ * javac and leave no reference behind, so whether a class declares any
+ * non-private constants is recorded as well.
+ * 
+ * @author joelauer
+ */
+public class ClassDependencies {
+    
+    static private final Pattern DESCRIPTOR_CLASS = Pattern.compile("L([^;<>()\\[\\s]+)[;<]");
+    
+    private final String className;
+    private final Set<String> references;
+    private final boolean constants;
+
+    public ClassDependencies(String className, Set<String> references, boolean constants) {
+        this.className = className;
+        this.references = references;
+        this.constants = constants;
+    }
+
+    /**
+     * Gets the binary name of the class (e.g. "a.b.C$1").
+     * @return The binary name
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * Gets the binary names of the classes referenced (excluding itself).
+     * @return The binary names
+     */
+    public Set<String> getReferences() {
+        return references;
+    }
+
+    /**
+     * Whether the class declares compile-time constants other classes may
+     * have inlined.
+     * @return True if it declares non-private constants
+     */
+    public boolean hasConstants() {
+        return constants;
+    }
+    
+    static public ClassDependencies parse(byte[] bytecode) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytecode));
+        
+        if (input.readInt() != 0xCAFEBABE) {
+            throw new IOException("Not a class file (bad magic number)");
+        }
+        
+        input.readUnsignedShort();      // minor version
+        input.readUnsignedShort();      // major version
+        
+        int count = input.readUnsignedShort();
+        String[] utf8s = new String[count];
+        // index of the name of each class entry
+        int[] classes = new int[count];
+        
+        for (int i = 1; i < count; i++) {
+            int tag = input.readUnsignedByte();
+            switch (tag) {
+                case 1:     // utf8
+                    utf8s[i] = input.readUTF();
+                    break;
+                case 7:     // class
+                    classes[i] = input.readUnsignedShort();
+                    break;
+                case 8:     // string
+                case 16:    // method type
+                case 19:    // module
+                case 20:    // package
+                    input.skipBytes(2);
+                    break;
+                case 15:    // method handle
+                    input.skipBytes(3);
+                    break;
+                case 3:     // integer
+                case 4:     // float
+                case 9:     // field ref
+                case 10:    // method ref
+                case 11:    // interface method ref
+                case 12:    // name and type
+                case 17:    // dynamic
+                case 18:    // invoke dynamic
+                    input.skipBytes(4);
+                    break;
+                case 5:     // long
+                case 6:     // double
+                    input.skipBytes(8);
+                    i++;    // takes two slots
+                    break;
+                default:
+                    throw new IOException("Unsupported constant pool tag " + tag);
+            }
+        }
+        
+        input.readUnsignedShort();      // access flags
+        String className = binaryName(utf8s[classes[input.readUnsignedShort()]]);
+        input.readUnsignedShort();      // super class
+        
+        int interfaceCount = input.readUnsignedShort();
+        input.skipBytes(interfaceCount * 2);
+        
+        boolean constants = false;
+        
+        int fieldCount = input.readUnsignedShort();
+        for (int i = 0; i < fieldCount; i++) {
+            int access = input.readUnsignedShort();
+            input.skipBytes(4);         // name and descriptor
+            int attributeCount = input.readUnsignedShort();
+            for (int j = 0; j < attributeCount; j++) {
+                String attributeName = utf8s[input.readUnsignedShort()];
+                int length = input.readInt();
+                input.skipBytes(length);
+                if ("ConstantValue".equals(attributeName) && !Modifier.isPrivate(access)) {
+                    constants = true;
+                }
+            }
+        }
+        
+        Set<String> references = new TreeSet<>();
+        
+        for (int i = 1; i < count; i++) {
+            String name = (classes[i] > 0 ? utf8s[classes[i]] : null);
+            if (name != null && !name.startsWith("[")) {
+                references.add(binaryName(name));
+            }
+        }
+        
+        // descriptors and signatures (also covers array class entries)
+        for (String utf8 : utf8s) {
+            if (utf8 != null && utf8.indexOf(';') > 0) {
+                Matcher matcher = DESCRIPTOR_CLASS.matcher(utf8);
+                while (matcher.find()) {
+                    references.add(binaryName(matcher.group(1)));
+                }
+            }
+        }
+        
+        references.remove(className);
+        
+        return new ClassDependencies(className, references, constants);
+    }
+    
+    static private String binaryName(String internalName) {
+        return internalName.replace('/', '.');
+    }
+    
+}
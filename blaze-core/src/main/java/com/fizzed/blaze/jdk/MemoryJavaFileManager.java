@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.jdk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+
+/**
+ * File manager that collects compiled classes in memory rather than writing
+ * them to a directory.
+ * 
+ * @author joelauer
+ */
+public class MemoryJavaFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+    
+    private final Map<String,ByteArrayOutputStream> outputs;
+    private final Map<String,URI> sources;
+    
+    public MemoryJavaFileManager(StandardJavaFileManager fileManager) {
+        super(fileManager);
+        this.outputs = new TreeMap<>();
+        this.sources = new TreeMap<>();
+    }
+    
+    /**
+     * Gets the compiled classes.
+     * @return The bytecode by binary class name (e.g. "blaze$1")
+     */
+    public Map<String,byte[]> getClasses() {
+        Map<String,byte[]> classes = new TreeMap<>();
+        synchronized (this.outputs) {
+            this.outputs.forEach((name, output) -> classes.put(name, output.toByteArray()));
+        }
+        return classes;
+    }
+
+    /**
+     * Gets the source each class was compiled from (if the compiler supplied
+     * it).
+     * @return The uri of the source file by binary class name
+     */
+    public Map<String,URI> getSources() {
+        synchronized (this.outputs) {
+            return new TreeMap<>(this.sources);
+        }
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) throws IOException {
+        if (kind != JavaFileObject.Kind.CLASS) {
+            return super.getJavaFileForOutput(location, className, kind, sibling);
+        }
+        
+        URI uri = URI.create("memory:///" + className.replace('.', '/') + kind.extension);
+        
+        return new SimpleJavaFileObject(uri, kind) {
+            @Override
+            public OutputStream openOutputStream() throws IOException {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                synchronized (outputs) {
+                    outputs.put(className, output);
+                    if (sibling != null) {
+                        sources.put(className, sibling.toUri());
+                    }
+                }
+                return output;
+            }
+        };
+    }
+    
+}
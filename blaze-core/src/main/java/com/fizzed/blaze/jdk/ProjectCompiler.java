@@ -0,0 +1,597 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.jdk;
+
+import com.fizzed.blaze.Context;
+import com.fizzed.blaze.Version;
+import com.fizzed.blaze.core.BlazeException;
+import com.fizzed.blaze.core.CompileCache;
+import com.fizzed.blaze.core.WrappedBlazeException;
+import com.fizzed.blaze.internal.ClassLoaderHelper;
+import com.fizzed.blaze.internal.FileHelper;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Incrementally compiles a script project.  The hash, compiled classes and
+ * dependencies (other sources its classes reference) of every source are
+ * recorded along with the classes themselves in the compile cache.  On the
+ * next compile only sources whose hash changed and the sources that depend on
+ * them (transitively) are recompiled against the classes of everything else.
+ * 
+ * Since compile-time constants are inlined without leaving a reference, a
+ * change to a source that declares any triggers a full compile.  Sources to
+ * recompile are split into groups of related sources that are compiled in
+ * parallel, each with the project as its source path so a reference to a
+ * source in another group still resolves.
+ * 
+ * @author joelauer
+ */
+public class ProjectCompiler {
+    static private final Logger log = LoggerFactory.getLogger(ProjectCompiler.class);
+    
+    static public final int DEFAULT_MIN_SOURCES_PER_TASK = 8;
+    
+    private final BlazeJdkEngine engine;
+    private final ClassLoader classLoader;
+    private final Context context;
+    private final ScriptProject project;
+    private final Path cacheDir;
+    private final String key;
+    private int parallelism;
+    private int minSourcesPerTask;
+    private List<String> compiled;
+    private int taskCount;
+
+    public ProjectCompiler(BlazeJdkEngine engine, ClassLoader classLoader, Context context,
+            ScriptProject project, CompileCache compileCache) {
+        this.engine = engine;
+        this.classLoader = classLoader;
+        this.context = context;
+        this.project = project;
+        this.cacheDir = compileCache.file(".project");
+        this.key = compileCache.getEngineVersion()
+            + "|" + CompileCache.classPathFingerprint(ClassLoaderHelper.buildClassPathAsFiles(classLoader))
+            + "|" + Version.getVersion();
+        this.parallelism = Runtime.getRuntime().availableProcessors();
+        this.minSourcesPerTask = DEFAULT_MIN_SOURCES_PER_TASK;
+        this.compiled = Collections.emptyList();
+    }
+
+    public Path getCacheDir() {
+        return cacheDir;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the max number of compiler tasks to run at once.
+     * @param parallelism The max number of tasks
+     * @return This compiler
+     */
+    public ProjectCompiler parallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    public int getMinSourcesPerTask() {
+        return minSourcesPerTask;
+    }
+
+    /**
+     * Sets the min number of sources worth a compiler task of their own.
+     * @param minSourcesPerTask The min number of sources
+     * @return This compiler
+     */
+    public ProjectCompiler minSourcesPerTask(int minSourcesPerTask) {
+        this.minSourcesPerTask = Math.max(1, minSourcesPerTask);
+        return this;
+    }
+
+    /**
+     * Gets the sources compiled by the last compile.
+     * @return The relative paths of the sources (empty if nothing changed)
+     */
+    public List<String> getCompiled() {
+        return compiled;
+    }
+
+    /**
+     * Gets the number of compiler tasks used by the last compile.
+     * @return The number of tasks
+     */
+    public int getTaskCount() {
+        return taskCount;
+    }
+    
+    /**
+     * Compiles whatever changed in the project.  Callers must hold the lock of
+     * the compile cache.
+     * @return The bytecode of every class of the project by binary name
+     * @throws BlazeException If the project failed to compile
+     * @throws IOException If the cache could not be read or written
+     */
+    public Map<String,byte[]> compile() throws BlazeException, IOException {
+        Path stateFile = this.cacheDir.resolve("state.properties");
+        Path classesDir = this.cacheDir.resolve("classes");
+        
+        Map<String,Source> previous = readState(stateFile);
+        
+        // current sources (only re-hashed if their size or modified time changed)
+        Map<String,Path> files = new TreeMap<>();
+        Map<String,Source> current = new TreeMap<>();
+        
+        for (Path file : this.project.getSourceFiles()) {
+            String name = this.project.relativize(file);
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            Source source = new Source();
+            source.size = attrs.size();
+            source.stamp = attrs.size() + ":" + attrs.lastModifiedTime().toMillis();
+            Source prev = (previous != null ? previous.get(name) : null);
+            source.hash = (prev != null && prev.stamp.equals(source.stamp) ? prev.hash : hash(file));
+            files.put(name, file);
+            current.put(name, source);
+        }
+        
+        Set<String> dirty = new TreeSet<>();
+        Set<String> removed = new TreeSet<>();
+        
+        if (previous == null) {
+            dirty.addAll(files.keySet());
+        } else {
+            Set<String> changed = new TreeSet<>();
+            for (Map.Entry<String,Source> entry : current.entrySet()) {
+                Source prev = previous.get(entry.getKey());
+                if (prev == null || !prev.hash.equals(entry.getValue().hash)) {
+                    changed.add(entry.getKey());
+                }
+            }
+            
+            removed.addAll(previous.keySet());
+            removed.removeAll(files.keySet());
+            
+            if (changed.isEmpty() && removed.isEmpty()) {
+                Map<String,byte[]> classes = readClasses(classesDir, previous);
+                if (classes != null) {
+                    log.debug("Script project has not changed, using previous compiled version");
+                    this.compiled = Collections.emptyList();
+                    this.taskCount = 0;
+                    return classes;
+                }
+                // something deleted compiled classes
+                previous = null;
+                dirty.addAll(files.keySet());
+            } else {
+                Set<String> modified = new TreeSet<>(changed);
+                modified.addAll(removed);
+                
+                boolean constants = false;
+                for (String name : modified) {
+                    Source prev = previous.get(name);
+                    constants |= (prev != null && prev.constants);
+                }
+                
+                if (constants) {
+                    log.debug("Constants may have changed (compiling all sources)");
+                    dirty.addAll(files.keySet());
+                } else {
+                    dirty.addAll(changed);
+                    dirty.addAll(dependents(previous, modified));
+                    dirty.retainAll(files.keySet());
+                }
+            }
+        }
+        
+        // a failed compile leaves the classes incomplete so always start fresh next time
+        Files.deleteIfExists(stateFile);
+        
+        if (previous == null || dirty.size() == files.size()) {
+            FileHelper.deleteRecursively(classesDir);
+        } else {
+            Set<String> stale = new TreeSet<>(dirty);
+            stale.addAll(removed);
+            for (String name : stale) {
+                Source prev = previous.get(name);
+                if (prev != null) {
+                    for (String className : prev.classes) {
+                        Files.deleteIfExists(classFile(classesDir, className));
+                    }
+                }
+            }
+        }
+        
+        Files.createDirectories(classesDir);
+        
+        // e.g. only removed sources nothing depended on
+        List<List<String>> groups = (dirty.isEmpty() ? Collections.emptyList() : partition(dirty, previous, current));
+        
+        log.debug("Compiling {} of {} project sources with {} task(s)", dirty.size(), files.size(), groups.size());
+        
+        Map<String,File> classSources = new HashMap<>();
+        Map<String,byte[]> compiledClasses = compileGroups(groups, files, classesDir, classSources);
+        
+        this.compiled = new ArrayList<>(dirty);
+        this.taskCount = groups.size();
+        
+        for (Map.Entry<String,byte[]> entry : compiledClasses.entrySet()) {
+            Path classFile = classFile(classesDir, entry.getKey());
+            Files.createDirectories(classFile.getParent());
+            Files.write(classFile, entry.getValue());
+        }
+        
+        // record what each source compiled to and depends on
+        Map<String,String> sourceOfFile = new HashMap<>();
+        files.forEach((name, file) -> sourceOfFile.put(file.toAbsolutePath().normalize().toString(), name));
+        
+        boolean incremental = true;
+        
+        for (String name : files.keySet()) {
+            Source source = current.get(name);
+            if (!dirty.contains(name)) {
+                Source prev = previous.get(name);
+                source.classes = prev.classes;
+                source.depends = prev.depends;
+                source.constants = prev.constants;
+            }
+        }
+        
+        for (Map.Entry<String,byte[]> entry : compiledClasses.entrySet()) {
+            File sourceFile = classSources.get(entry.getKey());
+            String name = (sourceFile != null ? sourceOfFile.get(sourceFile.toPath().normalize().toString()) : null);
+            if (name == null) {
+                log.debug("Unable to find source of class {} (will compile all sources next time)", entry.getKey());
+                incremental = false;
+                continue;
+            }
+            current.get(name).classes.add(entry.getKey());
+        }
+        
+        Map<String,String> sourceOfClass = new HashMap<>();
+        current.forEach((name, source) -> source.classes.forEach((c) -> sourceOfClass.put(c, name)));
+        
+        for (Map.Entry<String,byte[]> entry : compiledClasses.entrySet()) {
+            String name = sourceOfClass.get(entry.getKey());
+            if (name == null) {
+                continue;
+            }
+            Source source = current.get(name);
+            ClassDependencies dependencies = ClassDependencies.parse(entry.getValue());
+            source.constants |= dependencies.hasConstants();
+            for (String reference : dependencies.getReferences()) {
+                String depend = sourceOfClass.get(reference);
+                if (depend != null && !depend.equals(name)) {
+                    source.depends.add(depend);
+                }
+            }
+        }
+        
+        if (incremental) {
+            writeState(stateFile, current);
+        }
+        
+        Map<String,byte[]> classes = readClasses(classesDir, current);
+        
+        if (classes == null) {
+            throw new BlazeException("Compiled classes of " + this.project.getDir() + " are missing");
+        }
+        
+        return classes;
+    }
+    
+    private Map<String,byte[]> compileGroups(List<List<String>> groups, Map<String,Path> files,
+            Path classesDir, Map<String,File> classSources) throws BlazeException {
+        
+        List<Callable<Map<String,byte[]>>> tasks = new ArrayList<>();
+        
+        for (List<String> group : groups) {
+            List<File> sourceFiles = group.stream()
+                .map((name) -> files.get(name).toFile())
+                .collect(Collectors.toList());
+            
+            tasks.add(() -> {
+                Map<String,File> sources = new HashMap<>();
+                Map<String,byte[]> classes = this.engine.javac(this.classLoader, this.context, sourceFiles,
+                    Arrays.asList(classesDir.toFile()), this.project.getDir(), sources);
+                synchronized (classSources) {
+                    classSources.putAll(sources);
+                }
+                return classes;
+            });
+        }
+        
+        Map<String,byte[]> compiledClasses = new TreeMap<>();
+        
+        if (tasks.isEmpty()) {
+            return compiledClasses;
+        } else if (tasks.size() == 1) {
+            try {
+                compiledClasses.putAll(tasks.get(0).call());
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new WrappedBlazeException(e);
+            }
+            return compiledClasses;
+        }
+        
+        final ClassLoader threadClassLoader = Thread.currentThread().getContextClassLoader();
+        final AtomicInteger threadCount = new AtomicInteger();
+        
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(tasks.size(), this.parallelism), (Runnable r) -> {
+            Thread thread = new Thread(r, "blaze-javac-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setContextClassLoader(threadClassLoader);
+            return thread;
+        });
+        
+        try {
+            List<Future<Map<String,byte[]>>> futures = executor.invokeAll(tasks);
+            
+            // every task runs to completion so all compile errors are logged
+            RuntimeException failure = null;
+            
+            for (Future<Map<String,byte[]>> future : futures) {
+                try {
+                    compiledClasses.putAll(future.get());
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        Throwable t = e.getCause();
+                        failure = (t instanceof RuntimeException ? (RuntimeException)t : new WrappedBlazeException(t));
+                    }
+                }
+            }
+            
+            if (failure != null) {
+                throw failure;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BlazeException("Interrupted while compiling " + this.project.getDir(), e);
+        } finally {
+            executor.shutdownNow();
+        }
+        
+        return compiledClasses;
+    }
+    
+    /**
+     * Splits the sources into groups of related sources (by their previous
+     * dependencies), balanced by size across up to the parallelism.
+     */
+    private List<List<String>> partition(Set<String> dirty, Map<String,Source> previous, Map<String,Source> current) {
+        int count = Math.min(this.parallelism, dirty.size() / this.minSourcesPerTask);
+        
+        if (count <= 1) {
+            return Collections.singletonList(new ArrayList<>(dirty));
+        }
+        
+        // connected sources end up in the same group
+        Map<String,String> parents = new HashMap<>();
+        dirty.forEach((name) -> parents.put(name, name));
+        
+        if (previous != null) {
+            for (String name : dirty) {
+                Source prev = previous.get(name);
+                if (prev != null) {
+                    for (String depend : prev.depends) {
+                        if (parents.containsKey(depend)) {
+                            parents.put(root(parents, name), root(parents, depend));
+                        }
+                    }
+                }
+            }
+        }
+        
+        Map<String,List<String>> components = new TreeMap<>();
+        for (String name : dirty) {
+            components.computeIfAbsent(root(parents, name), (k) -> new ArrayList<>()).add(name);
+        }
+        
+        // largest first into the smallest group
+        List<List<String>> sorted = new ArrayList<>(components.values());
+        sorted.sort((a, b) -> Long.compare(size(b, current), size(a, current)));
+        
+        List<List<String>> groups = new ArrayList<>();
+        long[] sizes = new long[count];
+        for (int i = 0; i < count; i++) {
+            groups.add(new ArrayList<>());
+        }
+        
+        for (List<String> component : sorted) {
+            int smallest = 0;
+            for (int i = 1; i < count; i++) {
+                if (sizes[i] < sizes[smallest]) {
+                    smallest = i;
+                }
+            }
+            groups.get(smallest).addAll(component);
+            sizes[smallest] += size(component, current);
+        }
+        
+        groups.removeIf((group) -> group.isEmpty());
+        
+        return groups;
+    }
+    
+    static private String root(Map<String,String> parents, String name) {
+        String parent = parents.get(name);
+        while (!parent.equals(name)) {
+            name = parent;
+            parent = parents.get(name);
+        }
+        return parent;
+    }
+    
+    static private long size(List<String> names, Map<String,Source> sources) {
+        return names.stream().mapToLong((name) -> sources.get(name).size).sum();
+    }
+    
+    static private Set<String> dependents(Map<String,Source> sources, Set<String> names) {
+        Map<String,Set<String>> reverse = new HashMap<>();
+        sources.forEach((name, source) -> {
+            for (String depend : source.depends) {
+                reverse.computeIfAbsent(depend, (k) -> new TreeSet<>()).add(name);
+            }
+        });
+        
+        Set<String> dependents = new TreeSet<>();
+        Deque<String> queue = new ArrayDeque<>(names);
+        
+        while (!queue.isEmpty()) {
+            for (String dependent : reverse.getOrDefault(queue.remove(), Collections.emptySet())) {
+                if (dependents.add(dependent)) {
+                    queue.add(dependent);
+                }
+            }
+        }
+        
+        return dependents;
+    }
+    
+    static private Path classFile(Path classesDir, String className) {
+        return classesDir.resolve(className.replace('.', '/') + ".class");
+    }
+    
+    static private Map<String,byte[]> readClasses(Path classesDir, Map<String,Source> sources) throws IOException {
+        Map<String,byte[]> classes = new TreeMap<>();
+        
+        for (Source source : sources.values()) {
+            for (String className : source.classes) {
+                Path classFile = classFile(classesDir, className);
+                if (Files.notExists(classFile)) {
+                    return null;
+                }
+                classes.put(className, Files.readAllBytes(classFile));
+            }
+        }
+        
+        return classes;
+    }
+    
+    private Map<String,Source> readState(Path stateFile) {
+        if (Files.notExists(stateFile)) {
+            return null;
+        }
+        
+        Properties state = new Properties();
+        
+        try (InputStream input = Files.newInputStream(stateFile)) {
+            state.load(input);
+        } catch (IOException e) {
+            log.debug("Unable to read {} (ignoring it)", stateFile);
+            return null;
+        }
+        
+        if (!this.key.equals(state.getProperty("key"))) {
+            log.trace("Classpath or compiler changed (compiling all sources)");
+            return null;
+        }
+        
+        Map<String,Source> sources = new TreeMap<>();
+        
+        for (String name : split(state.getProperty("sources", ""))) {
+            Source source = new Source();
+            source.hash = state.getProperty("source." + name + ".hash");
+            source.stamp = state.getProperty("source." + name + ".stamp");
+            if (source.hash == null || source.stamp == null) {
+                return null;
+            }
+            source.classes.addAll(split(state.getProperty("source." + name + ".classes", "")));
+            source.depends.addAll(split(state.getProperty("source." + name + ".depends", "")));
+            source.constants = Boolean.parseBoolean(state.getProperty("source." + name + ".constants"));
+            sources.put(name, source);
+        }
+        
+        return sources;
+    }
+    
+    private void writeState(Path stateFile, Map<String,Source> sources) throws IOException {
+        Properties state = new Properties();
+        
+        state.setProperty("key", this.key);
+        state.setProperty("sources", String.join(",", sources.keySet()));
+        
+        sources.forEach((name, source) -> {
+            state.setProperty("source." + name + ".hash", source.hash);
+            state.setProperty("source." + name + ".stamp", source.stamp);
+            state.setProperty("source." + name + ".classes", String.join(",", source.classes));
+            state.setProperty("source." + name + ".depends", String.join(",", source.depends));
+            state.setProperty("source." + name + ".constants", Boolean.toString(source.constants));
+        });
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        state.store(baos, null);
+        CompileCache.write(stateFile, baos.toByteArray());
+    }
+    
+    static private List<String> split(String value) {
+        if (value.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(value.split(","));
+    }
+    
+    static private String hash(Path file) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest(Files.readAllBytes(file)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not supported", e);
+        }
+    }
+    
+    static private class Source {
+        private String hash;
+        private String stamp;
+        private long size;
+        private Set<String> classes = new LinkedHashSet<>();
+        private Set<String> depends = new TreeSet<>();
+        private boolean constants;
+    }
+    
+}
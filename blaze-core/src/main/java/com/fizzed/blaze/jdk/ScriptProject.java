@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.jdk;
+
+import com.fizzed.blaze.core.Blaze;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A script saved in a "blaze" or ".blaze" directory along with other .java
+ * sources (e.g. shared helpers, optionally in packages).  All sources in the
+ * directory form the script project and are compiled together.
+ * 
+ * @author joelauer
+ */
+public class ScriptProject {
+    
+    private final Path dir;
+    private final Path scriptFile;
+    private final List<Path> sourceFiles;
+
+    public ScriptProject(Path dir, Path scriptFile, List<Path> sourceFiles) {
+        this.dir = dir;
+        this.scriptFile = scriptFile;
+        this.sourceFiles = sourceFiles;
+    }
+
+    /**
+     * Gets the directory of the project, which is also its source path.
+     * @return The directory
+     */
+    public Path getDir() {
+        return dir;
+    }
+
+    public Path getScriptFile() {
+        return scriptFile;
+    }
+
+    /**
+     * Gets every source in the project (including the script).
+     * @return The source files sorted
+     */
+    public List<Path> getSourceFiles() {
+        return sourceFiles;
+    }
+    
+    /**
+     * Gets the path of a source relative to the project (always using "/").
+     * @param sourceFile The source file
+     * @return The relative path (e.g. "helpers/Docker.java")
+     */
+    public String relativize(Path sourceFile) {
+        return this.dir.relativize(sourceFile).toString().replace('\\', '/');
+    }
+    
+    /**
+     * Detects the project of a script.
+     * @param scriptFile The script file
+     * @return The project or null if the script is not in a "blaze" or ".blaze"
+     *      directory or is the only source in it
+     * @throws IOException If the directory could not be listed
+     */
+    static public ScriptProject detect(Path scriptFile) throws IOException {
+        if (scriptFile == null || !scriptFile.toString().endsWith(".java")) {
+            return null;
+        }
+        
+        Path file = scriptFile.toAbsolutePath().normalize();
+        Path dir = file.getParent();
+        
+        if (dir == null || dir.getFileName() == null || !Blaze.SEARCH_RELATIVE_DIRECTORIES.contains(dir.getFileName())) {
+            return null;
+        }
+        
+        List<Path> sourceFiles = new ArrayList<>();
+        
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+                // e.g. .git or .idea
+                if (!d.equals(dir) && d.getFileName().toString().startsWith(".")) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+            
+            @Override
+            public FileVisitResult visitFile(Path f, BasicFileAttributes attrs) throws IOException {
+                if (attrs.isRegularFile() && f.getFileName().toString().endsWith(".java")) {
+                    sourceFiles.add(f);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        
+        if (sourceFiles.size() <= 1) {
+            return null;
+        }
+        
+        Collections.sort(sourceFiles);
+        
+        return new ScriptProject(dir, file, sourceFiles);
+    }
+    
+}
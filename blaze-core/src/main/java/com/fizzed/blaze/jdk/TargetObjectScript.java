@@ -21,11 +21,16 @@ import com.fizzed.blaze.core.NoSuchTaskException;
 import com.fizzed.blaze.core.Script;
 import com.fizzed.blaze.core.BlazeTask;
 import com.fizzed.blaze.core.WrappedBlazeException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
 
 /**
@@ -41,9 +46,15 @@ public class TargetObjectScript implements Script {
     };
     
     final protected Object targetObject;
+    final private ConcurrentHashMap<String,MethodHandle> taskHandles;
 
     public TargetObjectScript(Object targetObject) {
         this.targetObject = targetObject;
+        this.taskHandles = new ConcurrentHashMap<>();
+    }
+
+    public Object getTargetObject() {
+        return targetObject;
     }
 
     public List<BlazeTask> findTasks(Predicate<Method>... filters) throws BlazeException {
@@ -65,15 +76,21 @@ public class TargetObjectScript implements Script {
                 String name = m.getName();
                 String description = null;
                 int order = 0;
+                List<String> depends = null;
+                List<String> inputs = null;
+                List<String> outputs = null;
                 
                 // task annotation present?
                 Task task = m.getAnnotation(Task.class);
                 if (task != null) {
                     description = (task.value() != null ? task.value() : null);
                     order = task.order();
+                    depends = Arrays.asList(task.depends());
+                    inputs = Arrays.asList(task.inputs());
+                    outputs = Arrays.asList(task.outputs());
                 }
                 
-                tasks.add(new BlazeTask(name, description, order));
+                tasks.add(new BlazeTask(name, description, order, depends, inputs, outputs));
             }
         } catch (SecurityException e) {
             throw new BlazeException("Unable to detect script tasks", e);
@@ -112,6 +129,55 @@ public class TargetObjectScript implements Script {
         }
     }
     
+    /**
+     * Finds the method of the task as a handle already bound to the target
+     * object (so invoking it needs no arguments).  Handles are only looked up
+     * once per task.
+     * @param task The name of the task
+     * @return The bound method handle of type ()void
+     */
+    public MethodHandle findTaskHandle(String task) {
+        MethodHandle handle = this.taskHandles.get(task);
+        
+        if (handle == null) {
+            Method method = findTaskMethod(task);
+            handle = unreflect(task, method);
+            if (!Modifier.isStatic(method.getModifiers())) {
+                // static methods have no receiver to bind
+                handle = handle.bindTo(targetObject);
+            }
+            handle = handle.asType(MethodType.methodType(void.class));
+            this.taskHandles.putIfAbsent(task, handle);
+        }
+        
+        return handle;
+    }
+    
+    private MethodHandle unreflect(String task, Method method) {
+        try {
+            return MethodHandles.publicLookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            // e.g. a public method of a non-public class
+            try {
+                method.setAccessible(true);
+                return MethodHandles.lookup().unreflect(method);
+            } catch (IllegalAccessException | SecurityException e2) {
+                throw new BlazeException("Unable to access task '" + task + "'", e2);
+            }
+        }
+    }
+    
+    public void invokeTaskHandle(String task, MethodHandle handle) throws Exception {
+        try {
+            handle.invokeExact();
+        } catch (Exception e) {
+            // checked exceptions from the task propagate as-is (unlike reflection)
+            throw e;
+        } catch (Throwable t) {
+            throw new WrappedBlazeException(t);
+        }
+    }
+    
     @Override
     public List<BlazeTask> tasks() throws BlazeException {
         return findTasks(FILTER_PUBLIC_INSTANCE_METHOD);
@@ -119,8 +185,8 @@ public class TargetObjectScript implements Script {
 
     @Override
     public void execute(String task) throws Exception {
-        Method method = findTaskMethod(task);
-        invokeTaskMethod(task, method);
+        MethodHandle handle = findTaskHandle(task);
+        invokeTaskHandle(task, handle);
     }
     
 }
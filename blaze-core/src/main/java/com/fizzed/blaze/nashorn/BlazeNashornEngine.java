@@ -18,14 +18,24 @@ package com.fizzed.blaze.nashorn;
 import com.fizzed.blaze.Context;
 import com.fizzed.blaze.core.BlazeException;
 import com.fizzed.blaze.core.AbstractEngine;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import com.fizzed.blaze.core.CompileCache;
+import com.fizzed.blaze.internal.ClassLoaderHelper;
+import com.fizzed.blaze.internal.ConfigHelper;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.Invocable;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 import org.slf4j.Logger;
@@ -36,7 +46,10 @@ public class BlazeNashornEngine extends AbstractEngine<BlazeNashornScript> {
 
     static public final List<String> EXTS = Arrays.asList(".js");
     
-    private ScriptEngineManager scriptEngineManager;
+    // directory of nashorn's persistent code cache (read when an engine is created)
+    static public final String CODE_CACHE_PROPERTY = "nashorn.persistent.code.cache";
+    
+    private ScriptEngine scriptEngine;
     private List<String> defaultNashornFunctions;
 
     @Override
@@ -49,55 +62,133 @@ public class BlazeNashornEngine extends AbstractEngine<BlazeNashornScript> {
         return EXTS;
     }
     
+    @Override
+    public String getCompilerVersion() {
+        // nashorn is part of the jdk
+        return System.getProperty("java.version");
+    }
+    
     @Override
     public void init(Context initialContext) throws BlazeException {
         super.init(initialContext);
         
-        this.scriptEngineManager = new ScriptEngineManager();
+        ScriptEngine defaultScriptEngine = new ScriptEngineManager().getEngineByName("nashorn");
         
-        ScriptEngine scriptEngine = this.scriptEngineManager.getEngineByName("nashorn");
-        
-        if (scriptEngine == null) {
+        if (defaultScriptEngine == null) {
             throw new BlazeException("Unable to get nashorn script engine. Are you running on Java 8?");
         }
         
-        // query for functions available by default
-        this.defaultNashornFunctions = queryScriptFunctions(scriptEngine, scriptEngine.createBindings());
-        
-        //log.debug("standardNashornFunctions: {}", standardNashornFunctions);
+        this.scriptEngine = newScriptEngine(initialContext, defaultScriptEngine);
+    }
+    
+    /**
+     * Creates the one engine every script is compiled and evaluated with. If
+     * possible with the persistent code cache of nashorn turned on so
+     * repeated runs skip parsing and generating bytecode.
+     */
+    static private ScriptEngine newScriptEngine(Context context, ScriptEngine defaultScriptEngine) {
+        try {
+            if (System.getProperty(CODE_CACHE_PROPERTY) == null) {
+                Path codeCacheDir = ConfigHelper.userBlazeEngineDir(context, "nashorn").resolve("codecache");
+                Files.createDirectories(codeCacheDir);
+                System.setProperty(CODE_CACHE_PROPERTY, codeCacheDir.toString());
+            }
+            
+            // NashornScriptEngineFactory.getScriptEngine(String...) is not
+            // part of the javax.script api
+            ScriptEngineFactory factory = defaultScriptEngine.getFactory();
+            
+            return (ScriptEngine)factory.getClass()
+                .getMethod("getScriptEngine", String[].class)
+                .invoke(factory, (Object)new String[] { "--persistent-code-cache" });
+        } catch (IOException | ReflectiveOperationException | RuntimeException e) {
+            log.debug("Unable to use nashorn persistent code cache ({})", e.getMessage());
+            return defaultScriptEngine;
+        }
     }
 
     @Override
     public BlazeNashornScript compile(Context context) throws BlazeException {
+        CompileCache compileCache = compileCache(context, ClassLoaderHelper.currentScriptClassLoader());
+        
         try {
-            ScriptEngine scriptEngine = this.scriptEngineManager.getEngineByName("nashorn");
+            // so errors and stack traces include the script
+            this.scriptEngine.put(ScriptEngine.FILENAME, context.scriptFile().toString());
+            
+            CompiledScript compiledScript;
+            try (Reader reader = Files.newBufferedReader(context.scriptFile(), StandardCharsets.UTF_8)) {
+                compiledScript = ((Compilable)this.scriptEngine).compile(reader);
+            }
             
-            Bindings bindings = scriptEngine.createBindings();
+            Bindings bindings = this.scriptEngine.createBindings();
             
-            scriptEngine.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
+            this.scriptEngine.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
             
             // do NOT expose any functions as global...
             // expose functions as global variables to script
             //bindings.put("context", context);
             //bindings.put("log", context.logger());
             //bindings.put("console", new Console());
-
-            scriptEngine.eval(new FileReader(context.scriptFile().toFile()), bindings);
-
-            //log.debug("script class: {}", this.script.getClass().getCanonicalName());
-     
-            Invocable invocable = (Invocable)scriptEngine;
             
-            return new BlazeNashornScript(this, scriptEngine, bindings, invocable);
-        } catch (ScriptException | FileNotFoundException e) {
+            compiledScript.eval(bindings);
+            
+            Invocable invocable = (Invocable)this.scriptEngine;
+            
+            return new BlazeNashornScript(this, this.scriptEngine, bindings, invocable, compileCache);
+        } catch (ScriptException | IOException e) {
             throw new BlazeException("Unable to evaluate nashorn script", e);
         }
     }
 
     public List<String> getDefaultNashornFunctions() {
+        // only needed if tasks are not cached yet
+        if (this.defaultNashornFunctions == null) {
+            this.defaultNashornFunctions = queryScriptFunctions(this.scriptEngine, this.scriptEngine.createBindings());
+        }
         return defaultNashornFunctions;
     }
     
+    /**
+     * Reads the task functions of the script cached for the key.
+     * @param compileCache The compile cache of the script
+     * @return The names of the task functions or null if not cached
+     */
+    static public List<String> readTasks(CompileCache compileCache) {
+        Path tasksFile = compileCache.file(".tasks");
+        
+        try {
+            if (Files.notExists(tasksFile)) {
+                return null;
+            }
+            
+            List<String> lines = Files.readAllLines(tasksFile, StandardCharsets.UTF_8);
+            
+            // first line is the key the tasks were found with
+            if (lines.isEmpty() || !lines.get(0).equals(compileCache.key())) {
+                return null;
+            }
+            
+            return new ArrayList<>(lines.subList(1, lines.size()));
+        } catch (IOException e) {
+            log.debug("Unable to read {} (ignoring it)", tasksFile);
+            return null;
+        }
+    }
+    
+    static public void writeTasks(CompileCache compileCache, List<String> tasks) {
+        Path tasksFile = compileCache.file(".tasks");
+        
+        try {
+            StringBuilder sb = new StringBuilder(compileCache.key()).append("\n");
+            for (String task : tasks) {
+                sb.append(task).append("\n");
+            }
+            CompileCache.write(tasksFile, sb.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            log.debug("Unable to write {} ({})", tasksFile, e.getMessage());
+        }
+    }
+    
     static public List<String> queryScriptFunctions(ScriptEngine engine, Bindings bindings) {
         Object result = null;
         
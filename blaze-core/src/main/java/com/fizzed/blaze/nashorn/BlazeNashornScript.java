@@ -16,6 +16,7 @@
 package com.fizzed.blaze.nashorn;
 
 import com.fizzed.blaze.core.BlazeException;
+import com.fizzed.blaze.core.CompileCache;
 import com.fizzed.blaze.core.NoSuchTaskException;
 import com.fizzed.blaze.core.Script;
 import com.fizzed.blaze.core.BlazeTask;
@@ -39,25 +40,48 @@ public class BlazeNashornScript implements Script {
     final private ScriptEngine scriptEngine;
     final private Invocable invocable;
     final private Bindings bindings;
+    final private CompileCache compileCache;
+    private List<String> taskNames;
 
     public BlazeNashornScript(BlazeNashornEngine engine, ScriptEngine scriptEngine, Bindings bindings, Invocable invocable) {
+        this(engine, scriptEngine, bindings, invocable, null);
+    }
+    
+    public BlazeNashornScript(BlazeNashornEngine engine, ScriptEngine scriptEngine, Bindings bindings, Invocable invocable, CompileCache compileCache) {
         this.engine = engine;
         this.scriptEngine = scriptEngine;
         this.bindings = bindings;
         this.invocable = invocable;
+        this.compileCache = compileCache;
     }
-
-    @Override
-    public List<BlazeTask> tasks() throws BlazeException {
-        List<String> scriptFunctions = BlazeNashornEngine
-            .queryScriptFunctions(scriptEngine, bindings);
+    
+    private List<String> taskNames() {
+        if (this.taskNames == null && this.compileCache != null) {
+            this.taskNames = BlazeNashornEngine.readTasks(this.compileCache);
+        }
         
-        // filter out standard nashorn functions
-        Set<String> tasks = new HashSet<>(scriptFunctions);
+        if (this.taskNames == null) {
+            List<String> scriptFunctions = BlazeNashornEngine
+                .queryScriptFunctions(scriptEngine, bindings);
 
-        tasks.removeAll(engine.getDefaultNashornFunctions());
+            // filter out standard nashorn functions
+            Set<String> tasks = new HashSet<>(scriptFunctions);
 
-        return tasks.stream()
+            tasks.removeAll(engine.getDefaultNashornFunctions());
+            
+            this.taskNames = new ArrayList<>(tasks);
+            
+            if (this.compileCache != null) {
+                BlazeNashornEngine.writeTasks(this.compileCache, this.taskNames);
+            }
+        }
+        
+        return this.taskNames;
+    }
+
+    @Override
+    public List<BlazeTask> tasks() throws BlazeException {
+        return taskNames().stream()
             .map((t) -> new BlazeTask(t, null))
             .collect(Collectors.toList());
     }
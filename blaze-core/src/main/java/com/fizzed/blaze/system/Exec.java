@@ -24,6 +24,8 @@ import com.fizzed.blaze.util.ObjectHelper;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.lang.reflect.Field;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -33,7 +35,7 @@ import java.util.concurrent.TimeoutException;
 import org.zeroturnaround.exec.InvalidExitValueException;
 import org.zeroturnaround.exec.ProcessExecutor;
 import com.fizzed.blaze.core.PathsMixin;
-import com.fizzed.blaze.util.InputStreamPumper;
+import com.fizzed.blaze.util.Streamable;
 import com.fizzed.blaze.util.StreamableInput;
 import com.fizzed.blaze.util.StreamableOutput;
 import com.fizzed.blaze.util.Streamables;
@@ -43,7 +45,6 @@ import java.util.Objects;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zeroturnaround.exec.ProcessResult;
-import org.zeroturnaround.exec.stream.PumpStreamHandler;
 
 /**
  *
@@ -60,6 +61,7 @@ public class Exec extends Action<Exec.Result,Integer> implements PathsMixin<Exec
     private StreamableOutput pipeError;
     private boolean pipeErrorToOutput;
     final private List<Integer> exitValues;
+    private Long timeoutInMillis;
     
     public Exec(Context context) {
         super(context);
@@ -145,6 +147,7 @@ public class Exec extends Action<Exec.Result,Integer> implements PathsMixin<Exec
     @Override
     public Exec timeout(long timeoutInMillis) {
         this.executor.timeout(timeoutInMillis, TimeUnit.MILLISECONDS);
+        this.timeoutInMillis = timeoutInMillis;
         return this;
     }
     
@@ -187,8 +190,19 @@ public class Exec extends Action<Exec.Result,Integer> implements PathsMixin<Exec
         return this;
     }
     
-    @Override
-    protected Result doRun() throws BlazeException {
+    boolean isPipeErrorToOutput() {
+        return this.pipeErrorToOutput;
+    }
+    
+    List<Integer> getExitValues() {
+        return this.exitValues;
+    }
+    
+    Long getTimeoutInMillis() {
+        return this.timeoutInMillis;
+    }
+    
+    private List<String> buildCommand() throws BlazeException {
         Path exeFile = this.which.run();
         
         if (exeFile == null) {
@@ -202,35 +216,82 @@ public class Exec extends Action<Exec.Result,Integer> implements PathsMixin<Exec
         
         command.addAll(arguments);
         
-        // use a custom streampumper so we can more accuratly handle inputstream
-        final InputStream is = (pipeInput != null ? pipeInput.stream() : null);
-        final OutputStream os = (pipeOutput != null ? pipeOutput.stream() : null);
-        final OutputStream es = (pipeErrorToOutput ? os : (pipeError != null ? pipeError.stream() : null));
+        return command;
+    }
+    
+    /**
+     * Builds the process of this exec for a pipeline that has its streams
+     * connected by the OS (see <code>NativePipeline</code>).  This exec is
+     * considered run afterwards.
+     * @return The process builder of this exec
+     * @throws BlazeException If already run or the executable is not found
+     */
+    ProcessBuilder buildPipelineProcess() throws BlazeException {
+        if (used) {
+            throw new BlazeException("Can only run once");
+        }
+        
+        ProcessBuilder builder = new ProcessBuilder(buildCommand());
+        
+        builder.directory(this.executor.getDirectory());
         
-        PumpStreamHandler streams = new PumpStreamHandler(os, es, is) {
-            @Override
-            protected Thread createSystemInPump(InputStream is, OutputStream os) {
-                InputStreamPumper pumper = new InputStreamPumper(is, os);
-                final Thread result = new Thread(pumper);
-                result.setDaemon(true);
-                return result;
+        // same as zt-exec applies its environment
+        this.executor.getEnvironment().forEach((name, value) -> {
+            if (value == null) {
+                builder.environment().remove(name);
+            } else {
+                builder.environment().put(name, value);
+            }
+        });
+        
+        this.used = true;
+        
+        return builder;
+    }
+    
+    @Override
+    protected Result doRun() throws BlazeException {
+        List<String> command = buildCommand();
+        
+        // files and the console are handed to the OS as native redirects so
+        // only real in-JVM streams need to be pumped
+        Redirect inputRedirect = redirect(pipeInput);
+        Redirect outputRedirect = redirect(pipeOutput);
+        Redirect errorRedirect = (pipeErrorToOutput ? null : redirect(pipeError));
+        
+        final ProcessBuilder builder = processBuilder(this.executor);
+        
+        // the os merges error into output whenever it can so only one stream
+        // is ever pumped into the output
+        final boolean errorToOutput = pipeErrorToOutput && builder != null;
+        
+        if (builder == null) {
+            inputRedirect = outputRedirect = errorRedirect = null;
+        } else {
+            builder.redirectInput(inputRedirect != null ? inputRedirect : Redirect.PIPE);
+            builder.redirectOutput(outputRedirect != null ? outputRedirect : Redirect.PIPE);
+            builder.redirectError(errorRedirect != null ? errorRedirect : Redirect.PIPE);
+            builder.redirectErrorStream(errorToOutput);
+            
+            if (errorToOutput) {
+                errorRedirect = outputRedirect;
             }
             
-            @Override
-            public void stop() {
-                // NOTE: travis ci deadlocks unless we add this -- never happens
-                // on a real system so its pretty odd
-                Thread.yield();
-                
-                // make sure any input, output, and error streams are closed
-                // before the superclass stop() is triggered
-                Streamables.closeQuietly(is);
-                //Streamables.closeQuietly(os);
-                //Streamables.closeQuietly(es);
-                
-                super.stop();
+            // anything already written to the console goes first
+            if (outputRedirect == Redirect.INHERIT || errorRedirect == Redirect.INHERIT) {
+                System.out.flush();
+                System.err.flush();
             }
-        };
+        }
+        
+        // use a custom streampumper so we can more accuratly handle inputstream
+        final InputStream is = (pipeInput != null && inputRedirect == null ? pipeInput.stream() : null);
+        final OutputStream os = (pipeOutput != null && outputRedirect == null ? pipeOutput.stream() : null);
+        final OutputStream es = (errorToOutput || errorRedirect != null ? null
+            : (pipeErrorToOutput ? os : (pipeError != null ? pipeError.stream() : null)));
+        
+        // pumped on the shared executor rather than new threads per process
+        ExecStreamHandler streams = new ExecStreamHandler(this.context.executor(), is, os, es);
         
         this.executor
             .command(command)
@@ -250,6 +311,39 @@ public class Exec extends Action<Exec.Result,Integer> implements PathsMixin<Exec
         }
     }
     
+    static Redirect redirect(Streamable<?> streamable) {
+        return (streamable != null ? streamable.redirect() : null);
+    }
+    
+    static private final Field BUILDER_FIELD = builderField();
+    
+    static private Field builderField() {
+        try {
+            Field field = ProcessExecutor.class.getDeclaredField("builder");
+            field.setAccessible(true);
+            return field;
+        } catch (Exception e) {
+            log.debug("Unable to access process builder of zt-exec (will pump all streams)", e);
+            return null;
+        }
+    }
+    
+    /**
+     * zt-exec does not expose its process builder (and therefore native
+     * redirects) so we access it ourselves.
+     * @return The builder or null if not accessible (pump everything)
+     */
+    static private ProcessBuilder processBuilder(ProcessExecutor executor) {
+        if (BUILDER_FIELD != null) {
+            try {
+                return (ProcessBuilder)BUILDER_FIELD.get(executor);
+            } catch (Exception e) {
+                log.debug("Unable to access process builder of zt-exec (will pump all streams)", e);
+            }
+        }
+        return null;
+    }
+    
     static public class Result extends com.fizzed.blaze.core.Result<Exec,Integer,Result> {
         
         Result(Exec action, Integer value) {
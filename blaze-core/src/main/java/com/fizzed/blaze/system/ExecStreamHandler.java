@@ -0,0 +1,226 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.system;
+
+import com.fizzed.blaze.core.BlazeExecutor;
+import com.fizzed.blaze.util.BlockingInputStreamPumper;
+import com.fizzed.blaze.util.StandardInputReader;
+import com.fizzed.blaze.util.Streamables;
+import com.fizzed.blaze.util.WrappedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeroturnaround.exec.stream.ExecuteStreamHandler;
+
+/**
+ * Pumps the streams of a process like zt-exec's PumpStreamHandler, but on the
+ * shared executor rather than new threads for every process.
+ * 
+ * @author joelauer
+ */
+class ExecStreamHandler implements ExecuteStreamHandler {
+    static private final Logger log = LoggerFactory.getLogger(ExecStreamHandler.class);
+    
+    private final BlazeExecutor executor;
+    private final InputStream input;
+    private final OutputStream output;
+    private final OutputStream error;
+    private Pump inputPump;
+    private final List<Pump> outputPumps;
+    
+    public ExecStreamHandler(BlazeExecutor executor, InputStream input, OutputStream output, OutputStream error) {
+        this.executor = executor;
+        this.input = input;
+        if (output != null && output == error) {
+            // output and error are pumped at the same time and the stream
+            // (e.g. a pipe of a pipeline) may only support a single writer
+            this.output = this.error = new SynchronizedOutputStream(output);
+        } else {
+            this.output = output;
+            this.error = error;
+        }
+        this.outputPumps = new ArrayList<>();
+    }
+    
+    @Override
+    public void setProcessInputStream(OutputStream os) throws IOException {
+        if (this.input == null) {
+            // nothing to send so the process sees an EOF right away
+            Streamables.closeQuietly(os);
+        } else if (this.input == System.in) {
+            // a read of System.in cannot be interrupted so it is read on a
+            // shared thread and pumped from an interruptible stream
+            final InputStream stdin = StandardInputReader.of(this.input).open();
+            this.inputPump = new Pump(new BlockingInputStreamPumper(stdin, os, true), stdin);
+        } else {
+            this.inputPump = new Pump(new BlockingInputStreamPumper(this.input, os, true), null);
+        }
+    }
+    
+    @Override
+    public void setProcessOutputStream(InputStream is) throws IOException {
+        if (this.output != null) {
+            this.outputPumps.add(new Pump(new BlockingInputStreamPumper(is, this.output, false), null));
+        }
+    }
+
+    @Override
+    public void setProcessErrorStream(InputStream is) throws IOException {
+        if (this.error != null) {
+            this.outputPumps.add(new Pump(new BlockingInputStreamPumper(is, this.error, false), null));
+        }
+    }
+
+    @Override
+    public void start() throws IOException {
+        if (this.inputPump != null) {
+            this.inputPump.start();
+        }
+        for (Pump pump : this.outputPumps) {
+            pump.start();
+        }
+    }
+
+    @Override
+    public void stop() {
+        // the process exited: its input may still be waiting on more input
+        if (this.inputPump != null) {
+            if (this.input != System.in) {
+                Streamables.closeQuietly(this.input);
+            }
+            this.inputPump.interrupt();
+            this.inputPump.join();
+        }
+        
+        // its output and error are pumped until they hit an EOF
+        for (Pump pump : this.outputPumps) {
+            pump.join();
+        }
+        
+        flush(this.output);
+        flush(this.error);
+    }
+    
+    static private void flush(OutputStream os) {
+        if (os != null) {
+            try {
+                os.flush();
+            } catch (IOException e) {
+                log.trace("Unable to flush stream", e);
+            }
+        }
+    }
+    
+    static private class SynchronizedOutputStream extends WrappedOutputStream {
+        
+        public SynchronizedOutputStream(OutputStream output) {
+            super(output);
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            super.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b) throws IOException {
+            super.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            super.write(b, off, len);
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            super.flush();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            super.close();
+        }
+        
+    }
+    
+    private class Pump implements Runnable {
+        
+        private final BlockingInputStreamPumper pumper;
+        private final InputStream closeable;
+        private final CountDownLatch done;
+        private Thread runner;
+        private boolean stopped;
+
+        public Pump(BlockingInputStreamPumper pumper, InputStream closeable) {
+            this.pumper = pumper;
+            this.closeable = closeable;
+            this.done = new CountDownLatch(1);
+        }
+        
+        public void start() {
+            executor.execute(this);
+        }
+        
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (this.stopped) {
+                    Streamables.closeQuietly(this.closeable);
+                    this.done.countDown();
+                    return;
+                }
+                this.runner = Thread.currentThread();
+            }
+            try {
+                this.pumper.run();
+            } finally {
+                synchronized (this) {
+                    this.runner = null;
+                    // never leave an interrupt behind for the next task
+                    Thread.interrupted();
+                }
+                Streamables.closeQuietly(this.closeable);
+                this.done.countDown();
+            }
+        }
+        
+        public void interrupt() {
+            this.pumper.stopProcessing();
+            synchronized (this) {
+                this.stopped = true;
+                if (this.runner != null) {
+                    this.runner.interrupt();
+                }
+            }
+        }
+        
+        public void join() {
+            try {
+                this.done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+    }
+    
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.system;
+
+import com.fizzed.blaze.core.BlazeException;
+import com.fizzed.blaze.core.BlazeExecutor;
+import com.fizzed.blaze.core.UnexpectedExitValueException;
+import com.fizzed.blaze.util.BlockingInputStreamPumper;
+import com.fizzed.blaze.util.StandardInputReader;
+import com.fizzed.blaze.util.StreamableInput;
+import com.fizzed.blaze.util.StreamableOutput;
+import com.fizzed.blaze.util.Streamables;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.apache.commons.io.output.NullOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs consecutive exec stages of a pipeline with the output of each process
+ * connected directly to the input of the next one.  On Java 9+ the processes
+ * are started with <code>ProcessBuilder.startPipeline</code> so the OS pipes
+ * them together and no bytes pass thru the JVM.  On Java 8 each boundary is a
+ * single task on the shared executor copying from one process to the next.
+ * 
+ * Only the input of the first stage, the output of the last stage, and the
+ * error of each stage are redirected or pumped like a standalone exec.
+ * 
+ * @author joelauer
+ */
+class NativePipeline {
+    static private final Logger log = LoggerFactory.getLogger(NativePipeline.class);
+    
+    static private final Method START_PIPELINE = startPipelineMethod();
+    
+    static private Method startPipelineMethod() {
+        try {
+            // java 9+
+            return ProcessBuilder.class.getMethod("startPipeline", List.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+    
+    static public boolean isOsPiped() {
+        return START_PIPELINE != null;
+    }
+    
+    private final BlazeExecutor executor;
+    private final List<Exec> execs;
+    private final List<Future<?>> pumps;
+    private Future<?> inputPump;
+    private InputStream standardInput;
+    
+    public NativePipeline(BlazeExecutor executor, List<Exec> execs) {
+        if (execs.size() < 2) {
+            throw new IllegalArgumentException("A pipeline requires at least 2 execs");
+        }
+        this.executor = executor;
+        this.execs = execs;
+        this.pumps = new ArrayList<>();
+    }
+    
+    public void run() throws BlazeException {
+        final Exec first = this.execs.get(0);
+        final Exec last = this.execs.get(this.execs.size() - 1);
+        final List<ProcessBuilder> builders = new ArrayList<>();
+        
+        for (Exec exec : this.execs) {
+            ProcessBuilder builder = exec.buildPipelineProcess();
+            
+            Redirect errorRedirect = Exec.redirect(exec.getPipeError());
+            
+            if (exec.isPipeErrorToOutput()) {
+                builder.redirectErrorStream(true);
+            } else if (errorRedirect != null) {
+                builder.redirectError(errorRedirect);
+            }
+            
+            builders.add(builder);
+        }
+        
+        final Redirect inputRedirect = Exec.redirect(first.getPipeInput());
+        final Redirect outputRedirect = Exec.redirect(last.getPipeOutput());
+        
+        if (inputRedirect != null) {
+            builders.get(0).redirectInput(inputRedirect);
+        }
+        if (outputRedirect != null) {
+            builders.get(builders.size() - 1).redirectOutput(outputRedirect);
+        }
+        
+        // anything already written to the console goes first
+        System.out.flush();
+        System.err.flush();
+        
+        log.debug("Executing pipeline {} ({})", commands(builders), (isOsPiped() ? "os" : "pumped"));
+        
+        final List<Process> processes = start(builders);
+        
+        try {
+            // input of first stage
+            if (inputRedirect == null) {
+                pumpInput(first.getPipeInput(), processes.get(0).getOutputStream());
+            }
+            
+            // output of last stage
+            if (outputRedirect == null) {
+                pump(processes.get(processes.size() - 1).getInputStream(), output(last.getPipeOutput()), false);
+            }
+            
+            // errors of every stage
+            final List<StreamableOutput> errors = new ArrayList<>();
+            for (int i = 0; i < this.execs.size(); i++) {
+                Exec exec = this.execs.get(i);
+                if (!exec.isPipeErrorToOutput() && Exec.redirect(exec.getPipeError()) == null) {
+                    pump(processes.get(i).getErrorStream(), output(exec.getPipeError()), false);
+                    errors.add(exec.getPipeError());
+                }
+            }
+            
+            waitFor(processes);
+            
+            // like an exec, all output needs to be pumped before we're done
+            for (Future<?> pump : this.pumps) {
+                pump.get();
+            }
+            
+            for (StreamableOutput error : errors) {
+                Streamables.closeQuietly(error);
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new BlazeException("Unable to cleanly execute process", e);
+        } finally {
+            for (Process process : processes) {
+                if (process.isAlive()) {
+                    process.destroy();
+                }
+            }
+            for (Future<?> pump : this.pumps) {
+                pump.cancel(true);
+            }
+            // the input may still be waiting on more input (e.g. stdin)
+            if (this.inputPump != null) {
+                this.inputPump.cancel(true);
+            }
+            Streamables.closeQuietly(this.standardInput);
+        }
+        
+        // exit values are checked in order of the stages
+        for (int i = 0; i < this.execs.size(); i++) {
+            Exec exec = this.execs.get(i);
+            int exitValue = processes.get(i).exitValue();
+            if (!exec.getExitValues().contains(exitValue)) {
+                throw new UnexpectedExitValueException("Process exited with unexpected value", exec.getExitValues(), exitValue);
+            }
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private List<Process> start(List<ProcessBuilder> builders) throws BlazeException {
+        try {
+            if (START_PIPELINE != null) {
+                try {
+                    return (List<Process>)START_PIPELINE.invoke(null, builders);
+                } catch (InvocationTargetException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException)e.getCause();
+                    }
+                    throw new BlazeException("Unable to cleanly execute process", e.getCause());
+                } catch (IllegalAccessException e) {
+                    throw new BlazeException("Unable to cleanly execute process", e);
+                }
+            }
+            
+            // java 8: start each process and copy one's output to the next one
+            final List<Process> processes = new ArrayList<>();
+            try {
+                for (ProcessBuilder builder : builders) {
+                    processes.add(builder.start());
+                }
+            } catch (IOException e) {
+                for (Process process : processes) {
+                    process.destroy();
+                }
+                throw e;
+            }
+            
+            for (int i = 1; i < processes.size(); i++) {
+                pump(processes.get(i - 1).getInputStream(), processes.get(i).getOutputStream(), true);
+            }
+            
+            return processes;
+        } catch (IOException e) {
+            throw new BlazeException("Unable to cleanly execute process", e);
+        }
+    }
+    
+    private void waitFor(List<Process> processes) throws InterruptedException, BlazeException {
+        final long startedAt = System.currentTimeMillis();
+        
+        for (int i = 0; i < processes.size(); i++) {
+            Process process = processes.get(i);
+            Long timeoutInMillis = this.execs.get(i).getTimeoutInMillis();
+            
+            if (timeoutInMillis == null) {
+                process.waitFor();
+            } else {
+                long remaining = Math.max(0L, timeoutInMillis - (System.currentTimeMillis() - startedAt));
+                if (!process.waitFor(remaining, TimeUnit.MILLISECONDS)) {
+                    throw new BlazeException("Unable to cleanly execute process",
+                        new TimeoutException("Stage " + (i + 1) + " of pipeline timed out"));
+                }
+            }
+        }
+    }
+    
+    private void pumpInput(StreamableInput input, OutputStream os) {
+        if (input == null) {
+            Streamables.closeQuietly(os);
+            return;
+        }
+        
+        InputStream is = input.stream();
+        
+        if (is == System.in) {
+            // a read of System.in cannot be interrupted
+            is = this.standardInput = StandardInputReader.of(is).open();
+        }
+        
+        this.inputPump = newPump(is, os, true);
+    }
+    
+    private void pump(InputStream is, OutputStream os, boolean closeWhenExhausted) {
+        this.pumps.add(newPump(is, os, closeWhenExhausted));
+    }
+    
+    private Future<?> newPump(InputStream is, OutputStream os, boolean closeWhenExhausted) {
+        return this.executor.submit(new BlockingInputStreamPumper(is, os, closeWhenExhausted));
+    }
+    
+    static private OutputStream output(StreamableOutput output) {
+        // still drained so the process never blocks writing to it
+        return (output != null ? output.stream() : new NullOutputStream());
+    }
+    
+    static private List<List<String>> commands(List<ProcessBuilder> builders) {
+        List<List<String>> commands = new ArrayList<>();
+        for (ProcessBuilder builder : builders) {
+            commands.add(builder.command());
+        }
+        return commands;
+    }
+    
+}
@@ -18,17 +18,16 @@ package com.fizzed.blaze.system;
 import com.fizzed.blaze.Context;
 import com.fizzed.blaze.core.Action;
 import com.fizzed.blaze.core.BlazeException;
+import com.fizzed.blaze.core.BlazeExecutor;
 import com.fizzed.blaze.core.PipeMixin;
 import com.fizzed.blaze.core.WrappedBlazeException;
-import com.fizzed.blaze.util.BytePipe;
+import com.fizzed.blaze.util.SpscBytePipe;
 import com.fizzed.blaze.util.StreamableInput;
 import com.fizzed.blaze.util.StreamableOutput;
 import com.fizzed.blaze.util.Streamables;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -72,25 +71,53 @@ public class Pipeline extends Action<Pipeline.Result,Void> implements PipeMixin<
             throw new IllegalArgumentException("pipable must be an instance of " + Action.class.getCanonicalName());
         }
         
-        if (this.pipables.size() > 0) {
-            PipeMixin lastPipable = this.pipables.get(this.pipables.size() - 1);
+        this.pipables.add(pipable);
+        
+        return this;
+    }
+    
+    /**
+     * Groups the pipables into the stages that run concurrently.  Consecutive
+     * execs are a single stage with their processes connected by the OS and
+     * every other pipable (e.g. head or tail) is connected to its neighbors by
+     * a pipe thru the JVM.
+     */
+    private List<List<PipeMixin>> connect() {
+        final List<List<PipeMixin>> stages = new ArrayList<>();
+        
+        for (PipeMixin pipable : this.pipables) {
+            List<PipeMixin> lastStage = (stages.isEmpty() ? null : stages.get(stages.size() - 1));
             
-            // connect output to input
-            log.debug("Connecting {} output -> {} input", lastPipable.getClass(), pipable.getClass());
+            if (lastStage != null) {
+                PipeMixin lastPipable = lastStage.get(lastStage.size() - 1);
+                
+                if (lastPipable instanceof Exec && pipable instanceof Exec) {
+                    log.debug("Connecting {} output -> {} input (native)", lastPipable.getClass(), pipable.getClass());
+                    lastStage.add(pipable);
+                    continue;
+                }
                 
-            BytePipe pipe = new BytePipe();
-            lastPipable.pipeOutput(Streamables.output(pipe.getOutputStream(), "<pipe>"));
-            pipable.pipeInput(Streamables.input(pipe.getInputStream(), "<pipe>"));
+                // connect output to input
+                log.debug("Connecting {} output -> {} input", lastPipable.getClass(), pipable.getClass());
+                
+                SpscBytePipe pipe = new SpscBytePipe();
+                lastPipable.pipeOutput(Streamables.output(pipe.getOutputStream(), "<pipe>"));
+                pipable.pipeInput(Streamables.input(pipe.getInputStream(), "<pipe>"));
+            }
+            
+            List<PipeMixin> stage = new ArrayList<>();
+            stage.add(pipable);
+            stages.add(stage);
         }
         
-        this.pipables.add(pipable);
-        
-        return this;
+        return stages;
     }
 
     @Override
     protected Result doRun() throws BlazeException {
-        ExecutorService executor = Executors.newFixedThreadPool(this.pipables.size());
+        final List<List<PipeMixin>> stages = connect();
+        
+        final BlazeExecutor executor = this.context.executor();
         
         // apply input to first action
         if (this.pipeInput != null) {
@@ -106,18 +133,27 @@ public class Pipeline extends Action<Pipeline.Result,Void> implements PipeMixin<
         
         final List<Future> futures = new ArrayList<>();
         
-        this.pipables.stream().forEach((pipable) -> {
+        stages.stream().forEach((stage) -> {
             futures.add(executor.submit(() -> {
-                Action action = (Action)pipable;
-                
-                log.debug("Running action {}", action.getClass());
-                
-                action.run();
+                if (stage.size() == 1) {
+                    Action action = (Action)stage.get(0);
+
+                    log.debug("Running action {}", action.getClass());
+
+                    action.run();
+                } else {
+                    List<Exec> execs = new ArrayList<>();
+                    stage.forEach((pipable) -> execs.add((Exec)pipable));
+                    
+                    log.debug("Running {} execs natively piped", execs.size());
+                    
+                    new NativePipeline(executor, execs).run();
+                }
                 
                 // closing input and output after action is done is critical
                 // for pipeline to continue processing correctly and EOF's triggered
-                Streamables.closeQuietly(pipable.getPipeInput());
-                Streamables.closeQuietly(pipable.getPipeOutput());
+                Streamables.closeQuietly(stage.get(0).getPipeInput());
+                Streamables.closeQuietly(stage.get(stage.size() - 1).getPipeOutput());
             }));
         });
         
@@ -133,9 +169,6 @@ public class Pipeline extends Action<Pipeline.Result,Void> implements PipeMixin<
             }
         });
         
-        log.debug("waiting for executor shutdown...");
-        executor.shutdown();
-        
         return new Result(this, null);
     }
     
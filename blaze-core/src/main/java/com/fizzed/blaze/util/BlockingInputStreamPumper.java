@@ -0,0 +1,96 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pumps an input stream into the standard input of a process.  Reads in bulk
+ * and blocks rather than polls, and flushes after every chunk so interactive
+ * input reaches the process right away.  Interrupting the thread running it
+ * stops it promptly if the input stream is interruptible (e.g. one opened from
+ * a <code>StandardInputReader</code>).
+ * 
+ * @author joelauer
+ */
+public class BlockingInputStreamPumper implements Runnable {
+    static private final Logger log = LoggerFactory.getLogger(BlockingInputStreamPumper.class);
+    
+    static public final int DEFAULT_BUFFER_SIZE = 65536;
+    
+    private final InputStream is;
+    private final OutputStream os;
+    private final boolean closeWhenExhausted;
+    private final int bufferSize;
+    private volatile boolean stop;
+
+    public BlockingInputStreamPumper(InputStream is, OutputStream os, boolean closeWhenExhausted) {
+        this(is, os, closeWhenExhausted, DEFAULT_BUFFER_SIZE);
+    }
+    
+    /**
+     * Creates a new pumper.
+     * @param is The stream to read from
+     * @param os The stream to write to (e.g. standard input of a process)
+     * @param closeWhenExhausted Whether to close the output stream once the
+     *      input stream is exhausted (so the process sees the end of input)
+     * @param bufferSize The max size of each read
+     */
+    public BlockingInputStreamPumper(InputStream is, OutputStream os, boolean closeWhenExhausted, int bufferSize) {
+        this.is = is;
+        this.os = os;
+        this.closeWhenExhausted = closeWhenExhausted;
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public void run() {
+        byte[] buffer = new byte[this.bufferSize];
+        
+        try {
+            int read;
+            while (!stop && (read = is.read(buffer)) >= 0) {
+                if (read > 0) {
+                    os.write(buffer, 0, read);
+                    os.flush();
+                }
+            }
+        } catch (InterruptedIOException e) {
+            log.trace("Interrupted while pumping stream");
+        } catch (IOException e) {
+            // e.g. the process exited and closed its input
+            log.trace("Got exception while reading/writing the stream", e);
+        } finally {
+            if (closeWhenExhausted) {
+                Streamables.closeQuietly(os);
+            }
+        }
+    }
+    
+    /**
+     * Stops pumping after the current chunk.  Interrupt the thread running it
+     * to stop a read that is blocked.
+     */
+    public void stopProcessing() {
+        stop = true;
+    }
+    
+}
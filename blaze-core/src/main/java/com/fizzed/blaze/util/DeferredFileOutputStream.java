@@ -31,9 +31,14 @@ import java.util.Objects;
 public class DeferredFileOutputStream extends OutputStream {
  
     private final File file;
+    private final boolean append;
     private OutputStream output;
     
     public DeferredFileOutputStream(File file) {
+        this(file, false);
+    }
+    
+    public DeferredFileOutputStream(File file, boolean append) {
         Objects.requireNonNull(file, "file cannot be null");
         /**
         if (!file.exists()) {
@@ -41,16 +46,21 @@ public class DeferredFileOutputStream extends OutputStream {
         }
         */
         this.file = file;
+        this.append = append;
     }
     
     public DeferredFileOutputStream(Path path) throws FileNotFoundException {
-        this(path != null ? path.toFile() : (File)null);
+        this(path, false);
+    }
+    
+    public DeferredFileOutputStream(Path path, boolean append) throws FileNotFoundException {
+        this(path != null ? path.toFile() : (File)null, append);
     }
     
     public void open() {
         if (this.output == null) {
             try {
-                this.output = new FileOutputStream(file);
+                this.output = new FileOutputStream(file, append);
             } catch (Exception e) {
                 throw new FileNotFoundException(e.getMessage(), e);
             }
@@ -44,7 +44,11 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Copied from zt-exec so we could literally log errors as TRACE not ERROR!
+ * 
+ * @deprecated Pumps a byte at a time and polls every 100 ms.  Use
+ *      {@link BlockingInputStreamPumper} instead.
  */
+@Deprecated
 public class InputStreamPumper implements Runnable {
 
   private static final Logger log = LoggerFactory.getLogger(InputStreamPumper.class);
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records timing spans (builder phases, tasks, actions) for the current
+ * process.  Disabled by default so spans cost nothing unless a run was asked
+ * for timings.  Spans can be written as a plain summary table or as a
+ * Chrome/Perfetto trace (open chrome://tracing or ui.perfetto.dev).
+ * 
+ * <pre>
+ * try (Profiler.Span span = Profiler.span("blaze", "compile")) {
+ *     // work
+ * }
+ * </pre>
+ * 
+ * @author joelauer
+ */
+public class Profiler {
+    
+    static private final Profiler INSTANCE = new Profiler();
+    static private final Span NOOP = new Span(null, null, null, 0L);
+    
+    static public Profiler get() {
+        return INSTANCE;
+    }
+    
+    static public Span span(String category, String name) {
+        return INSTANCE.start(category, name);
+    }
+    
+    private volatile boolean enabled;
+    private volatile long originNanos;
+    private final Queue<Span> spans;
+
+    public Profiler() {
+        this.spans = new ConcurrentLinkedQueue<>();
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Enables recording and starts a fresh profile.
+     */
+    public void enable() {
+        this.spans.clear();
+        this.originNanos = System.nanoTime();
+        this.enabled = true;
+    }
+    
+    /**
+     * Records a span for the time from the start of the JVM until now.
+     */
+    public void recordJvmStartup() {
+        long jvmUptimeMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+        if (enabled && jvmUptimeMillis > 0) {
+            long startNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(jvmUptimeMillis);
+            // traces start at zero
+            this.originNanos = Math.min(this.originNanos, startNanos);
+            new Span(this, "jvm", "startup", startNanos).close();
+        }
+    }
+    
+    public void disable() {
+        this.enabled = false;
+    }
+    
+    public Span start(String category, String name) {
+        if (!enabled) {
+            return NOOP;
+        }
+        return new Span(this, category, name, System.nanoTime());
+    }
+    
+    public List<Span> getSpans() {
+        List<Span> list = new ArrayList<>(this.spans);
+        list.sort(Comparator.comparingLong(Span::getStartNanos));
+        return list;
+    }
+    
+    /**
+     * Builds a table of spans grouped by category and name (in order of first
+     * occurrence) with their count, total and max duration.
+     * @return The summary table
+     */
+    public String summary() {
+        Map<String,long[]> totals = new LinkedHashMap<>();
+        
+        for (Span span : getSpans()) {
+            long[] total = totals.computeIfAbsent(span.getCategory() + ":" + span.getName(), (k) -> new long[3]);
+            total[0]++;
+            total[1] += span.getDurationNanos();
+            total[2] = Math.max(total[2], span.getDurationNanos());
+        }
+        
+        int width = "span".length();
+        for (String key : totals.keySet()) {
+            width = Math.max(width, key.length());
+        }
+        
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-" + width + "s %7s %12s %12s%n", "span", "count", "total ms", "max ms"));
+        
+        for (Map.Entry<String,long[]> entry : totals.entrySet()) {
+            long[] total = entry.getValue();
+            sb.append(String.format("%-" + width + "s %7d %12.1f %12.1f%n",
+                entry.getKey(), total[0], total[1] / 1000000.0d, total[2] / 1000000.0d));
+        }
+        
+        return sb.toString();
+    }
+    
+    /**
+     * Writes all spans as Chrome trace event format "complete" events.
+     * @param file The file to write
+     * @throws IOException If the file could not be written
+     */
+    public void writeChromeTrace(Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("{\"traceEvents\":[");
+            boolean first = true;
+            for (Span span : getSpans()) {
+                if (!first) {
+                    writer.write(",");
+                }
+                first = false;
+                writer.write("\n{\"name\":\"");
+                writer.write(escape(span.getName()));
+                writer.write("\",\"cat\":\"");
+                writer.write(escape(span.getCategory()));
+                writer.write("\",\"ph\":\"X\",\"pid\":1,\"tid\":");
+                writer.write(Long.toString(span.getThreadId()));
+                writer.write(",\"ts\":");
+                writer.write(Long.toString(TimeUnit.NANOSECONDS.toMicros(span.getStartNanos() - this.originNanos)));
+                writer.write(",\"dur\":");
+                writer.write(Long.toString(TimeUnit.NANOSECONDS.toMicros(span.getDurationNanos())));
+                writer.write(",\"args\":{\"thread\":\"");
+                writer.write(escape(span.getThreadName()));
+                writer.write("\"}}");
+            }
+            writer.write("\n],\"displayTimeUnit\":\"ms\"}\n");
+        }
+    }
+    
+    static private String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int)c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+    
+    static public class Span implements AutoCloseable {
+        
+        private final Profiler profiler;
+        private final String category;
+        private final String name;
+        private final String threadName;
+        private final long threadId;
+        private final long startNanos;
+        private long durationNanos;
+
+        private Span(Profiler profiler, String category, String name, long startNanos) {
+            this.profiler = profiler;
+            this.category = category;
+            this.name = name;
+            this.threadName = Thread.currentThread().getName();
+            this.threadId = Thread.currentThread().getId();
+            this.startNanos = startNanos;
+        }
+
+        public String getCategory() {
+            return category;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getThreadName() {
+            return threadName;
+        }
+
+        public long getThreadId() {
+            return threadId;
+        }
+
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+        
+        @Override
+        public void close() {
+            if (this.profiler != null) {
+                this.durationNanos = System.nanoTime() - this.startNanos;
+                this.profiler.spans.add(this);
+            }
+        }
+        
+    }
+    
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A pipe between exactly one writing thread and one reading thread (e.g. the
+ * stages of a pipeline).  Unlike <code>BytePipe</code> there is no lock: the
+ * writer only advances the tail and the reader only advances the head of a
+ * power-of-two ring buffer, and a thread is only parked (and later unparked)
+ * when the buffer is full or empty.
+ * 
+ * @author joelauer
+ */
+public class SpscBytePipe {
+    
+    static public final int DEFAULT_CAPACITY = 65536;
+    
+    private final byte[] buffer;
+    private final int mask;
+    // total bytes ever read (head) and written (tail)
+    private final AtomicLong head;
+    private final AtomicLong tail;
+    // the reader or writer while parked waiting on the other one
+    private volatile Thread parkedReader;
+    private volatile Thread parkedWriter;
+    private volatile boolean outputClosed;
+    private volatile boolean inputClosed;
+    private final SpscOutputStream output;
+    private final SpscInputStream input;
+    
+    public SpscBytePipe() {
+        this(DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * Creates a new pipe.
+     * @param capacity The min number of bytes buffered (rounded up to the next
+     *      power of two)
+     */
+    public SpscBytePipe(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity must be > 0 and <= 2^30");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.buffer = new byte[size];
+        this.mask = size - 1;
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+        this.output = new SpscOutputStream();
+        this.input = new SpscInputStream();
+    }
+    
+    public int getCapacity() {
+        return this.buffer.length;
+    }
+    
+    public SpscOutputStream getOutputStream() {
+        return this.output;
+    }
+    
+    public SpscInputStream getInputStream() {
+        return this.input;
+    }
+    
+    static private void park(Object blocker) throws InterruptedIOException {
+        LockSupport.park(blocker);
+        if (Thread.interrupted()) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting on pipe");
+        }
+    }
+    
+    static private void unpark(Thread thread) {
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+    
+    public class SpscOutputStream extends OutputStream {
+        
+        @Override
+        public void close() throws IOException {
+            // closing is like writing (since anyone reading needs to get an EOF)
+            outputClosed = true;
+            unpark(parkedReader);
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            // every write is visible to the reader right away
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte)b }, 0, 1);
+        }
+        
+        @Override
+        public void write(byte[] bytes) throws IOException {
+            write(bytes, 0, bytes.length);
+        }
+        
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (offset < 0 || length < 0 || length > bytes.length - offset) {
+                throw new IndexOutOfBoundsException();
+            }
+            
+            while (length > 0) {
+                int n = awaitFree(length);
+                long t = tail.get();
+                int index = (int)(t & mask);
+                int first = Math.min(n, buffer.length - index);
+                
+                System.arraycopy(bytes, offset, buffer, index, first);
+                System.arraycopy(bytes, offset + first, buffer, 0, n - first);
+                
+                publish(t + n);
+                
+                offset += n;
+                length -= n;
+            }
+        }
+        
+        /**
+         * Writes all remaining bytes of the buffer.
+         * @param src The buffer to write from
+         * @return The number of bytes written
+         * @throws IOException If the input of the pipe is closed
+         */
+        public int write(ByteBuffer src) throws IOException {
+            int written = src.remaining();
+            
+            while (src.hasRemaining()) {
+                int n = awaitFree(src.remaining());
+                long t = tail.get();
+                int index = (int)(t & mask);
+                int first = Math.min(n, buffer.length - index);
+                
+                src.get(buffer, index, first);
+                src.get(buffer, 0, n - first);
+                
+                publish(t + n);
+            }
+            
+            return written;
+        }
+        
+        private int awaitFree(int wanted) throws IOException {
+            while (true) {
+                if (inputClosed) {
+                    throw new IOException("Pipe input is closed");
+                }
+                
+                int free = buffer.length - (int)(tail.get() - head.get());
+                if (free > 0) {
+                    return Math.min(free, wanted);
+                }
+                
+                // full: register then re-check so a read in between wakes us
+                parkedWriter = Thread.currentThread();
+                try {
+                    if (!inputClosed && tail.get() - head.get() >= buffer.length) {
+                        park(SpscBytePipe.this);
+                    }
+                } finally {
+                    parkedWriter = null;
+                }
+            }
+        }
+        
+        private void publish(long newTail) {
+            // a volatile write before reading the parked reader so either it
+            // sees the bytes when re-checking or we see it parked
+            tail.set(newTail);
+            unpark(parkedReader);
+        }
+        
+    }
+    
+    public class SpscInputStream extends InputStream {
+        
+        @Override
+        public int available() throws IOException {
+            return (int)(tail.get() - head.get());
+        }
+        
+        @Override
+        public void close() throws IOException {
+            // closing is like reading (since anyone waiting to write needs to throw an exception)
+            inputClosed = true;
+            unpark(parkedWriter);
+        }
+        
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return (n < 0 ? -1 : (b[0] & 0xff));
+        }
+        
+        @Override
+        public int read(byte[] bytes) throws IOException {
+            return read(bytes, 0, bytes.length);
+        }
+        
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (offset < 0 || length < 0 || length > bytes.length - offset) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (length == 0) {
+                return 0;
+            }
+            
+            int n = awaitUsed(length);
+            if (n < 0) {
+                return -1;
+            }
+            
+            long h = head.get();
+            int index = (int)(h & mask);
+            int first = Math.min(n, buffer.length - index);
+            
+            System.arraycopy(buffer, index, bytes, offset, first);
+            System.arraycopy(buffer, 0, bytes, offset + first, n - first);
+            
+            consume(h + n);
+            
+            return n;
+        }
+        
+        /**
+         * Reads as many bytes as are available (blocking until at least one
+         * is) up to the remaining bytes of the buffer.
+         * @param dst The buffer to read into
+         * @return The number of bytes read or -1 if the pipe output is closed
+         *      and every byte was read
+         * @throws IOException If interrupted while waiting
+         */
+        public int read(ByteBuffer dst) throws IOException {
+            if (!dst.hasRemaining()) {
+                return 0;
+            }
+            
+            int n = awaitUsed(dst.remaining());
+            if (n < 0) {
+                return -1;
+            }
+            
+            long h = head.get();
+            int index = (int)(h & mask);
+            int first = Math.min(n, buffer.length - index);
+            
+            dst.put(buffer, index, first);
+            dst.put(buffer, 0, n - first);
+            
+            consume(h + n);
+            
+            return n;
+        }
+        
+        private int awaitUsed(int wanted) throws IOException {
+            while (true) {
+                int used = (int)(tail.get() - head.get());
+                if (used > 0) {
+                    return Math.min(used, wanted);
+                }
+                
+                if (outputClosed) {
+                    // anything written before it was closed?
+                    if (tail.get() - head.get() > 0) {
+                        continue;
+                    }
+                    return -1;
+                }
+                
+                // empty: register then re-check so a write in between wakes us
+                parkedReader = Thread.currentThread();
+                try {
+                    if (!outputClosed && tail.get() == head.get()) {
+                        park(SpscBytePipe.this);
+                    }
+                } finally {
+                    parkedReader = null;
+                }
+            }
+        }
+        
+        private void consume(long newHead) {
+            // see publish() on the order of these
+            head.set(newHead);
+            unpark(parkedWriter);
+        }
+        
+    }
+    
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads standard input on a single daemon thread shared by everything that
+ * pumps it into a process.  A read of System.in blocks and cannot be
+ * interrupted, so a pump reading it directly could never stop once its
+ * process exited.  Pumps instead read a stream opened here which blocks
+ * (interruptibly) until the thread has read a chunk.
+ * 
+ * The thread only reads while a stream is open and never more than one chunk
+ * ahead, so input after a process exited is kept for the next one.  The
+ * source (e.g. System.in) is never closed.
+ * 
+ * @author joelauer
+ */
+public class StandardInputReader {
+    static private final Logger log = LoggerFactory.getLogger(StandardInputReader.class);
+    
+    static public final int CHUNK_SIZE = 65536;
+    
+    static private StandardInputReader current;
+    
+    /**
+     * Gets the reader of the source.  The same reader is returned until the
+     * source changes (e.g. System.setIn).
+     * @param source The source (e.g. System.in)
+     * @return The reader
+     */
+    static public synchronized StandardInputReader of(InputStream source) {
+        if (current == null || current.source != source) {
+            current = new StandardInputReader(source);
+        }
+        return current;
+    }
+    
+    private final InputStream source;
+    private final ReentrantLock lock;
+    private final Condition consumedSignal;
+    private final Condition readSignal;
+    private final byte[] chunk;
+    private int position;
+    private int limit;
+    private boolean eof;
+    private IOException error;
+    private int opened;
+    private Thread thread;
+    
+    public StandardInputReader(InputStream source) {
+        this.source = source;
+        this.lock = new ReentrantLock();
+        this.consumedSignal = this.lock.newCondition();
+        this.readSignal = this.lock.newCondition();
+        this.chunk = new byte[CHUNK_SIZE];
+    }
+    
+    /**
+     * Opens a stream of the source.  Closing the stream never closes the
+     * source.  Only one stream should be open at a time.
+     * @return The stream
+     */
+    public InputStream open() {
+        lock.lock();
+        try {
+            opened++;
+            
+            if (thread == null) {
+                thread = new Thread(this::readLoop, "blaze-stdin");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            
+            consumedSignal.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        
+        return new ChunkInputStream();
+    }
+    
+    private void readLoop() {
+        try {
+            while (true) {
+                lock.lock();
+                try {
+                    // only while a stream is open and the last chunk was consumed
+                    while (opened <= 0 || position < limit) {
+                        consumedSignal.await();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                
+                // nobody touches the chunk until it is published below
+                int read = source.read(chunk, 0, chunk.length);
+                
+                lock.lock();
+                try {
+                    if (read < 0) {
+                        eof = true;
+                        readSignal.signalAll();
+                        return;
+                    }
+                    
+                    position = 0;
+                    limit = read;
+                    readSignal.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (IOException e) {
+            log.trace("Unable to read standard input", e);
+            lock.lock();
+            try {
+                error = e;
+                readSignal.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        } catch (InterruptedException e) {
+            // stop reading
+        }
+    }
+    
+    private class ChunkInputStream extends InputStream {
+        
+        private boolean closed;
+        
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int read = read(b, 0, 1);
+            return (read < 0 ? -1 : (b[0] & 0xff));
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            
+            lock.lock();
+            try {
+                if (closed) {
+                    throw new IOException("Stream closed");
+                }
+                
+                while (position >= limit) {
+                    if (error != null) {
+                        throw error;
+                    }
+                    if (eof) {
+                        return -1;
+                    }
+                    try {
+                        readSignal.await();
+                    } catch (InterruptedException e) {
+                        // e.g. the process exited
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for standard input");
+                    }
+                }
+                
+                int read = Math.min(length, limit - position);
+                System.arraycopy(chunk, position, bytes, offset, read);
+                position += read;
+                
+                if (position >= limit) {
+                    consumedSignal.signalAll();
+                }
+                
+                return read;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int available() throws IOException {
+            lock.lock();
+            try {
+                return (closed ? 0 : limit - position);
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        @Override
+        public void close() throws IOException {
+            lock.lock();
+            try {
+                if (!closed) {
+                    closed = true;
+                    opened--;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+    }
+    
+}
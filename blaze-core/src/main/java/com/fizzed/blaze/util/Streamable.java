@@ -17,6 +17,7 @@ package com.fizzed.blaze.util;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
 import java.nio.file.Path;
 import java.util.Objects;
 
@@ -26,14 +27,20 @@ public abstract class Streamable<T extends Closeable> implements Closeable {
     protected final String name;
     protected final Path path;
     protected final Long size;
+    protected final Redirect redirect;
     
     public Streamable(T stream, String name, Path path, Long size) {
+        this(stream, name, path, size, null);
+    }
+    
+    public Streamable(T stream, String name, Path path, Long size, Redirect redirect) {
         Objects.requireNonNull(stream, "stream cannot be null");
         Objects.requireNonNull(name, "name cannot be null");
         this.stream = stream;
         this.name = name;
         this.path = path;
         this.size = size;
+        this.redirect = redirect;
     }
 
     public T stream() {
@@ -52,6 +59,15 @@ public abstract class Streamable<T extends Closeable> implements Closeable {
         return size;
     }
     
+    /**
+     * The equivalent native redirect of a process (e.g. to a file or the
+     * console) so its stream does not need to be pumped through the JVM.
+     * @return The redirect or null if the stream must be pumped
+     */
+    public Redirect redirect() {
+        return redirect;
+    }
+    
     @Override
     public void close() throws IOException {
         stream.close();
@@ -16,6 +16,7 @@
 package com.fizzed.blaze.util;
 
 import java.io.InputStream;
+import java.lang.ProcessBuilder.Redirect;
 import java.nio.file.Path;
 
 public class StreamableInput extends Streamable<InputStream> {
@@ -24,6 +25,10 @@ public class StreamableInput extends Streamable<InputStream> {
         super(stream, name, path, size);
     }
     
+    public StreamableInput(InputStream stream, String name, Path path, Long size, Redirect redirect) {
+        super(stream, name, path, size, redirect);
+    }
+    
     /**
     static private InputStream maybeWrap(final InputStream stream, final boolean closeable) {
         if (closeable) {
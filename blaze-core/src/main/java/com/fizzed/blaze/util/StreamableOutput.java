@@ -17,6 +17,7 @@ package com.fizzed.blaze.util;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.ProcessBuilder.Redirect;
 import java.nio.file.Path;
 
 public class StreamableOutput extends Streamable<OutputStream> {
@@ -28,6 +29,10 @@ public class StreamableOutput extends Streamable<OutputStream> {
         //this.flushable = flushable;
     }
     
+    public StreamableOutput(OutputStream stream, String name, Path path, Long size, Redirect redirect) {
+        super(stream, name, path, size, redirect);
+    }
+    
     /**
     static private OutputStream maybeWrap(final OutputStream stream, final boolean closeable, final boolean flushable) {
         if (closeable && flushable) {
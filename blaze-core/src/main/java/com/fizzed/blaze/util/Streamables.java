@@ -26,7 +26,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.PrintStream;
 import java.io.UncheckedIOException;
+import java.lang.ProcessBuilder.Redirect;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -40,6 +42,23 @@ import org.apache.commons.io.input.NullInputStream;
 import org.apache.commons.io.output.NullOutputStream;
 
 public class Streamables {
+    
+    // the standard streams of the console of this JVM (if marked)
+    static private volatile InputStream consoleIn;
+    static private volatile PrintStream consoleOut;
+    static private volatile PrintStream consoleErr;
+    
+    /**
+     * Marks the current standard input, output, and error as the console of
+     * this JVM (e.g. by the command line).  While they are still the standard
+     * streams, processes executed with them inherit the console directly
+     * rather than having their streams pumped through the JVM.
+     */
+    static public void markConsole() {
+        consoleIn = System.in;
+        consoleOut = System.out;
+        consoleErr = System.err;
+    }
 
     static public StreamableInput nullInput() {
         return new StreamableInput(new NullInputStream(0, true, true), "<null>", null, null);
@@ -48,7 +67,13 @@ public class Streamables {
     static public StreamableInput standardInput() {
         // zt-exec will hang forever if you don't explicitly use System.in :-(
         //InputStream is = new CloseGuardedInputStream(System.in);
-        return new StreamableInput(System.in, "<stdin>", null, null);
+        InputStream is = System.in;
+        return new StreamableInput(is, "<stdin>", null, null, (is == consoleIn ? Redirect.INHERIT : null)) {
+            @Override
+            public void close() throws IOException {
+                // shared by everything (e.g. the next exec or a prompt)
+            }
+        };
     }
     
     /**
@@ -102,7 +127,8 @@ public class Streamables {
             throw new BlazeException(e.getMessage(), e);
         }
         
-        return new StreamableInput(new DeferredFileInputStream(path), path.getFileName().toString(), path, size);
+        return new StreamableInput(new DeferredFileInputStream(path), path.getFileName().toString(), path, size,
+            Redirect.from(path.toFile()));
     }
     
     static private Runnable asUncheckedRunnable(Closeable c) {
@@ -165,13 +191,15 @@ public class Streamables {
     }
     
     static public StreamableOutput standardOutput() {
-        OutputStream os = new CloseGuardedOutputStream(System.out);
-        return new StreamableOutput(os, "<stdout>", null, null);
+        PrintStream ps = System.out;
+        OutputStream os = new CloseGuardedOutputStream(ps);
+        return new StreamableOutput(os, "<stdout>", null, null, (ps == consoleOut ? Redirect.INHERIT : null));
     }
     
     static public StreamableOutput standardError() {
-        OutputStream os = new CloseGuardedOutputStream(System.err);
-        return new StreamableOutput(os, "<stderr>", null, null);
+        PrintStream ps = System.err;
+        OutputStream os = new CloseGuardedOutputStream(ps);
+        return new StreamableOutput(os, "<stderr>", null, null, (ps == consoleErr ? Redirect.INHERIT : null));
     }
     
     static public StreamableOutput output(OutputStream stream) {
@@ -189,8 +217,20 @@ public class Streamables {
     }
     
     static public StreamableOutput output(Path path) {
+        return output(path, false);
+    }
+    
+    /**
+     * Creates an output to a file.
+     * @param path The file
+     * @param append If true then bytes will be written to the end of the file
+     *      rather than replacing it
+     * @return The new output
+     */
+    static public StreamableOutput output(Path path, boolean append) {
         Objects.requireNonNull(path, "path cannot be null");
-        return new StreamableOutput(new DeferredFileOutputStream(path), path.getFileName().toString(), path, null);
+        return new StreamableOutput(new DeferredFileOutputStream(path, append), path.getFileName().toString(), path, null,
+            (append ? Redirect.appendTo(path.toFile()) : Redirect.to(path.toFile())));
     }
     
     static public CaptureOutput captureOutput() {
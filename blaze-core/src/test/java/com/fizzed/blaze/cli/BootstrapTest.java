@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.cli;
+
+import com.fizzed.blaze.Config;
+import com.fizzed.blaze.internal.FileWatcher;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Set;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertThat;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author joelauer
+ */
+public class BootstrapTest {
+    
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    
+    private Path root;
+    
+    @Before
+    public void before() throws Exception {
+        root = temporaryFolder.getRoot().toPath().toRealPath();
+        Files.createDirectories(root.resolve("src"));
+        Files.createDirectories(root.resolve("blaze"));
+        Files.createDirectories(root.resolve(".blaze"));
+    }
+    
+    @Test
+    public void watchRoot() throws Exception {
+        assertThat(Bootstrap.watchRoot(root.resolve("blaze/blaze.java"), root.resolve("blaze")), is(root));
+        assertThat(Bootstrap.watchRoot(root.resolve(".blaze/blaze.java"), root.resolve(".blaze")), is(root));
+        assertThat(Bootstrap.watchRoot(root.resolve("blaze.java"), root), is(root));
+        assertThat(Bootstrap.watchRoot(root.resolve("src/blaze.java"), root.resolve("src")), is(root.resolve("src")));
+        assertThat(Bootstrap.watchRoot(null, root), is(root));
+    }
+    
+    @Test(timeout=30000)
+    public void watchBlazeDirLayout() throws Exception {
+        Path scriptFile = root.resolve("blaze/blaze.java");
+        
+        try (FileWatcher watcher = new FileWatcher(Bootstrap.watchRoot(scriptFile, scriptFile.getParent()),
+                Config.DEFAULT_WATCH_INCLUDES, Config.DEFAULT_WATCH_EXCLUDES, Arrays.asList(scriptFile.getParent()))) {
+            // project files next to the script dir are watched too
+            Files.write(root.resolve("src/in.txt"), "a".getBytes());
+            Files.write(scriptFile, "a".getBytes());
+            
+            Set<Path> changed = watcher.take(200);
+            
+            assertThat(changed, containsInAnyOrder(root.resolve("src/in.txt"), scriptFile));
+        }
+    }
+    
+    @Test(timeout=30000)
+    public void watchHiddenBlazeDirLayout() throws Exception {
+        Path scriptFile = root.resolve(".blaze/blaze.java");
+        
+        try (FileWatcher watcher = new FileWatcher(Bootstrap.watchRoot(scriptFile, scriptFile.getParent()),
+                Config.DEFAULT_WATCH_INCLUDES, Config.DEFAULT_WATCH_EXCLUDES, Arrays.asList(scriptFile.getParent()))) {
+            Files.write(root.resolve("src/in.txt"), "a".getBytes());
+            Files.write(scriptFile, "a".getBytes());
+            
+            Set<Path> changed = watcher.take(200);
+            
+            assertThat(changed, containsInAnyOrder(root.resolve("src/in.txt"), scriptFile));
+        }
+    }
+    
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.cli;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+/**
+ *
+ * @author joelauer
+ */
+public class DaemonProtocolTest {
+    
+    @Test
+    public void loggingSwitch() {
+        assertThat(DaemonProtocol.loggingSwitch(Arrays.asList("-Da=b", "build")), is(""));
+        assertThat(DaemonProtocol.loggingSwitch(Arrays.asList("-q", "build")), is("-q"));
+        assertThat(DaemonProtocol.loggingSwitch(Arrays.asList("-x", "build", "-xx")), is("-xx"));
+    }
+    
+    @Test
+    public void environment() {
+        Map<String,String> env = new HashMap<>();
+        env.put("HOME", "/home/test");
+        env.put("OLDPWD", "/tmp");
+        env.put("_", "/usr/bin/java");
+        
+        Map<String,String> filtered = DaemonProtocol.environment(env);
+        
+        assertThat(filtered, hasKey("HOME"));
+        assertThat(filtered, not(hasKey("OLDPWD")));
+        assertThat(filtered, not(hasKey("_")));
+    }
+    
+    @Test
+    public void roundTrip() throws Exception {
+        Map<String,String> env = new HashMap<>();
+        env.put("HOME", "/home/test");
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(baos);
+        
+        DaemonProtocol.writeString(output, "token");
+        DaemonProtocol.writeMap(output, env);
+        DaemonProtocol.writeStrings(output, Arrays.asList("-x", "build"));
+        
+        OutputStream stdout = new DaemonProtocol.FrameOutputStream(output, DaemonProtocol.FRAME_STDOUT);
+        stdout.write("hello".getBytes(StandardCharsets.UTF_8));
+        
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        
+        assertThat(DaemonProtocol.readString(input), is("token"));
+        assertThat(DaemonProtocol.readMap(input), is(env));
+        assertThat(DaemonProtocol.readStrings(input), contains("-x", "build"));
+        assertThat(input.readByte(), is(DaemonProtocol.FRAME_STDOUT));
+        assertThat(input.readInt(), is(5));
+        
+        byte[] bytes = new byte[5];
+        input.readFully(bytes);
+        
+        assertThat(new String(bytes, StandardCharsets.UTF_8), is("hello"));
+    }
+    
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.cli;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.contrib.java.lang.system.SystemErrRule;
+import org.junit.contrib.java.lang.system.SystemOutRule;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author joelauer
+ */
+public class DaemonTest {
+    
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+    
+    @Rule
+    public final SystemOutRule systemOutRule = new SystemOutRule().enableLog();
+    
+    @Rule
+    public final SystemErrRule systemErrRule = new SystemErrRule().enableLog();
+    
+    /**
+     * The classpath of the tests with slf4j-simple (like the blaze jar ships
+     * with) rather than logback since it keeps the System.err it started with.
+     */
+    static private String simpleLoggerClassPath() {
+        List<String> entries = Arrays.stream(System.getProperty("java.class.path").split(File.pathSeparator))
+            .filter((entry) -> !entry.contains("logback-"))
+            .collect(Collectors.toList());
+        
+        String slf4jApi = entries.stream()
+            .filter((entry) -> entry.contains("slf4j-api"))
+            .findFirst()
+            .orElse(null);
+        
+        assumeTrue("Requires slf4j-api jar", slf4jApi != null);
+        
+        Path slf4jSimple = Paths.get(slf4jApi.replace("slf4j-api", "slf4j-simple"));
+        
+        assumeTrue("Requires slf4j-simple jar", Files.exists(slf4jSimple));
+        
+        entries.add(slf4jSimple.toString());
+        
+        return String.join(File.pathSeparator, entries);
+    }
+    
+    @Test
+    public void logsReachClient() throws Exception {
+        String classPath = simpleLoggerClassPath();
+        
+        Path workingDir = temporaryFolder.newFolder("project").toPath().toRealPath();
+        
+        String script = ""
+            + "import com.fizzed.blaze.Contexts;\n"
+            + "public class blaze {\n"
+            + "    public void main() {\n"
+            + "        Contexts.logger().info(\"LOGGED-FROM-SCRIPT\");\n"
+            + "        System.out.println(\"PRINTED-FROM-SCRIPT\");\n"
+            + "    }\n"
+            + "}\n";
+        Files.write(workingDir.resolve("blaze.java"), script.getBytes(StandardCharsets.UTF_8));
+        
+        DaemonClient client = new DaemonClient(workingDir, classPath);
+        
+        try {
+            // the second request is served by the already warm daemon
+            for (int i = 0; i < 2; i++) {
+                systemOutRule.clearLog();
+                systemErrRule.clearLog();
+                
+                assertThat(client.run(Collections.emptyList()), is(0));
+                
+                String log = systemOutRule.getLog() + systemErrRule.getLog();
+                
+                assertThat(log, containsString("PRINTED-FROM-SCRIPT"));
+                assertThat(log, containsString("LOGGED-FROM-SCRIPT"));
+                assertThat(log, containsString("Blazed in"));
+            }
+        } finally {
+            client.stop();
+        }
+    }
+    
+}
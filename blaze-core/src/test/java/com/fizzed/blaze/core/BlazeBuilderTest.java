@@ -18,13 +18,18 @@ package com.fizzed.blaze.core;
 import com.fizzed.blaze.Task;
 import com.fizzed.blaze.internal.NoopDependencyResolver;
 import com.fizzed.blaze.jdk.TargetObjectScript;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.Assert.assertThat;
 import org.junit.Test;
@@ -180,4 +185,61 @@ public class BlazeBuilderTest {
         
     }
     
+    static public class Script4 {
+        
+        final List<String> executed = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch bothRunning = new CountDownLatch(2);
+        
+        public void compile() { executed.add("compile"); }
+        
+        @Task(depends = "compile")
+        public void zip() throws Exception { packaging("zip"); }
+        
+        @Task(depends = "compile")
+        public void tarball() throws Exception { packaging("tarball"); }
+        
+        @Task(depends = { "zip", "tarball" })
+        public void release() { executed.add("release"); }
+        
+        @Task(depends = "compile")
+        public void broken() { throw new IllegalStateException("broken"); }
+        
+        private void packaging(String name) throws Exception {
+            // only completes if both packaging tasks run at the same time
+            bothRunning.countDown();
+            if (!bothRunning.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("packaging tasks did not run in parallel");
+            }
+            executed.add(name);
+        }
+        
+    }
+    
+    @Test
+    public void executeAllWithDepends() throws Exception {
+        Script4 script = new Script4();
+        
+        Blaze blaze = new Blaze.Builder()
+            .scriptObject(script)
+            .build();
+        
+        blaze.executeAll(Arrays.asList("compile", "release"), 4);
+        
+        assertThat(script.executed, hasSize(4));
+        assertThat(script.executed.get(0), is("compile"));
+        assertThat(script.executed, hasItems("zip", "tarball"));
+        assertThat(script.executed.get(3), is("release"));
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void executeAllParallelFailsFast() throws Exception {
+        Script4 script = new Script4();
+        
+        Blaze blaze = new Blaze.Builder()
+            .scriptObject(script)
+            .build();
+        
+        blaze.executeAll(Arrays.asList("broken", "compile"), 4);
+    }
+    
 }
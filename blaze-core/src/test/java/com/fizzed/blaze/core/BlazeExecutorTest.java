@@ -0,0 +1,117 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.core;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author joelauer
+ */
+public class BlazeExecutorTest {
+    
+    private ExecutorService service;
+    private BlazeExecutor executor;
+    
+    @Before
+    public void before() {
+        service = Executors.newCachedThreadPool();
+        executor = new BlazeExecutor(service, false);
+    }
+    
+    @After
+    public void after() {
+        service.shutdownNow();
+    }
+    
+    @Test
+    public void shared() {
+        assertThat(BlazeExecutor.shared(), sameInstance(BlazeExecutor.shared()));
+    }
+    
+    @Test
+    public void virtualOnlyIfSupported() {
+        boolean supported;
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            supported = true;
+        } catch (NoSuchMethodException e) {
+            supported = false;
+        }
+        
+        if (!supported) {
+            assertThat(BlazeExecutor.shared().isVirtual(), is(false));
+        }
+    }
+    
+    @Test
+    public void counters() throws Exception {
+        final CountDownLatch running = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        
+        Runnable task = () -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                // done
+            }
+        };
+        
+        Future<?> first = executor.submit(task);
+        Future<?> second = executor.submit(task);
+        
+        assertThat(running.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(executor.getActiveCount(), is(2L));
+        assertThat(executor.getCompletedCount(), is(0L));
+        
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        
+        assertThat(executor.getActiveCount(), is(0L));
+        assertThat(executor.getCompletedCount(), is(2L));
+    }
+    
+    @Test
+    public void countsFailedTasks() throws Exception {
+        Future<String> future = executor.submit(() -> {
+            throw new IllegalStateException("boom");
+        });
+        
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (java.util.concurrent.ExecutionException e) {
+            assertThat(e.getCause() instanceof IllegalStateException, is(true));
+        }
+        
+        assertThat(executor.getActiveCount(), is(0L));
+        assertThat(executor.getCompletedCount(), is(1L));
+    }
+    
+}
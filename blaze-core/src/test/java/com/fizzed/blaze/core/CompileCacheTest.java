@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.core;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author joelauer
+ */
+public class CompileCacheTest {
+    
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    
+    private Path projectDir;
+    private Path scriptFile;
+    
+    @Before
+    public void before() throws Exception {
+        projectDir = temporaryFolder.newFolder("project").toPath();
+        scriptFile = temporaryFolder.getRoot().toPath().resolve("blaze.java");
+        Files.write(scriptFile, "public class blaze {}".getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private String key(String engineVersion, List<File> classPath) throws Exception {
+        return new CompileCache(projectDir, scriptFile, engineVersion, classPath).key();
+    }
+    
+    @Test
+    public void keyChangesWithSourceClassPathAndEngine() throws Exception {
+        File jar = temporaryFolder.newFile("a.jar");
+        List<File> classPath = Arrays.asList(jar);
+        
+        String key = key("java:1", classPath);
+        
+        assertThat(key("java:1", classPath), is(key));
+        assertThat(key("java:2", classPath), is(not(key)));
+        assertThat(key("java:1", Collections.emptyList()), is(not(key)));
+        
+        // a jar of a dependency changed
+        Files.write(jar.toPath(), new byte[] { 1 });
+        assertThat(key("java:1", classPath), is(not(key)));
+        
+        Files.write(scriptFile, "public class blaze { int a; }".getBytes(StandardCharsets.UTF_8));
+        assertThat(key("java:1", Collections.emptyList()), is(not(key)));
+    }
+    
+    @Test
+    public void keyReusedIfSizeAndModifiedUnchanged() throws Exception {
+        FileTime modified = Files.getLastModifiedTime(scriptFile);
+        
+        String key = key("java:1", Collections.emptyList());
+        
+        // same size and modified time, so the source is not read again
+        Files.write(scriptFile, "public class other {}".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(scriptFile, modified);
+        
+        assertThat(key("java:1", Collections.emptyList()), is(key));
+        
+        Files.setLastModifiedTime(scriptFile, FileTime.fromMillis(modified.toMillis() + 2000L));
+        
+        assertThat(key("java:1", Collections.emptyList()), is(not(key)));
+    }
+    
+    @Test
+    public void compiled() throws Exception {
+        CompileCache compileCache = new CompileCache(projectDir, scriptFile, "java:1", Collections.emptyList());
+        
+        assertThat(compileCache.file(".classes"), is(projectDir.resolve("blaze.java.classes")));
+        assertThat(compileCache.isCompiled(), is(false));
+        
+        compileCache.markCompiled();
+        
+        assertThat(compileCache.isCompiled(), is(true));
+        
+        CompileCache other = new CompileCache(projectDir, scriptFile, "java:2", Collections.emptyList());
+        
+        assertThat(other.isCompiled(), is(false));
+    }
+    
+    @Test
+    public void lockIsExclusive() throws Exception {
+        CompileCache compileCache = new CompileCache(projectDir, scriptFile, "java:1", Collections.emptyList());
+        
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean acquired = new AtomicBoolean();
+        
+        Thread thread;
+        
+        try (CompileCache.Lock lock = compileCache.lock()) {
+            thread = new Thread(() -> {
+                started.countDown();
+                try (CompileCache.Lock other = compileCache.lock()) {
+                    acquired.set(true);
+                } catch (Exception e) {
+                    // fails the assertion below
+                }
+            });
+            thread.start();
+            
+            started.await(5, TimeUnit.SECONDS);
+            thread.join(200L);
+            
+            assertThat(acquired.get(), is(false));
+        }
+        
+        thread.join(5000L);
+        
+        assertThat(acquired.get(), is(true));
+    }
+    
+}
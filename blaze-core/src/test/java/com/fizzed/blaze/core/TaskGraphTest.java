@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.core;
+
+import java.util.Arrays;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+public class TaskGraphTest {
+    
+    @Test
+    public void requestedOrderWithoutDepends() {
+        TaskGraph graph = TaskGraph.build(Arrays.asList(
+            new BlazeTask("a"),
+            new BlazeTask("b")), Arrays.asList("b", "a", "b"));
+        
+        assertThat(graph.getOrder(), contains("b", "a"));
+        assertThat(graph.getDepends("a"), is(empty()));
+    }
+    
+    @Test
+    public void dependsBeforeTask() {
+        TaskGraph graph = TaskGraph.build(Arrays.asList(
+            new BlazeTask("compile"),
+            new BlazeTask("zip", null, 0, Arrays.asList("compile")),
+            new BlazeTask("tarball", null, 0, Arrays.asList("compile")),
+            new BlazeTask("release", null, 0, Arrays.asList("zip", "tarball"))), Arrays.asList("release"));
+        
+        assertThat(graph.getOrder(), contains("compile", "zip", "tarball", "release"));
+        assertThat(graph.getDepends("release"), contains("zip", "tarball"));
+        assertThat(graph.getDependents("compile"), contains("zip", "tarball"));
+    }
+    
+    @Test
+    public void unknownTasksKept() {
+        TaskGraph graph = TaskGraph.build(Arrays.asList(
+            new BlazeTask("a", null, 0, Arrays.asList("missing"))), Arrays.asList("a"));
+        
+        assertThat(graph.getOrder(), contains("missing", "a"));
+    }
+    
+    @Test
+    public void cycleDetected() {
+        try {
+            TaskGraph.build(Arrays.asList(
+                new BlazeTask("a", null, 0, Arrays.asList("b")),
+                new BlazeTask("b", null, 0, Arrays.asList("c")),
+                new BlazeTask("c", null, 0, Arrays.asList("a"))), Arrays.asList("a"));
+            fail();
+        } catch (MessageOnlyException e) {
+            assertThat(e.getMessage(), containsString("a -> b -> c -> a"));
+        }
+    }
+    
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author joelauer
+ */
+public class BuildCacheTest {
+    
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    
+    private Path baseDir;
+    private Path cacheDir;
+    
+    @Before
+    public void before() throws Exception {
+        baseDir = temporaryFolder.newFolder("project").toPath();
+        cacheDir = temporaryFolder.getRoot().toPath().resolve("cache");
+        BuildCache.stats().reset();
+    }
+    
+    private Path write(String name, String content) throws Exception {
+        Path file = baseDir.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+    
+    private String read(String name) throws Exception {
+        return new String(Files.readAllBytes(baseDir.resolve(name)), StandardCharsets.UTF_8);
+    }
+    
+    @Test
+    public void key() {
+        String key1 = BuildCache.key("build", "script", "inputs", Arrays.asList("target/**"));
+        String key2 = BuildCache.key("build", "script", "inputs2", Arrays.asList("target/**"));
+        
+        assertThat(key1, is(BuildCache.key("build", "script", "inputs", Arrays.asList("target/**"))));
+        assertThat(key1, is(not(key2)));
+    }
+    
+    @Test
+    public void putAndRestore() throws Exception {
+        BuildCache buildCache = new BuildCache(cacheDir, Long.MAX_VALUE);
+        
+        assertThat(buildCache.restore("k", baseDir, Collections.emptyList()), is(false));
+        
+        Path a = write("target/a.txt", "a");
+        Path b = write("target/sub/b.txt", "b");
+        
+        buildCache.put("k", baseDir, Arrays.asList(a, b));
+        
+        assertThat(Files.exists(buildCache.entryFile("k")), is(true));
+        
+        // e.g. switched branches and rebuilt
+        write("target/a.txt", "changed");
+        Files.delete(b);
+        Path stale = write("target/stale.txt", "stale");
+        
+        assertThat(buildCache.restore("k", baseDir, Arrays.asList(baseDir.resolve("target/a.txt"), stale)), is(true));
+        
+        assertThat(read("target/a.txt"), is("a"));
+        assertThat(read("target/sub/b.txt"), is("b"));
+        assertThat(Files.exists(stale), is(false));
+        
+        assertThat(BuildCache.stats().getHits(), is(1L));
+        assertThat(BuildCache.stats().getMisses(), is(1L));
+        assertThat(BuildCache.stats().getStores(), is(1L));
+    }
+    
+    @Test
+    public void evictsLeastRecentlyUsed() throws Exception {
+        BuildCache buildCache = new BuildCache(cacheDir, Long.MAX_VALUE);
+        
+        Path a = write("target/a.txt", "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa");
+        
+        buildCache.put("k1", baseDir, Arrays.asList(a));
+        buildCache.put("k2", baseDir, Arrays.asList(a));
+        buildCache.put("k3", baseDir, Arrays.asList(a));
+        
+        long entrySize = Files.size(buildCache.entryFile("k1"));
+        long now = System.currentTimeMillis();
+        
+        Files.setLastModifiedTime(buildCache.entryFile("k1"), FileTime.fromMillis(now - 30000L));
+        Files.setLastModifiedTime(buildCache.entryFile("k2"), FileTime.fromMillis(now - 20000L));
+        Files.setLastModifiedTime(buildCache.entryFile("k3"), FileTime.fromMillis(now - 10000L));
+        
+        // k1 used most recently
+        assertThat(buildCache.restore("k1", baseDir, Collections.emptyList()), is(true));
+        
+        new BuildCache(cacheDir, entrySize * 2).evict();
+        
+        assertThat(Files.exists(buildCache.entryFile("k1")), is(true));
+        assertThat(Files.exists(buildCache.entryFile("k2")), is(false));
+        assertThat(Files.exists(buildCache.entryFile("k3")), is(true));
+        assertThat(BuildCache.stats().getEvictions(), is(1L));
+    }
+    
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.internal;
+
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+public class ClassDataSharingHelperTest {
+    
+    @Test
+    public void archiveName() {
+        // must match what bin/blaze computes with sed
+        assertThat(ClassDataSharingHelper.archiveName(Paths.get("/does-not/exist/my project")),
+            is("_does-not_exist_my_project"));
+    }
+    
+    @Test
+    public void javaVersion() {
+        assertThat(ClassDataSharingHelper.javaVersion(), greaterThanOrEqualTo(8));
+    }
+    
+    @Test
+    public void fingerprintChangesWithClassPath() throws Exception {
+        String fingerprint1 = ClassDataSharingHelper.fingerprint(Collections.emptyList());
+        String fingerprint2 = ClassDataSharingHelper.fingerprint(Arrays.asList(new URL("file:/tmp/a.jar")));
+        
+        assertThat(fingerprint1, is(ClassDataSharingHelper.fingerprint(Collections.emptyList())));
+        assertThat(fingerprint1, is(not(fingerprint2)));
+    }
+    
+}
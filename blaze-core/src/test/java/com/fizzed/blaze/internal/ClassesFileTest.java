@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.internal;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author joelauer
+ */
+public class ClassesFileTest {
+    
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    
+    @Test
+    public void writeAndRead() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("cache/blaze.classes");
+        
+        Map<String,byte[]> classes = new TreeMap<>();
+        classes.put("blaze", new byte[] { 1, 2, 3 });
+        classes.put("blaze$1", new byte[] { 4, 5 });
+        classes.put("blaze$Inner", new byte[0]);
+        
+        ClassesFile.write(file, "hash1", classes);
+        
+        Map<String,byte[]> read = ClassesFile.read(file, "hash1");
+        
+        assertThat(read.size(), is(3));
+        assertThat(read.get("blaze"), is(new byte[] { 1, 2, 3 }));
+        assertThat(read.get("blaze$1"), is(new byte[] { 4, 5 }));
+        assertThat(read.get("blaze$Inner"), is(new byte[0]));
+        
+        // source changed
+        assertThat(ClassesFile.read(file, "hash2"), is(nullValue()));
+    }
+    
+    @Test
+    public void missingOrCorrupt() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("blaze.classes");
+        
+        assertThat(ClassesFile.read(file, "hash1"), is(nullValue()));
+        
+        Files.write(file, new byte[] { 1, 2, 3 });
+        
+        assertThat(ClassesFile.read(file, "hash1"), is(nullValue()));
+        
+        Map<String,byte[]> classes = new TreeMap<>();
+        classes.put("blaze", new byte[100]);
+        ClassesFile.write(file, "hash1", classes);
+        
+        // truncated
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 4));
+        
+        assertThat(ClassesFile.read(file, "hash1"), is(nullValue()));
+    }
+    
+}
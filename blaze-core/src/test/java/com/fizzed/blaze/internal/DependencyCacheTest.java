@@ -0,0 +1,98 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.internal;
+
+import com.fizzed.blaze.Config;
+import com.fizzed.blaze.core.Dependency;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ * @author joelauer
+ */
+public class DependencyCacheTest {
+    
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    
+    @Test
+    public void keyIgnoresOrder() {
+        List<Dependency> bundled = Arrays.asList(Dependency.parse("com.example:bundled:1.0.0"));
+        
+        String key1 = DependencyCache.key(bundled, Arrays.asList(
+            Dependency.parse("com.example:a:1.0.0"), Dependency.parse("com.example:b:1.0.0")));
+        String key2 = DependencyCache.key(bundled, Arrays.asList(
+            Dependency.parse("com.example:b:1.0.0"), Dependency.parse("com.example:a:1.0.0")));
+        String key3 = DependencyCache.key(bundled, Arrays.asList(
+            Dependency.parse("com.example:a:1.0.1"), Dependency.parse("com.example:b:1.0.0")));
+        
+        assertThat(key1, is(key2));
+        assertThat(key1, is(not(key3)));
+    }
+    
+    @Test
+    public void putAndGet() throws Exception {
+        DependencyCache cache = new DependencyCache(temporaryFolder.getRoot().toPath().resolve("dependencies"));
+        
+        File jar1 = temporaryFolder.newFile("a.jar");
+        File jar2 = temporaryFolder.newFile("b.jar");
+        
+        assertThat(cache.get("test"), is(nullValue()));
+        
+        cache.put("test", Arrays.asList(jar1, jar2));
+        
+        assertThat(cache.get("test"), contains(jar1.getAbsoluteFile(), jar2.getAbsoluteFile()));
+        
+        // a jar that no longer exists invalidates the entry
+        Files.delete(jar2.toPath());
+        
+        assertThat(cache.get("test"), is(nullValue()));
+    }
+    
+    @Test
+    public void isCacheable() {
+        Config config = mock(Config.class);
+        
+        when(config.value(Config.KEY_DEPENDENCY_CACHE, Boolean.class)).thenReturn(Config.Value.empty(Config.KEY_DEPENDENCY_CACHE));
+        when(config.value(Config.KEY_DEPENDENCY_CLEAN, Boolean.class)).thenReturn(Config.Value.empty(Config.KEY_DEPENDENCY_CLEAN));
+        
+        assertThat(DependencyCache.isCacheable(config, Arrays.asList(Dependency.parse("com.example:a:1.0.0"))), is(true));
+        assertThat(DependencyCache.isCacheable(config, Arrays.asList(Dependency.parse("com.example:a:1.0.0-SNAPSHOT"))), is(false));
+        
+        when(config.value(Config.KEY_DEPENDENCY_CLEAN, Boolean.class)).thenReturn(Config.Value.of(Config.KEY_DEPENDENCY_CLEAN, Boolean.TRUE));
+        
+        assertThat(DependencyCache.isCacheable(config, Arrays.asList(Dependency.parse("com.example:a:1.0.0"))), is(false));
+        
+        when(config.value(Config.KEY_DEPENDENCY_CLEAN, Boolean.class)).thenReturn(Config.Value.empty(Config.KEY_DEPENDENCY_CLEAN));
+        when(config.value(Config.KEY_DEPENDENCY_CACHE, Boolean.class)).thenReturn(Config.Value.of(Config.KEY_DEPENDENCY_CACHE, Boolean.FALSE));
+        
+        assertThat(DependencyCache.isCacheable(config, Arrays.asList(Dependency.parse("com.example:a:1.0.0"))), is(false));
+    }
+    
+}
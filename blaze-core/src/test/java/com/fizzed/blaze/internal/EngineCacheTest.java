@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.internal;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author joelauer
+ */
+public class EngineCacheTest {
+    
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    
+    private Path engineDir;
+    
+    @Before
+    public void before() throws Exception {
+        engineDir = temporaryFolder.newFolder("engine").toPath();
+    }
+    
+    private Path entry(String engine, String name, int size, long daysAgo) throws Exception {
+        Path dir = engineDir.resolve(engine).resolve(ConfigHelper.md5(name));
+        Files.createDirectories(dir.resolve("classes"));
+        Files.write(dir.resolve("classes/blaze.class"), new byte[size]);
+        Files.setLastModifiedTime(dir, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(daysAgo)));
+        return dir;
+    }
+    
+    @Test
+    public void entries() throws Exception {
+        entry("java", "a", 10, 2);
+        entry("groovy", "b", 20, 5);
+        Files.createDirectories(engineDir.resolve("nashorn/codecache"));
+        
+        EngineCache engineCache = new EngineCache(engineDir, 1024L, TimeUnit.DAYS.toMillis(30));
+        
+        List<EngineCache.Entry> entries = engineCache.entries();
+        
+        // least recently used first (and not the shared nashorn codecache)
+        assertThat(entries.size(), is(2));
+        assertThat(entries.get(0).getEngine(), is("groovy"));
+        assertThat(entries.get(0).getSize(), is(20L));
+        assertThat(entries.get(0).getFiles(), is(1L));
+        assertThat(entries.get(1).getEngine(), is("java"));
+    }
+    
+    @Test
+    public void pruneByAge() throws Exception {
+        Path recent = entry("java", "a", 10, 2);
+        Path old = entry("java", "b", 10, 40);
+        Path kept = entry("index", "c", 10, 40);
+        
+        EngineCache engineCache = new EngineCache(engineDir, 1024L, TimeUnit.DAYS.toMillis(30));
+        
+        List<EngineCache.Entry> pruned = engineCache.prune(Collections.singleton(kept.getFileName().toString()));
+        
+        assertThat(pruned.size(), is(1));
+        assertThat(Files.exists(old), is(false));
+        assertThat(Files.exists(recent), is(true));
+        assertThat(Files.exists(kept), is(true));
+        
+        // nothing left behind
+        assertThat(Files.list(engineDir.resolve("java")).count(), is(1L));
+    }
+    
+    @Test
+    public void pruneLeastRecentlyUsedBySize() throws Exception {
+        Path a = entry("java", "a", 100, 3);
+        Path b = entry("java", "b", 100, 2);
+        Path c = entry("groovy", "c", 100, 1);
+        // in use (by another run) is never pruned
+        Path d = entry("groovy", "d", 100, 0);
+        
+        EngineCache engineCache = new EngineCache(engineDir, 150L, TimeUnit.DAYS.toMillis(30));
+        
+        List<EngineCache.Entry> pruned = engineCache.prune(Collections.emptySet());
+        
+        assertThat(pruned.size(), is(3));
+        assertThat(Files.exists(a), is(false));
+        assertThat(Files.exists(b), is(false));
+        assertThat(Files.exists(c), is(false));
+        assertThat(Files.exists(d), is(true));
+    }
+    
+    @Test
+    public void trashOfInterruptedPruneIsDeleted() throws Exception {
+        Path trash = engineDir.resolve("java/.trash-abc-1");
+        Files.createDirectories(trash.resolve("classes"));
+        Files.write(trash.resolve("classes/blaze.class"), new byte[1]);
+        
+        new EngineCache(engineDir, 1024L, TimeUnit.DAYS.toMillis(30)).prune(Collections.emptySet());
+        
+        assertThat(Files.exists(trash), is(false));
+    }
+    
+    @Test
+    public void touchAndPruneDue() throws Exception {
+        Path dir = entry("java", "a", 10, 2);
+        
+        EngineCache.touch(dir);
+        
+        assertThat(Files.getLastModifiedTime(dir).toMillis() > System.currentTimeMillis() - 60000L, is(true));
+        
+        EngineCache engineCache = new EngineCache(engineDir, 1024L, TimeUnit.DAYS.toMillis(30));
+        
+        assertThat(engineCache.isPruneDue(), is(true));
+        
+        engineCache.pruneInBackground(Collections.emptySet());
+        
+        assertThat(engineCache.isPruneDue(), is(false));
+    }
+    
+}
@@ -17,8 +17,15 @@ package com.fizzed.blaze.internal;
 
 import com.fizzed.blaze.internal.EngineHelper;
 import com.fizzed.blaze.core.Engine;
+import com.fizzed.blaze.jdk.BlazeJdkEngine;
+import com.fizzed.blaze.nashorn.BlazeNashornEngine;
+import java.util.Map;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.Matchers.hasEntry;
 import static org.junit.Assert.assertThat;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -38,4 +45,21 @@ public class EngineHelperTest {
         assertThat(engine0, not(sameInstance(engine1)));
     }
     
+    @Test
+    public void engineClassNamesFromResources() {
+        Map<String,String> classNames = EngineHelper.loadEngineClassNames(Thread.currentThread().getContextClassLoader());
+        
+        assertThat(classNames, hasEntry(".java", BlazeJdkEngine.class.getName()));
+        assertThat(classNames, hasEntry(".js", BlazeNashornEngine.class.getName()));
+    }
+    
+    @Test
+    public void findByFileExtension() {
+        Engine engine = EngineHelper.findByFileExtension(".java", false);
+        
+        assertThat(engine, instanceOf(BlazeJdkEngine.class));
+        assertThat(EngineHelper.findByFileExtension(".java", false), is(sameInstance(engine)));
+        assertThat(EngineHelper.findByFileExtension(".doesnotexist", false), is(nullValue()));
+    }
+    
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.internal;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Set;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertThat;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author joelauer
+ */
+public class FileWatcherTest {
+    
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    
+    private Path root;
+    
+    @Before
+    public void before() throws Exception {
+        root = temporaryFolder.getRoot().toPath().toRealPath();
+        Files.createDirectories(root.resolve("src"));
+        Files.createDirectories(root.resolve("target/classes"));
+    }
+    
+    @Test
+    public void matches() throws Exception {
+        try (FileWatcher watcher = new FileWatcher(root, Arrays.asList("**"), Arrays.asList("target/**", "**/*.tmp"))) {
+            assertThat(watcher.matches(Paths.get("blaze.java")), is(true));
+            assertThat(watcher.matches(Paths.get("src/a.txt")), is(true));
+            assertThat(watcher.matches(Paths.get("src/a.tmp")), is(false));
+            assertThat(watcher.matches(Paths.get("target/a.class")), is(false));
+            
+            // root and src (but not target or anything below it)
+            assertThat(watcher.getWatchedDirCount(), is(2));
+        }
+    }
+    
+    @Test(timeout=30000)
+    public void take() throws Exception {
+        try (FileWatcher watcher = new FileWatcher(root, Arrays.asList("**"), Arrays.asList("target/**"))) {
+            Files.write(root.resolve("target/ignored.txt"), "a".getBytes());
+            Files.write(root.resolve("src/a.txt"), "a".getBytes());
+            
+            Set<Path> changed = watcher.take(200);
+            
+            assertThat(changed, contains(root.resolve("src/a.txt")));
+            
+            // files in a new dir are detected too
+            Files.createDirectories(root.resolve("src/new"));
+            Files.write(root.resolve("src/new/b.txt"), "b".getBytes());
+            Files.write(root.resolve("src/new/c.txt"), "c".getBytes());
+            
+            changed = watcher.take(200);
+            
+            assertThat(changed, containsInAnyOrder(root.resolve("src/new/b.txt"), root.resolve("src/new/c.txt")));
+        }
+    }
+    
+    @Test(timeout=30000)
+    public void alwaysIncludedHiddenDir() throws Exception {
+        Files.createDirectories(root.resolve(".blaze"));
+        
+        try (FileWatcher watcher = new FileWatcher(root, Arrays.asList("**"), Arrays.asList(".*", ".*/**", "target/**"),
+                Arrays.asList(root.resolve(".blaze")))) {
+            Files.write(root.resolve(".hidden.txt"), "a".getBytes());
+            Files.write(root.resolve(".blaze/blaze.java"), "a".getBytes());
+            
+            Set<Path> changed = watcher.take(200);
+            
+            assertThat(changed, contains(root.resolve(".blaze/blaze.java")));
+        }
+    }
+    
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author joelauer
+ */
+public class ScriptClassLoaderTest {
+    
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    
+    static public class Greeter {
+        @Override
+        public String toString() {
+            return "hello";
+        }
+    }
+    
+    private File jar(String name, String... entries) throws Exception {
+        return jar(name, new Manifest(), entries);
+    }
+    
+    private File jar(String name, Manifest manifest, String... entries) throws Exception {
+        File file = temporaryFolder.newFile(name);
+        manifest.getMainAttributes().putIfAbsent(Attributes.Name.MANIFEST_VERSION, "1.0");
+        try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(file), manifest)) {
+            for (String entry : entries) {
+                jos.putNextEntry(new ZipEntry(entry));
+                if (entry.endsWith(".class")) {
+                    // versioned entries of a multi-release jar are the same class
+                    String resource = entry.replaceFirst("^META-INF/versions/[0-9]+/", "");
+                    try (InputStream input = ScriptClassLoaderTest.class.getResourceAsStream("/" + resource)) {
+                        byte[] buffer = new byte[8192];
+                        int read;
+                        while ((read = input.read(buffer)) >= 0) {
+                            jos.write(buffer, 0, read);
+                        }
+                    }
+                } else {
+                    jos.write(name.getBytes(StandardCharsets.UTF_8));
+                }
+                jos.closeEntry();
+            }
+        }
+        return file;
+    }
+    
+    @Test
+    public void duplicatesIgnored() throws Exception {
+        File a = jar("a.jar", "a.txt");
+        File b = jar("b.jar", "b.txt");
+        
+        try (ScriptClassLoader classLoader = new ScriptClassLoader(null)) {
+            assertThat(classLoader.addClassPath(a), is(true));
+            assertThat(classLoader.addClassPath(b), is(true));
+            assertThat(classLoader.addClassPath(a), is(false));
+            assertThat(ClassLoaderHelper.addClassPath(classLoader, b), is(false));
+            assertThat(ClassLoaderHelper.addClassPath(classLoader, temporaryFolder.getRoot()), is(true));
+            
+            assertThat(classLoader.getURLs(), arrayContaining(
+                a.toURI().toURL(), b.toURI().toURL(), temporaryFolder.getRoot().toURI().toURL()));
+        }
+    }
+    
+    @Test
+    public void loadsClassFromIndexedJar() throws Exception {
+        String entry = Greeter.class.getName().replace('.', '/') + ".class";
+        File a = jar("a.jar", "com/example/other.txt");
+        File b = jar("b.jar", entry);
+        
+        // no parent so the class can only come from the jar
+        try (ScriptClassLoader classLoader = new ScriptClassLoader(null)) {
+            classLoader.addClassPath(a);
+            classLoader.addClassPath(b);
+            
+            Class<?> type = classLoader.loadClass(Greeter.class.getName());
+            
+            assertThat(type.getClassLoader(), is(classLoader));
+            assertThat(type == Greeter.class, is(false));
+            assertThat(type.newInstance().toString(), is("hello"));
+            assertThat(type.getPackage(), is(not(nullValue())));
+            assertThat(type.getProtectionDomain().getCodeSource().getLocation(), is(b.toURI().toURL()));
+        }
+    }
+    
+    @Test
+    public void loadsClassFromManifestClassPath() throws Exception {
+        String entry = Greeter.class.getName().replace('.', '/') + ".class";
+        File lib = jar("lib.jar", entry);
+        
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, lib.getName());
+        File app = jar("app.jar", manifest, "com/example/other.txt");
+        
+        try (ScriptClassLoader classLoader = new ScriptClassLoader(null)) {
+            classLoader.addClassPath(app);
+            
+            Class<?> type = classLoader.loadClass(Greeter.class.getName());
+            
+            assertThat(type.newInstance().toString(), is("hello"));
+            assertThat(type.getProtectionDomain().getCodeSource().getLocation(), is(lib.toURI().toURL()));
+            assertThat(classLoader.getURLs(), arrayContaining(app.toURI().toURL(), lib.toURI().toURL()));
+        }
+    }
+    
+    @Test
+    public void multiReleaseJar() throws Exception {
+        boolean java9 = (System.getProperty("java.specification.version").indexOf('.') < 0);
+        
+        // only present in the versioned part of the jar
+        String entry = Greeter.class.getName().replace('.', '/') + ".class";
+        
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(new Attributes.Name("Multi-Release"), "true");
+        File a = jar("a.jar", manifest, "META-INF/versions/9/" + entry, "META-INF/versions/9/com/example/nine.txt");
+        
+        try (ScriptClassLoader classLoader = new ScriptClassLoader(null)) {
+            classLoader.addClassPath(a);
+            
+            assertThat(classLoader.getResource("com/example/nine.txt") != null, is(java9));
+            
+            if (java9) {
+                assertThat(classLoader.loadClass(Greeter.class.getName()).newInstance().toString(), is("hello"));
+            } else {
+                try {
+                    classLoader.loadClass(Greeter.class.getName());
+                    fail();
+                } catch (ClassNotFoundException e) {
+                    // expected
+                }
+            }
+        }
+    }
+    
+    @Test(expected=ClassNotFoundException.class)
+    public void classNotFound() throws Exception {
+        try (ScriptClassLoader classLoader = new ScriptClassLoader(null)) {
+            classLoader.addClassPath(jar("a.jar", "com/example/other.txt"));
+            classLoader.loadClass("com.example.Missing");
+        }
+    }
+    
+    @Test
+    public void resources() throws Exception {
+        File a = jar("a.jar", "com/example/hello.txt", "root.txt");
+        File b = jar("b.jar", "com/example/hello.txt");
+        
+        try (ScriptClassLoader classLoader = new ScriptClassLoader(null)) {
+            classLoader.addClassPath(a);
+            classLoader.addClassPath(b);
+            
+            URL url = classLoader.getResource("com/example/hello.txt");
+            
+            try (InputStream input = url.openStream()) {
+                byte[] bytes = new byte[64];
+                int read = input.read(bytes);
+                assertThat(new String(bytes, 0, read, StandardCharsets.UTF_8), is("a.jar"));
+            }
+            
+            List<URL> urls = Collections.list(classLoader.getResources("com/example/hello.txt"));
+            
+            assertThat(urls, hasSize(2));
+            assertThat(classLoader.getResource("root.txt"), is(not(nullValue())));
+            assertThat(classLoader.getResource("com/example/missing.txt"), is(nullValue()));
+        }
+    }
+    
+    @Test
+    public void parentSkipsScriptClassLoaders() throws Exception {
+        ClassLoader root = ScriptClassLoaderTest.class.getClassLoader();
+        
+        try (ScriptClassLoader first = new ScriptClassLoader(root);
+                ScriptClassLoader second = new ScriptClassLoader(first)) {
+            assertThat(ScriptClassLoader.parentOf(second), is(root));
+            assertThat(ScriptClassLoader.parentOf(root), is(root));
+        }
+    }
+    
+}
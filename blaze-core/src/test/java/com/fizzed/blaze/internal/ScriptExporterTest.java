@@ -0,0 +1,129 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.internal;
+
+import com.fizzed.blaze.core.Blaze;
+import com.fizzed.blaze.core.MessageOnlyException;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author joelauer
+ */
+public class ScriptExporterTest {
+    
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    
+    private Path scriptFile;
+    
+    @Before
+    public void before() throws Exception {
+        Path dir = temporaryFolder.newFolder("project").toPath();
+        scriptFile = dir.resolve("blaze.java");
+        Files.write(scriptFile, (
+            "import static com.fizzed.blaze.Contexts.config;\n"
+            + "public class blaze {\n"
+            + "  public void main() { System.out.println(\"Hello \" + config().value(\"greeting\").get() + \"!\"); }\n"
+            + "}\n").getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("blaze.conf"), "greeting = exported".getBytes(StandardCharsets.UTF_8));
+    }
+    
+    @Test
+    public void export() throws Exception {
+        Blaze blaze = new Blaze.Builder()
+            .file(scriptFile)
+            .build();
+        
+        Path jarFile = temporaryFolder.getRoot().toPath().resolve("out/script.jar");
+        
+        new ScriptExporter(blaze).export(jarFile);
+        
+        try (JarFile jar = new JarFile(jarFile.toFile())) {
+            assertThat(jar.getManifest().getMainAttributes().getValue("Main-Class"), is(ScriptExporter.MAIN_CLASS));
+            assertThat(jar.getEntry("blaze.class"), is(not(nullValue())));
+            assertThat(jar.getEntry("com/fizzed/blaze/core/Blaze.class"), is(not(nullValue())));
+            assertThat(jar.getEntry(ScriptExporter.EXPORT_PROPERTIES), is(not(nullValue())));
+            assertThat(jar.getEntry(ScriptExporter.EXPORT_CONFIG), is(not(nullValue())));
+        }
+        
+        // same script exports the same jar
+        byte[] first = Files.readAllBytes(jarFile);
+        
+        new ScriptExporter(blaze).export(jarFile);
+        
+        assertThat(Arrays.equals(first, Files.readAllBytes(jarFile)), is(true));
+        
+        // runs without resolving or compiling
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        
+        Process process = new ProcessBuilder(java, "-jar", jarFile.toString(), "main")
+            .directory(temporaryFolder.getRoot())
+            .redirectErrorStream(true)
+            .start();
+        
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (InputStream input = process.getInputStream()) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = input.read(buffer)) > 0) {
+                output.write(buffer, 0, read);
+            }
+        }
+        
+        assertThat(process.waitFor(30, TimeUnit.SECONDS), is(true));
+        
+        String log = new String(output.toByteArray(), StandardCharsets.UTF_8);
+        
+        assertThat(log, process.exitValue(), is(0));
+        assertThat(log, containsString("Hello exported!"));
+        assertThat(log, not(containsString("Compiling script")));
+    }
+    
+    @Test
+    public void scriptObjectNotExportable() throws Exception {
+        Blaze blaze = new Blaze.Builder()
+            .scriptObject(new Object())
+            .build();
+        
+        try {
+            new ScriptExporter(blaze).export(new File(temporaryFolder.getRoot(), "script.jar").toPath());
+            fail();
+        } catch (MessageOnlyException e) {
+            assertThat(e.getMessage(), containsString("Unable to export"));
+        }
+    }
+    
+}
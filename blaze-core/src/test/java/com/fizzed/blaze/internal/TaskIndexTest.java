@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.internal;
+
+import com.fizzed.blaze.core.BlazeTask;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author joelauer
+ */
+public class TaskIndexTest {
+    
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    
+    private Path scriptFile;
+    private ContextImpl context;
+    
+    @Before
+    public void before() throws Exception {
+        Path baseDir = temporaryFolder.newFolder("project").toPath();
+        Path userDir = temporaryFolder.newFolder("user").toPath();
+        scriptFile = baseDir.resolve("blaze.java");
+        Files.write(scriptFile, "public class blaze {}".getBytes(StandardCharsets.UTF_8));
+        context = new ContextImpl(baseDir, userDir, scriptFile, null);
+    }
+    
+    @Test
+    public void writeAndRead() throws Exception {
+        assertThat(TaskIndex.read(context), is(nullValue()));
+        
+        TaskIndex.write(context, Arrays.asList(
+            new BlazeTask("main", "Says hello", 1),
+            new BlazeTask("other", null, 2)));
+        
+        List<BlazeTask> tasks = TaskIndex.read(context);
+        
+        assertThat(tasks.size(), is(2));
+        assertThat(tasks.get(0).getName(), is("main"));
+        assertThat(tasks.get(0).getDescription(), is("Says hello"));
+        assertThat(tasks.get(0).getOrder(), is(1));
+        assertThat(tasks.get(1).getName(), is("other"));
+        assertThat(tasks.get(1).getDescription(), is(nullValue()));
+        assertThat(tasks.get(1).getOrder(), is(2));
+    }
+    
+    @Test
+    public void staleAfterScriptOrConfigChanges() throws Exception {
+        TaskIndex.write(context, Arrays.asList(new BlazeTask("main")));
+        
+        assertThat(TaskIndex.read(context).size(), is(1));
+        
+        Files.write(scriptFile, "public class blaze { public void a() {} }".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(scriptFile, FileTime.fromMillis(System.currentTimeMillis() + 5000L));
+        
+        assertThat(TaskIndex.read(context), is(nullValue()));
+        
+        TaskIndex.write(context, Arrays.asList(new BlazeTask("main"), new BlazeTask("a")));
+        
+        assertThat(TaskIndex.read(context).size(), is(2));
+        
+        Files.write(scriptFile.resolveSibling("blaze.conf"), "a = b".getBytes(StandardCharsets.UTF_8));
+        
+        assertThat(TaskIndex.read(context), is(nullValue()));
+    }
+    
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author joelauer
+ */
+public class TaskManifestTest {
+    
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    
+    private Path baseDir;
+    private Path manifestFile;
+    
+    @Before
+    public void before() throws Exception {
+        baseDir = temporaryFolder.newFolder("project").toPath();
+        manifestFile = temporaryFolder.getRoot().toPath().resolve("cache/task.properties");
+        Files.createDirectories(baseDir.resolve("src/main"));
+        write("src/main/a.txt", "a");
+        write("src/main/b.txt", "b");
+        write("src/c.md", "c");
+    }
+    
+    private void write(String name, String content) throws Exception {
+        Path file = baseDir.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private TaskManifest manifest() {
+        return new TaskManifest(manifestFile, baseDir,
+            Arrays.asList("src/**/*.txt"), Arrays.asList("target/out.txt"));
+    }
+    
+    private void run() throws Exception {
+        TaskManifest manifest = manifest();
+        manifest.isUpToDate();
+        write("target/out.txt", "out");
+        manifest.save();
+    }
+    
+    @Test
+    public void upToDateAfterSuccessfulRun() throws Exception {
+        assertThat(manifest().isUpToDate(), is(false));
+        
+        run();
+        
+        assertThat(Files.exists(manifestFile), is(true));
+        assertThat(manifest().isUpToDate(), is(true));
+    }
+    
+    @Test
+    public void inputChanged() throws Exception {
+        run();
+        
+        write("src/main/a.txt", "changed");
+        
+        assertThat(manifest().isUpToDate(), is(false));
+        
+        run();
+        
+        assertThat(manifest().isUpToDate(), is(true));
+    }
+    
+    @Test
+    public void inputAddedOrRemoved() throws Exception {
+        run();
+        
+        write("src/main/d.txt", "d");
+        
+        assertThat(manifest().isUpToDate(), is(false));
+        
+        run();
+        Files.delete(baseDir.resolve("src/main/d.txt"));
+        
+        assertThat(manifest().isUpToDate(), is(false));
+    }
+    
+    @Test
+    public void unmatchedFileIgnored() throws Exception {
+        run();
+        
+        write("src/c.md", "changed");
+        
+        assertThat(manifest().isUpToDate(), is(true));
+    }
+    
+    @Test
+    public void touchedButSameContent() throws Exception {
+        run();
+        
+        Path a = baseDir.resolve("src/main/a.txt");
+        Files.setLastModifiedTime(a, FileTime.fromMillis(Files.getLastModifiedTime(a).toMillis() + 60000L));
+        
+        assertThat(manifest().isUpToDate(), is(true));
+    }
+    
+    @Test
+    public void outputDeletedOrChanged() throws Exception {
+        run();
+        
+        Files.delete(baseDir.resolve("target/out.txt"));
+        
+        assertThat(manifest().isUpToDate(), is(false));
+        
+        run();
+        write("target/out.txt", "tampered");
+        
+        assertThat(manifest().isUpToDate(), is(false));
+    }
+    
+    @Test
+    public void plainFileAndDirectoryGlobs() throws Exception {
+        TaskManifest manifest = new TaskManifest(manifestFile, baseDir,
+            Arrays.asList("src/c.md", "src/main"), Collections.emptyList());
+        manifest.isUpToDate();
+        manifest.save();
+        
+        assertThat(manifest.isUpToDate(), is(true));
+        
+        write("src/main/b.txt", "changed");
+        
+        assertThat(manifest.isUpToDate(), is(false));
+    }
+    
+    @Test
+    public void scriptChanged() throws Exception {
+        List<String> inputs = Arrays.asList("src/**/*.txt");
+        List<String> outputs = Arrays.asList("target/out.txt");
+        
+        TaskManifest manifest = new TaskManifest(manifestFile, baseDir, "v1", inputs, outputs);
+        manifest.isUpToDate();
+        write("target/out.txt", "out");
+        manifest.save();
+        
+        assertThat(new TaskManifest(manifestFile, baseDir, "v1", inputs, outputs).isUpToDate(), is(true));
+        assertThat(new TaskManifest(manifestFile, baseDir, "v2", inputs, outputs).isUpToDate(), is(false));
+    }
+    
+}
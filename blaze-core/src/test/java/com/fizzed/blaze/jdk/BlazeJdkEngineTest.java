@@ -20,22 +20,28 @@ import com.fizzed.blaze.core.Blaze;
 import com.fizzed.blaze.core.BlazeTask;
 import com.fizzed.blaze.internal.ConfigHelper;
 import com.fizzed.blaze.internal.ContextImpl;
+import com.fizzed.blaze.internal.TaskIndex;
 import static com.fizzed.blaze.system.ShellTestHelper.getBinDirAsResource;
 import static com.fizzed.blaze.internal.FileHelper.resourceAsPath;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 import org.apache.commons.io.FileUtils;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import org.junit.BeforeClass;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.contrib.java.lang.system.SystemOutRule;
+import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,6 +55,9 @@ public class BlazeJdkEngineTest {
     @Rule
     public final SystemOutRule systemOutRule = new SystemOutRule().enableLog();
     
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+    
     @BeforeClass
     static public void forceBinResourceExecutable() throws Exception {
         // this makes the files in the "bin" sample directory executable
@@ -75,6 +84,22 @@ public class BlazeJdkEngineTest {
         assertThat(systemOutRule.getLog(), containsString("Hello World!"));
     }
     
+    @Test
+    public void innerAndAnonymousClasses() throws Exception {
+        // second build loads every class from the classes file
+        for (int i = 0; i < 2; i++) {
+            Blaze blaze = new Blaze.Builder()
+                .file(resourceAsPath("/jdk/inner.java"))
+                .build();
+
+            systemOutRule.clearLog();
+
+            blaze.execute();
+
+            assertThat(systemOutRule.getLog(), containsString("Hello Inner!"));
+        }
+    }
+    
     @Test
     public void tasks() throws Exception {
         Blaze blaze = new Blaze.Builder()
@@ -87,6 +112,39 @@ public class BlazeJdkEngineTest {
         
         assertThat(tasks, hasSize(1));
         assertThat(tasks.get(0).getName(), is("main"));
+        
+        // building indexes the tasks for listing them without building
+        List<BlazeTask> indexedTasks = TaskIndex.read(blaze.context());
+        
+        assertThat(indexedTasks, hasSize(1));
+        assertThat(indexedTasks.get(0).getName(), is("main"));
+    }
+    
+    @Test
+    public void checkedExceptionFromTask() throws Exception {
+        Blaze blaze = new Blaze.Builder()
+            .file(resourceAsPath("/jdk/checked_exception.java"))
+            .build();
+        
+        try {
+            blaze.execute("main");
+            fail();
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("checked"));
+        }
+    }
+    
+    @Test
+    public void staticTask() throws Exception {
+        Blaze blaze = new Blaze.Builder()
+            .file(resourceAsPath("/jdk/static_task.java"))
+            .build();
+        
+        systemOutRule.clearLog();
+        
+        blaze.execute("util");
+        
+        assertThat(systemOutRule.getLog(), containsString("static util ran"));
     }
     
     @Test
@@ -140,4 +198,93 @@ public class BlazeJdkEngineTest {
         assertThat(blaze.context().withBaseDir("../test"), is(resourceAsPath("/jdk/project2").resolve("test")));
     }
     
+    @Test
+    public void editedTaskNotUpToDate() throws Exception {
+        Path projectDir = temporaryFolder.newFolder("project").toPath();
+        Path scriptFile = projectDir.resolve("blaze.java");
+        Files.write(projectDir.resolve("input.txt"), "input".getBytes(StandardCharsets.UTF_8));
+        
+        // unique so nothing is restored from a build cache of an earlier run
+        String id = Long.toString(System.nanoTime());
+        
+        writeOutputTaskScript(scriptFile, id, "first");
+        assertThat(executeAndLog(scriptFile), containsString("Ran first"));
+        
+        // nothing changed
+        assertThat(executeAndLog(scriptFile), not(containsString("Ran first")));
+        
+        // only the body of the task changed
+        writeOutputTaskScript(scriptFile, id, "second");
+        assertThat(executeAndLog(scriptFile), containsString("Ran second"));
+    }
+    
+    @Test
+    public void editedHelperNotUpToDate() throws Exception {
+        Path blazeDir = temporaryFolder.newFolder("project", "blaze").toPath();
+        Path scriptFile = blazeDir.resolve("blaze.java");
+        Files.createDirectories(blazeDir.resolve("helpers"));
+        Files.write(blazeDir.resolve("input.txt"), "input".getBytes(StandardCharsets.UTF_8));
+        
+        String script = ""
+            + "import com.fizzed.blaze.Contexts;\n"
+            + "import com.fizzed.blaze.Task;\n"
+            + "import helpers.Helper;\n"
+            + "import java.nio.file.Files;\n"
+            + "// " + System.nanoTime() + "\n"
+            + "public class blaze {\n"
+            + "    @Task(inputs = {\"input.txt\"}, outputs = {\"output.txt\"})\n"
+            + "    public void main() throws Exception {\n"
+            + "        System.out.println(\"Ran \" + Helper.msg());\n"
+            + "        Files.write(Contexts.withBaseDir(\"output.txt\"), Helper.msg().getBytes());\n"
+            + "    }\n"
+            + "}\n";
+        Files.write(scriptFile, script.getBytes(StandardCharsets.UTF_8));
+        
+        writeHelper(blazeDir, "v1");
+        assertThat(executeAndLog(scriptFile), containsString("Ran v1"));
+        assertThat(executeAndLog(scriptFile), not(containsString("Ran v1")));
+        
+        // only a helper of the script changed
+        writeHelper(blazeDir, "v2");
+        assertThat(executeAndLog(scriptFile), containsString("Ran v2"));
+        assertThat(new String(Files.readAllBytes(blazeDir.resolve("output.txt")), StandardCharsets.UTF_8), is("v2"));
+    }
+    
+    private void writeHelper(Path blazeDir, String message) throws IOException {
+        String helper = ""
+            + "package helpers;\n"
+            + "public class Helper {\n"
+            + "    static public String msg() { return \"" + message + "\"; }\n"
+            + "}\n";
+        Files.write(blazeDir.resolve("helpers/Helper.java"), helper.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private void writeOutputTaskScript(Path scriptFile, String id, String message) throws IOException {
+        String script = ""
+            + "import com.fizzed.blaze.Contexts;\n"
+            + "import com.fizzed.blaze.Task;\n"
+            + "import java.nio.file.Files;\n"
+            + "// " + id + "\n"
+            + "public class blaze {\n"
+            + "    @Task(inputs = {\"input.txt\"}, outputs = {\"output.txt\"})\n"
+            + "    public void main() throws Exception {\n"
+            + "        System.out.println(\"Ran " + message + "\");\n"
+            + "        Files.write(Contexts.withBaseDir(\"output.txt\"), \"" + message + "\".getBytes());\n"
+            + "    }\n"
+            + "}\n";
+        Files.write(scriptFile, script.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private String executeAndLog(Path scriptFile) throws Exception {
+        Blaze blaze = new Blaze.Builder()
+            .file(scriptFile)
+            .build();
+        
+        systemOutRule.clearLog();
+        
+        blaze.execute();
+        
+        return systemOutRule.getLog();
+    }
+    
 }
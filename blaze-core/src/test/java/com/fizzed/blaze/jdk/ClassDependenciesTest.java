@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.jdk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+/**
+ *
+ * @author joelauer
+ */
+public class ClassDependenciesTest {
+    
+    static public class WithConstants {
+        static public final String NAME = "test";
+        private List<Path> paths;
+        
+        public StringBuilder build(Thread thread) {
+            return new StringBuilder();
+        }
+    }
+    
+    static public class WithPrivateConstants {
+        static private final int COUNT = 1;
+        
+        public Runnable[] runnables() {
+            return new Runnable[COUNT];
+        }
+    }
+    
+    static private byte[] bytecode(Class<?> type) throws IOException {
+        String resource = "/" + type.getName().replace('.', '/') + ".class";
+        try (InputStream input = type.getResourceAsStream(resource)) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = input.read(buffer)) > 0) {
+                baos.write(buffer, 0, read);
+            }
+            return baos.toByteArray();
+        }
+    }
+    
+    @Test
+    public void parse() throws Exception {
+        ClassDependencies dependencies = ClassDependencies.parse(bytecode(WithConstants.class));
+        
+        assertThat(dependencies.getClassName(), is(WithConstants.class.getName()));
+        assertThat(dependencies.hasConstants(), is(true));
+        // field signature, method descriptor and class entries
+        assertThat(dependencies.getReferences(), hasItem("java.util.List"));
+        assertThat(dependencies.getReferences(), hasItem("java.nio.file.Path"));
+        assertThat(dependencies.getReferences(), hasItem("java.lang.Thread"));
+        assertThat(dependencies.getReferences(), hasItem("java.lang.StringBuilder"));
+        assertThat(dependencies.getReferences(), not(hasItem(WithConstants.class.getName())));
+    }
+    
+    @Test
+    public void privateConstantsIgnored() throws Exception {
+        ClassDependencies dependencies = ClassDependencies.parse(bytecode(WithPrivateConstants.class));
+        
+        assertThat(dependencies.hasConstants(), is(false));
+        assertThat(dependencies.getReferences(), hasItem("java.lang.Runnable"));
+    }
+    
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.jdk;
+
+import com.fizzed.blaze.core.Blaze;
+import com.fizzed.blaze.core.CompileCache;
+import com.fizzed.blaze.core.MessageOnlyException;
+import com.fizzed.blaze.internal.ContextImpl;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Map;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.contrib.java.lang.system.SystemOutRule;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author joelauer
+ */
+public class ProjectCompilerTest {
+    
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    
+    @Rule
+    public final SystemOutRule systemOutRule = new SystemOutRule().enableLog();
+    
+    private Path projectDir;
+    private Path cacheDir;
+    private long modified;
+    
+    @Before
+    public void before() throws Exception {
+        projectDir = temporaryFolder.newFolder("blaze").toPath();
+        cacheDir = temporaryFolder.newFolder("cache").toPath();
+        modified = System.currentTimeMillis() - 60000L;
+    }
+    
+    private void write(String name, String content) throws Exception {
+        Path file = projectDir.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        // guarantees the stamp changes even on coarse filesystem timestamps
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modified += 2000L));
+    }
+    
+    private ProjectCompiler compiler() throws Exception {
+        Path scriptFile = projectDir.resolve("blaze.java");
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        ContextImpl context = new ContextImpl(projectDir.getParent(), null, scriptFile, null);
+        CompileCache compileCache = new CompileCache(cacheDir, scriptFile, "java:test", Collections.emptyList());
+        return new ProjectCompiler(new BlazeJdkEngine(), classLoader, context, ScriptProject.detect(scriptFile), compileCache);
+    }
+    
+    private void writeProject() throws Exception {
+        write("blaze.java",
+            "import helpers.Greeter;\n"
+            + "public class blaze {\n"
+            + "  public void main() { System.out.println(new Greeter().greet(Consts.NAME)); }\n"
+            + "}\n");
+        write("Consts.java",
+            "public class Consts {\n"
+            + "  static public final String NAME = \"World\";\n"
+            + "}\n");
+        write("helpers/Greeter.java",
+            "package helpers;\n"
+            + "public class Greeter {\n"
+            + "  public String greet(String name) { return \"Hello \" + name + \"!\"; }\n"
+            + "}\n");
+        write("helpers/Other.java",
+            "package helpers;\n"
+            + "public class Other {\n"
+            + "  public Runnable task() { return () -> {}; }\n"
+            + "}\n");
+    }
+    
+    @Test
+    public void detect() throws Exception {
+        write("blaze.java", "public class blaze {}");
+        
+        // only source in the directory
+        assertThat(ScriptProject.detect(projectDir.resolve("blaze.java")) == null, is(true));
+        
+        write("helpers/Greeter.java", "package helpers; public class Greeter {}");
+        write(".hidden/Ignored.java", "public class Ignored {}");
+        
+        ScriptProject project = ScriptProject.detect(projectDir.resolve("blaze.java"));
+        
+        assertThat(project.getSourceFiles(), hasSize(2));
+        assertThat(project.relativize(project.getSourceFiles().get(1)), is("helpers/Greeter.java"));
+        
+        // not in a blaze or .blaze directory
+        Path otherDir = temporaryFolder.newFolder("other").toPath();
+        Files.write(otherDir.resolve("blaze.java"), "public class blaze {}".getBytes(StandardCharsets.UTF_8));
+        Files.write(otherDir.resolve("Helper.java"), "public class Helper {}".getBytes(StandardCharsets.UTF_8));
+        
+        assertThat(ScriptProject.detect(otherDir.resolve("blaze.java")) == null, is(true));
+    }
+    
+    @Test
+    public void onlyChangedSourcesAndDependentsRecompiled() throws Exception {
+        writeProject();
+        
+        ProjectCompiler compiler = compiler();
+        Map<String,byte[]> classes = compiler.compile();
+        
+        assertThat(compiler.getCompiled(), hasSize(4));
+        assertThat(classes, hasKey("blaze"));
+        assertThat(classes, hasKey("helpers.Greeter"));
+        
+        // nothing changed
+        compiler = compiler();
+        classes = compiler.compile();
+        
+        assertThat(compiler.getCompiled(), is(empty()));
+        assertThat(classes.size(), is(4));
+        
+        // nothing depends on other
+        write("helpers/Other.java",
+            "package helpers;\n"
+            + "public class Other {\n"
+            + "  public Runnable task() { return () -> { System.out.println(\"changed\"); }; }\n"
+            + "}\n");
+        
+        compiler = compiler();
+        compiler.compile();
+        
+        assertThat(compiler.getCompiled(), contains("helpers/Other.java"));
+        
+        // the script depends on greeter
+        write("helpers/Greeter.java",
+            "package helpers;\n"
+            + "public class Greeter {\n"
+            + "  public String greet(String name) { return \"Hi \" + name + \"!\"; }\n"
+            + "}\n");
+        
+        compiler = compiler();
+        compiler.compile();
+        
+        assertThat(compiler.getCompiled(), contains("blaze.java", "helpers/Greeter.java"));
+        
+        // constants are inlined (everything is compiled)
+        write("Consts.java",
+            "public class Consts {\n"
+            + "  static public final String NAME = \"Joe\";\n"
+            + "}\n");
+        
+        compiler = compiler();
+        compiler.compile();
+        
+        assertThat(compiler.getCompiled(), hasSize(4));
+        
+        // removing a source nothing depends on
+        Files.delete(projectDir.resolve("helpers/Other.java"));
+        
+        compiler = compiler();
+        classes = compiler.compile();
+        
+        assertThat(compiler.getCompiled(), is(empty()));
+        assertThat(classes, not(hasKey("helpers.Other")));
+        assertThat(classes, hasKey("helpers.Greeter"));
+    }
+    
+    @Test
+    public void parallelCompile() throws Exception {
+        StringBuilder script = new StringBuilder("public class blaze {\n  public void main() {\n");
+        for (int i = 0; i < 20; i++) {
+            write("helpers/Helper" + i + ".java",
+                "package helpers;\n"
+                + "public class Helper" + i + " {\n"
+                + "  public int value() { return " + i + "; }\n"
+                + "}\n");
+            script.append("    new helpers.Helper").append(i).append("().value();\n");
+        }
+        write("blaze.java", script.append("  }\n}\n").toString());
+        
+        // sources of the script are compiled in other tasks
+        ProjectCompiler compiler = compiler()
+            .parallelism(4)
+            .minSourcesPerTask(5);
+        
+        Map<String,byte[]> classes = compiler.compile();
+        
+        assertThat(compiler.getTaskCount(), is(4));
+        assertThat(compiler.getCompiled(), hasSize(21));
+        assertThat(classes.size(), is(21));
+        
+        // helper and the script (its dependent) only
+        write("helpers/Helper7.java",
+            "package helpers;\n"
+            + "public class Helper7 {\n"
+            + "  public int value() { return 77; }\n"
+            + "}\n");
+        
+        compiler = compiler()
+            .parallelism(4)
+            .minSourcesPerTask(5);
+        
+        compiler.compile();
+        
+        assertThat(compiler.getTaskCount(), is(1));
+        assertThat(compiler.getCompiled(), contains("blaze.java", "helpers/Helper7.java"));
+    }
+    
+    @Test
+    public void compileErrorThenFixed() throws Exception {
+        writeProject();
+        
+        compiler().compile();
+        
+        write("helpers/Greeter.java",
+            "package helpers;\n"
+            + "public class Greeter {\n"
+            + "  public String greet(String name) { return \"Hello \" + name + \"!\" }\n"
+            + "}\n");
+        
+        try {
+            compiler().compile();
+            fail();
+        } catch (MessageOnlyException e) {
+            assertThat(e.getMessage(), containsString("Unable to compile"));
+        }
+        
+        write("helpers/Greeter.java",
+            "package helpers;\n"
+            + "public class Greeter {\n"
+            + "  public String greet(String name) { return \"Hello \" + name + \"!\"; }\n"
+            + "}\n");
+        
+        ProjectCompiler compiler = compiler();
+        
+        assertThat(compiler.compile().size(), is(4));
+        assertThat(compiler.getCompiled(), hasSize(4));
+    }
+    
+    @Test
+    public void scriptWithHelpers() throws Exception {
+        writeProject();
+        
+        Blaze blaze = new Blaze.Builder()
+            .file(projectDir.resolve("blaze.java"))
+            .build();
+        
+        systemOutRule.clearLog();
+        
+        blaze.execute();
+        
+        assertThat(systemOutRule.getLog(), containsString("Hello World!"));
+    }
+    
+}
@@ -23,7 +23,11 @@ import com.fizzed.blaze.core.NoSuchTaskException;
 import static com.fizzed.blaze.system.ShellTestHelper.getBinDirAsResource;
 import com.fizzed.blaze.core.Dependency;
 import static com.fizzed.blaze.internal.FileHelper.resourceAsFile;
+import com.fizzed.blaze.internal.ConfigHelper;
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 import static org.hamcrest.CoreMatchers.containsString;
@@ -38,6 +42,7 @@ import org.junit.Ignore;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.contrib.java.lang.system.SystemOutRule;
+import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,6 +56,9 @@ public class BlazeNashornEngineTest {
     @Rule
     public final SystemOutRule systemOutRule = new SystemOutRule().enableLog();
     
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+    
     @BeforeClass
     static public void forceBinResourceExecutable() throws Exception {
         // this makes the files in the "bin" sample directory executable
@@ -182,6 +190,32 @@ public class BlazeNashornEngineTest {
         assertThat(tasks, hasItem(new BlazeTask("blaze", null)));
     }
     
+    @Test
+    public void tasksCached() throws Exception {
+        File scriptFile = temporaryFolder.newFile("cached.js");
+        Files.write(scriptFile.toPath(), "var main = function() { print('Version 1'); }".getBytes(StandardCharsets.UTF_8));
+        
+        Blaze blaze = new Blaze.Builder()
+            .file(scriptFile)
+            .build();
+        
+        assertThat(blaze.tasks(), hasSize(1));
+        
+        Path tasksFile = ConfigHelper.userBlazeEngineScriptDir(blaze.context(), "nashorn").resolve("cached.js.tasks");
+        
+        assertThat(Files.exists(tasksFile), is(true));
+        
+        // tasks of a changed script are found again
+        Files.write(scriptFile.toPath(), "var main = function() { }\nvar other = function() { }".getBytes(StandardCharsets.UTF_8));
+        
+        blaze = new Blaze.Builder()
+            .file(scriptFile)
+            .build();
+        
+        assertThat(blaze.tasks(), hasSize(2));
+        assertThat(blaze.tasks(), hasItem(new BlazeTask("other", null)));
+    }
+    
     @Test @Ignore("Moving ivy dependency out requires changes to this...")
     public void dependency() throws Exception {
         systemOutRule.clearLog();
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.system;
+
+import com.fizzed.blaze.core.BlazeExecutor;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author joelauer
+ */
+public class ExecStreamHandlerTest {
+    
+    private ExecutorService service;
+    private BlazeExecutor executor;
+    
+    @Before
+    public void before() {
+        service = Executors.newCachedThreadPool();
+        executor = new BlazeExecutor(service, false);
+    }
+    
+    @After
+    public void after() {
+        service.shutdownNow();
+    }
+    
+    @Test
+    public void sameOutputAndErrorNeverWrittenConcurrently() throws Exception {
+        final AtomicBoolean writing = new AtomicBoolean();
+        final AtomicBoolean overlapped = new AtomicBoolean();
+        final ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        
+        // mimics a stream that only supports a single writer
+        OutputStream output = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte)b }, 0, 1);
+            }
+            
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (!writing.compareAndSet(false, true)) {
+                    overlapped.set(true);
+                }
+                try {
+                    Thread.yield();
+                    captured.write(b, off, len);
+                } finally {
+                    writing.set(false);
+                }
+            }
+        };
+        
+        byte[] out = new byte[4 * 1024 * 1024];
+        byte[] err = new byte[4 * 1024 * 1024];
+        Arrays.fill(out, (byte)'o');
+        Arrays.fill(err, (byte)'e');
+        
+        ExecStreamHandler streams = new ExecStreamHandler(executor, null, output, output);
+        
+        streams.setProcessInputStream(new ByteArrayOutputStream());
+        // small reads so both pumps write many times
+        streams.setProcessOutputStream(new SlowInputStream(out));
+        streams.setProcessErrorStream(new SlowInputStream(err));
+        streams.start();
+        streams.stop();
+        
+        assertThat(overlapped.get(), is(false));
+        assertThat(captured.size(), is(out.length + err.length));
+    }
+    
+    static private class SlowInputStream extends ByteArrayInputStream {
+        
+        public SlowInputStream(byte[] buf) {
+            super(buf);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, 512));
+        }
+        
+    }
+    
+}
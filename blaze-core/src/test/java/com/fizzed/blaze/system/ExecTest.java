@@ -28,10 +28,16 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Objects;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import static org.hamcrest.CoreMatchers.is;
@@ -44,6 +50,9 @@ import static org.mockito.Mockito.verify;
 public class ExecTest {
     private static final Logger log = LoggerFactory.getLogger(ExecTest.class);
     
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    
     Config config;
     ContextImpl context;
     
@@ -146,4 +155,68 @@ public class ExecTest {
         assertThat(output.trim(), is("hello dude"));
     }
     
+    @Test
+    public void fileOutputRedirect() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("output.txt");
+        
+        new Exec(context)
+            .command("hello-world-test")
+            .path(getBinDirAsResource())
+            .pipeOutput(Streamables.output(file))
+            .run();
+        
+        assertThat(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim(), is("Hello World 7586930100"));
+        
+        // append rather than replace
+        new Exec(context)
+            .command("hello-world-test")
+            .path(getBinDirAsResource())
+            .pipeOutput(Streamables.output(file, true))
+            .run();
+        
+        assertThat(Files.readAllLines(file, StandardCharsets.UTF_8).size(), is(2));
+        
+        // replace
+        new Exec(context)
+            .command("hello-world-test")
+            .path(getBinDirAsResource())
+            .pipeOutput(Streamables.output(file))
+            .run();
+        
+        assertThat(Files.readAllLines(file, StandardCharsets.UTF_8).size(), is(1));
+    }
+    
+    @Test
+    public void fileInputRedirect() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("input.txt");
+        Files.write(file, "hello file".getBytes(StandardCharsets.UTF_8));
+        
+        CaptureOutput capture = Streamables.captureOutput();
+        
+        new Exec(context)
+            .command("tee")
+            .path(getBinDirAsResource())
+            .pipeInput(Streamables.input(file))
+            .pipeOutput(capture)
+            .run();
+        
+        assertThat(capture.asString().trim(), is("hello file"));
+    }
+    
+    @Test
+    public void fileOutputRedirectWithErrorToOutput() throws Exception {
+        assumeTrue("Requires sh", !System.getProperty("os.name").toLowerCase().contains("windows"));
+        
+        Path file = temporaryFolder.getRoot().toPath().resolve("output.txt");
+        
+        new Exec(context)
+            .command("sh")
+            .args("-c", "echo out; echo err 1>&2")
+            .pipeOutput(Streamables.output(file))
+            .pipeErrorToOutput()
+            .run();
+        
+        assertThat(Files.readAllLines(file, StandardCharsets.UTF_8), is(Arrays.asList("out", "err")));
+    }
+    
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.system;
+
+import com.fizzed.blaze.Context;
+import com.fizzed.blaze.internal.ConfigHelper;
+import com.fizzed.blaze.internal.ContextImpl;
+import com.fizzed.blaze.util.BytePipe;
+import com.fizzed.blaze.util.CaptureOutput;
+import com.fizzed.blaze.util.Streamables;
+import com.fizzed.blaze.util.Timer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares a three stage pipeline of execs (head -c N /dev/zero | cat | wc -c)
+ * connected with byte pipes thru the JVM (how pipelines used to connect every
+ * stage) versus natively by the OS.  Pass the number of MB as the first
+ * argument (defaults to 1024).  Requires a unix-like OS.
+ * 
+ * @author joelauer
+ */
+public class PipelineBenchmark {
+    static private final Logger log = LoggerFactory.getLogger(PipelineBenchmark.class);
+    
+    static public void main(String[] args) throws Exception {
+        long megabytes = (args.length > 0 ? Long.parseLong(args[0]) : 1024L);
+        long bytes = megabytes * 1024L * 1024L;
+        
+        Context context = new ContextImpl(null, null, Paths.get("blaze.java"), ConfigHelper.create(null));
+        
+        long bytePipeMillis = bytePipes(context, bytes);
+        long nativeMillis = natively(context, bytes);
+        
+        log.info("Piped {} MB in {} ms (byte pipes) vs {} ms ({})",
+            megabytes, bytePipeMillis, nativeMillis, (NativePipeline.isOsPiped() ? "os pipes" : "direct pumps"));
+    }
+    
+    static private List<Exec> stages(Context context, long bytes) {
+        return Arrays.asList(
+            new Exec(context).command("head").args("-c", bytes, "/dev/zero"),
+            new Exec(context).command("cat"),
+            new Exec(context).command("wc").args("-c"));
+    }
+    
+    static private long bytePipes(Context context, long bytes) throws Exception {
+        List<Exec> execs = stages(context, bytes);
+        CaptureOutput capture = Streamables.captureOutput();
+        
+        for (int i = 1; i < execs.size(); i++) {
+            BytePipe pipe = new BytePipe();
+            execs.get(i - 1).pipeOutput(Streamables.output(pipe.getOutputStream(), "<pipe>"));
+            execs.get(i).pipeInput(Streamables.input(pipe.getInputStream(), "<pipe>"));
+        }
+        execs.get(0).disablePipeInput();
+        execs.get(execs.size() - 1).pipeOutput(capture);
+        
+        Timer timer = new Timer();
+        
+        List<Thread> threads = new ArrayList<>();
+        for (Exec exec : execs) {
+            Thread thread = new Thread(() -> {
+                exec.run();
+                Streamables.closeQuietly(exec.getPipeInput());
+                Streamables.closeQuietly(exec.getPipeOutput());
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        long millis = timer.stop().millis();
+        
+        verify(capture, bytes);
+        
+        return millis;
+    }
+    
+    static private long natively(Context context, long bytes) throws Exception {
+        List<Exec> execs = stages(context, bytes);
+        CaptureOutput capture = Streamables.captureOutput();
+        
+        execs.get(0).disablePipeInput();
+        
+        Timer timer = new Timer();
+        
+        Pipeline pipeline = new Pipeline(context)
+            .pipeOutput(capture);
+        execs.forEach(pipeline::add);
+        pipeline.run();
+        
+        long millis = timer.stop().millis();
+        
+        verify(capture, bytes);
+        
+        return millis;
+    }
+    
+    static private void verify(CaptureOutput capture, long bytes) {
+        long counted = Long.parseLong(capture.asString().trim());
+        if (counted != bytes) {
+            throw new IllegalStateException("Expected " + bytes + " bytes but counted " + counted);
+        }
+    }
+    
+}
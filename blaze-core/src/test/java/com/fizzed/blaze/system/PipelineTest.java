@@ -0,0 +1,166 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.system;
+
+import com.fizzed.blaze.Config;
+import com.fizzed.blaze.core.UnexpectedExitValueException;
+import com.fizzed.blaze.core.WrappedBlazeException;
+import com.fizzed.blaze.internal.ConfigHelper;
+import com.fizzed.blaze.internal.ContextImpl;
+import com.fizzed.blaze.util.CaptureOutput;
+import com.fizzed.blaze.util.Streamables;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PipelineTest {
+    
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    
+    Config config;
+    ContextImpl context;
+    
+    @Before
+    public void setup() {
+        assumeTrue("Requires sh", !System.getProperty("os.name").toLowerCase().contains("windows"));
+        config = ConfigHelper.create(null);
+        context = new ContextImpl(null, null, Paths.get("blaze.js"), config);
+    }
+    
+    private Exec sh(String script) {
+        // never read the stdin of the test runner
+        return new Exec(context).command("sh").args("-c", script).disablePipeInput();
+    }
+    
+    @Test
+    public void execsNativelyPiped() throws Exception {
+        CaptureOutput capture = Streamables.captureOutput();
+        
+        new Pipeline(context)
+            .pipeInput(Streamables.input("c\na\nb\na\n"))
+            .add(sh("cat"))
+            .add(sh("grep -v b"))
+            .add(sh("sort -u"))
+            .pipeOutput(capture)
+            .run();
+        
+        assertThat(capture.asString(), is("a\nc\n"));
+    }
+    
+    @Test
+    public void execsAndLineActions() throws Exception {
+        CaptureOutput capture = Streamables.captureOutput();
+        
+        new Pipeline(context)
+            .add(sh("printf '1\\n2\\n3\\n4\\n5\\n'"))
+            .add(sh("grep -v 4"))
+            .add(new Head(context).count(3))
+            .add(sh("cat"))
+            .add(sh("tail -n 2"))
+            .pipeOutput(capture)
+            .run();
+        
+        // head outputs lines with \r\n
+        assertThat(capture.asString().replace("\r", ""), is("2\n3\n"));
+    }
+    
+    @Test
+    public void fileInputAndOutput() throws Exception {
+        Path inputFile = temporaryFolder.getRoot().toPath().resolve("input.txt");
+        Path outputFile = temporaryFolder.getRoot().toPath().resolve("output.txt");
+        Files.write(inputFile, "hello\nworld\n".getBytes(StandardCharsets.UTF_8));
+        
+        new Pipeline(context)
+            .pipeInput(inputFile)
+            .add(sh("cat"))
+            .add(sh("tr a-z A-Z"))
+            .pipeOutput(outputFile)
+            .run();
+        
+        assertThat(new String(Files.readAllBytes(outputFile), StandardCharsets.UTF_8), is("HELLO\nWORLD\n"));
+    }
+    
+    @Test
+    public void errorToOutput() throws Exception {
+        CaptureOutput capture = Streamables.captureOutput();
+        
+        new Pipeline(context)
+            .add(sh("echo err 1>&2").pipeErrorToOutput())
+            .add(sh("cat"))
+            .pipeOutput(capture)
+            .run();
+        
+        assertThat(capture.asString(), is("err\n"));
+    }
+    
+    @Test
+    public void errorToOutputIntoAction() throws Exception {
+        CaptureOutput capture = Streamables.captureOutput();
+        
+        // output and error written into the same pipe must never be lost
+        new Pipeline(context)
+            .add(sh("i=0; while [ $i -lt 20000 ]; do echo out; echo err 1>&2; i=$((i+1)); done").pipeErrorToOutput())
+            .add(new Head(context).count(100000))
+            .pipeOutput(capture)
+            .run();
+        
+        String[] lines = capture.asString().replace("\r", "").split("\n");
+        
+        assertThat(lines.length, is(40000));
+        assertThat(Arrays.stream(lines).filter((line) -> line.equals("out")).count(), is(20000L));
+        assertThat(Arrays.stream(lines).filter((line) -> line.equals("err")).count(), is(20000L));
+    }
+    
+    @Test
+    public void unexpectedExitValue() throws Exception {
+        try {
+            new Pipeline(context)
+                .add(sh("echo hello"))
+                .add(sh("cat; exit 3"))
+                .pipeOutput(Streamables.nullOutput())
+                .run();
+            fail();
+        } catch (WrappedBlazeException e) {
+            assertThat(e.getCause(), instanceOf(UnexpectedExitValueException.class));
+        }
+    }
+    
+    @Test
+    public void expectedExitValue() throws Exception {
+        CaptureOutput capture = Streamables.captureOutput();
+        
+        new Pipeline(context)
+            .add(sh("echo hello"))
+            .add(sh("cat; exit 3").exitValues(3))
+            .pipeOutput(capture)
+            .run();
+        
+        assertThat(capture.asString(), is("hello\n"));
+    }
+    
+}
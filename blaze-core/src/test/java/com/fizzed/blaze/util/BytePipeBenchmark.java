@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.util;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the throughput of one writer thread and one reader thread through
+ * a <code>BytePipe</code> versus a <code>SpscBytePipe</code> (with both stream
+ * and byte buffer transfers).  Run from your IDE.
+ * 
+ * @author joelauer
+ */
+public class BytePipeBenchmark {
+    static private final Logger log = LoggerFactory.getLogger(BytePipeBenchmark.class);
+    
+    static private final long BYTES = 1024L * 1024L * 1024L;
+    static private final int CHUNK_SIZE = 8192;
+    static private final int ROUNDS = 3;
+    
+    static public void main(String[] args) throws Exception {
+        for (int round = 0; round <= ROUNDS; round++) {
+            // first round is a warmup
+            long bytePipeMillis = streams(null);
+            long spscMillis = streams(new SpscBytePipe(16384));
+            long spscBufferMillis = buffers(new SpscBytePipe(16384));
+            long spscLargerMillis = streams(new SpscBytePipe());
+            
+            if (round > 0) {
+                log.info("Piped {} MB in {} ms (BytePipe 16 KB) vs {} ms (SpscBytePipe 16 KB) vs {} ms"
+                    + " (SpscBytePipe 16 KB ByteBuffer) vs {} ms (SpscBytePipe 64 KB)",
+                    BYTES / (1024 * 1024), bytePipeMillis, spscMillis, spscBufferMillis, spscLargerMillis);
+            }
+        }
+    }
+    
+    static private long streams(SpscBytePipe spscPipe) throws Exception {
+        final OutputStream os;
+        final InputStream is;
+        
+        if (spscPipe != null) {
+            os = spscPipe.getOutputStream();
+            is = spscPipe.getInputStream();
+        } else {
+            BytePipe pipe = new BytePipe(16384);
+            os = pipe.getOutputStream();
+            is = pipe.getInputStream();
+        }
+        
+        Thread writer = new Thread(() -> {
+            try {
+                byte[] chunk = new byte[CHUNK_SIZE];
+                for (long written = 0; written < BYTES; written += CHUNK_SIZE) {
+                    os.write(chunk, 0, CHUNK_SIZE);
+                }
+                os.close();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        
+        Timer timer = new Timer();
+        
+        writer.start();
+        
+        byte[] bytes = new byte[CHUNK_SIZE];
+        long total = 0;
+        int read;
+        while ((read = is.read(bytes)) >= 0) {
+            total += read;
+        }
+        
+        writer.join();
+        
+        verify(total);
+        
+        return timer.stop().millis();
+    }
+    
+    static private long buffers(SpscBytePipe pipe) throws Exception {
+        Thread writer = new Thread(() -> {
+            try {
+                ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+                for (long written = 0; written < BYTES; written += CHUNK_SIZE) {
+                    chunk.clear();
+                    pipe.getOutputStream().write(chunk);
+                }
+                pipe.getOutputStream().close();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        
+        Timer timer = new Timer();
+        
+        writer.start();
+        
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        long total = 0;
+        int read;
+        while ((read = pipe.getInputStream().read(buffer)) >= 0) {
+            total += read;
+            buffer.clear();
+        }
+        
+        writer.join();
+        
+        verify(total);
+        
+        return timer.stop().millis();
+    }
+    
+    static private void verify(long total) {
+        if (total != BYTES) {
+            throw new IllegalStateException("Expected " + BYTES + " bytes but read " + total);
+        }
+    }
+    
+}
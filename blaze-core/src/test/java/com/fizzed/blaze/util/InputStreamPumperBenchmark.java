@@ -0,0 +1,151 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the throughput and latency of pumping standard input into a process
+ * with the polling <code>InputStreamPumper</code> versus the
+ * <code>BlockingInputStreamPumper</code>.  Run from your IDE.
+ * 
+ * @author joelauer
+ */
+@SuppressWarnings("deprecation")
+public class InputStreamPumperBenchmark {
+    static private final Logger log = LoggerFactory.getLogger(InputStreamPumperBenchmark.class);
+    
+    static private final int THROUGHPUT_BYTES = 64 * 1024 * 1024;
+    static private final int LATENCY_WRITES = 20;
+    
+    static public void main(String[] args) throws Exception {
+        byte[] data = new byte[THROUGHPUT_BYTES];
+        
+        // warmup
+        throughput(false, data);
+        throughput(true, data);
+        
+        long pollingMillis = throughput(false, data);
+        long blockingMillis = throughput(true, data);
+        
+        log.info("Pumped {} MB in {} ms (polling) vs {} ms (blocking)",
+            THROUGHPUT_BYTES / (1024 * 1024), pollingMillis, blockingMillis);
+        
+        double pollingLatency = latency(false);
+        double blockingLatency = latency(true);
+        
+        log.info("Latency of a line of input avg {} ms (polling) vs {} ms (blocking)",
+            String.format("%.2f", pollingLatency), String.format("%.2f", blockingLatency));
+    }
+    
+    static private long throughput(boolean blocking, byte[] data) throws Exception {
+        CountingOutputStream sink = new CountingOutputStream();
+        InputStream source = new ByteArrayInputStream(data);
+        
+        Timer timer = new Timer();
+        
+        Pumper pumper = pumper(blocking, source, sink);
+        
+        sink.await(data.length);
+        
+        pumper.stop();
+        
+        return timer.stop().millis();
+    }
+    
+    static private double latency(boolean blocking) throws Exception {
+        CountingOutputStream sink = new CountingOutputStream();
+        BytePipe pipe = new BytePipe();
+        OutputStream input = pipe.getOutputStream();
+        
+        Pumper pumper = pumper(blocking, StandardInputReader.of(pipe.getInputStream()).open(), sink);
+        
+        byte[] line = "hello world\n".getBytes("UTF-8");
+        long nanos = 0;
+        
+        for (int i = 0; i < LATENCY_WRITES; i++) {
+            long start = System.nanoTime();
+            input.write(line);
+            sink.await((long)line.length * (i + 1));
+            nanos += System.nanoTime() - start;
+            // not back-to-back lines like a real user
+            Thread.sleep(7);
+        }
+        
+        pumper.stop();
+        
+        return nanos / (double)LATENCY_WRITES / 1000000d;
+    }
+    
+    static private Pumper pumper(boolean blocking, InputStream is, OutputStream os) {
+        final Thread thread;
+        final Runnable stopper;
+        
+        if (blocking) {
+            BlockingInputStreamPumper pumper = new BlockingInputStreamPumper(is, os, false);
+            thread = new Thread(pumper);
+            stopper = pumper::stopProcessing;
+        } else {
+            InputStreamPumper pumper = new InputStreamPumper(is, os);
+            thread = new Thread(pumper);
+            stopper = pumper::stopProcessing;
+        }
+        
+        thread.setDaemon(true);
+        thread.start();
+        
+        return () -> {
+            stopper.run();
+            thread.interrupt();
+            thread.join();
+        };
+    }
+    
+    static private interface Pumper {
+        
+        void stop() throws InterruptedException;
+        
+    }
+    
+    static private class CountingOutputStream extends OutputStream {
+        
+        private final AtomicLong count = new AtomicLong();
+        
+        @Override
+        public void write(int b) throws IOException {
+            count.incrementAndGet();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            count.addAndGet(len);
+        }
+        
+        public void await(long expected) throws InterruptedException {
+            while (count.get() < expected) {
+                Thread.sleep(0, 100000);
+            }
+        }
+        
+    }
+    
+}
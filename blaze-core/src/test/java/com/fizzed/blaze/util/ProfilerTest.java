@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.util;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ProfilerTest {
+    
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    
+    @Test
+    public void disabledRecordsNothing() {
+        Profiler profiler = new Profiler();
+        
+        try (Profiler.Span span = profiler.start("blaze", "locate")) {
+            // nothing
+        }
+        
+        assertThat(profiler.getSpans(), is(empty()));
+    }
+    
+    @Test
+    public void summaryAndChromeTrace() throws Exception {
+        Profiler profiler = new Profiler();
+        profiler.enable();
+        
+        try (Profiler.Span span = profiler.start("blaze", "build")) {
+            try (Profiler.Span inner = profiler.start("task", "say \"hi\"")) {
+                Thread.sleep(2);
+            }
+            try (Profiler.Span inner = profiler.start("task", "say \"hi\"")) {
+                Thread.sleep(2);
+            }
+        }
+        
+        assertThat(profiler.getSpans(), hasSize(3));
+        assertThat(profiler.getSpans().get(0).getName(), is("build"));
+        
+        String summary = profiler.summary();
+        
+        assertThat(summary, containsString("blaze:build"));
+        assertThat(summary, containsString("task:say \"hi\"       2"));
+        
+        Path traceFile = temporaryFolder.getRoot().toPath().resolve("trace.json");
+        
+        profiler.writeChromeTrace(traceFile);
+        
+        String trace = new String(Files.readAllBytes(traceFile), StandardCharsets.UTF_8);
+        
+        assertThat(trace, containsString("\"traceEvents\""));
+        assertThat(trace, containsString("\"name\":\"say \\\"hi\\\"\",\"cat\":\"task\",\"ph\":\"X\""));
+    }
+    
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+public class SpscBytePipeTest {
+    
+    @Test
+    public void capacityIsPowerOfTwo() {
+        assertThat(new SpscBytePipe(1).getCapacity(), is(1));
+        assertThat(new SpscBytePipe(1000).getCapacity(), is(1024));
+        assertThat(new SpscBytePipe(1024).getCapacity(), is(1024));
+        assertThat(new SpscBytePipe().getCapacity(), is(SpscBytePipe.DEFAULT_CAPACITY));
+    }
+    
+    @Test
+    public void writeThenRead() throws Exception {
+        SpscBytePipe pipe = new SpscBytePipe(4);
+        OutputStream os = pipe.getOutputStream();
+        InputStream is = pipe.getInputStream();
+        byte[] bytes = new byte[100];
+        
+        os.write("hel".getBytes(StandardCharsets.UTF_8));
+        
+        assertThat(is.available(), is(3));
+        assertThat(new String(bytes, 0, is.read(bytes), StandardCharsets.UTF_8), is("hel"));
+        
+        // wraps around the end of the buffer
+        os.write("lo!".getBytes(StandardCharsets.UTF_8));
+        
+        assertThat(new String(bytes, 0, is.read(bytes), StandardCharsets.UTF_8), is("lo!"));
+        
+        os.close();
+        
+        assertThat(is.read(bytes), is(-1));
+    }
+    
+    @Test
+    public void bytesWrittenBeforeCloseAreRead() throws Exception {
+        SpscBytePipe pipe = new SpscBytePipe(8);
+        
+        pipe.getOutputStream().write('a');
+        pipe.getOutputStream().close();
+        
+        assertThat(pipe.getInputStream().read(), is((int)'a'));
+        assertThat(pipe.getInputStream().read(), is(-1));
+    }
+    
+    @Test
+    public void writeAfterInputClosed() throws Exception {
+        SpscBytePipe pipe = new SpscBytePipe(8);
+        
+        pipe.getInputStream().close();
+        
+        try {
+            pipe.getOutputStream().write(new byte[1]);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+    
+    @Test
+    public void inputClosedWakesBlockedWriter() throws Exception {
+        final SpscBytePipe pipe = new SpscBytePipe(8);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        
+        Thread writer = new Thread(() -> {
+            try {
+                pipe.getOutputStream().write(new byte[100]);
+            } catch (Throwable t) {
+                error.set(t);
+            }
+        });
+        writer.start();
+        
+        while (pipe.getInputStream().available() < 8) {
+            Thread.sleep(1L);
+        }
+        
+        pipe.getInputStream().close();
+        writer.join(5000L);
+        
+        assertThat(writer.isAlive(), is(false));
+        assertThat(error.get() instanceof IOException, is(true));
+    }
+    
+    @Test
+    public void interruptBlockedReader() throws Exception {
+        final SpscBytePipe pipe = new SpscBytePipe(8);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        
+        Thread reader = new Thread(() -> {
+            try {
+                pipe.getInputStream().read(new byte[8]);
+            } catch (Throwable t) {
+                error.set(t);
+            }
+        });
+        reader.start();
+        
+        Thread.sleep(50L);
+        
+        reader.interrupt();
+        reader.join(5000L);
+        
+        assertThat(reader.isAlive(), is(false));
+        assertThat(error.get() instanceof InterruptedIOException, is(true));
+    }
+    
+    @Test
+    public void concurrentTransfer() throws Exception {
+        // small buffer so the reader and writer constantly wait on each other
+        final SpscBytePipe pipe = new SpscBytePipe(256);
+        final byte[] data = new byte[4 * 1024 * 1024];
+        new Random(1L).nextBytes(data);
+        
+        Thread writer = new Thread(() -> {
+            try {
+                Random random = new Random(2L);
+                int offset = 0;
+                while (offset < data.length) {
+                    int length = Math.min(data.length - offset, 1 + random.nextInt(1000));
+                    if (random.nextBoolean()) {
+                        pipe.getOutputStream().write(data, offset, length);
+                    } else {
+                        pipe.getOutputStream().write(ByteBuffer.wrap(data, offset, length));
+                    }
+                    offset += length;
+                }
+                pipe.getOutputStream().close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        writer.start();
+        
+        CRC32 crc = new CRC32();
+        Random random = new Random(3L);
+        byte[] bytes = new byte[777];
+        ByteBuffer buffer = ByteBuffer.allocateDirect(333);
+        long total = 0;
+        int read;
+        
+        while (true) {
+            if (random.nextBoolean()) {
+                read = pipe.getInputStream().read(bytes);
+                if (read > 0) {
+                    crc.update(bytes, 0, read);
+                }
+            } else {
+                buffer.clear();
+                read = pipe.getInputStream().read(buffer);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    crc.update(buffer.get());
+                }
+            }
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        
+        writer.join();
+        
+        CRC32 expected = new CRC32();
+        expected.update(data);
+        
+        assertThat(total, is((long)data.length));
+        assertThat(crc.getValue(), is(expected.getValue()));
+    }
+    
+}
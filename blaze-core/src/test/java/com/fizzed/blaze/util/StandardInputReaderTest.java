@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+public class StandardInputReaderTest {
+    
+    @Test
+    public void of() throws Exception {
+        BytePipe pipe = new BytePipe();
+        
+        StandardInputReader reader = StandardInputReader.of(pipe.getInputStream());
+        
+        assertThat(StandardInputReader.of(pipe.getInputStream()), is(sameInstance(reader)));
+        assertThat(StandardInputReader.of(new BytePipe().getInputStream()), is(not(sameInstance(reader))));
+    }
+    
+    @Test
+    public void pumps() throws Exception {
+        BytePipe pipe = new BytePipe();
+        OutputStream input = pipe.getOutputStream();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        
+        InputStream stdin = new StandardInputReader(pipe.getInputStream()).open();
+        
+        Thread thread = new Thread(new BlockingInputStreamPumper(stdin, output, true));
+        thread.start();
+        
+        input.write("hello\nworld\n".getBytes(StandardCharsets.UTF_8));
+        input.close();
+        
+        thread.join(5000L);
+        
+        assertThat(thread.isAlive(), is(false));
+        assertThat(new String(output.toByteArray(), StandardCharsets.UTF_8), is("hello\nworld\n"));
+    }
+    
+    @Test
+    public void interruptStopsPumpWithoutClosingSource() throws Exception {
+        BytePipe pipe = new BytePipe();
+        OutputStream input = pipe.getOutputStream();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        
+        StandardInputReader reader = new StandardInputReader(pipe.getInputStream());
+        InputStream stdin = reader.open();
+        
+        Thread thread = new Thread(new BlockingInputStreamPumper(stdin, output, true));
+        thread.start();
+        
+        input.write("a".getBytes(StandardCharsets.UTF_8));
+        
+        // e.g. the process exited while pump blocked waiting for more input
+        long start = System.currentTimeMillis();
+        while (output.size() < 1 && System.currentTimeMillis() - start < 5000L) {
+            Thread.sleep(5L);
+        }
+        
+        thread.interrupt();
+        thread.join(5000L);
+        stdin.close();
+        
+        assertThat(thread.isAlive(), is(false));
+        assertThat(new String(output.toByteArray(), StandardCharsets.UTF_8), is("a"));
+        
+        // input after the pump stopped is still there for the next one
+        input.write("b".getBytes(StandardCharsets.UTF_8));
+        
+        InputStream stdin2 = reader.open();
+        
+        assertThat(stdin2.read(), is((int)'b'));
+        
+        stdin2.close();
+    }
+    
+    @Test(expected=IOException.class)
+    public void readAfterClose() throws Exception {
+        InputStream stdin = new StandardInputReader(new BytePipe().getInputStream()).open();
+        
+        stdin.close();
+        
+        stdin.read();
+    }
+    
+}
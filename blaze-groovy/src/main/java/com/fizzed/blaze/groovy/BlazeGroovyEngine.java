@@ -15,18 +15,36 @@
  */
 package com.fizzed.blaze.groovy;
 
+import com.fizzed.blaze.Config;
 import com.fizzed.blaze.Context;
 import com.fizzed.blaze.core.BlazeException;
 import com.fizzed.blaze.core.AbstractEngine;
+import com.fizzed.blaze.core.CompileCache;
+import com.fizzed.blaze.internal.ClassLoaderHelper;
+import com.fizzed.blaze.internal.ClassesFile;
+import com.fizzed.blaze.internal.ScriptClassLoader;
 import groovy.lang.Binding;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovySystem;
 import groovy.lang.Script;
-import groovy.util.GroovyScriptEngine;
-import groovy.util.ResourceException;
-import groovy.util.ScriptException;
+import groovy.transform.CompileStatic;
 import java.io.IOException;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.codehaus.groovy.tools.GroovyClass;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,8 +52,6 @@ public class BlazeGroovyEngine extends AbstractEngine<BlazeGroovyScript> {
     static final private Logger log = LoggerFactory.getLogger(AbstractEngine.class);
     
     static final public List<String> EXTS = Arrays.asList(".groovy");
-    
-    private GroovyScriptEngine groovy;
 
     @Override
     public String getName() {
@@ -50,21 +66,71 @@ public class BlazeGroovyEngine extends AbstractEngine<BlazeGroovyScript> {
     @Override
     public void init(Context initialContext) throws BlazeException {
         super.init(initialContext);
-        
-        try {
-            // initialize engine with the base directory
-            URL root = initialContext.baseDir().toUri().toURL();
-            this.groovy = new GroovyScriptEngine(new URL[] { root });
-        } catch (IOException e) {
-            throw new BlazeException("Unable to create groovy", e);
-        }
+    }
+    
+    @Override
+    public String getCompilerVersion() {
+        return GroovySystem.getVersion();
     }
 
     @Override
     public BlazeGroovyScript compile(Context context) throws BlazeException {
+        // compiled against and loaded by the classloader of this script
+        ScriptClassLoader classLoader = ClassLoaderHelper.currentScriptClassLoader();
+        
+        boolean compileStatic = context.config().value(Config.KEY_GROOVY_COMPILE_STATIC, Boolean.class)
+            .getOr(Config.DEFAULT_GROOVY_COMPILE_STATIC);
+        
+        // all classes of the script are cached in a single file
+        CompileCache compileCache = compileCache(context, classLoader, (compileStatic ? "static" : null));
+        Path classesFile = compileCache.file(".classes");
+        Map<String,byte[]> classes = null;
+        
         try {
-            // must be valid url...
-            String path = context.scriptFile().toUri().toURL().toString();
+            log.trace("Using classes file {}", classesFile);
+            
+            String key = compileCache.key();
+            
+            classes = ClassesFile.read(classesFile, key);
+            
+            if (classes != null) {
+                log.debug("Script has not changed, using previous compiled version");
+            } else {
+                try (CompileCache.Lock lock = compileCache.lock()) {
+                    // another run of blaze may have compiled it while we waited
+                    classes = ClassesFile.read(classesFile, key);
+                    
+                    if (classes == null) {
+                        CompilationUnit unit = groovyc(classLoader, context, compileStatic);
+                        
+                        classes = new LinkedHashMap<>();
+                        for (Object groovyClass : unit.getClasses()) {
+                            classes.put(((GroovyClass)groovyClass).getName(), ((GroovyClass)groovyClass).getBytes());
+                        }
+                        
+                        // the key only covers the script itself
+                        if (isOnlySource(unit)) {
+                            ClassesFile.write(classesFile, key, classes);
+                        } else {
+                            log.debug("Script depends on other groovy sources (not caching compiled classes)");
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new BlazeException("Unable to read or save compiled classes", e);
+        }
+        
+        try {
+            classLoader.addClasses(classesFile.toUri().toURL(), classes);
+        } catch (MalformedURLException e) {
+            throw new BlazeException("Unable to add compiled classes", e);
+        }
+        
+        String className = scriptClassName(context.scriptFile());
+        
+        try {
+            Class<?> type = classLoader.loadClass(className);
             
             Binding binding = new Binding();
             
@@ -74,13 +140,66 @@ public class BlazeGroovyEngine extends AbstractEngine<BlazeGroovyScript> {
             //binding.setVariable("log", context.logger());
             //binding.setVariable("config", context.config());
  
-            Script script = script = this.groovy.createScript(path, binding);
+            Script script = InvokerHelper.createScript(type, binding);
             
             script.run();
             
             return new BlazeGroovyScript(this, script);
-        } catch (ResourceException | IOException | ScriptException e) {
-            throw new BlazeException("Unable to compile groovy script", e);
+        } catch (ClassNotFoundException e) {
+            throw new BlazeException("Unable to load class '" + className + "'", e);
+        }
+    }
+    
+    /**
+     * Compiles the script (and any other groovy sources in its directory it
+     * depends on) in memory.
+     * @param classLoader The classloader to compile against
+     * @param context The context of the script
+     * @param compileStatic If all classes should be statically compiled
+     * @return The compilation unit with the compiled classes
+     */
+    public CompilationUnit groovyc(ClassLoader classLoader, Context context, boolean compileStatic) {
+        CompilerConfiguration configuration = new CompilerConfiguration();
+        
+        if (compileStatic) {
+            log.debug("Compiling groovy script statically");
+            configuration.addCompilationCustomizers(new ASTTransformationCustomizer(CompileStatic.class));
         }
+        
+        GroovyClassLoader groovyClassLoader = new GroovyClassLoader(classLoader, configuration);
+        
+        // other groovy sources are looked up in the base directory
+        Path baseDir = context.baseDir();
+        groovyClassLoader.setResourceLoader((String name) -> {
+            Path file = baseDir.resolve(name.replace('.', '/') + ".groovy");
+            return Files.isRegularFile(file) ? file.toUri().toURL() : null;
+        });
+        
+        CompilationUnit unit = new CompilationUnit(configuration, null, groovyClassLoader);
+        
+        unit.addSource(context.scriptFile().toFile());
+        
+        unit.compile(Phases.CLASS_GENERATION);
+        
+        return unit;
+    }
+    
+    static private boolean isOnlySource(CompilationUnit unit) {
+        Iterator<SourceUnit> sources = unit.iterator();
+        
+        int count = 0;
+        while (sources.hasNext()) {
+            sources.next();
+            count++;
+        }
+        
+        return count == 1;
+    }
+    
+    static public String scriptClassName(Path scriptFile) {
+        // same as groovy, the name of the file without its extension
+        String fileName = scriptFile.getFileName().toString();
+        int pos = fileName.lastIndexOf('.');
+        return (pos > 0 ? fileName.substring(0, pos) : fileName);
     }
 }
@@ -19,8 +19,13 @@ import com.fizzed.blaze.core.Blaze;
 import com.fizzed.blaze.core.BlazeTask;
 import com.fizzed.blaze.core.MessageOnlyException;
 import com.fizzed.blaze.core.NoSuchTaskException;
+import com.fizzed.blaze.internal.ConfigHelper;
 import static com.fizzed.blaze.internal.FileHelper.resourceAsFile;
 import com.fizzed.blaze.internal.NoopDependencyResolver;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import org.codehaus.groovy.control.MultipleCompilationErrorsException;
 import static org.hamcrest.CoreMatchers.containsString;
@@ -33,6 +38,7 @@ import static org.junit.Assert.fail;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.contrib.java.lang.system.SystemOutRule;
+import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,6 +48,9 @@ public class BlazeGroovyEngineTest {
     @Rule
     public final SystemOutRule systemOutRule = new SystemOutRule().enableLog();
     
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+    
     @Test
     public void empty() throws Exception {
         Blaze blaze = new Blaze.Builder()
@@ -158,4 +167,53 @@ public class BlazeGroovyEngineTest {
         }
     }
     
+    @Test
+    public void compileStatic() throws Exception {
+        try {
+            new Blaze.Builder()
+                .dependencyResolver(new NoopDependencyResolver())
+                .file(resourceAsFile("/groovy/compile_static.groovy"))
+                .build();
+            
+            fail();
+        } catch (MultipleCompilationErrorsException e) {
+            // only detected at compile time if statically compiled
+            assertThat(e.getMessage(), containsString("undeclared"));
+        }
+    }
+    
+    @Test
+    public void compiledClassesCached() throws Exception {
+        File scriptFile = temporaryFolder.newFile("cached.groovy");
+        Files.write(scriptFile.toPath(), "def main() { println 'Version 1' }".getBytes(StandardCharsets.UTF_8));
+        
+        Blaze blaze = new Blaze.Builder()
+            .dependencyResolver(new NoopDependencyResolver())
+            .file(scriptFile)
+            .build();
+        
+        Path classesFile = ConfigHelper.userBlazeEngineScriptDir(blaze.context(), "groovy").resolve("cached.groovy.classes");
+        
+        assertThat(Files.exists(classesFile), is(true));
+        
+        systemOutRule.clearLog();
+        
+        blaze.execute();
+        
+        assertThat(systemOutRule.getLog(), containsString("Version 1"));
+        
+        Files.write(scriptFile.toPath(), "def main() { println 'Version 2' }".getBytes(StandardCharsets.UTF_8));
+        
+        blaze = new Blaze.Builder()
+            .dependencyResolver(new NoopDependencyResolver())
+            .file(scriptFile)
+            .build();
+        
+        systemOutRule.clearLog();
+        
+        blaze.execute();
+        
+        assertThat(systemOutRule.getLog(), containsString("Version 2"));
+    }
+    
 }
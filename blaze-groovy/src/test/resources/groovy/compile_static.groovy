@@ -0,0 +1,3 @@
+def main() {
+    println(undeclared)
+}
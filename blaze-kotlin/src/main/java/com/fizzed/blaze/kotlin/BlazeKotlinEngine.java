@@ -18,16 +18,15 @@ package com.fizzed.blaze.kotlin;
 import com.fizzed.blaze.Context;
 import com.fizzed.blaze.core.BlazeException;
 import com.fizzed.blaze.core.AbstractEngine;
+import com.fizzed.blaze.core.CompileCache;
 import com.fizzed.blaze.internal.ClassLoaderHelper;
-import static com.fizzed.blaze.internal.ClassLoaderHelper.currentThreadContextClassLoader;
-import com.fizzed.blaze.internal.ConfigHelper;
 import com.fizzed.blaze.internal.FileHelper;
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.List;
 import org.slf4j.Logger;
@@ -52,46 +51,71 @@ public class BlazeKotlinEngine extends AbstractEngine<BlazeKotlinScript> {
     public void init(Context initialContext) throws BlazeException {
         super.init(initialContext);
     }
+    
+    @Override
+    public String getCompilerVersion() {
+        return Kotlin1Compiler.version();
+    }
 
+    /**
+     * Compiles with a kotlin compiler session that outlives the classloader of
+     * this script (every build of a script gets a new one) so recompiles in
+     * the same jvm (e.g. watch mode or the daemon) skip warming it up.
+     */
+    static private void compile(ClassLoader classLoader, Path file, Path classesDir, boolean isScript) throws BlazeException {
+        ClassLoader compilerClassLoader = ClassLoaderHelper.sharedClassLoader(classLoader,
+            Kotlin1Compiler.class.getName().replace('.', '/') + ".class",
+            "org/jetbrains/kotlin/cli/jvm/compiler/KotlinCoreEnvironment.class");
+        
+        List<File> classPath = ClassLoaderHelper.buildClassPathAsFiles(classLoader);
+        
+        try {
+            Class.forName(Kotlin1Compiler.class.getName(), true, compilerClassLoader)
+                .getMethod("compileWithSession", List.class, Path.class, Path.class, boolean.class)
+                .invoke(null, classPath, file, classesDir, isScript);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new BlazeException("Unable to compile " + file, e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new BlazeException("Unable to load kotlin compiler", e);
+        }
+    }
+    
     @Override
     public BlazeKotlinScript compile(Context context) throws BlazeException {
         KotlinSourceFile sourceFile = new KotlinSourceFile(context.scriptFile());
         
-        ClassLoader classLoader = currentThreadContextClassLoader();
-        Path classesDir = null;
-        Path expectedClassFile = null;
-        String scriptHash = null;
-        boolean compile = true;
+        // compiled against and loaded by the classloader of this script
+        ClassLoader classLoader = ClassLoaderHelper.currentScriptClassLoader();
+        
+        // directory to save compiled classes on a semi-reliable basis
+        CompileCache compileCache = compileCache(context, classLoader);
+        Path classesDir = compileCache.file(".classes");
         
         try {
-            // directory to save compile classes on a semi-reliable basis
-            classesDir = ConfigHelper.userBlazeEngineScriptClassesDir(context, getName());
             log.trace("Using classes dir {}", classesDir);
             
-            expectedClassFile = classesDir.resolve(sourceFile.getClassName() + ".class");
-            
-            // to check if we need to recompile we use an md5 hash of the source file
-            scriptHash = FileHelper.md5hash(context.scriptFile());
-            
-            if (FileHelper.verifyHashFileFor(expectedClassFile, scriptHash)) {
-                compile = false;
-            }
-        } catch (NoSuchAlgorithmException | IOException e) {
-            throw new BlazeException("Unable to get or create path to compile classes", e);
-        }
-        
-        if (!compile) {
-            log.debug("Script has not changed, using previous compiled version");
-        } else {
-            Kotlin1Compiler compiler = new Kotlin1Compiler(classLoader);
-            compiler.compile(context.scriptFile(), classesDir, sourceFile.isScript());
-            
-            try {
-                // save the hash for future use
-                FileHelper.writeHashFileFor(expectedClassFile, scriptHash);
-            } catch (IOException e) {
-                throw new BlazeException("Unable to save script hash", e);
+            if (compileCache.isCompiled()) {
+                log.debug("Script has not changed, using previous compiled version");
+            } else {
+                try (CompileCache.Lock lock = compileCache.lock()) {
+                    // another run of blaze may have compiled it while we waited
+                    if (!compileCache.isCompiled()) {
+                        // classes of a previous version must not linger around
+                        FileHelper.deleteRecursively(classesDir);
+                        Files.createDirectories(classesDir);
+                        
+                        compile(classLoader, context.scriptFile(), classesDir, sourceFile.isScript());
+                        
+                        // save the key for future use
+                        compileCache.markCompiled();
+                    }
+                }
             }
+        } catch (IOException e) {
+            throw new BlazeException("Unable to read or save compiled classes", e);
         }
         
         // add directory it was compiled to classpath
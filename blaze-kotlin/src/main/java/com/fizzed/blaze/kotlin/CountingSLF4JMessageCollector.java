@@ -46,6 +46,11 @@ public class CountingSLF4JMessageCollector implements MessageCollector {
         return warnings.get();
     }
     
+    public void reset() {
+        this.errors.set(0);
+        this.warnings.set(0);
+    }
+    
     @Override
     public void report(CompilerMessageSeverity severity, String message, CompilerMessageLocation location) {
         switch (severity) {
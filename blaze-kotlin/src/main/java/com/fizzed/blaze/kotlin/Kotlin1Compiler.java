@@ -15,9 +15,14 @@
  */
 package com.fizzed.blaze.kotlin;
 
+import com.fizzed.blaze.core.BlazeException;
 import com.fizzed.blaze.core.CompilationException;
 import com.fizzed.blaze.internal.ClassLoaderHelper;
 import com.intellij.openapi.Disposable;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.psi.impl.PsiFileFactoryImpl;
+import com.intellij.testFramework.LightVirtualFile;
 import com.intellij.openapi.util.Disposer;
 import org.jetbrains.kotlin.cli.common.CLIConfigurationKeys;
 import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles;
@@ -26,55 +31,136 @@ import org.jetbrains.kotlin.cli.jvm.compiler.KotlinToJVMBytecodeCompiler;
 import org.jetbrains.kotlin.cli.jvm.config.JvmContentRootsKt;
 import org.jetbrains.kotlin.cli.jvm.config.JVMConfigurationKeys;
 import org.jetbrains.kotlin.config.CompilerConfiguration;
-import org.jetbrains.kotlin.config.ContentRootsKt;
+import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.idea.KotlinLanguage;
 import org.jetbrains.kotlin.utils.PathUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.List;
 import org.jetbrains.kotlin.config.CommonConfigurationKeys;
 import org.jetbrains.kotlin.load.java.JvmAbi;
 import org.jetbrains.kotlin.script.StandardScriptDefinition;
 
 /**
  * Compiles .kt and .kts files to .class files that are saved on the filesystem
- * for later re-use.  Based loosely on:
+ * for later re-use.  The environment of the compiler is created once and only
+ * the source is swapped on every compile.  Based loosely on:
  * 
  *   https://github.com/JetBrains/kotlin/blob/d89e907f00e7a93a715d540255d98bbe8da57b3e/compiler/tests/org/jetbrains/kotlin/scripts/ScriptTest.java
  *   https://github.com/JetBrains/kotlin/blob/9a762e0fa282deac1ca48ee15e548325b1e7ab2b/libraries/tools/kotlin-maven-plugin/src/main/java/org/jetbrains/kotlin/maven/ExecuteKotlinScriptMojo.java
  * 
  * @author joelauer
  */
-public class Kotlin1Compiler {
+public class Kotlin1Compiler implements Closeable {
     static private final Logger log = LoggerFactory.getLogger(Kotlin1Compiler.class);
 
-    private final ClassLoader classLoader;
+    static private Kotlin1Compiler session;
+    
+    private final List<File> classPath;
+    private final CountingSLF4JMessageCollector messageCollector;
+    private Disposable disposable;
+    private KotlinCoreEnvironment environment;
     
     public Kotlin1Compiler(ClassLoader classLoader) {
-        this.classLoader = classLoader;
+        this(ClassLoaderHelper.buildClassPathAsFiles(classLoader));
+    }
+    
+    public Kotlin1Compiler(List<File> classPath) {
+        this.classPath = new ArrayList<>(classPath);
+        this.messageCollector = new CountingSLF4JMessageCollector(log);
+    }
+    
+    static public String version() {
+        String version = KotlinToJVMBytecodeCompiler.class.getPackage().getImplementationVersion();
+        return version != null ? version : "unknown";
     }
 
-    public void compile(Path file, Path classesDir, boolean isScript) throws CompilationException {
-        // collect and log errors and warnings as compilation occurs
-        CountingSLF4JMessageCollector messageCollector = new CountingSLF4JMessageCollector(log);
+    public List<File> getClassPath() {
+        return classPath;
+    }
+    
+    /**
+     * Compiles with the compiler session of this classloader.  The session
+     * (and its warmed up environment) is re-used as long as the classpath
+     * is the same, otherwise a new one replaces it.
+     * @param classPath The classpath to compile against
+     * @param file The source file
+     * @param classesDir The directory to write classes to
+     * @param isScript If the source file is a script
+     * @throws CompilationException If the source failed to compile
+     */
+    static public synchronized void compileWithSession(List<File> classPath, Path file, Path classesDir, boolean isScript) throws CompilationException {
+        if (session == null || !session.getClassPath().equals(classPath)) {
+            if (session != null) {
+                log.debug("Classpath changed, closing kotlin compiler session");
+                session.close();
+            }
+            session = new Kotlin1Compiler(classPath);
+        } else {
+            log.debug("Re-using kotlin compiler session");
+        }
+        
+        session.compile(file, classesDir, isScript);
+    }
+    
+    private KotlinCoreEnvironment environment() {
+        if (this.environment == null) {
+            // build kotlin compiler configuration
+            CompilerConfiguration compilerConfiguration = new CompilerConfiguration();
+            compilerConfiguration.put(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY, this.messageCollector);
+            compilerConfiguration.put(JVMConfigurationKeys.MODULE_NAME, JvmAbi.DEFAULT_MODULE_NAME);
+            JvmContentRootsKt.addJvmClasspathRoots(compilerConfiguration, PathUtil.getJdkClassesRoots());
+            JvmContentRootsKt.addJvmClasspathRoots(compilerConfiguration, this.classPath);
+            // NOTE: Kotlin v1.0.2+ moved this config key around and will break
+            // when we bump up the version down the road. Kotlin is a moving target
+            // with changing how its compiler internally is called
+            compilerConfiguration.add(CommonConfigurationKeys.SCRIPT_DEFINITIONS_KEY, StandardScriptDefinition.INSTANCE);
 
-        // build kotline compiler configuration
-        CompilerConfiguration compilerConfiguration = new CompilerConfiguration();
-        compilerConfiguration.put(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY, messageCollector);
-        compilerConfiguration.put(JVMConfigurationKeys.MODULE_NAME, JvmAbi.DEFAULT_MODULE_NAME);
-        JvmContentRootsKt.addJvmClasspathRoots(compilerConfiguration, PathUtil.getJdkClassesRoots());
-        JvmContentRootsKt.addJvmClasspathRoots(compilerConfiguration, ClassLoaderHelper.buildClassPathAsFiles(classLoader));
-        ContentRootsKt.addKotlinSourceRoot(compilerConfiguration, file.toAbsolutePath().toString());
-        // NOTE: Kotlin v1.0.2+ moved this config key around and will break
-        // when we bump up the version down the road. Kotlin is a moving target
-        // with changing how its compiler internally is called
-        compilerConfiguration.add(CommonConfigurationKeys.SCRIPT_DEFINITIONS_KEY, StandardScriptDefinition.INSTANCE);
+            this.disposable = Disposer.newDisposable();
+            this.environment = KotlinCoreEnvironment.createForProduction(
+                this.disposable, compilerConfiguration, EnvironmentConfigFiles.JVM_CONFIG_FILES);
+        }
+        return this.environment;
+    }
+    
+    public synchronized void compile(Path file, Path classesDir, boolean isScript) throws CompilationException {
+        KotlinCoreEnvironment env = environment();
+        
+        String text;
+        try {
+            text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new BlazeException("Unable to read " + file, e);
+        }
+        
+        // only the source is swapped, the rest of the environment is re-used
+        final String path = file.toAbsolutePath().toString();
+        LightVirtualFile virtualFile = new LightVirtualFile(file.getFileName().toString(),
+                KotlinLanguage.INSTANCE, StringUtil.convertLineSeparators(text)) {
+            @Override
+            public String getPath() {
+                // so compiler messages include where the script is
+                return path;
+            }
+        };
+        virtualFile.setCharset(StandardCharsets.UTF_8);
+        
+        KtFile ktFile = (KtFile)((PsiFileFactoryImpl)PsiFileFactory.getInstance(env.getProject()))
+            .trySetupPsiForFile(virtualFile, KotlinLanguage.INSTANCE, true, false);
+        
+        env.getSourceFiles().clear();
+        env.getSourceFiles().add(ktFile);
+        
+        this.messageCollector.reset();
         
-        Disposable disposable = Disposer.newDisposable();
         try {
-            KotlinCoreEnvironment env = KotlinCoreEnvironment.createForProduction(
-                disposable, compilerConfiguration, EnvironmentConfigFiles.JVM_CONFIG_FILES);
-            
             boolean compiled = 
                 KotlinToJVMBytecodeCompiler.INSTANCE.compileBunchOfSources(
                     env, null, classesDir.toFile(), new ArrayList<>(), false);
@@ -85,7 +171,16 @@ public class Kotlin1Compiler {
                     + messageCollector.getWarnings() + " warnings)");
             }
         } finally {
-            Disposer.dispose(disposable);
+            env.getSourceFiles().clear();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (this.disposable != null) {
+            Disposer.dispose(this.disposable);
+            this.disposable = null;
+            this.environment = null;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.kotlin;
+
+import com.fizzed.blaze.core.CompilationException;
+import com.fizzed.blaze.internal.ClassLoaderHelper;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class Kotlin1CompilerTest {
+    
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    
+    @Test
+    public void sessionRecompilesChangedSource() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("hello.kt");
+        
+        try (Kotlin1Compiler compiler = new Kotlin1Compiler(ClassLoaderHelper.buildClassPathAsFiles(getClass().getClassLoader()))) {
+            Files.write(file, "class hello { fun main() { } }".getBytes(StandardCharsets.UTF_8));
+            
+            Path classesDir1 = temporaryFolder.newFolder("classes1").toPath();
+            compiler.compile(file, classesDir1, false);
+            
+            assertThat(Files.exists(classesDir1.resolve("hello.class")), is(true));
+            assertThat(Files.exists(classesDir1.resolve("other.class")), is(false));
+            
+            // same session must see the new source
+            Files.write(file, "class hello { fun main() { } }\nclass other".getBytes(StandardCharsets.UTF_8));
+            
+            Path classesDir2 = temporaryFolder.newFolder("classes2").toPath();
+            compiler.compile(file, classesDir2, false);
+            
+            assertThat(Files.exists(classesDir2.resolve("hello.class")), is(true));
+            assertThat(Files.exists(classesDir2.resolve("other.class")), is(true));
+            
+            // errors are counted per compile
+            Files.write(file, "class hello { fun main() { log } }".getBytes(StandardCharsets.UTF_8));
+            
+            try {
+                compiler.compile(file, temporaryFolder.newFolder("classes3").toPath(), false);
+                fail();
+            } catch (CompilationException e) {
+                assertThat(e.getMessage().contains("(1 errors"), is(true));
+            }
+        }
+    }
+    
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 Fizzed, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fizzed.blaze.kotlin;
+
+import com.fizzed.blaze.internal.ClassLoaderHelper;
+import com.fizzed.blaze.internal.FileHelper;
+import com.fizzed.blaze.util.Timer;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the first compile of example kotlin scripts to recompiles with a
+ * new compiler environment each time versus a re-used compiler session.  Run
+ * from the blaze-kotlin directory (e.g. from your IDE).
+ * 
+ * @author joelauer
+ */
+public class KotlinCompilerBenchmark {
+    static private final Logger log = LoggerFactory.getLogger(KotlinCompilerBenchmark.class);
+    
+    static private final int RECOMPILES = 5;
+    
+    static public void main(String[] args) throws Exception {
+        Path[] files = new Path[] {
+            Paths.get("../examples/hello.kt"),
+            Paths.get("../examples/globber.kts")
+        };
+        
+        List<File> classPath = ClassLoaderHelper.buildClassPathAsFiles(KotlinCompilerBenchmark.class.getClassLoader());
+        
+        // first compile includes loading and warming up the compiler itself
+        for (Path file : files) {
+            log.info("{} first compile in {} ms", file, compile(new Kotlin1Compiler(classPath), file, true));
+        }
+        
+        for (Path file : files) {
+            long newEnvironmentMillis = 0;
+            for (int i = 0; i < RECOMPILES; i++) {
+                newEnvironmentMillis += compile(new Kotlin1Compiler(classPath), file, true);
+            }
+            
+            long sessionMillis = 0;
+            try (Kotlin1Compiler session = new Kotlin1Compiler(classPath)) {
+                compile(session, file, false);
+                for (int i = 0; i < RECOMPILES; i++) {
+                    sessionMillis += compile(session, file, false);
+                }
+            }
+            
+            log.info("{} recompile avg {} ms (new environment) vs {} ms (session)",
+                file, newEnvironmentMillis / RECOMPILES, sessionMillis / RECOMPILES);
+        }
+    }
+    
+    static private long compile(Kotlin1Compiler compiler, Path file, boolean close) throws Exception {
+        Path classesDir = Files.createTempDirectory("blaze-kotlin-benchmark");
+        try {
+            Timer timer = new Timer();
+            compiler.compile(file, classesDir, new KotlinSourceFile(file).isScript());
+            return timer.stop().millis();
+        } finally {
+            if (close) {
+                compiler.close();
+            }
+            FileHelper.deleteRecursively(classesDir);
+        }
+    }
+    
+}
@@ -28,11 +28,15 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.fizzed.blaze.core.ExecMixin;
+import com.fizzed.blaze.util.BlockingInputStreamPumper;
 import com.fizzed.blaze.util.InterruptibleInputStream;
+import com.fizzed.blaze.util.StandardInputReader;
 import java.io.InputStream;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.NullOutputStream;
 
 public class JschExec extends SshExec implements ExecMixin<SshExec> {
@@ -49,6 +53,10 @@ public class JschExec extends SshExec implements ExecMixin<SshExec> {
         ObjectHelper.requireNonNull(command, "ssh command cannot be null");
         
         ChannelExec channel = null;
+        InputStream is = null;
+        InputStream input = null;
+        BlockingInputStreamPumper inputPumper = null;
+        Future<?> inputPump = null;
         try {
             channel = (ChannelExec)jschSession.openChannel("exec");
             
@@ -64,28 +72,20 @@ public class JschExec extends SshExec implements ExecMixin<SshExec> {
                 }
             }
             
-            // NOTE: In order for JSCH to pump the inputstream to its outputstream
-            // it starts an "exec thread" for every channel-exec it creates
-            // that also includes non-null inputstream. The problem is that
-            // JSCH's exec thread will block forever on the inputstream.read()
-            // call unless the inputstream is actually closed.  Since we don't
-            // want that behavior, we'll sneakily introduce a wrapped inputstream
-            // that will supply an interruptible read() call. This is done in
-            // 2 steps:  1) our read() method will use a combo of Thread.sleep()
-            // and available() to provide a non-blocking read() that will also
-            // response to a Thread.interrupt() call.  and 2) we'll capture
-            // a reference to JSCH's exec thread by saving it when it actually
-            // enters the read() method.
+            // NOTE: JSCH starts an "exec thread" for every channel-exec with a
+            // non-null inputstream and that thread blocks forever on its read()
+            // call unless the inputstream is actually closed.  Rather than
+            // handing JSCH the inputstream, we write to the channel ourselves
+            // from a task on the shared executor that we can stop once the
+            // command is finished.  Reads of System.in go thru the shared
+            // reader since they cannot be interrupted, anything else (which may
+            // still wrap System.in) is wrapped to supply an interruptible read().
             
             // setup in/out streams
-            final InputStream is = (pipeInput != null ? new InterruptibleInputStream(pipeInput.stream()) : null);
+            is = (pipeInput != null ? pipeInput.stream() : null);
             final OutputStream os = (pipeOutput != null ? pipeOutput.stream() : new NullOutputStream());
             final OutputStream es = (pipeErrorToOutput ? os : (pipeError != null ? pipeError.stream() : new NullOutputStream()));
             
-            if (is != null) {
-                channel.setInputStream(is, false);
-            }
-            
             // both streams closing signals exec is finished
             final CountDownLatch outputStreamClosedSignal = new CountDownLatch(1);
             final CountDownLatch errorStreamClosedSignal = new CountDownLatch(1);
@@ -140,6 +140,12 @@ public class JschExec extends SshExec implements ExecMixin<SshExec> {
             // this connects and sends command
             channel.connect();
             
+            if (is != null) {
+                input = (is == System.in ? StandardInputReader.of(is).open() : new InterruptibleInputStream(is));
+                inputPumper = new BlockingInputStreamPumper(input, channel.getOutputStream(), true);
+                inputPump = this.context.executor().submit(inputPumper);
+            }
+            
             // wait for both streams to be closed
             outputStreamClosedSignal.await();
             errorStreamClosedSignal.await();
@@ -151,21 +157,29 @@ public class JschExec extends SshExec implements ExecMixin<SshExec> {
             }
             
             return new SshExec.Result(this, exitValue);
-        } catch (JSchException | InterruptedException e) {
+        } catch (JSchException | IOException | InterruptedException e) {
             throw new SshException(e.getMessage(), e);
         } finally {
-            if (channel != null) {
-                channel.disconnect();
+            // the input may still be waiting on more input (e.g. stdin)
+            if (inputPumper != null) {
+                inputPumper.stopProcessing();
+            }
+            
+            // closing the input also interrupts a read blocked on it (the
+            // stream opened for System.in never closes System.in itself)
+            if (input != null) {
+                IOUtils.closeQuietly(input);
+            } else if (is != null && is != System.in) {
+                IOUtils.closeQuietly(is);
             }
             
-            /**
-            // cleanup JSCH exec thread if it exists
-            Thread execThread = execThreadRef.get();
-            if (execThread != null) {
-                log.trace("Interrupting thread [{}]", execThread.getName());
-                execThread.interrupt();
+            if (inputPump != null) {
+                inputPump.cancel(true);
+            }
+            
+            if (channel != null) {
+                channel.disconnect();
             }
-            */
         }
     }
     